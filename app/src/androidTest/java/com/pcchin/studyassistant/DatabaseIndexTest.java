@@ -0,0 +1,447 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.pcchin.studyassistant.activity.ActivityConstants;
+import com.pcchin.studyassistant.database.DateColumnMigration;
+import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.database.notes.NotesImporter;
+import com.pcchin.studyassistant.database.notes.NotesPagingSource;
+import com.pcchin.studyassistant.database.notes.NotesPreview;
+import com.pcchin.studyassistant.database.notes.NotesSubject;
+import com.pcchin.studyassistant.database.notes.SubjectDatabase;
+import com.pcchin.studyassistant.database.project.ProjectDatabase;
+import com.pcchin.studyassistant.database.project.ProjectIdGenerator;
+import com.pcchin.studyassistant.database.project.data.MemberData;
+import com.pcchin.studyassistant.database.project.data.TaskData;
+import com.pcchin.studyassistant.file.notes.NotesJsonCodec;
+import com.pcchin.studyassistant.functions.ConverterFunctions;
+import com.pcchin.studyassistant.functions.DatabaseFunctions;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
+import com.pcchin.studyassistant.utils.misc.RandomString;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/** Test whether the lookups in the DAOs use the indices of the databases,
+ * and records the time taken for each lookup. **/
+public class DatabaseIndexTest {
+    private static final int[] ROW_COUNTS = BuildConfig.IS_LOCAL ? new int[]{10000, 100000}
+            : new int[]{10000};
+    private static final int LOOKUP_COUNT = 1000;
+    private SubjectDatabase subjectDatabase;
+    private ProjectDatabase projectDatabase;
+
+    @Before
+    public void setup() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        subjectDatabase = Room.inMemoryDatabaseBuilder(context, SubjectDatabase.class).build();
+        projectDatabase = Room.inMemoryDatabaseBuilder(context, ProjectDatabase.class).build();
+    }
+
+    @After
+    public void tearDown() {
+        subjectDatabase.shutdown(true);
+        projectDatabase.shutdown(true);
+    }
+
+    /** Test whether the note and subject lookups use their indices. **/
+    @Test
+    public void testNotesQueryPlan() {
+        assertUsesIndex(subjectDatabase, "SELECT * FROM notesContent WHERE subjectId = ?", 1);
+        assertUsesIndex(subjectDatabase, "SELECT * FROM notesSubject WHERE title = ?", "title");
+    }
+
+    /** Test whether the ordered queries of the notes are sorted through their indices
+     * instead of through a temporary B-tree. **/
+    @Test
+    public void testNotesOrderPlan() {
+        for (String order: new String[]{"titleSortKey ASC, _noteId ASC", "titleSortKey DESC, _noteId DESC",
+                "lastEdited ASC, _noteId ASC", "lastEdited DESC, _noteId DESC"}) {
+            String plan = getQueryPlan(subjectDatabase, "SELECT _noteId FROM notesContent "
+                    + "WHERE subjectId = ? ORDER BY " + order, 1);
+            Assert.assertFalse(order + " is sorted in memory, plan is " + plan,
+                    plan.contains("TEMP B-TREE"));
+        }
+    }
+
+    /** Compares the time taken to sort the notes of a subject in memory with sortNotes
+     * and to load them in order from the database. **/
+    @Test
+    public void testSortLatency() {
+        int[] noteCounts = BuildConfig.IS_LOCAL ? new int[]{1000, 10000, 100000} : new int[]{1000, 10000};
+        int insertedNotes = 0;
+        for (int noteCount: noteCounts) {
+            int start = insertedNotes;
+            subjectDatabase.runInTransaction(() -> {
+                for (int i = start; i < noteCount; i++) {
+                    subjectDatabase.ContentDao().insert(new NotesContent(i, 1, "Note " + ((i * 7919) % noteCount),
+                            "Content" + i, new Date(i * 1000L), ""));
+                }
+            });
+            insertedNotes = noteCount;
+            for (int sortOrder: new int[]{NotesSubject.SORT_ALPHABETICAL_DES, NotesSubject.SORT_DATE_DES}) {
+                NotesSubject subject = new NotesSubject(1, "Subject1", sortOrder);
+                long startTime = System.nanoTime();
+                List<NotesContent> memoryList = subjectDatabase.ContentDao().searchBySubject(1);
+                DatabaseFunctions.sortNotes(subject, memoryList);
+                double memoryMillis = (System.nanoTime() - startTime) / 1000000.0;
+
+                startTime = System.nanoTime();
+                List<NotesContent> sqlList = subjectDatabase.ContentDao().searchBySubjectSorted(1, sortOrder);
+                double sqlMillis = (System.nanoTime() - startTime) / 1000000.0;
+
+                for (int i = 0; i < memoryList.size(); i++) {
+                    Assert.assertEquals(memoryList.get(i).noteId, sqlList.get(i).noteId);
+                }
+                Log.i(ActivityConstants.LOG_APP_NAME, String.format("Sort order %d at %d notes: "
+                        + "in memory %.2fms, SQL %.2fms", sortOrder, noteCount, memoryMillis, sqlMillis));
+            }
+        }
+    }
+
+    /** Migrates a table with dates stored as strings and compares the time taken to read
+     * the dates of each row before and after they are stored as timestamps. **/
+    @Test
+    public void testDateHydration() {
+        SupportSQLiteDatabase database = subjectDatabase.getOpenHelper().getWritableDatabase();
+        database.execSQL("CREATE TABLE `LegacyDates` (`id` INTEGER NOT NULL, `created` TEXT NOT NULL, "
+                + "`alert` TEXT, PRIMARY KEY(`id`))");
+        database.execSQL("CREATE INDEX `index_LegacyDates_created` ON `LegacyDates` (`created`)");
+        int rowCount = ROW_COUNTS[ROW_COUNTS.length - 1];
+        long[] createdList = new long[rowCount];
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < rowCount; i++) {
+                createdList[i] = 1500000000000L + i * 60000L;
+                database.execSQL("INSERT INTO `LegacyDates` VALUES (?, ?, ?)", new Object[]{i,
+                        ConverterFunctions.dateToString(new Date(createdList[i])),
+                        ConverterFunctions.dateToString(i % 2 == 0 ? null : new Date(createdList[i]))});
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        long startTime = System.nanoTime();
+        try (Cursor cursor = database.query("SELECT `created`, `alert` FROM `LegacyDates`")) {
+            while (cursor.moveToNext()) {
+                Assert.assertNotNull(ConverterFunctions.stringToDate(cursor.getString(0)));
+                ConverterFunctions.stringToDate(cursor.getString(1));
+            }
+        }
+        logHydration("String dates", rowCount, startTime);
+
+        DateColumnMigration.migrate(database, "LegacyDates", "created", "alert");
+        startTime = System.nanoTime();
+        try (Cursor cursor = database.query("SELECT `id`, `created`, `alert` FROM `LegacyDates`")) {
+            while (cursor.moveToNext()) {
+                int id = cursor.getInt(0);
+                Date created = ConverterFunctions.timestampToDate(cursor.getLong(1));
+                Date alert = ConverterFunctions.timestampToDate(cursor.isNull(2) ? null : cursor.getLong(2));
+                Assert.assertEquals(createdList[id], created.getTime());
+                Assert.assertEquals(id % 2 == 0, alert == null);
+            }
+        }
+        logHydration("Timestamp dates", rowCount, startTime);
+        assertUsesIndex(subjectDatabase, "SELECT * FROM `LegacyDates` WHERE `created` > ?", 0);
+    }
+
+    /** Test whether the lookups within a project use their composite indices. **/
+    @Test
+    public void testProjectQueryPlan() {
+        assertUsesIndex(projectDatabase, "SELECT * FROM memberData WHERE parentProject = ? "
+                + "AND username = ?", "project", "username");
+        assertUsesIndex(projectDatabase, "SELECT * FROM memberData WHERE parentProject = ? "
+                + "AND role = ?", "project", "role");
+        assertUsesIndex(projectDatabase, "SELECT * FROM taskData WHERE parentProject = ? "
+                + "AND taskStatus = ?", "project", 1);
+        assertUsesIndex(projectDatabase, "SELECT * FROM statusData WHERE parentProject = ? "
+                + "AND memberID = ?", "project", "member");
+        assertUsesIndex(projectDatabase, "SELECT * FROM roleData WHERE parentProject = ?", "project");
+    }
+
+    /** Measures the time taken for each lookup at different number of rows. **/
+    @Test
+    public void testLookupLatency() {
+        int insertedNotes = 0, insertedMembers = 0;
+        for (int rowCount: ROW_COUNTS) {
+            insertNotes(insertedNotes, rowCount);
+            insertMembers(insertedMembers, rowCount);
+            insertedNotes = rowCount;
+            insertedMembers = rowCount;
+
+            long startTime = System.nanoTime();
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                Assert.assertFalse(subjectDatabase.ContentDao().searchBySubject(i % 100).isEmpty());
+            }
+            logLatency("ContentDao.searchBySubject", rowCount, startTime);
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                Assert.assertNotNull(projectDatabase.MemberDao()
+                        .searchInProjectByUsername("project" + (i % 100), "user" + i));
+            }
+            logLatency("MemberDao.searchInProjectByUsername", rowCount, startTime);
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                projectDatabase.TaskDao().searchInProjectByStatus("project" + (i % 100),
+                        TaskData.TASK_ONGOING);
+            }
+            logLatency("TaskDao.searchInProjectByStatus", rowCount, startTime);
+        }
+    }
+
+    /** Test whether the pages of previews are in the same order as sortNotes,
+     * and records the time taken to load the first page as the subject grows. **/
+    @Test
+    public void testPreviewPaging() {
+        insertNotes(0, 1000);
+        for (int sortOrder: new int[]{NotesSubject.SORT_ALPHABETICAL_ASC, NotesSubject.SORT_ALPHABETICAL_DES,
+                NotesSubject.SORT_DATE_ASC, NotesSubject.SORT_DATE_DES}) {
+            NotesSubject subject = new NotesSubject(1, "Subject1", sortOrder);
+            List<NotesContent> notesList = subjectDatabase.ContentDao().searchBySubject(1);
+            DatabaseFunctions.sortNotes(subject, notesList);
+            List<Integer> pagedIds = new ArrayList<>();
+            NotesPagingSource source = new NotesPagingSource(1, sortOrder, 3);
+            Integer key = 0;
+            while (key != null) {
+                NotesPagingSource.Page page = source.load(subjectDatabase, key);
+                for (NotesPreview preview: page.data) pagedIds.add(preview.noteId);
+                key = page.nextKey;
+            }
+            Assert.assertEquals(notesList.size(), pagedIds.size());
+            Assert.assertEquals(pagedIds, subjectDatabase.ContentDao().getSortedNoteIds(1, sortOrder));
+            for (int i = 0; i < notesList.size(); i++) {
+                Assert.assertEquals(notesList.get(i).noteId, (int) pagedIds.get(i));
+            }
+        }
+
+        // All of the notes are placed in subject 0 to measure the first page of a large subject
+        int insertedNotes = 0;
+        for (int rowCount: ROW_COUNTS) {
+            subjectDatabase.runInTransaction(() -> {
+                for (int i = 0; i < rowCount; i++) {
+                    subjectDatabase.ContentDao().insert(new NotesContent(1000000 + i, 0, "Large" + i,
+                            "Content" + i, new Date(), ""));
+                }
+            });
+            insertedNotes += rowCount;
+            NotesPagingSource source = new NotesPagingSource(0, NotesSubject.SORT_ALPHABETICAL_ASC, 40);
+            long startTime = System.nanoTime();
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                Assert.assertEquals(40, source.load(subjectDatabase, 0).data.size());
+            }
+            logLatency("NotesPagingSource.load", insertedNotes, startTime);
+        }
+    }
+
+    /** Compares the number of notes imported per second by NotesImporter with inserting each note
+     * in its own transaction. A database on disk is used so that the cost of each commit is included. **/
+    @Test
+    public void testImportThroughput() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SubjectDatabase fileDatabase = Room.databaseBuilder(context, SubjectDatabase.class,
+                "importBenchmark").build();
+        try {
+            long startTime = System.nanoTime();
+            fileDatabase.SubjectDao().insert(new NotesSubject(0, "Subject0", NotesSubject.SORT_ALPHABETICAL_ASC));
+            for (int i = 0; i < 1000; i++) {
+                fileDatabase.ContentDao().insert(new NotesContent(i, 0, "Note" + i,
+                        "Content" + i, new Date(), ""));
+            }
+            logHydration("Single inserts at 1000 notes", 1000, startTime);
+
+            int subjectId = 1, noteId = 1000;
+            for (int noteCount: BuildConfig.IS_LOCAL ? new int[]{1000, 10000, 100000} : new int[]{1000, 10000}) {
+                List<NotesContent> notesList = new ArrayList<>(noteCount);
+                for (int i = 0; i < noteCount; i++) {
+                    notesList.add(new NotesContent(noteId++, subjectId, "Note" + i,
+                            "Content" + i, new Date(), ""));
+                }
+                int[] batchCount = {0};
+                startTime = System.nanoTime();
+                int insertedCount = new NotesImporter(fileDatabase, NotesImporter.DEFAULT_BATCH_SIZE,
+                        inserted -> batchCount[0]++).importSubject(new NotesSubject(subjectId,
+                        "Subject" + subjectId, NotesSubject.SORT_ALPHABETICAL_ASC), notesList);
+                logHydration("NotesImporter at " + noteCount + " notes", noteCount, startTime);
+                Assert.assertEquals(noteCount, insertedCount);
+                Assert.assertEquals((noteCount + NotesImporter.DEFAULT_BATCH_SIZE - 1)
+                        / NotesImporter.DEFAULT_BATCH_SIZE, batchCount[0]);
+                Assert.assertEquals(noteCount, fileDatabase.ContentDao().searchBySubject(subjectId).size());
+                subjectId++;
+            }
+        } finally {
+            fileDatabase.shutdown(true);
+            context.deleteDatabase("importBenchmark");
+        }
+    }
+
+    /** Imports 50000 notes into a database that already has 50000 notes, with the IDs of the notes
+     * allocated through IdAllocator, and records the time taken for the IDs and for the whole import. **/
+    @Test
+    public void testIdAllocation() throws IOException {
+        int noteCount = 50000;
+        insertNotes(0, noteCount);
+        List<NotesContent> originalList = new ArrayList<>(noteCount);
+        for (int i = 0; i < noteCount; i++) {
+            originalList.add(new NotesContent(i, 0, "Note" + i, "Content" + i, new Date(), ""));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        NotesJsonCodec.writeNotes(originalList, output);
+
+        long startTime = System.nanoTime();
+        IdAllocator idAllocator = new IdAllocator((start, end) -> subjectDatabase.ContentDao()
+                .hasNoteIdInRange(start, end), IdAllocator.DEFAULT_BLOCK_SIZE);
+        for (int i = 0; i < noteCount; i++) idAllocator.nextId();
+        logHydration("IdAllocator", noteCount, startTime);
+
+        startTime = System.nanoTime();
+        NotesImporter importer = new NotesImporter(subjectDatabase, NotesImporter.DEFAULT_BATCH_SIZE, null);
+        importer.setSubject(new NotesSubject(1000, "Imported", NotesSubject.SORT_ALPHABETICAL_ASC));
+        Assert.assertTrue(NotesJsonCodec.readNotes(new ByteArrayInputStream(output.toByteArray()),
+                new IdAllocator((start, end) -> subjectDatabase.ContentDao().hasNoteIdInRange(start, end),
+                        IdAllocator.DEFAULT_BLOCK_SIZE), 1000, importer::add));
+        Assert.assertEquals(noteCount, importer.finish());
+        logHydration("Import with IdAllocator", noteCount, startTime);
+        Assert.assertEquals(noteCount, subjectDatabase.ContentDao().searchBySubject(1000).size());
+    }
+
+    /** Compares the time taken to generate the IDs of a project with one query for each ID
+     * and with ProjectIdGenerator, and the time taken to insert members with random IDs
+     * and with time ordered IDs. **/
+    @Test
+    public void testProjectIdGeneration() {
+        insertMembers(0, ROW_COUNTS[0]);
+        RandomString idRand = new RandomString(48);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            DatabaseFunctions.generateValidProjectString(idRand, DatabaseFunctions.PROJ_ID_TYPE.PROJECT, projectDatabase);
+            DatabaseFunctions.generateValidProjectString(idRand, DatabaseFunctions.PROJ_ID_TYPE.ROLE, projectDatabase);
+            DatabaseFunctions.generateValidProjectString(idRand, DatabaseFunctions.PROJ_ID_TYPE.ROLE, projectDatabase);
+            DatabaseFunctions.generateValidProjectString(idRand, DatabaseFunctions.PROJ_ID_TYPE.MEMBER, projectDatabase);
+        }
+        logLatency("generateValidProjectString for a project", ROW_COUNTS[0], startTime);
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            ProjectIdGenerator idGenerator = new ProjectIdGenerator(projectDatabase, idRand);
+            idGenerator.reserve(DatabaseFunctions.PROJ_ID_TYPE.ROLE, 2);
+            idGenerator.next(DatabaseFunctions.PROJ_ID_TYPE.PROJECT);
+            Assert.assertNotEquals(idGenerator.next(DatabaseFunctions.PROJ_ID_TYPE.ROLE),
+                    idGenerator.next(DatabaseFunctions.PROJ_ID_TYPE.ROLE));
+            idGenerator.next(DatabaseFunctions.PROJ_ID_TYPE.MEMBER);
+        }
+        logLatency("ProjectIdGenerator for a project", ROW_COUNTS[0], startTime);
+
+        String previousId = "";
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            String currentId = ProjectIdGenerator.nextTimeOrderedId();
+            Assert.assertTrue(currentId.compareTo(previousId) > 0);
+            Assert.assertEquals(7, UUID.fromString(currentId).version());
+            previousId = currentId;
+        }
+        insertGeneratedMembers("Member inserts with random IDs",
+                new ProjectIdGenerator(projectDatabase, idRand));
+        insertGeneratedMembers("Member inserts with time ordered IDs",
+                ProjectIdGenerator.timeOrdered(projectDatabase));
+    }
+
+    /** Inserts members with the IDs from the generator and logs the number of rows inserted per second. **/
+    private void insertGeneratedMembers(String name, @NonNull ProjectIdGenerator idGenerator) {
+        idGenerator.reserve(DatabaseFunctions.PROJ_ID_TYPE.MEMBER, ROW_COUNTS[0]);
+        long startTime = System.nanoTime();
+        projectDatabase.runInTransaction(() -> {
+            for (int i = 0; i < ROW_COUNTS[0]; i++) {
+                projectDatabase.MemberDao().insert(new MemberData(idGenerator.next(DatabaseFunctions
+                        .PROJ_ID_TYPE.MEMBER), "project", "user" + i, "User " + i, "", "", "role"));
+            }
+        });
+        logHydration(name, ROW_COUNTS[0], startTime);
+    }
+
+    /** Inserts notes from the start index until the end index. **/
+    private void insertNotes(int start, int end) {
+        subjectDatabase.runInTransaction(() -> {
+            for (int i = start; i < end; i++) {
+                if (i < 100) subjectDatabase.SubjectDao().insert(new NotesSubject(i, "Subject" + i,
+                        NotesSubject.SORT_ALPHABETICAL_ASC));
+                subjectDatabase.ContentDao().insert(new NotesContent(i, i % 100, "Note" + i,
+                        "Content" + i, new Date(), ""));
+            }
+        });
+    }
+
+    /** Inserts members from the start index until the end index. **/
+    private void insertMembers(int start, int end) {
+        projectDatabase.runInTransaction(() -> {
+            for (int i = start; i < end; i++) {
+                projectDatabase.MemberDao().insert(new MemberData("member" + i, "project" + (i % 100),
+                        "user" + i, "User " + i, "", "", "role" + (i % 5)));
+            }
+        });
+    }
+
+    /** Asserts that the query plan of the query uses an index. **/
+    private static void assertUsesIndex(@NonNull RoomDatabase database, String query, Object... args) {
+        String plan = getQueryPlan(database, query, args);
+        Assert.assertTrue(query + " does not use an index, plan is " + plan,
+                plan.contains("USING INDEX") || plan.contains("USING COVERING INDEX"));
+    }
+
+    /** Returns the details of the query plan of the query. **/
+    @NonNull
+    private static String getQueryPlan(@NonNull RoomDatabase database, String query, Object... args) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = database.query("EXPLAIN QUERY PLAN " + query, args)) {
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) plan.append(cursor.getString(detailIndex)).append("\n");
+        }
+        return plan.toString();
+    }
+
+    /** Logs the number of rows read per second. **/
+    private static void logHydration(String name, int rowCount, long startTime) {
+        double rowsPerSecond = rowCount / ((System.nanoTime() - startTime) / 1000000000.0);
+        Log.i(ActivityConstants.LOG_APP_NAME, String.format("%s: %.0f rows per second", name, rowsPerSecond));
+    }
+
+    /** Logs the average time taken per lookup. **/
+    private static void logLatency(String name, int rowCount, long startTime) {
+        double averageMicros = (System.nanoTime() - startTime) / 1000.0 / LOOKUP_COUNT;
+        Log.i(ActivityConstants.LOG_APP_NAME, String.format("%s at %d rows: %.2fus per lookup",
+                name, rowCount, averageMicros));
+    }
+}
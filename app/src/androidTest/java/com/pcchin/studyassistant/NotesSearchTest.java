@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.pcchin.studyassistant.activity.ActivityConstants;
+import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.database.notes.NotesSearchResult;
+import com.pcchin.studyassistant.database.notes.SubjectDatabase;
+import com.pcchin.studyassistant.functions.DatabaseFunctions;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+/** Test the full text search of the notes and compares it with a LIKE scan. **/
+public class NotesSearchTest {
+    private static final int NOTE_COUNT = BuildConfig.IS_LOCAL ? 100000 : 10000;
+    private static final int SEARCH_COUNT = 20;
+    private static final String[] WORDS = {"photosynthesis", "mitochondria", "integral",
+            "derivative", "revolution", "grammar", "velocity", "molecule", "theorem", "poetry"};
+    private SubjectDatabase database;
+
+    @Before
+    public void setup() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, SubjectDatabase.class).build();
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown(true);
+    }
+
+    /** Test whether the index is updated when notes are inserted, updated and deleted. **/
+    @Test
+    public void testIndexMaintenance() {
+        NotesContent note = new NotesContent(1, 1, "Biology", "Notes about photosynthesis",
+                new Date(), "");
+        database.ContentDao().insert(note);
+        Assert.assertEquals(1, search("photosynthesis").size());
+
+        note.noteContent = "Notes about mitochondria";
+        database.ContentDao().update(note);
+        Assert.assertTrue(search("photosynthesis").isEmpty());
+        Assert.assertEquals(1, search("mitochondria").size());
+
+        database.ContentDao().delete(note);
+        Assert.assertTrue(search("mitochondria").isEmpty());
+    }
+
+    /** Test whether notes are ranked, highlighted and filtered by subject correctly. **/
+    @Test
+    public void testRankingAndSnippet() {
+        database.ContentDao().insert(new NotesContent(1, 1, "Calculus",
+                "The derivative of an integral", new Date(), ""));
+        database.ContentDao().insert(new NotesContent(2, 2, "Integral", "Integral by parts",
+                new Date(), ""));
+        List<NotesSearchResult> resultList = search("integ");
+        Assert.assertEquals(2, resultList.size());
+        Assert.assertEquals(2, resultList.get(0).noteId);
+        Assert.assertTrue(resultList.get(1).snippet.contains("[integral]"));
+        Assert.assertEquals(1, DatabaseFunctions.searchNotes(database, "integral", 1,
+                "[", "]").size());
+        // Characters used by the FTS syntax should not cause errors
+        Assert.assertTrue(search("\"* - OR").isEmpty());
+    }
+
+    /** Compares the time taken for a full text search and a LIKE scan. **/
+    @Test
+    public void testSearchLatency() {
+        database.runInTransaction(() -> {
+            for (int i = 0; i < NOTE_COUNT; i++) {
+                database.ContentDao().insert(new NotesContent(i, i % 100, "Note" + i,
+                        WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length]
+                                + " " + i, new Date(), ""));
+            }
+        });
+
+        long startTime = System.nanoTime();
+        int ftsCount = 0;
+        for (int i = 0; i < SEARCH_COUNT; i++) {
+            ftsCount += database.SearchDao().search("\"" + WORDS[i % WORDS.length] + "\"",
+                    "", "").size();
+        }
+        double ftsMillis = (System.nanoTime() - startTime) / 1000000.0 / SEARCH_COUNT;
+
+        startTime = System.nanoTime();
+        int likeCount = 0;
+        for (int i = 0; i < SEARCH_COUNT; i++) {
+            try (Cursor cursor = database.query("SELECT _noteId FROM notesContent WHERE "
+                    + "noteTitle LIKE ? OR noteContent LIKE ?", new Object[]{
+                            "%" + WORDS[i % WORDS.length] + "%", "%" + WORDS[i % WORDS.length] + "%"})) {
+                likeCount += cursor.getCount();
+            }
+        }
+        double likeMillis = (System.nanoTime() - startTime) / 1000000.0 / SEARCH_COUNT;
+
+        Assert.assertEquals(likeCount, ftsCount);
+        Log.i(ActivityConstants.LOG_APP_NAME, String.format("Search at %d notes: FTS %.2fms, "
+                + "LIKE %.2fms per search", NOTE_COUNT, ftsMillis, likeMillis));
+    }
+
+    /** Searches all subjects with the markers [ and ]. **/
+    private List<NotesSearchResult> search(String query) {
+        return DatabaseFunctions.searchNotes(database, query, null, "[", "]");
+    }
+}
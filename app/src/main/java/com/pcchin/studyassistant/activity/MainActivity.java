@@ -34,8 +34,9 @@ import androidx.viewpager.widget.ViewPager;
 import com.github.dhaval2404.imagepicker.ImagePicker;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.navigation.NavigationView;
+import com.pcchin.studyassistant.BuildConfig;
 import com.pcchin.studyassistant.R;
-import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.database.SharedRoomDatabase;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
 import com.pcchin.studyassistant.database.notes.SubjectDatabase;
 import com.pcchin.studyassistant.database.project.ProjectDatabase;
@@ -53,10 +54,11 @@ import com.pcchin.studyassistant.functions.UIFunctions;
 import com.pcchin.studyassistant.preference.PreferenceString;
 import com.pcchin.studyassistant.ui.ExtendedFragment;
 import com.pcchin.studyassistant.ui.NoteViewPager;
+import com.pcchin.studyassistant.utils.collections.IntArrayList;
+import com.pcchin.studyassistant.utils.file.FileCopier;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
 import java.util.Objects;
 
 import io.sentry.Sentry;
@@ -123,6 +125,18 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
+    /** Logs the number of database queries that had been run on the main thread in the debug build,
+     * so that the remaining synchronous queries can be tracked down. **/
+    @Override
+    protected void onStop() {
+        super.onStop();
+        //noinspection ConstantConditions
+        if (BuildConfig.BUILD_TYPE.equals("debug")) {
+            Log.d(ActivityConstants.LOG_APP_NAME, "Database: " + SharedRoomDatabase.getMainThreadQueryCount()
+                    + " queries had been run on the main thread");
+        }
+    }
+
     /** Returns the check permission result for all runtime permissions needed. **/
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
@@ -143,13 +157,15 @@ public class MainActivity extends AppCompatActivity
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (resultCode == RESULT_OK && data.getData() != null) {
-            String targetFile = FileFunctions.getRealPathFromUri(MainActivity.this, data.getData());
-            boolean imagePicked = false;
-            if (targetFile == null) {
-                targetFile = ImagePicker.Companion.getFilePath(data);
-                imagePicked = true;
-            }
-            processFileRequest(requestCode, targetFile, imagePicked);
+            // The file is copied on a background thread
+            FileFunctions.getRealPathFromUri(MainActivity.this, MainActivity.this, data.getData(), targetFile -> {
+                boolean imagePicked = false;
+                if (targetFile == null) {
+                    targetFile = ImagePicker.Companion.getFilePath(data);
+                    imagePicked = true;
+                }
+                processFileRequest(requestCode, targetFile, imagePicked);
+            });
         }
     }
 
@@ -180,26 +196,35 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
-    /** Updates the icon of the project specified earlier. **/
+    /** Updates the icon of the project specified earlier.
+     * The icon is copied and the project is updated on a background thread. **/
     private void updateIcon(String targetFile) {
-        try {
-            String iconPath = DatabaseFunctions.getProjectIconPath(MainActivity.this, projectID);
-            FileFunctions.copyFile(new File(targetFile), new File(iconPath));
-            new Thread(() -> {
-                ProjectDatabase database = DatabaseFunctions.getProjectDatabase(MainActivity.this);
-                ProjectData project = database.ProjectDao().searchByID(projectID);
-                project.hasIcon = true;
-                database.ProjectDao().update(project);
-                runOnUiThread(this::startProjectSettings);
-            }).start();
-            Toast.makeText(MainActivity.this, R.string.p3_general_icon_updated, Toast.LENGTH_SHORT).show();
-        } catch (IOException e) {
-            Toast.makeText(MainActivity.this, R.string.file_error, Toast.LENGTH_SHORT).show();
-            Log.e(ActivityConstants.LOG_APP_NAME, String.format("File Error: Unable to be update " +
-                    "the icon of project ID %s from targetFile %s", projectID, targetFile));
-            e.printStackTrace();
-            Sentry.capture(e);
-        }
+        String iconPath = DatabaseFunctions.getProjectIconPath(MainActivity.this, projectID);
+        String currentProjectID = projectID;
+        FileCopier.run(MainActivity.this, () -> {
+            try {
+                FileFunctions.copyFile(new File(targetFile), new File(iconPath));
+            } catch (IOException e) {
+                Log.e(ActivityConstants.LOG_APP_NAME, String.format("File Error: Unable to be update " +
+                        "the icon of project ID %s from targetFile %s", currentProjectID, targetFile));
+                e.printStackTrace();
+                Sentry.capture(e);
+                return false;
+            }
+            ProjectDatabase database = DatabaseFunctions.getProjectDatabase(MainActivity.this);
+            ProjectData project = database.ProjectDao().searchByID(currentProjectID);
+            project.hasIcon = true;
+            database.ProjectDao().update(project);
+            database.close();
+            return true;
+        }, isUpdated -> {
+            if (isUpdated) {
+                Toast.makeText(MainActivity.this, R.string.p3_general_icon_updated, Toast.LENGTH_SHORT).show();
+                startProjectSettings();
+            } else {
+                Toast.makeText(MainActivity.this, R.string.file_error, Toast.LENGTH_SHORT).show();
+            }
+        }, e -> Toast.makeText(MainActivity.this, R.string.file_error, Toast.LENGTH_SHORT).show());
     }
 
     /** Go to the settings page if it is not at the settings for the imported project. **/
@@ -246,10 +271,11 @@ public class MainActivity extends AppCompatActivity
         }
         SubjectDatabase subjectDatabase = DatabaseFunctions.getSubjectDatabase(MainActivity.this);
         NotesSubject currentSubject = subjectDatabase.SubjectDao().searchById(subjectId);
-        List<NotesContent> notesList = subjectDatabase.ContentDao().searchBySubject(subjectId);
-        DatabaseFunctions.sortNotes(MainActivity.this, currentSubject, notesList);
+        // Only the IDs are loaded here, the content of each note is loaded by its NotesViewFragment
+        IntArrayList noteIdList = IntArrayList.fromList(subjectDatabase.ContentDao()
+                .getSortedNoteIds(subjectId, currentSubject.sortOrder));
         subjectDatabase.close();
-        FragmentStatePagerAdapter baseAdapter = new MainActivityFunctions(MainActivity.this).getNoteAdapter(notesList);
+        FragmentStatePagerAdapter baseAdapter = new MainActivityFunctions(MainActivity.this).getNoteAdapter(noteIdList);
         // Updates currentFragment to the current item
         ViewPager.OnPageChangeListener baseAdapterPageChanger = new MainActivityFunctions(MainActivity.this)
                 .getNoteAdapterPageChanger(baseAdapter);
@@ -27,6 +27,7 @@ import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.ContextCompat;
@@ -35,7 +36,7 @@ import androidx.drawerlayout.widget.DrawerLayout;
 import com.google.android.material.navigation.NavigationView;
 import com.pcchin.studyassistant.BuildConfig;
 import com.pcchin.studyassistant.R;
-import com.pcchin.studyassistant.database.notes.SubjectDatabase;
+import com.pcchin.studyassistant.database.DatabaseExecutor;
 import com.pcchin.studyassistant.database.project.ProjectDatabase;
 import com.pcchin.studyassistant.database.project.data.RoleData;
 import com.pcchin.studyassistant.file.notes.importsubj.ImportSubjectSubject;
@@ -49,11 +50,18 @@ import com.pcchin.studyassistant.functions.DatabaseFunctions;
 import com.pcchin.studyassistant.functions.FileFunctions;
 import com.pcchin.studyassistant.functions.NavViewFunctions;
 import com.pcchin.studyassistant.network.update.AppUpdate;
+import com.pcchin.studyassistant.utils.file.TempFileJanitor;
+import com.pcchin.studyassistant.utils.startup.StartupGraph;
+import com.pcchin.studyassistant.utils.startup.StartupTrace;
 
 import java.io.File;
 import java.util.Date;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.sentry.Sentry;
 import io.sentry.event.UserBuilder;
@@ -61,6 +69,23 @@ import io.sentry.event.UserBuilder;
 /** Functions used within onCreate of
  * @see MainActivity **/
 final class MainActivityCreate {
+    private static final String STAGE_LAYOUT = "layout", STAGE_FILE_URI = "fileUri",
+            STAGE_ACTIVITY_INFO = "activityInfo", STAGE_SENTRY = "sentry", STAGE_START_FRAGMENT = "startFragment",
+            STAGE_FRAGMENT_VIEW = "fragmentView", STAGE_NAVIGATION = "navigation",
+            STAGE_DEFAULT_ROLES = "defaultRoles", STAGE_PAST_EXPORTS = "pastExports";
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+    // The deferred stages are short, so the threads are not kept after the startup
+    private static final ThreadPoolExecutor startupExecutor = new ThreadPoolExecutor(2, 2,
+            5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "Startup-" + threadCount.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+
+    static {
+        startupExecutor.allowCoreThreadTimeOut(true);
+    }
+
     private final MainActivity activity;
 
     /** Constructor used as activity needs to be passed on. **/
@@ -68,25 +93,58 @@ final class MainActivityCreate {
         this.activity = activity;
     }
 
-    /** The onCreate function for MainActivity. **/
+    /** The onCreate function for MainActivity. The work needed for the first frame is run
+     * on the main thread, while the rest is deferred to the background threads.
+     * The time taken by each stage is logged in the debug build.
+     * @see StartupGraph **/
     void onCreate(Bundle savedInstanceState) {
-        activity.setContentView(R.layout.activity_main);
-        checkFileUri();
-        activity.pager = activity.findViewById(R.id.base_pager);
-        activity.bottomNavView = activity.findViewById(R.id.bottom_nav);
-        setActivityInfo(savedInstanceState);
-        initSentry();
+        StartupGraph startupGraph = new StartupGraph()
+                .addCritical(STAGE_LAYOUT, () -> {
+                    activity.setContentView(R.layout.activity_main);
+                    activity.pager = activity.findViewById(R.id.base_pager);
+                    activity.bottomNavView = activity.findViewById(R.id.bottom_nav);
+                })
+                // The file is copied on a background thread
+                .addCritical(STAGE_FILE_URI, this::checkFileUri, STAGE_LAYOUT)
+                .addCritical(STAGE_ACTIVITY_INFO, () -> setActivityInfo(savedInstanceState), STAGE_LAYOUT)
+                .addCritical(STAGE_SENTRY, this::initSentry)
+                .addCritical(STAGE_START_FRAGMENT, this::displayStartFragment, STAGE_ACTIVITY_INFO)
+                .addCritical(STAGE_FRAGMENT_VIEW, this::initFragmentView, STAGE_ACTIVITY_INFO)
+                .addCritical(STAGE_NAVIGATION, this::setNavigation, STAGE_LAYOUT);
+        // Only needed when the app is first started
+        if (savedInstanceState == null) {
+            startupGraph.addDeferred(STAGE_DEFAULT_ROLES, this::createDefaultRoles)
+                    .addDeferred(STAGE_PAST_EXPORTS, this::deletePastExports);
+        }
+        startupGraph.run(startupExecutor, this::onStartupFinished);
+    }
+
+    /** Reports the deferred stages that have failed, and dumps the startup trace in the debug build. **/
+    private void onStartupFinished(@NonNull StartupTrace trace) {
+        for (StartupTrace.Entry entry: trace.getEntries()) {
+            if (entry.status == StartupTrace.Status.FAILED && entry.error != null) {
+                Log.e(ActivityConstants.LOG_APP_NAME, "Startup Error: Stage " + entry.name
+                        + " could not be completed, stack trace is");
+                entry.error.printStackTrace();
+                Sentry.capture(entry.error);
+            }
+        }
+        //noinspection ConstantConditions
+        if (BuildConfig.BUILD_TYPE.equals("debug")) {
+            Log.d(ActivityConstants.LOG_APP_NAME, "Startup trace:\n" + trace.dump());
+        }
+    }
 
-        // Get subject, if needed from Intent
+    /** Displays the subject of the note from the Intent, if needed.
+     * The subject of the note is looked up in the background. **/
+    private void displayStartFragment() {
         if (activity.getIntent().getBooleanExtra(ActivityConstants.INTENT_VALUE_START_FRAGMENT, false)) {
             int targetNote = activity.getIntent().getIntExtra(ActivityConstants.INTENT_VALUE_NOTE_ID, 0);
-            SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
-            int targetSubject = database.ContentDao().search(targetNote).subjectId;
-            database.close();
-            activity.displayFragment(NotesSubjectFragment.newInstance(targetSubject, targetNote));
+            DatabaseExecutor.subjectQuery(activity, activity, database -> database.ContentDao().search(targetNote),
+                    note -> {
+                if (note != null) activity.displayFragment(NotesSubjectFragment.newInstance(note.subjectId, targetNote));
+            });
         }
-        initFragmentView();
-        setNavigation();
     }
 
     /** Initializes Sentry to be used in all build configs.
@@ -165,8 +223,6 @@ final class MainActivityCreate {
         }
         // No handlers used for them as they had to be completed first
         generateUID();
-        new Handler().post(this::createDefaultRoles); // First database access in MainActivityCreate on runtime
-        new Handler().post(this::deletePastExports);
     }
 
     /** Generates a unique ID for the client if one does not exist. **/
@@ -181,16 +237,18 @@ final class MainActivityCreate {
     private void checkFileUri() {
         Uri intentUri = activity.getIntent().getParcelableExtra(Intent.EXTRA_STREAM);
         if (intentUri != null) {
-            String receiveFilePath = FileFunctions.getRealPathFromUri(activity, intentUri);
-            // Check if file type matches the required file types
-            if (receiveFilePath != null && receiveFilePath.endsWith(".subject")) {
-                new ImportSubjectSubject(activity).importSubjectFile(receiveFilePath);
-            } else if (receiveFilePath != null && (receiveFilePath.endsWith(".zip") || receiveFilePath.endsWith(".ZIP")
-                    || receiveFilePath.endsWith(".Zip"))) {
-                new ImportSubjectZip(activity).importZipConfirm(receiveFilePath);
-            } else {
-                Toast.makeText(activity, R.string.error_file_format_incorrect, Toast.LENGTH_SHORT).show();
-            }
+            // The file is copied on a background thread
+            FileFunctions.getRealPathFromUri(activity, activity, intentUri, receiveFilePath -> {
+                // Check if file type matches the required file types
+                if (receiveFilePath != null && receiveFilePath.endsWith(".subject")) {
+                    new ImportSubjectSubject(activity).importSubjectFile(receiveFilePath);
+                } else if (receiveFilePath != null && (receiveFilePath.endsWith(".zip") || receiveFilePath.endsWith(".ZIP")
+                        || receiveFilePath.endsWith(".Zip"))) {
+                    new ImportSubjectZip(activity).importZipConfirm(receiveFilePath);
+                } else {
+                    Toast.makeText(activity, R.string.error_file_format_incorrect, Toast.LENGTH_SHORT).show();
+                }
+            });
         }
     }
 
@@ -237,16 +295,14 @@ final class MainActivityCreate {
         projectDatabase.close();
     }
 
-    /** Delete the past export files. **/
+    /** Delete the past export files. The temp directory is cleaned up on a background thread
+     * so that the startup does not depend on how many files are left in it.
+     * @see TempFileJanitor **/
     private void deletePastExports() {
         String outputFileName = activity.getFilesDir().getAbsolutePath() + "/temp";
         File apkInstallDir = new File(outputFileName);
         if (apkInstallDir.exists() && apkInstallDir.isDirectory()) {
-            // Deletes all children in the folder
-            File[] dirFiles = apkInstallDir.listFiles();
-            if (dirFiles != null) {
-                for (File child : dirFiles) FileFunctions.deleteDir(child);
-            }
+            TempFileJanitor.start(activity);
         } else if (!apkInstallDir.exists()) {
             //noinspection ResultOfMethodCallIgnored
             apkInstallDir.mkdir();
@@ -25,7 +25,6 @@ import androidx.fragment.app.FragmentStatePagerAdapter;
 import androidx.viewpager.widget.ViewPager;
 
 import com.pcchin.studyassistant.R;
-import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.fragment.notes.view.NotesViewFragment;
 import com.pcchin.studyassistant.fragment.project.ProjectInfoFragment;
 import com.pcchin.studyassistant.fragment.project.ProjectMediaFragment;
@@ -33,8 +32,7 @@ import com.pcchin.studyassistant.fragment.project.member.ProjectMemberListFragme
 import com.pcchin.studyassistant.fragment.project.role.ProjectRoleFragment;
 import com.pcchin.studyassistant.fragment.project.status.ProjectStatusFragment;
 import com.pcchin.studyassistant.fragment.project.task.ProjectTaskFragment;
-
-import java.util.List;
+import com.pcchin.studyassistant.utils.collections.IntArrayList;
 
 /** Functions that are used in MainActivity. **/
 public final class MainActivityFunctions {
@@ -58,16 +56,16 @@ public final class MainActivityFunctions {
 
     /** Gets the pager adapter for the notes. **/
     @NonNull
-    FragmentStatePagerAdapter getNoteAdapter(List<NotesContent> notesList) {
-        return new NotePagerAdapter(notesList, activity.getSupportFragmentManager(),
+    FragmentStatePagerAdapter getNoteAdapter(IntArrayList noteIdList) {
+        return new NotePagerAdapter(noteIdList, activity.getSupportFragmentManager(),
                 FragmentStatePagerAdapter.BEHAVIOR_RESUME_ONLY_CURRENT_FRAGMENT) {
             @NonNull
             @Override
             // getItem does not correspond to the current item selected, DO NOT USE IT AS SUCH
             public Fragment getItem(int position) {
                 // This if else is used to prevent ArrayOutOfBoundsException for items outside the range
-                if (position < notesList.size() && position >= 0) {
-                    return NotesViewFragment.newInstance(notesList.get(position).noteId);
+                if (position < noteIdList.size() && position >= 0) {
+                    return NotesViewFragment.newInstance(noteIdList.get(position));
                 } else {
                     return new Fragment();
                 }
@@ -75,7 +73,7 @@ public final class MainActivityFunctions {
 
             @Override
             public int getCount() {
-                return notesList.size();
+                return noteIdList.size();
             }
         };
     }
@@ -83,11 +81,11 @@ public final class MainActivityFunctions {
     /** A FragmentStatePagerAdapter which contains a notes list, which can then be passed on to
      * @see com.pcchin.studyassistant.ui.NoteViewPager **/
     public abstract static class NotePagerAdapter extends FragmentStatePagerAdapter {
-        public final List<NotesContent> notesList;
+        public final IntArrayList noteIdList;
 
-        public NotePagerAdapter(List<NotesContent> notesList, FragmentManager fm, int behavior) {
+        public NotePagerAdapter(IntArrayList noteIdList, FragmentManager fm, int behavior) {
             super(fm, behavior);
-            this.notesList = notesList;
+            this.noteIdList = noteIdList;
         }
     }
 
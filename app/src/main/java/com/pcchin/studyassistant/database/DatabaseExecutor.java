@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.pcchin.studyassistant.database.notes.SubjectDatabase;
+import com.pcchin.studyassistant.database.project.ProjectDatabase;
+import com.pcchin.studyassistant.functions.DatabaseFunctions;
+import com.pcchin.studyassistant.utils.misc.BackgroundRunner;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Runs database queries on a background executor and returns their results to the main thread.
+ * Each query is tied to the lifecycle of a fragment or an activity, and its result is dropped
+ * once the lifecycle is destroyed. The query itself is always run so that writes are not lost.
+ * All functions in this class should be called from the main thread.
+ * @see BackgroundRunner **/
+public final class DatabaseExecutor {
+    private static final int POOL_SIZE = Math.max(2, Math.min(4,
+            Runtime.getRuntime().availableProcessors()));
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+    // The queue is unbounded so that a query is never run on the main thread or rejected
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "DatabaseExecutor-" + threadCount.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+    private static final BackgroundRunner runner = new BackgroundRunner(executor,
+            "Database Error: A background query could not be completed");
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private DatabaseExecutor() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** A query that is run on the background thread with the given database. **/
+    public interface Query<D, T> {
+        T run(@NonNull D database);
+    }
+
+    /** Runs a query on the subject database. The database is released after the query. **/
+    @NonNull
+    public static <T> BackgroundRunner.Task<T> subjectQuery(@NonNull Context context, @NonNull LifecycleOwner owner,
+                                                            @NonNull Query<SubjectDatabase, T> query,
+                                                            BackgroundRunner.Callback<T> callback) {
+        Context appContext = context.getApplicationContext();
+        return runner.run(owner, () -> {
+            SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(appContext);
+            try {
+                return query.run(database);
+            } finally {
+                database.close();
+            }
+        }, callback, null);
+    }
+
+    /** Runs a query on the project database. The database is released after the query. **/
+    @NonNull
+    public static <T> BackgroundRunner.Task<T> projectQuery(@NonNull Context context, @NonNull LifecycleOwner owner,
+                                                            @NonNull Query<ProjectDatabase, T> query,
+                                                            BackgroundRunner.Callback<T> callback) {
+        Context appContext = context.getApplicationContext();
+        return runner.run(owner, () -> {
+            ProjectDatabase database = DatabaseFunctions.getProjectDatabase(appContext);
+            try {
+                return query.run(database);
+            } finally {
+                database.close();
+            }
+        }, callback, null);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.pcchin.studyassistant.functions.ConverterFunctions;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/** Migrates date columns that were stored as ISO-8601 strings into epoch millisecond timestamps.
+ * As SQLite is not able to change the type of a column, the table is rebuilt from its
+ * existing schema with the date columns changed to INTEGER, and its indices are re-created. **/
+public final class DateColumnMigration {
+    private DateColumnMigration() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** Rebuilds the table with the given columns stored as timestamps.
+     * Dates that could not be parsed are stored as null, or as 0 if the column is not null.
+     * The rowid of each row is kept if the table has an integer primary key. **/
+    public static void migrate(@NonNull SupportSQLiteDatabase database, @NonNull String table,
+                               @NonNull String... dateColumns) {
+        List<String> dateList = Arrays.asList(dateColumns);
+        String newTable = table + "_new";
+        List<String> columnList = new ArrayList<>();
+        boolean[] dateNotNull = new boolean[dateColumns.length];
+        String[] primaryKeys = new String[0];
+
+        // Build the new table from the existing columns
+        StringBuilder createSql = new StringBuilder("CREATE TABLE `").append(newTable).append("` (");
+        try (Cursor cursor = database.query("PRAGMA table_info(`" + table + "`)")) {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(cursor.getColumnIndex("name"));
+                String type = cursor.getString(cursor.getColumnIndex("type"));
+                boolean notNull = cursor.getInt(cursor.getColumnIndex("notnull")) != 0;
+                int primaryKeyIndex = cursor.getInt(cursor.getColumnIndex("pk"));
+                int defaultIndex = cursor.getColumnIndex("dflt_value");
+                if (dateList.contains(name)) {
+                    type = "INTEGER";
+                    dateNotNull[dateList.indexOf(name)] = notNull;
+                }
+                if (!columnList.isEmpty()) createSql.append(", ");
+                createSql.append('`').append(name).append("` ").append(type);
+                if (notNull) createSql.append(" NOT NULL");
+                if (!cursor.isNull(defaultIndex)) {
+                    createSql.append(" DEFAULT ").append(cursor.getString(defaultIndex));
+                }
+                if (primaryKeyIndex > 0) {
+                    if (primaryKeys.length < primaryKeyIndex) {
+                        primaryKeys = Arrays.copyOf(primaryKeys, primaryKeyIndex);
+                    }
+                    primaryKeys[primaryKeyIndex - 1] = "`" + name + "`";
+                }
+                columnList.add("`" + name + "`");
+            }
+        }
+        if (primaryKeys.length > 0) {
+            createSql.append(", PRIMARY KEY(").append(StringUtils.join(primaryKeys, ", ")).append(')');
+        }
+        createSql.append(')');
+
+        // The indices would be dropped together with the table
+        List<String> indexList = new ArrayList<>();
+        try (Cursor cursor = database.query("SELECT sql FROM sqlite_master WHERE type = 'index' "
+                + "AND tbl_name = ? AND sql IS NOT NULL", new Object[]{table})) {
+            while (cursor.moveToNext()) indexList.add(cursor.getString(0));
+        }
+
+        String columns = StringUtils.join(columnList, ", ");
+        database.execSQL(createSql.toString());
+        database.execSQL("INSERT INTO `" + newTable + "` (" + columns + ") SELECT "
+                + columns + " FROM `" + table + "`");
+        convertDates(database, newTable, dateColumns, dateNotNull);
+        database.execSQL("DROP TABLE `" + table + "`");
+        database.execSQL("ALTER TABLE `" + newTable + "` RENAME TO `" + table + "`");
+        for (String indexSql: indexList) database.execSQL(indexSql);
+    }
+
+    /** Converts the dates in each row of the table from strings to timestamps. **/
+    private static void convertDates(@NonNull SupportSQLiteDatabase database, String table,
+                                     @NonNull String[] dateColumns, boolean[] dateNotNull) {
+        StringBuilder updateSql = new StringBuilder("UPDATE `").append(table).append("` SET ");
+        List<String> selectList = new ArrayList<>();
+        for (int i = 0; i < dateColumns.length; i++) {
+            if (i > 0) updateSql.append(", ");
+            updateSql.append('`').append(dateColumns[i]).append("` = ?");
+            selectList.add("`" + dateColumns[i] + "`");
+        }
+        updateSql.append(" WHERE rowid = ?");
+        SupportSQLiteStatement updateStatement = database.compileStatement(updateSql.toString());
+        try (Cursor cursor = database.query("SELECT rowid, " + StringUtils.join(selectList, ", ")
+                + " FROM `" + table + "`")) {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < dateColumns.length; i++) {
+                    Long timestamp = toTimestamp(cursor, i + 1);
+                    if (timestamp == null && dateNotNull[i]) timestamp = 0L;
+                    if (timestamp == null) updateStatement.bindNull(i + 1);
+                    else updateStatement.bindLong(i + 1, timestamp);
+                }
+                updateStatement.bindLong(dateColumns.length + 1, cursor.getLong(0));
+                updateStatement.executeUpdateDelete();
+                updateStatement.clearBindings();
+            }
+        }
+    }
+
+    /** Returns the timestamp of the value in the column, or null if it is not a valid date.
+     * Values that are already stored as integers are kept as is. **/
+    private static Long toTimestamp(@NonNull Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_STRING:
+                Date date = ConverterFunctions.stringToDate(cursor.getString(column));
+                return date == null ? null : date.getTime();
+            default:
+                return null;
+        }
+    }
+}
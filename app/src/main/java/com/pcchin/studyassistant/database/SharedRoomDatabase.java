@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database;
+
+import android.os.Looper;
+
+import androidx.room.RoomDatabase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A RoomDatabase that is shared throughout the process and is reference counted.
+ * The instances are handed out by DatabaseFunctions and close() only releases the reference,
+ * so that the database and its connection pool stay open between each screen.
+ * @see com.pcchin.studyassistant.functions.DatabaseFunctions **/
+public abstract class SharedRoomDatabase extends RoomDatabase {
+    private static final AtomicInteger mainThreadQueries = new AtomicInteger(0);
+    private final AtomicInteger refCount = new AtomicInteger(0);
+    private volatile boolean isShutdown = false;
+
+    /** Adds a reference to the database. Called whenever the database is handed out. **/
+    public void acquire() {
+        refCount.incrementAndGet();
+    }
+
+    /** Releases a reference to the database instead of closing it.
+     * The reference count would never go below 0 even if close() is called twice. **/
+    @Override
+    public void close() {
+        int count;
+        do {
+            count = refCount.get();
+        } while (count > 0 && !refCount.compareAndSet(count, count - 1));
+    }
+
+    /** Counts the queries and transactions that are run on the main thread.
+     * Room calls this before every query, statement and transaction. **/
+    @Override
+    public void assertNotMainThread() {
+        if (Looper.getMainLooper().getThread() == Thread.currentThread()) {
+            mainThreadQueries.incrementAndGet();
+        }
+        super.assertNotMainThread();
+    }
+
+    /** Returns the number of queries that had been run on the main thread in this process.
+     * It is logged by MainActivity in the debug build. allowMainThreadQueries() in DatabaseFunctions
+     * can be removed once this stays at 0.
+     * @see DatabaseExecutor **/
+    public static int getMainThreadQueryCount() {
+        return mainThreadQueries.get();
+    }
+
+    /** Returns the number of references that are currently held. **/
+    public int getRefCount() {
+        return refCount.get();
+    }
+
+    /** Returns whether the database had been closed through shutdown(). **/
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    /** Actually closes the database. The database can no longer be handed out after this is called.
+     * @return whether the database is closed, which would be false if references are still held
+     * and force is false. **/
+    public synchronized boolean shutdown(boolean force) {
+        if (!force && refCount.get() > 0) return false;
+        isShutdown = true;
+        super.close();
+        return true;
+    }
+}
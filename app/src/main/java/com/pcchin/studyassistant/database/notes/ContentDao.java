@@ -13,41 +13,177 @@
 
 package com.pcchin.studyassistant.database.notes;
 
+import androidx.annotation.NonNull;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
+import java.util.Date;
 import java.util.List;
 
+/** An abstract class is used instead of an interface so that the title sort key of each note
+ * is always updated before it is stored, and so that the ordered queries can be picked
+ * based on the sort order of the subject. **/
 @Dao
-public interface ContentDao {
+public abstract class ContentDao {
+    // The order of the notes for each of the sort orders in NotesSubject.
+    // Ties are broken by the note ID, which is part of each index, so that the notes can be read
+    // in order from the indices without being sorted.
+    private static final String ORDER_TITLE_ASC = " ORDER BY titleSortKey ASC, _noteId ASC";
+    private static final String ORDER_TITLE_DES = " ORDER BY titleSortKey DESC, _noteId DESC";
+    private static final String ORDER_DATE_ASC = " ORDER BY lastEdited ASC, _noteId ASC";
+    private static final String ORDER_DATE_DES = " ORDER BY lastEdited DESC, _noteId DESC";
+    private static final String SELECT_PREVIEW = "SELECT _noteId AS noteId, subjectId, noteTitle, "
+            + "substr(noteContent, 1, :previewLength) AS preview, lastEdited, "
+            + "lockedPass != '' AS isLocked, alertDate FROM notesContent WHERE subjectId = :subjectId";
+    private static final String LIMIT_PAGE = " LIMIT :limit OFFSET :offset";
+    private static final String SELECT_ID = "SELECT _noteId FROM notesContent WHERE subjectId = :subjectId";
+    private static final String SELECT_NOTE = "SELECT * FROM notesContent WHERE subjectId = :subjectId";
+
     /** Search for a note based on its ID. **/
     @Query("SELECT * FROM notesContent WHERE _noteId = :id")
-    NotesContent search(int id);
+    public abstract NotesContent search(int id);
 
     /** Get all of the notes for a specific subject. **/
     @Query("SELECT * FROM notesContent WHERE subjectId = :subjectId")
-    List<NotesContent> searchBySubject(int subjectId);
+    public abstract List<NotesContent> searchBySubject(int subjectId);
+
+    /** Get all of the notes for a specific subject, in the order of the subject. **/
+    public List<NotesContent> searchBySubjectSorted(int subjectId, int sortOrder) {
+        switch (sortOrder) {
+            case NotesSubject.SORT_ALPHABETICAL_DES:
+                return searchBySubjectTitleDes(subjectId);
+            case NotesSubject.SORT_DATE_ASC:
+                return searchBySubjectDateAsc(subjectId);
+            case NotesSubject.SORT_DATE_DES:
+                return searchBySubjectDateDes(subjectId);
+            default:
+                return searchBySubjectTitleAsc(subjectId);
+        }
+    }
+
+    /** Get a page of the previews of the notes in a subject, in the order of the subject.
+     * Only the first previewLength characters of the content of each note is returned. **/
+    public List<NotesPreview> getPreviewPage(int subjectId, int sortOrder, int previewLength,
+                                             int limit, int offset) {
+        switch (sortOrder) {
+            case NotesSubject.SORT_ALPHABETICAL_DES:
+                return getPreviewPageTitleDes(subjectId, previewLength, limit, offset);
+            case NotesSubject.SORT_DATE_ASC:
+                return getPreviewPageDateAsc(subjectId, previewLength, limit, offset);
+            case NotesSubject.SORT_DATE_DES:
+                return getPreviewPageDateDes(subjectId, previewLength, limit, offset);
+            default:
+                return getPreviewPageTitleAsc(subjectId, previewLength, limit, offset);
+        }
+    }
+
+    /** Get the IDs of the notes in a subject, in the order of the subject. **/
+    public List<Integer> getSortedNoteIds(int subjectId, int sortOrder) {
+        switch (sortOrder) {
+            case NotesSubject.SORT_ALPHABETICAL_DES:
+                return getNoteIdsTitleDes(subjectId);
+            case NotesSubject.SORT_DATE_ASC:
+                return getNoteIdsDateAsc(subjectId);
+            case NotesSubject.SORT_DATE_DES:
+                return getNoteIdsDateDes(subjectId);
+            default:
+                return getNoteIdsTitleAsc(subjectId);
+        }
+    }
+
+    @Query(SELECT_NOTE + ORDER_TITLE_ASC)
+    protected abstract List<NotesContent> searchBySubjectTitleAsc(int subjectId);
+
+    @Query(SELECT_NOTE + ORDER_TITLE_DES)
+    protected abstract List<NotesContent> searchBySubjectTitleDes(int subjectId);
+
+    @Query(SELECT_NOTE + ORDER_DATE_ASC)
+    protected abstract List<NotesContent> searchBySubjectDateAsc(int subjectId);
+
+    @Query(SELECT_NOTE + ORDER_DATE_DES)
+    protected abstract List<NotesContent> searchBySubjectDateDes(int subjectId);
+
+    @Query(SELECT_PREVIEW + ORDER_TITLE_ASC + LIMIT_PAGE)
+    protected abstract List<NotesPreview> getPreviewPageTitleAsc(int subjectId, int previewLength,
+                                                                 int limit, int offset);
+
+    @Query(SELECT_PREVIEW + ORDER_TITLE_DES + LIMIT_PAGE)
+    protected abstract List<NotesPreview> getPreviewPageTitleDes(int subjectId, int previewLength,
+                                                                 int limit, int offset);
+
+    @Query(SELECT_PREVIEW + ORDER_DATE_ASC + LIMIT_PAGE)
+    protected abstract List<NotesPreview> getPreviewPageDateAsc(int subjectId, int previewLength,
+                                                                int limit, int offset);
+
+    @Query(SELECT_PREVIEW + ORDER_DATE_DES + LIMIT_PAGE)
+    protected abstract List<NotesPreview> getPreviewPageDateDes(int subjectId, int previewLength,
+                                                                int limit, int offset);
+
+    @Query(SELECT_ID + ORDER_TITLE_ASC)
+    protected abstract List<Integer> getNoteIdsTitleAsc(int subjectId);
+
+    @Query(SELECT_ID + ORDER_TITLE_DES)
+    protected abstract List<Integer> getNoteIdsTitleDes(int subjectId);
 
-    /** Get all of the IDs for all notes. **/
-    @Query("SELECT _noteId from notesContent")
-    List<Integer> getAllNoteId();
+    @Query(SELECT_ID + ORDER_DATE_ASC)
+    protected abstract List<Integer> getNoteIdsDateAsc(int subjectId);
+
+    @Query(SELECT_ID + ORDER_DATE_DES)
+    protected abstract List<Integer> getNoteIdsDateDes(int subjectId);
+
+    /** Get the notes in a subject that have an alert attached. **/
+    @Query("SELECT * FROM notesContent WHERE subjectId = :subjectId AND alertDate IS NOT NULL")
+    public abstract List<NotesContent> searchWithAlertBySubject(int subjectId);
+
+    /** Get the notes in a subject with an alert that is set before the given date. **/
+    @Query("SELECT * FROM notesContent WHERE subjectId = :subjectId AND alertDate < :date")
+    public abstract List<NotesContent> searchAlertBeforeBySubject(int subjectId, Date date);
+
+    /** Returns whether any note has an ID from start to end (inclusive).
+     * Used by IdAllocator so that the IDs do not need to be loaded. **/
+    @Query("SELECT EXISTS(SELECT 1 FROM notesContent WHERE _noteId BETWEEN :start AND :end)")
+    public abstract boolean hasNoteIdInRange(int start, int end);
 
     /** Deletes all of the notes which has a specific subject ID. **/
     @Query("DELETE from notesContent WHERE subjectId = :subjectId")
-    void batchDeleteBySubject(int subjectId);
+    public abstract void batchDeleteBySubject(int subjectId);
 
     /** Adds a new subject into the notes. **/
-    @Insert
-    void insert(NotesContent note);
+    public void insert(@NonNull NotesContent note) {
+        note.titleSortKey = NotesContent.getTitleSortKey(note.noteTitle);
+        insertNote(note);
+    }
+
+    /** Adds a list of notes with a single statement in one transaction.
+     * NotesImporter should be used for large imports so that they are split into batches. **/
+    @Transaction
+    public void insertAll(@NonNull List<NotesContent> notesList) {
+        for (NotesContent note: notesList) {
+            note.titleSortKey = NotesContent.getTitleSortKey(note.noteTitle);
+        }
+        insertNotes(notesList);
+    }
 
     /** Updates an existing subject. **/
-    @Update
-    void update(NotesContent note);
+    public void update(@NonNull NotesContent note) {
+        note.titleSortKey = NotesContent.getTitleSortKey(note.noteTitle);
+        updateNote(note);
+    }
 
     /** Deletes an existing subject. **/
     @Delete
-    void delete(NotesContent note);
+    public abstract void delete(NotesContent note);
+
+    @Insert
+    protected abstract void insertNote(NotesContent note);
+
+    @Insert
+    protected abstract void insertNotes(List<NotesContent> notesList);
+
+    @Update
+    protected abstract void updateNote(NotesContent note);
 }
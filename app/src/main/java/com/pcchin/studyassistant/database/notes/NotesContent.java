@@ -16,15 +16,21 @@ package com.pcchin.studyassistant.database.notes;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
+import java.text.Normalizer;
 import java.util.Date;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 /** The entity for each note. **/
 @SuppressWarnings("CanBeFinal")
-@Entity
+@Entity(indices = {@Index({"subjectId", "titleSortKey"}), @Index({"subjectId", "lastEdited"})})
 public class NotesContent {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
     /** The ID for the note, serves as an unique key.
      * Integer used instead of int as it would not be able to annotate NonNull otherwise. **/
     @PrimaryKey
@@ -39,6 +45,13 @@ public class NotesContent {
     @NonNull
     public String noteTitle;
 
+    /** The title of the note with its case and accents removed, used to sort the notes by their title.
+     * This is updated by ContentDao whenever the note is inserted or updated.
+     * @see #getTitleSortKey(String) **/
+    @NonNull
+    @ColumnInfo(defaultValue = "''")
+    public String titleSortKey;
+
     /** The content for the note. **/
     @NonNull
     public String noteContent;
@@ -69,6 +82,7 @@ public class NotesContent {
         this.noteId = 0;
         this.subjectId = 0;
         this.noteTitle = "";
+        this.titleSortKey = "";
         this.noteContent = "";
         this.lastEdited = new Date();
         this.lockedSalt = "";
@@ -81,6 +95,7 @@ public class NotesContent {
         this.noteId = noteId;
         this.subjectId = subjectId;
         this.noteTitle = noteTitle;
+        this.titleSortKey = getTitleSortKey(noteTitle);
         this.noteContent = noteContent;
         this.lastEdited = lastEdited;
         this.lockedSalt = lockedSalt;
@@ -97,6 +112,7 @@ public class NotesContent {
         this.noteId = noteId;
         this.subjectId = subjectId;
         this.noteTitle = noteTitle;
+        this.titleSortKey = getTitleSortKey(noteTitle);
         this.noteContent = noteContent;
         this.lastEdited = lastEdited;
         this.lockedSalt = lockedSalt;
@@ -104,4 +120,14 @@ public class NotesContent {
         this.alertDate = alertDate;
         this.alertCode = alertCode;
     }
+
+    /** Returns the key used to sort a note by its title.
+     * The title is decomposed and its accents and case are removed so that titles such as
+     * "école", "Ecole" and "ECOLE" are placed together, without depending on the locale of the
+     * device so that the stored keys are still valid after the locale is changed. **/
+    @NonNull
+    public static String getTitleSortKey(@NonNull String title) {
+        String decomposed = Normalizer.normalize(title, Normalizer.Form.NFKD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
 }
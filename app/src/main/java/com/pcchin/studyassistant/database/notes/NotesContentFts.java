@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database.notes;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.PrimaryKey;
+
+/** The full text search index for the title and content of each note.
+ * The table does not store the notes by itself but reads them from NotesContent,
+ * and is kept in sync through the triggers that Room creates for external content tables.
+ * The rowid of each row is the same as the ID of the note. **/
+@SuppressWarnings("CanBeFinal")
+@Fts4(contentEntity = NotesContent.class)
+@Entity
+public class NotesContentFts {
+    /** The rowid of the note, which is the same as its noteId. **/
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public int rowId;
+
+    /** The title for the note. **/
+    @NonNull
+    public String noteTitle = "";
+
+    /** The content for the note. **/
+    @NonNull
+    public String noteContent = "";
+}
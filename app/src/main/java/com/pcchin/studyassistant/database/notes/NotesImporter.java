@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database.notes;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** Inserts imported notes into the database in batches, with each batch committed in its own transaction,
+ * so that the database is not synced to the disk after every note.
+ * The notes can be added one at a time while they are being decoded, or all at once.
+ * A batch that fails would not be committed, but the batches before it would remain in the database,
+ * so the batch size should be at least the number of notes if the import needs to be atomic.
+ * This should not be used on the main thread. **/
+public class NotesImporter {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** Called after each batch is committed, on the thread that the notes are added from. **/
+    public interface ProgressListener {
+        void onProgress(int insertedCount);
+    }
+
+    private final SubjectDatabase database;
+    private final int batchSize;
+    private final ProgressListener listener;
+    private final List<NotesContent> pendingList;
+    private NotesSubject pendingSubject;
+    private int insertedCount = 0;
+
+    /** @param listener the listener for the progress of the import, or null if it is not needed. **/
+    public NotesImporter(@NonNull SubjectDatabase database, int batchSize, @Nullable ProgressListener listener) {
+        if (batchSize < 1) throw new IllegalArgumentException("The batch size must be positive");
+        this.database = database;
+        this.batchSize = batchSize;
+        this.listener = listener;
+        this.pendingList = new ArrayList<>(batchSize);
+    }
+
+    /** Imports a subject and all of its notes.
+     * @return the total number of notes inserted. **/
+    public int importSubject(@NonNull NotesSubject subject, @NonNull Collection<NotesContent> notesList) {
+        setSubject(subject);
+        addAll(notesList);
+        return finish();
+    }
+
+    /** Sets the subject to be inserted together with the first batch of notes. **/
+    public void setSubject(@NonNull NotesSubject subject) {
+        pendingSubject = subject;
+    }
+
+    /** Adds a note, and commits the pending notes if there is a full batch. **/
+    public void add(@NonNull NotesContent note) {
+        pendingList.add(note);
+        if (pendingList.size() >= batchSize) commitBatch();
+    }
+
+    /** Adds a collection of notes. **/
+    public void addAll(@NonNull Collection<NotesContent> notesList) {
+        for (NotesContent note: notesList) add(note);
+    }
+
+    /** Commits the remaining notes, and the subject if it has not been inserted.
+     * @return the total number of notes inserted. **/
+    public int finish() {
+        if (pendingSubject != null || !pendingList.isEmpty()) commitBatch();
+        return insertedCount;
+    }
+
+    /** Inserts the pending notes in a single transaction. **/
+    private void commitBatch() {
+        NotesSubject subject = pendingSubject;
+        database.runInTransaction(() -> {
+            if (subject != null) database.SubjectDao().insert(subject);
+            database.ContentDao().insertAll(pendingList);
+        });
+        pendingSubject = null;
+        insertedCount += pendingList.size();
+        pendingList.clear();
+        if (listener != null) listener.onProgress(insertedCount);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database.notes;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/** Loads the previews of the notes in a subject page by page, in the order of the subject.
+ * The key of each page is the position of its first note within the subject.
+ * load() runs queries and should be called from a background thread. **/
+public class NotesPagingSource {
+    /** The number of characters of the content that is shown in the preview. **/
+    public static final int PREVIEW_LENGTH = 300;
+    private final int subjectId;
+    private final int sortOrder;
+    private final int pageSize;
+
+    /** Constructor used as the subject, its sort order and the size of each page are needed. **/
+    public NotesPagingSource(int subjectId, int sortOrder, int pageSize) {
+        this.subjectId = subjectId;
+        this.sortOrder = sortOrder;
+        this.pageSize = pageSize;
+    }
+
+    /** Loads the page that starts at the given key. **/
+    @NonNull
+    public Page load(@NonNull SubjectDatabase database, int key) {
+        return load(database, key, pageSize);
+    }
+
+    /** Loads loadSize notes starting from the given key.
+     * Used when the first page needs to be larger, e.g. to include a specific note. **/
+    @NonNull
+    public Page load(@NonNull SubjectDatabase database, int key, int loadSize) {
+        List<NotesPreview> data = database.ContentDao().getPreviewPage(subjectId, sortOrder,
+                PREVIEW_LENGTH, loadSize, key);
+        Integer nextKey = data.size() < loadSize ? null : key + data.size();
+        return new Page(data, key, nextKey);
+    }
+
+    /** A page of previews that is returned by the paging source. **/
+    public static final class Page {
+        @NonNull
+        public final List<NotesPreview> data;
+        public final int key;
+        /** The key of the next page, or null if this is the last page. **/
+        @Nullable
+        public final Integer nextKey;
+
+        /** Constructor used as the data and keys need to be passed on. **/
+        Page(@NonNull List<NotesPreview> data, int key, @Nullable Integer nextKey) {
+            this.data = data;
+            this.key = key;
+            this.nextKey = nextKey;
+        }
+    }
+}
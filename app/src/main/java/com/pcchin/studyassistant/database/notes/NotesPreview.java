@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database.notes;
+
+import java.util.Date;
+
+/** The part of a note that is shown in the list of notes of a subject,
+ * returned from ContentDao.getPreviewPage. The full content of the note is not loaded. **/
+@SuppressWarnings("CanBeFinal")
+public class NotesPreview {
+    /** The ID of the note. **/
+    public int noteId;
+
+    /** The ID for the parent subject for the note. **/
+    public int subjectId;
+
+    /** The title for the note. **/
+    public String noteTitle;
+
+    /** The start of the content of the note. **/
+    public String preview;
+
+    /** The date where the note was last edited. **/
+    public Date lastEdited;
+
+    /** Whether the note is locked with a password. **/
+    public boolean isLocked;
+
+    /** The date where the alert of the note would be shown, null if there are no alerts. **/
+    public Date alertDate;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database.notes;
+
+import androidx.room.Ignore;
+
+/** A note that matches a full text search, returned from SearchDao. **/
+@SuppressWarnings("CanBeFinal")
+public class NotesSearchResult {
+    /** The ID of the note. **/
+    public int noteId;
+
+    /** The ID for the parent subject for the note. **/
+    public int subjectId;
+
+    /** The title for the note. **/
+    public String noteTitle;
+
+    /** The part of the note that matches the search, with the matches highlighted. **/
+    public String snippet;
+
+    /** The output of matchinfo(NotesContentFts, 'pcx'), used to rank the results. **/
+    public byte[] matchInfo;
+
+    /** The rank of the result, higher is better. Calculated after the query is run. **/
+    @Ignore
+    public double score;
+}
@@ -16,12 +16,13 @@ package com.pcchin.studyassistant.database.notes;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
 /** The entity for each Subject. **/
 @SuppressWarnings("CanBeFinal")
-@Entity
+@Entity(indices = {@Index("title")})
 public class NotesSubject {
     /** Sort notes by alphabetical order, ascending. **/
     @Ignore
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database.notes;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import java.util.List;
+
+/** Full text search over the notes through NotesContentFts.
+ * The query needs to be in the FTS MATCH syntax, DatabaseFunctions.searchNotes should be used
+ * instead for searches entered by the user as it escapes and ranks them.
+ * The start and end markers are placed around each match in the snippet. **/
+@Dao
+public interface SearchDao {
+    /** Search for notes in all subjects. **/
+    @Query("SELECT notesContent._noteId AS noteId, notesContent.subjectId AS subjectId, "
+            + "notesContent.noteTitle AS noteTitle, "
+            + "snippet(notesContentFts, :startMarker, :endMarker, '...', -1, 16) AS snippet, "
+            + "matchinfo(notesContentFts, 'pcx') AS matchInfo "
+            + "FROM notesContentFts JOIN notesContent ON notesContent._noteId = notesContentFts.rowid "
+            + "WHERE notesContentFts MATCH :query")
+    List<NotesSearchResult> search(String query, String startMarker, String endMarker);
+
+    /** Search for notes within a specific subject. **/
+    @Query("SELECT notesContent._noteId AS noteId, notesContent.subjectId AS subjectId, "
+            + "notesContent.noteTitle AS noteTitle, "
+            + "snippet(notesContentFts, :startMarker, :endMarker, '...', -1, 16) AS snippet, "
+            + "matchinfo(notesContentFts, 'pcx') AS matchInfo "
+            + "FROM notesContentFts JOIN notesContent ON notesContent._noteId = notesContentFts.rowid "
+            + "WHERE notesContentFts MATCH :query AND notesContent.subjectId = :subjectId")
+    List<NotesSearchResult> searchInSubject(String query, int subjectId, String startMarker,
+                                            String endMarker);
+
+    /** Rebuilds the whole search index from NotesContent. Only needed if the index is corrupted. **/
+    @Query("INSERT INTO notesContentFts(notesContentFts) VALUES ('rebuild')")
+    void rebuild();
+}
@@ -36,9 +36,10 @@ public interface SubjectDao {
     @Query("SELECT * FROM notesSubject ORDER BY title ASC")
     List<NotesSubject> getAll();
 
-    /** Get all of the IDs for all subjects. **/
-    @Query("SELECT _subjectId from notesSubject")
-    List<Integer> getAllSubjectId();
+    /** Returns whether any subject has an ID from start to end (inclusive).
+     * Used by IdAllocator so that the IDs do not need to be loaded. **/
+    @Query("SELECT EXISTS(SELECT 1 FROM notesSubject WHERE _subjectId BETWEEN :start AND :end)")
+    boolean hasSubjectIdInRange(int start, int end);
 
     /** Adds a new subject into the notes. **/
     @Insert
@@ -13,17 +13,80 @@
 
 package com.pcchin.studyassistant.database.notes;
 
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
-import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
 
+import com.pcchin.studyassistant.database.DateColumnMigration;
+import com.pcchin.studyassistant.database.SharedRoomDatabase;
 import com.pcchin.studyassistant.functions.ConverterFunctions;
 
 /** The notes layer for the subjects. **/
-@Database(entities = {NotesSubject.class, NotesContent.class}, version = 4)
+@Database(entities = {NotesSubject.class, NotesContent.class, NotesContentFts.class},
+        version = 8)
 @TypeConverters({ConverterFunctions.class})
-public abstract class SubjectDatabase extends RoomDatabase {
+public abstract class SubjectDatabase extends SharedRoomDatabase {
+    /** Adds the indices for the subject ID of notes and the title of subjects. **/
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_NotesContent_subjectId` "
+                    + "ON `NotesContent` (`subjectId`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_NotesSubject_title` "
+                    + "ON `NotesSubject` (`title`)");
+        }
+    };
+
+    /** Adds the full text search index for the notes and fills it with the existing notes.
+     * The triggers that keep the index in sync are created by Room after the migration. **/
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `NotesContentFts` USING FTS4("
+                    + "`noteTitle` TEXT NOT NULL, `noteContent` TEXT NOT NULL, content=`NotesContent`)");
+            database.execSQL("INSERT INTO `NotesContentFts`(`NotesContentFts`) VALUES ('rebuild')");
+        }
+    };
+
+    /** Adds the title sort key for the notes and fills it in for the existing notes,
+     * and replaces the subject ID index of the notes with the indices used for sorting. **/
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `NotesContent` ADD COLUMN `titleSortKey` TEXT NOT NULL DEFAULT ''");
+            SupportSQLiteStatement updateStatement = database.compileStatement(
+                    "UPDATE `NotesContent` SET `titleSortKey` = ? WHERE `_noteId` = ?");
+            try (Cursor cursor = database.query("SELECT `_noteId`, `noteTitle` FROM `NotesContent`")) {
+                while (cursor.moveToNext()) {
+                    updateStatement.bindString(1, NotesContent.getTitleSortKey(cursor.getString(1)));
+                    updateStatement.bindLong(2, cursor.getInt(0));
+                    updateStatement.executeUpdateDelete();
+                    updateStatement.clearBindings();
+                }
+            }
+            database.execSQL("DROP INDEX IF EXISTS `index_NotesContent_subjectId`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_NotesContent_subjectId_titleSortKey` "
+                    + "ON `NotesContent` (`subjectId`, `titleSortKey`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_NotesContent_subjectId_lastEdited` "
+                    + "ON `NotesContent` (`subjectId`, `lastEdited`)");
+        }
+    };
+
+    /** Stores the dates of the notes as timestamps instead of ISO-8601 strings. **/
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            DateColumnMigration.migrate(database, "NotesContent", "lastEdited", "alertDate");
+        }
+    };
+
     /** References the SQL requests in the interface. **/
     public abstract SubjectDao SubjectDao();
     public abstract ContentDao ContentDao();
+    public abstract SearchDao SearchDao();
 }
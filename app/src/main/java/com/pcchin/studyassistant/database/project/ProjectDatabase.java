@@ -13,10 +13,14 @@
 
 package com.pcchin.studyassistant.database.project;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
-import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
+import com.pcchin.studyassistant.database.DateColumnMigration;
+import com.pcchin.studyassistant.database.SharedRoomDatabase;
 import com.pcchin.studyassistant.functions.ConverterFunctions;
 import com.pcchin.studyassistant.database.project.dao.MemberDao;
 import com.pcchin.studyassistant.database.project.dao.ProjectDao;
@@ -41,9 +45,40 @@ import com.pcchin.studyassistant.database.project.data.TaskData;
  * 2) If only members are enabled, there should be at least 1 member in the project
  * 3) If roles and members are enabled, at least 1 member must have a role that can edit role data **/
 @Database(entities={ProjectData.class, MemberData.class, TaskData.class, RoleData.class,
-        StatusData.class}, version=7)
+        StatusData.class}, version=9)
 @TypeConverters(ConverterFunctions.class)
-public abstract class ProjectDatabase extends RoomDatabase {
+public abstract class ProjectDatabase extends SharedRoomDatabase {
+    /** Adds the composite indices used when searching within a project. **/
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_MemberData_parentProject_username` "
+                    + "ON `MemberData` (`parentProject`, `username`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_MemberData_parentProject_role` "
+                    + "ON `MemberData` (`parentProject`, `role`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_TaskData_parentProject_taskStatus` "
+                    + "ON `TaskData` (`parentProject`, `taskStatus`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_TaskData_parentProject_assignedMember` "
+                    + "ON `TaskData` (`parentProject`, `assignedMember`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_RoleData_parentProject_roleName` "
+                    + "ON `RoleData` (`parentProject`, `roleName`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_StatusData_parentProject_memberID` "
+                    + "ON `StatusData` (`parentProject`, `memberID`)");
+        }
+    };
+
+    /** Stores the dates of the projects, tasks and statuses as timestamps instead of ISO-8601 strings. **/
+    public static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            DateColumnMigration.migrate(database, "ProjectData", "expectedStartDate",
+                    "expectedEndDate", "actualStartDate", "actualEndDate");
+            DateColumnMigration.migrate(database, "TaskData", "expectedStartDate",
+                    "expectedEndDate", "actualStartDate", "actualEndDate");
+            DateColumnMigration.migrate(database, "StatusData", "publishedDate");
+        }
+    };
+
     public abstract ProjectDao ProjectDao();
     public abstract MemberDao MemberDao();
     public abstract TaskDao TaskDao();
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.database.project;
+
+import androidx.annotation.NonNull;
+
+import com.pcchin.studyassistant.functions.DatabaseFunctions;
+import com.pcchin.studyassistant.utils.misc.RandomString;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/** Generates the IDs of projects, roles and members in batches.
+ * The candidates for each type are generated together and checked with a single
+ * WHERE id IN (...) query for every 500 IDs, and the unused IDs are kept until they are taken through next().
+ * The IDs can either be random strings, or time ordered UUIDv7 strings which are inserted
+ * near the end of the index of the table instead of at random positions.
+ * Each generator should only be used by one thread at a time. **/
+public final class ProjectIdGenerator {
+    // SQLite versions before 3.32 only allow up to 999 arguments in each query
+    private static final int MAX_QUERY_ARGS = 500;
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static long lastMillis = 0;
+    private static int sequence = 0;
+
+    private final ProjectDatabase database;
+    private final RandomString rand;
+    private final EnumMap<DatabaseFunctions.PROJ_ID_TYPE, ArrayDeque<String>> poolMap =
+            new EnumMap<>(DatabaseFunctions.PROJ_ID_TYPE.class);
+
+    /** Creates a generator of random IDs from the given RandomString. **/
+    public ProjectIdGenerator(@NonNull ProjectDatabase database, @NonNull RandomString rand) {
+        this.database = database;
+        this.rand = rand;
+    }
+
+    /** Constructor used by timeOrdered(). **/
+    private ProjectIdGenerator(@NonNull ProjectDatabase database) {
+        this.database = database;
+        this.rand = null;
+    }
+
+    /** Creates a generator of time ordered UUIDv7 IDs. **/
+    @NonNull
+    public static ProjectIdGenerator timeOrdered(@NonNull ProjectDatabase database) {
+        return new ProjectIdGenerator(database);
+    }
+
+    /** Makes sure that there are at least the given number of unused IDs of the type,
+     * so that they are checked with one query instead of one query for each ID. **/
+    public void reserve(@NonNull DatabaseFunctions.PROJ_ID_TYPE type, int count) {
+        ArrayDeque<String> pool = getPool(type);
+        while (pool.size() < count) {
+            // A linked set is used so that the same candidate would not be added twice
+            // while the time ordered IDs are kept in ascending order
+            Set<String> candidateSet = new LinkedHashSet<>();
+            while (candidateSet.size() < count - pool.size()) candidateSet.add(nextCandidate());
+            for (String id: pool) candidateSet.remove(id);
+            List<String> candidateList = new ArrayList<>(candidateSet);
+            for (int i = 0; i < candidateList.size(); i += MAX_QUERY_ARGS) {
+                candidateSet.removeAll(searchExistingIds(type, candidateList.subList(i,
+                        Math.min(i + MAX_QUERY_ARGS, candidateList.size()))));
+            }
+            pool.addAll(candidateSet);
+        }
+    }
+
+    /** Returns an unused ID of the type. **/
+    @NonNull
+    public String next(@NonNull DatabaseFunctions.PROJ_ID_TYPE type) {
+        reserve(type, 1);
+        return getPool(type).poll();
+    }
+
+    /** Returns the pool of unused IDs of the type. **/
+    @NonNull
+    private ArrayDeque<String> getPool(@NonNull DatabaseFunctions.PROJ_ID_TYPE type) {
+        ArrayDeque<String> pool = poolMap.get(type);
+        if (pool == null) {
+            pool = new ArrayDeque<>();
+            poolMap.put(type, pool);
+        }
+        return pool;
+    }
+
+    /** Returns the IDs in the list that are already used in the table of the type. **/
+    @NonNull
+    private List<String> searchExistingIds(@NonNull DatabaseFunctions.PROJ_ID_TYPE type,
+                                           @NonNull List<String> idList) {
+        switch (type) {
+            case PROJECT:
+                return database.ProjectDao().searchExistingIds(idList);
+            case ROLE:
+                return database.RoleDao().searchExistingIds(idList);
+            default:
+                return database.MemberDao().searchExistingIds(idList);
+        }
+    }
+
+    /** Returns a candidate ID which has not been checked against the database. **/
+    @NonNull
+    private String nextCandidate() {
+        return rand == null ? nextTimeOrderedId() : rand.nextString();
+    }
+
+    /** Returns a UUIDv7 string, which starts with the current time in milliseconds
+     * followed by a counter for the IDs generated within the same millisecond,
+     * so that the IDs generated within the process are always in ascending order. **/
+    @NonNull
+    public static synchronized String nextTimeOrderedId() {
+        long millis = System.currentTimeMillis();
+        if (millis > lastMillis) {
+            lastMillis = millis;
+            sequence = 0;
+        } else if (++sequence > 0xFFF) {
+            // The counter has run out, so the time is moved forward instead
+            lastMillis++;
+            sequence = 0;
+        }
+        long mostSigBits = (lastMillis << 16) | 0x7000L | sequence;
+        long leastSigBits = (secureRandom.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+}
@@ -29,6 +29,10 @@ public interface MemberDao {
     @Query("SELECT * FROM memberData WHERE _memberID = :ID")
     MemberData searchByID(String ID);
 
+    /** Returns the IDs in the list that are already used by a member. **/
+    @Query("SELECT _memberID FROM memberData WHERE _memberID IN (:idList)")
+    List<String> searchExistingIds(List<String> idList);
+
     /** Search for members in all project based on their roles. **/
     @Query("SELECT * FROM memberData WHERE role = :roleID")
     List<MemberData> searchByRole(String roleID);
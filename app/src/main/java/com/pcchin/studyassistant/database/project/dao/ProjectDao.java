@@ -29,6 +29,10 @@ public interface ProjectDao {
     @Query("SELECT * FROM projectData WHERE _projectID = :id")
     ProjectData searchByID(String id);
 
+    /** Returns the IDs in the list that are already used by a project. **/
+    @Query("SELECT _projectID FROM projectData WHERE _projectID IN (:idList)")
+    List<String> searchExistingIds(List<String> idList);
+
     /** Search for projects based on its title. Multiple projects can have the same title. **/
     @Query("SELECT * FROM projectData WHERE projectTitle = :title")
     List<ProjectData> searchByTitle(String title);
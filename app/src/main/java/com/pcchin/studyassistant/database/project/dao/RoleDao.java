@@ -29,6 +29,10 @@ public interface RoleDao {
     @Query("SELECT * FROM roledata WHERE _roleID = :ID")
     RoleData searchByID(String ID);
 
+    /** Returns the IDs in the list that are already used by a role. **/
+    @Query("SELECT _roleID FROM roleData WHERE _roleID IN (:idList)")
+    List<String> searchExistingIds(List<String> idList);
+
     /** Search for roles based on their name. **/
     @Query("SELECT * FROM roleData WHERE roleName = :name")
     List<RoleData> searchByName(String name);
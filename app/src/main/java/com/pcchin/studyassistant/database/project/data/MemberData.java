@@ -16,11 +16,12 @@ package com.pcchin.studyassistant.database.project.data;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
 /** The entity for each member. **/
-@Entity
+@Entity(indices = {@Index({"parentProject", "username"}), @Index({"parentProject", "role"})})
 public class MemberData {
     /** The ID for each user, serves as a unique key and is randomly generated **/
     @PrimaryKey
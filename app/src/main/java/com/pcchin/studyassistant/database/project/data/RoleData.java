@@ -16,11 +16,12 @@ package com.pcchin.studyassistant.database.project.data;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
 /** The entity for each role of users in a project. **/
-@Entity
+@Entity(indices = {@Index({"parentProject", "roleName"})})
 public class RoleData {
     /** Reserved roles for each project. None is reserved as
      * it is possible for a task to be assigned to no one. **/
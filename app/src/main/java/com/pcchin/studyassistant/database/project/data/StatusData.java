@@ -16,12 +16,13 @@ package com.pcchin.studyassistant.database.project.data;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import java.util.Date;
 
 /** The entity for each status. **/
-@Entity
+@Entity(indices = {@Index({"parentProject", "memberID"})})
 public class StatusData {
     /** The ID for each status, serves as a unique key and is randomly generated. **/
     @PrimaryKey
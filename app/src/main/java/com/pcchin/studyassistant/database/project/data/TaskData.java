@@ -16,13 +16,15 @@ package com.pcchin.studyassistant.database.project.data;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
 import java.util.Date;
 
 /** The entity for each task in the project. **/
-@Entity
+@Entity(indices = {@Index({"parentProject", "taskStatus"}),
+        @Index({"parentProject", "assignedMember"})})
 public class TaskData {
     // Status of each task.
     @Ignore
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.file.notes;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.pcchin.studyassistant.database.notes.NotesContent;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/** The metadata of the notes in a ZIP file, which is read from its .subj file before the txt files
+ * are turned into notes. Each column is stored in its own array instead of one map per column
+ * or one object per note, so the dates and alert codes are not boxed and each row is found once.
+ * The rows are looked up by the path of their txt file through an open addressing index.
+ * This class is not thread safe. **/
+public final class NoteMetadataTable {
+    // Used to store null dates as the dates are stored as longs
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private String[] paths, titles, salts, lockedPasses;
+    private long[] lastEditedList, alertDateList;
+    private int[] alertCodeList;
+    private boolean[] hasAlertCodeList;
+    // The row of each path plus 1, as 0 marks an empty slot
+    private int[] index;
+    private int size = 0;
+
+    /** Creates a table that can hold the expected number of notes without growing. **/
+    public NoteMetadataTable(int expectedSize) {
+        int capacity = Math.max(8, expectedSize);
+        paths = new String[capacity];
+        titles = new String[capacity];
+        salts = new String[capacity];
+        lockedPasses = new String[capacity];
+        lastEditedList = new long[capacity];
+        alertDateList = new long[capacity];
+        alertCodeList = new int[capacity];
+        hasAlertCodeList = new boolean[capacity];
+        index = new int[indexSize(capacity)];
+    }
+
+    /** Adds the metadata of a note. The existing row is replaced if the path is already in the table.
+     * @return the row of the note. **/
+    public int put(@NonNull String path, @NonNull String title, @NonNull Date lastEdited, @NonNull String salt,
+                   @NonNull String lockedPass, @Nullable Date alertDate, @Nullable Integer alertCode) {
+        int row = find(path);
+        if (row < 0) {
+            if (size == paths.length) grow();
+            row = size++;
+            paths[row] = path;
+            addToIndex(row);
+        }
+        titles[row] = title;
+        salts[row] = salt;
+        lockedPasses[row] = lockedPass;
+        lastEditedList[row] = lastEdited.getTime();
+        alertDateList[row] = alertDate == null ? NULL_DATE : alertDate.getTime();
+        hasAlertCodeList[row] = alertCode != null;
+        alertCodeList[row] = alertCode == null ? 0 : alertCode;
+        return row;
+    }
+
+    /** Returns the row of the note with the given path, or -1 if it is not in the table. **/
+    public int find(@NonNull String path) {
+        int mask = index.length - 1;
+        int slot = slotOf(path, mask);
+        while (index[slot] != 0) {
+            if (paths[index[slot] - 1].equals(path)) return index[slot] - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Returns the number of notes in the table. **/
+    public int size() {
+        return size;
+    }
+
+    /** Creates a note from the given row. **/
+    @NonNull
+    public NotesContent toNote(int row, int noteId, int subjectId, String content) {
+        return new NotesContent(noteId, subjectId, titles[row], content, new Date(lastEditedList[row]),
+                salts[row], lockedPasses[row],
+                alertDateList[row] == NULL_DATE ? null : new Date(alertDateList[row]),
+                hasAlertCodeList[row] ? alertCodeList[row] : null);
+    }
+
+    /** Returns the first slot in the index to check for the path. **/
+    private static int slotOf(@NonNull String path, int mask) {
+        int hash = path.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /** Returns the size of the index for the capacity, which is a power of 2 that is at least
+     * twice the capacity so that the index is never more than half full. **/
+    private static int indexSize(int capacity) {
+        return Integer.highestOneBit(capacity) << 2;
+    }
+
+    /** Adds the row to the index. **/
+    private void addToIndex(int row) {
+        int mask = index.length - 1;
+        int slot = slotOf(paths[row], mask);
+        while (index[slot] != 0) slot = (slot + 1) & mask;
+        index[slot] = row + 1;
+    }
+
+    /** Doubles the size of every column and rebuilds the index. **/
+    private void grow() {
+        int capacity = paths.length * 2;
+        paths = Arrays.copyOf(paths, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        salts = Arrays.copyOf(salts, capacity);
+        lockedPasses = Arrays.copyOf(lockedPasses, capacity);
+        lastEditedList = Arrays.copyOf(lastEditedList, capacity);
+        alertDateList = Arrays.copyOf(alertDateList, capacity);
+        alertCodeList = Arrays.copyOf(alertCodeList, capacity);
+        hasAlertCodeList = Arrays.copyOf(hasAlertCodeList, capacity);
+        index = new int[indexSize(capacity)];
+        for (int row = 0; row < size; row++) addToIndex(row);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.file.notes;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import com.pcchin.studyassistant.activity.ActivityConstants;
+import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.functions.ConverterFunctions;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+
+/** Streams the notes of a subject to and from the JSON format used in .subject files.
+ * The notes are stored as a JSON array with an array of 7 strings for each note, in the order of
+ * title, contents, last edited, lockedSalt, lockedPass, alertDate and alertCode.
+ * The dates are in the ISO format, and alertDate and alertCode are "NULL" if they are not set.
+ * The notes are written and read one at a time, so the whole payload is never held in memory. **/
+public final class NotesJsonCodec {
+    private static final String NULL_VALUE = "NULL";
+    private static final int BUFFER_SIZE = 8192;
+
+    private NotesJsonCodec() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** Called for each note that is read. **/
+    public interface NoteListener {
+        void onNote(@NonNull NotesContent note);
+    }
+
+    /** Writes the notes to the stream as UTF-8. The stream is flushed but not closed. **/
+    public static void writeNotes(@NonNull Iterable<NotesContent> notes, @NonNull OutputStream output)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writeNotes(notes, writer);
+    }
+
+    /** Writes the notes to the writer. The writer is flushed but not closed. **/
+    public static void writeNotes(@NonNull Iterable<NotesContent> notes, @NonNull Writer output)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(output);
+        writer.beginArray();
+        for (NotesContent note: notes) {
+            writeNoteValues(writer, note);
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
+    /** Writes a single note as an array of 7 strings. The writer is flushed but not closed. **/
+    public static void writeNote(@NonNull NotesContent note, @NonNull Writer output) throws IOException {
+        JsonWriter writer = new JsonWriter(output);
+        writeNoteValues(writer, note);
+        writer.flush();
+    }
+
+    /** Reads a single note written by writeNote. The ID of the note is not set.
+     * @return null if the note is not in the correct format or any of its values are invalid. **/
+    @Nullable
+    public static NotesContent readNote(@NonNull Reader input, int subjectId) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        String[] values = new String[7];
+        try {
+            int count = readNoteValues(reader, values);
+            if (reader.peek() != JsonToken.END_DOCUMENT || count < values.length) return null;
+            return toNote(values, subjectId);
+        } catch (MalformedJsonException | EOFException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /** Writes the values of a note in the order given in the description of the class. **/
+    private static void writeNoteValues(@NonNull JsonWriter writer, @NonNull NotesContent note) throws IOException {
+        writer.beginArray();
+        writer.value(note.noteTitle);
+        writer.value(note.noteContent);
+        writer.value(ConverterFunctions.formatTime(note.lastEdited, ConverterFunctions.TimeFormat.ISO));
+        writer.value(note.lockedSalt);
+        writer.value(note.lockedPass);
+        writer.value(note.alertDate == null ? NULL_VALUE : ConverterFunctions
+                .formatTime(note.alertDate, ConverterFunctions.TimeFormat.ISO));
+        writer.value(note.alertCode == null ? NULL_VALUE : String.valueOf(note.alertCode));
+        writer.endArray();
+    }
+
+    /** Reads the notes from a UTF-8 stream. The stream is not closed.
+     * @see #readNotes(Reader, IdAllocator, int, NoteListener) **/
+    public static boolean readNotes(@NonNull InputStream input, @NonNull IdAllocator idAllocator,
+                                    int subjectId, @NonNull NoteListener listener) throws IOException {
+        return readNotes(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), BUFFER_SIZE),
+                idAllocator, subjectId, listener);
+    }
+
+    /** Reads the notes and passes each of them to the listener as soon as it is read.
+     * The structure of the JSON is validated while it is read, so it is only read once.
+     * Notes with invalid values are skipped, while any error in the structure stops the reading.
+     * Each note is given a new ID from the allocator.
+     * @return false if the JSON is not in the correct structure, the notes that have been passed
+     * to the listener before the error should then be discarded.
+     * @throws IOException if the reader could not be read. **/
+    public static boolean readNotes(@NonNull Reader input, @NonNull IdAllocator idAllocator,
+                                    int subjectId, @NonNull NoteListener listener) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        String[] values = new String[7];
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                int count = readNoteValues(reader, values);
+                NotesContent note = count < values.length ? null : toNote(values, subjectId);
+                if (note == null) {
+                    Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Unable to parse " +
+                            "notes of the imported file. The file may be corrupted.");
+                    continue;
+                }
+                note.noteId = idAllocator.nextId();
+                listener.onNote(note);
+            }
+            reader.endArray();
+            return reader.peek() == JsonToken.END_DOCUMENT;
+        } catch (MalformedJsonException | EOFException | IllegalStateException e) {
+            Log.w(ActivityConstants.LOG_APP_NAME, "File Error: The notes of the imported file "
+                    + "are not in the correct format. The file may be corrupted.");
+            return false;
+        }
+    }
+
+    /** Reads the notes into a list.
+     * @return null if the JSON is not in the correct structure. **/
+    @Nullable
+    public static ArrayList<NotesContent> readNotesList(@NonNull Reader input, @NonNull IdAllocator idAllocator,
+                                                        int subjectId) throws IOException {
+        ArrayList<NotesContent> notesList = new ArrayList<>();
+        return readNotes(input, idAllocator, subjectId, notesList::add) ? notesList : null;
+    }
+
+    /** Reads the values of a note into the array, ignoring any extra values.
+     * @return the number of values that are read. **/
+    private static int readNoteValues(@NonNull JsonReader reader, @NonNull String[] values) throws IOException {
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (count >= values.length) {
+                reader.skipValue();
+            } else if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                values[count++] = null;
+            } else {
+                values[count++] = reader.nextString();
+            }
+        }
+        reader.endArray();
+        return count;
+    }
+
+    /** Converts the values of a note to a NotesContent, or returns null if any of them are invalid. **/
+    @Nullable
+    private static NotesContent toNote(@NonNull String[] values, int subjectId) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) return null;
+        }
+        try {
+            Date lastEdited = ConverterFunctions.parseTime(values[2], ConverterFunctions.TimeFormat.ISO);
+            Date alertDate = NULL_VALUE.equals(values[5]) ? null
+                    : ConverterFunctions.parseTime(values[5], ConverterFunctions.TimeFormat.ISO);
+            Integer alertCode = NULL_VALUE.equals(values[6]) ? null : Integer.parseInt(values[6]);
+            if (lastEdited == null) return null;
+            return new NotesContent(0, subjectId, values[0], values[1], lastEdited, values[3],
+                    values[4], alertDate, alertCode);
+        } catch (ParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+}
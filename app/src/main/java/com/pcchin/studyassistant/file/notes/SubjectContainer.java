@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.file.notes;
+
+import androidx.annotation.NonNull;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** The constants of the v2 .subject format, which is read by SubjectContainerReader
+ * and written by SubjectContainerWriter. The v2 format is made up of
+ * - a header with the magic bytes, the format version, the flags of the file, the title and
+ * sort order of the subject, the salt, key derivation parameters and password verifier if the file
+ * is encrypted, the number of notes and the offset of the index,
+ * - a record for each note, which contains the length of the record, its flags and the note in JSON,
+ * which may be compressed and/or encrypted,
+ * - the index, which contains the offset and title of each record.
+ * All the records of an encrypted file are encrypted, and the titles of the notes are left blank
+ * in its index. The password verifier is encrypted with the hash of the rest of the header before it
+ * as associated data, and holds the number of notes, the offset of the index and the hash of the index.
+ * Each record is encrypted with the hash of the header, its position in the index and its flags
+ * as associated data, so records cannot be moved, duplicated or dropped without being detected.
+ * All numbers are stored in big-endian.
+ * Unlike v1 files, the file as a whole is not compressed so that each note can be read separately.
+ * v1 files always start with the zlib header, which does not match the magic bytes. **/
+public final class SubjectContainer {
+    static final byte[] MAGIC = {'S', 'U', 'B', 'J'};
+    static final int VERSION = 2;
+    static final byte FILE_ENCRYPTED = 1;
+    static final byte RECORD_COMPRESSED = 1;
+    static final byte RECORD_ENCRYPTED = 2;
+    static final int SALT_SIZE = 32;
+    static final int HASH_SIZE = 32;
+    /** The size of the password verifier before it is encrypted, which is the number of notes,
+     * the offset of the index and the hash of the index. **/
+    static final int VERIFIER_SIZE = 4 + 8 + HASH_SIZE;
+    /** The size of the length and flags in front of each record. **/
+    static final int RECORD_HEADER_SIZE = 5;
+    /** The minimum size of each entry in the index, which is the offset and length of the title. **/
+    static final int INDEX_ENTRY_SIZE = 12;
+    /** Records smaller than this are not compressed. **/
+    static final int COMPRESS_THRESHOLD = 128;
+
+    private SubjectContainer() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** Returns the SHA-256 hash of the bytes. **/
+    @NonNull
+    static byte[] hash(@NonNull byte[] bytes, int offset, int length) {
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(bytes, offset, length);
+        byte[] result = new byte[HASH_SIZE];
+        digest.doFinal(result, 0);
+        return result;
+    }
+
+    /** Returns the associated data of an encrypted record,
+     * which is the hash of the header, the position of the record in the index and its flags. **/
+    @NonNull
+    static byte[] recordAssociatedData(@NonNull byte[] headerHash, int index, byte flags) {
+        return ByteBuffer.allocate(HASH_SIZE + 5).put(headerHash).putInt(index).put(flags).array();
+    }
+
+    /** Checks whether the file is a v2 .subject file through its magic bytes. **/
+    public static boolean isContainer(@NonNull File file) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            int read = 0;
+            while (read < header.length) {
+                int count = inputStream.read(header, read, header.length - read);
+                if (count < 0) return false;
+                read += count;
+            }
+        }
+        return Arrays.equals(header, MAGIC);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.file.notes;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.pcchin.studyassistant.activity.ActivityConstants;
+import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.file.StreamUtils;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
+import com.pcchin.studyassistant.utils.security.ChunkedCipher;
+import com.pcchin.studyassistant.utils.security.ChunkedCipherInputStream;
+import com.pcchin.studyassistant.utils.security.KdfParams;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/** Reads a v2 .subject file. Only the header and the index are read when the reader is created,
+ * the notes are then read separately so that any of them can be read without reading the rest.
+ * @see SubjectContainer for the format of the file. **/
+public class SubjectContainerReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private final RandomAccessFile file;
+    private final Inflater inflater = new Inflater();
+    private final String title;
+    private final int sortOrder;
+    private final byte[] salt;
+    private final KdfParams kdfParams;
+    private final byte[] verifier;
+    private final byte[] headerHash;
+    private final byte[] indexHash;
+    private final long indexOffset;
+    private final long[] offsetList;
+    private final String[] titleList;
+    private byte[] key;
+
+    /** Opens the file and reads its header and index.
+     * @throws IOException if the file cannot be read or is not a valid v2 .subject file. **/
+    public SubjectContainerReader(@NonNull File targetFile) throws IOException {
+        file = new RandomAccessFile(targetFile, "r");
+        try {
+            long fileLength = file.length();
+            byte[] magic = new byte[SubjectContainer.MAGIC.length];
+            file.readFully(magic);
+            if (!Arrays.equals(magic, SubjectContainer.MAGIC)) {
+                throw new IOException("The file is not a v2 .subject file");
+            }
+            int version = file.readInt();
+            if (version != SubjectContainer.VERSION) {
+                throw new IOException("The .subject file version " + version + " is not supported");
+            }
+            byte fileFlags = file.readByte();
+            title = readString(fileLength);
+            sortOrder = file.readInt();
+            if ((fileFlags & SubjectContainer.FILE_ENCRYPTED) != 0) {
+                salt = new byte[SubjectContainer.SALT_SIZE];
+                file.readFully(salt);
+                kdfParams = KdfParams.parse(readString(fileLength));
+                if (kdfParams == null) throw new IOException("The key derivation of the .subject file is not supported");
+                // The header up to this point is read again to take its hash
+                byte[] header = new byte[(int) file.getFilePointer()];
+                file.seek(0);
+                file.readFully(header);
+                headerHash = SubjectContainer.hash(header, 0, header.length);
+                verifier = readBytes(fileLength);
+            } else {
+                salt = null;
+                kdfParams = null;
+                headerHash = null;
+                verifier = null;
+            }
+            int noteCount = file.readInt();
+            indexOffset = file.readLong();
+            long recordStart = file.getFilePointer();
+            if (indexOffset < recordStart || indexOffset > fileLength || noteCount < 0
+                    || noteCount > (fileLength - indexOffset) / SubjectContainer.INDEX_ENTRY_SIZE) {
+                throw new IOException("The index of the .subject file is invalid");
+            }
+
+            // The index is at the end of the file and is read at once
+            if (fileLength - indexOffset > Integer.MAX_VALUE) {
+                throw new IOException("The index of the .subject file is too large");
+            }
+            byte[] indexBytes = new byte[(int) (fileLength - indexOffset)];
+            file.seek(indexOffset);
+            file.readFully(indexBytes);
+            indexHash = salt == null ? null : SubjectContainer.hash(indexBytes, 0, indexBytes.length);
+            ByteBuffer index = ByteBuffer.wrap(indexBytes);
+            offsetList = new long[noteCount];
+            titleList = new String[noteCount];
+            for (int i = 0; i < noteCount; i++) {
+                if (index.remaining() < SubjectContainer.INDEX_ENTRY_SIZE) {
+                    throw new IOException("The index of the .subject file is truncated");
+                }
+                offsetList[i] = index.getLong();
+                int titleLength = index.getInt();
+                if (offsetList[i] < recordStart
+                        || offsetList[i] > indexOffset - SubjectContainer.RECORD_HEADER_SIZE
+                        || titleLength < 0 || titleLength > index.remaining()) {
+                    throw new IOException("The index entry of note " + i + " in the .subject file is invalid");
+                }
+                titleList[i] = new String(indexBytes, index.position(), titleLength, StandardCharsets.UTF_8);
+                index.position(index.position() + titleLength);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /** Returns the title of the subject. **/
+    @NonNull
+    public String getTitle() {
+        return title;
+    }
+
+    /** Returns the sort order of the subject. **/
+    public int getSortOrder() {
+        return sortOrder;
+    }
+
+    /** Returns whether the notes are encrypted, setPassword needs to be called before reading them if so. **/
+    public boolean isEncrypted() {
+        return salt != null;
+    }
+
+    /** Returns the number of notes in the file. **/
+    public int getNoteCount() {
+        return offsetList.length;
+    }
+
+    /** Returns the title of a note from the index, which would be blank if the file is encrypted. **/
+    @NonNull
+    public String getNoteTitle(int index) {
+        return titleList[index];
+    }
+
+    /** Sets the password used to decrypt the notes. The key is derived with the parameters
+     * stored in the file, so this should not be called on the main thread.
+     * The password is checked against the password verifier of the file,
+     * which also checks the header, the number of notes and the index.
+     * @return false if the password is incorrect or if the header or the index has been modified,
+     * in which case the key is not set. **/
+    public boolean setPassword(@NonNull String password) throws IOException {
+        if (salt == null) return true;
+        byte[] newKey = SecurityFunctions.subjectKey(password, salt, kdfParams);
+        byte[] decrypted = new byte[SubjectContainer.VERIFIER_SIZE];
+        try (InputStream verifierStream = new ChunkedCipherInputStream(new ByteArrayInputStream(verifier),
+                newKey, headerHash)) {
+            StreamUtils.readFully(verifierStream, decrypted, 0, decrypted.length);
+            if (verifierStream.read() >= 0) return false;
+        } catch (EOFException | ChunkedCipher.AuthenticationException e) {
+            return false;
+        }
+        ByteBuffer verifierBuffer = ByteBuffer.wrap(decrypted);
+        if (verifierBuffer.getInt() != offsetList.length || verifierBuffer.getLong() != indexOffset
+                || !Arrays.equals(Arrays.copyOfRange(decrypted, verifierBuffer.position(), decrypted.length), indexHash)) {
+            return false;
+        }
+        key = newKey;
+        return true;
+    }
+
+    /** Reads a single note, which is streamed from the file. The ID of the note is not set.
+     * @return null if the note is invalid, or if it could not be decrypted or authenticated.
+     * @throws IllegalStateException if the file is encrypted and the password has not been set. **/
+    @Nullable
+    public NotesContent readNote(int index, int subjectId) throws IOException {
+        if (isEncrypted() && key == null) {
+            throw new IllegalStateException("The password needs to be set before the notes are read");
+        }
+        file.seek(offsetList[index]);
+        int length = file.readInt();
+        byte flags = file.readByte();
+        if (length < 0 || length > file.length() - file.getFilePointer()) return null;
+        // Unencrypted records are not accepted in an encrypted file as they would not be authenticated
+        boolean isRecordEncrypted = (flags & SubjectContainer.RECORD_ENCRYPTED) != 0;
+        if (isRecordEncrypted != isEncrypted()) return null;
+
+        InputStream recordStream = new BufferedInputStream(new RecordInputStream(file, length), BUFFER_SIZE);
+        if (isRecordEncrypted) {
+            recordStream = new ChunkedCipherInputStream(recordStream, key,
+                    SubjectContainer.recordAssociatedData(headerHash, index, flags));
+        }
+        if ((flags & SubjectContainer.RECORD_COMPRESSED) != 0) {
+            inflater.reset();
+            recordStream = new InflaterInputStream(recordStream, inflater, BUFFER_SIZE);
+        }
+        try {
+            return NotesJsonCodec.readNote(new InputStreamReader(recordStream, StandardCharsets.UTF_8), subjectId);
+        } catch (ZipException | ChunkedCipher.AuthenticationException e) {
+            return null;
+        }
+    }
+
+    /** Reads the notes with the given indices, or all the notes if indexList is null.
+     * Each note is given a new ID from a single block reserved from the allocator.
+     * Notes that are invalid or could not be authenticated are skipped,
+     * as the rest of the records are read and authenticated separately.
+     * @return the number of notes that are skipped. **/
+    public int readNotes(@Nullable int[] indexList, @NonNull IdAllocator idAllocator,
+                         int subjectId, @NonNull NotesJsonCodec.NoteListener listener) throws IOException {
+        int count = indexList == null ? offsetList.length : indexList.length;
+        if (count > 0) idAllocator.reserve(count);
+        int skippedCount = 0;
+        for (int i = 0; i < count; i++) {
+            int index = indexList == null ? i : indexList[i];
+            NotesContent note = readNote(index, subjectId);
+            if (note == null) {
+                Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Note " + index
+                        + " of the .subject file could not be read. The file may be corrupted.");
+                skippedCount++;
+                continue;
+            }
+            note.noteId = idAllocator.nextId();
+            listener.onNote(note);
+        }
+        return skippedCount;
+    }
+
+    /** Reads a UTF-8 string that is prefixed by its length. **/
+    @NonNull
+    private String readString(long fileLength) throws IOException {
+        return new String(readBytes(fileLength), StandardCharsets.UTF_8);
+    }
+
+    /** Reads an array of bytes that is prefixed by its length. **/
+    @NonNull
+    private byte[] readBytes(long fileLength) throws IOException {
+        int length = file.readInt();
+        if (length < 0 || length > fileLength - file.getFilePointer()) {
+            throw new IOException("The length of a field in the .subject file is invalid");
+        }
+        byte[] bytes = new byte[length];
+        file.readFully(bytes);
+        return bytes;
+    }
+
+    /** Closes the file. **/
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+
+    /** Reads a single record from the file without reading past its end. **/
+    private static class RecordInputStream extends InputStream {
+        private final RandomAccessFile file;
+        private long remaining;
+
+        /** Constructor used as the file and the length of the record need to be passed on.
+         * The file needs to be at the start of the record. **/
+        RecordInputStream(@NonNull RandomAccessFile file, long length) {
+            this.file = file;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = file.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int count = file.read(b, off, (int) Math.min(len, remaining));
+            if (count > 0) remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.file.notes;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.database.notes.NotesSubject;
+import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.security.ChunkedCipherOutputStream;
+import com.pcchin.studyassistant.utils.security.KdfParams;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/** Writes a subject as a v2 .subject file, one note at a time.
+ * Each note is streamed through the compressor and the cipher into the file,
+ * so only a single chunk of a note is held in memory at once.
+ * The lengths of the records, the number of notes and the index are only written in finish(),
+ * a file that is closed without calling finish() would not be accepted by SubjectContainerReader.
+ * @see SubjectContainer for the format of the file. **/
+public class SubjectContainerWriter implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private final FileOutputStream fileStream;
+    private final CountingOutputStream countingStream;
+    private final DataOutputStream output;
+    private final Deflater deflater = new Deflater();
+    private final ArrayList<Long> offsetList = new ArrayList<>();
+    private final ArrayList<Long> lengthList = new ArrayList<>();
+    private final ArrayList<String> titleList = new ArrayList<>();
+    private final byte[] key;
+    private final byte[] headerHash;
+    private final boolean compress;
+    private final long verifierPosition;
+    private final long countPosition;
+    private boolean isFinished;
+
+    /** Creates the file and writes its header. The key is derived from the password here,
+     * so the writer should not be created on the main thread if the password is set.
+     * @param password the password used to encrypt the notes, or null if the notes are not encrypted.
+     * @param compress whether the notes would be compressed if they are large enough. **/
+    public SubjectContainerWriter(@NonNull File file, @NonNull NotesSubject subject,
+                                  @Nullable String password, boolean compress) throws IOException {
+        this.compress = compress;
+        byte[] salt = null;
+        if (password == null) {
+            key = null;
+        } else {
+            salt = new byte[SubjectContainer.SALT_SIZE];
+            new SecureRandom().nextBytes(salt);
+            key = SecurityFunctions.subjectKey(password, salt, KdfParams.DEFAULT);
+        }
+
+        fileStream = new FileOutputStream(file);
+        countingStream = new CountingOutputStream(new BufferedOutputStream(fileStream, BUFFER_SIZE));
+        output = new DataOutputStream(countingStream);
+        // The header is written to memory first so that its hash can be taken
+        ByteArrayOutputStream headerStream = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerStream);
+        byte[] title = subject.title.getBytes(StandardCharsets.UTF_8);
+        header.write(SubjectContainer.MAGIC);
+        header.writeInt(SubjectContainer.VERSION);
+        header.writeByte(key == null ? 0 : SubjectContainer.FILE_ENCRYPTED);
+        header.writeInt(title.length);
+        header.write(title);
+        header.writeInt(subject.sortOrder);
+        if (salt != null) {
+            byte[] params = KdfParams.DEFAULT.toString().getBytes(StandardCharsets.UTF_8);
+            header.write(salt);
+            header.writeInt(params.length);
+            header.write(params);
+        }
+        byte[] headerBytes = headerStream.toByteArray();
+        output.write(headerBytes);
+        if (key == null) {
+            headerHash = null;
+            verifierPosition = -1;
+        } else {
+            headerHash = SubjectContainer.hash(headerBytes, 0, headerBytes.length);
+            // The verifier is filled in by finish() as it covers the index, its length stays the same
+            byte[] verifier = encryptVerifier(new byte[SubjectContainer.VERIFIER_SIZE]);
+            output.writeInt(verifier.length);
+            verifierPosition = countingStream.count;
+            output.write(verifier);
+        }
+        countPosition = countingStream.count;
+        // The number of notes and the offset of the index are filled in by finish()
+        output.writeInt(0);
+        output.writeLong(0);
+    }
+
+    /** Writes a note to the file as a record. **/
+    public void writeNote(@NonNull NotesContent note) throws IOException {
+        if (isFinished) throw new IllegalStateException("The file had already been finished");
+        byte flags = 0;
+        // The size of the note is estimated from its text as it is not known until it is written
+        if (compress && note.noteTitle.length() + note.noteContent.length() >= SubjectContainer.COMPRESS_THRESHOLD) {
+            flags |= SubjectContainer.RECORD_COMPRESSED;
+        }
+        if (key != null) flags |= SubjectContainer.RECORD_ENCRYPTED;
+
+        long offset = countingStream.count;
+        int index = offsetList.size();
+        offsetList.add(offset);
+        titleList.add(key == null ? note.noteTitle : "");
+        // The length of the record is filled in by finish()
+        output.writeInt(0);
+        output.writeByte(flags);
+
+        // The streams are finished instead of closed so that the file is not closed
+        ChunkedCipherOutputStream cipherStream = null;
+        DeflaterOutputStream deflaterStream = null;
+        OutputStream recordStream = countingStream;
+        if (key != null) {
+            cipherStream = new ChunkedCipherOutputStream(recordStream, key,
+                    SubjectContainer.recordAssociatedData(headerHash, index, flags));
+            recordStream = cipherStream;
+        }
+        if ((flags & SubjectContainer.RECORD_COMPRESSED) != 0) {
+            deflater.reset();
+            deflaterStream = new DeflaterOutputStream(recordStream, deflater, BUFFER_SIZE);
+            recordStream = deflaterStream;
+        }
+        Writer writer = new OutputStreamWriter(recordStream, StandardCharsets.UTF_8);
+        NotesJsonCodec.writeNote(note, writer);
+        writer.flush();
+        if (deflaterStream != null) deflaterStream.finish();
+        if (cipherStream != null) cipherStream.finish();
+        lengthList.add(countingStream.count - offset - SubjectContainer.RECORD_HEADER_SIZE);
+    }
+
+    /** Writes the index after the records, then fills in the lengths of the records,
+     * the password verifier, the number of notes and the offset of the index. **/
+    public void finish() throws IOException {
+        if (isFinished) return;
+        isFinished = true;
+        long indexOffset = countingStream.count;
+        ByteArrayOutputStream indexStream = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexStream);
+        for (int i = 0; i < offsetList.size(); i++) {
+            byte[] title = titleList.get(i).getBytes(StandardCharsets.UTF_8);
+            index.writeLong(offsetList.get(i));
+            index.writeInt(title.length);
+            index.write(title);
+        }
+        byte[] indexBytes = indexStream.toByteArray();
+        output.write(indexBytes);
+        output.flush();
+
+        FileChannel channel = fileStream.getChannel();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        for (int i = 0; i < offsetList.size(); i++) {
+            if (lengthList.get(i) > Integer.MAX_VALUE) throw new IOException("Note " + i + " is too large");
+            lengthBuffer.clear();
+            lengthBuffer.putInt((int) (long) lengthList.get(i));
+            lengthBuffer.flip();
+            writeFully(channel, lengthBuffer, offsetList.get(i));
+        }
+        if (key != null) {
+            ByteBuffer verifier = ByteBuffer.allocate(SubjectContainer.VERIFIER_SIZE);
+            verifier.putInt(offsetList.size());
+            verifier.putLong(indexOffset);
+            verifier.put(SubjectContainer.hash(indexBytes, 0, indexBytes.length));
+            writeFully(channel, ByteBuffer.wrap(encryptVerifier(verifier.array())), verifierPosition);
+        }
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(offsetList.size());
+        header.putLong(indexOffset);
+        header.flip();
+        writeFully(channel, header, countPosition);
+    }
+
+    /** Closes the file. finish() needs to be called beforehand for the file to be valid. **/
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        output.close();
+    }
+
+    /** Encrypts the password verifier with the hash of the header as its associated data. **/
+    @NonNull
+    private byte[] encryptVerifier(@NonNull byte[] verifier) throws IOException {
+        ByteArrayOutputStream verifierStream = new ByteArrayOutputStream();
+        try (ChunkedCipherOutputStream cipherStream = new ChunkedCipherOutputStream(verifierStream,
+                key, headerHash)) {
+            cipherStream.write(verifier);
+        }
+        return verifierStream.toByteArray();
+    }
+
+    /** Writes the whole buffer to the channel at the given position. **/
+    private static void writeFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer,
+                                   long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /** Counts the bytes written to the file, as DataOutputStream.size() is limited to 2GB. **/
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        /** Constructor used as the output needs to be passed on. **/
+        CountingOutputStream(@NonNull OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
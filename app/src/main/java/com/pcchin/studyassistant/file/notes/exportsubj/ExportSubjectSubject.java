@@ -29,20 +29,16 @@ import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.ActivityConstants;
 import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
-import com.pcchin.studyassistant.functions.ConverterFunctions;
+import com.pcchin.studyassistant.file.notes.SubjectContainerWriter;
 import com.pcchin.studyassistant.functions.FileFunctions;
-import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.file.UniqueNameAllocator;
+import com.pcchin.studyassistant.utils.security.KdfService;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.List;
-import java.util.Random;
-import java.util.zip.DeflaterOutputStream;
 
 import io.sentry.Sentry;
-import io.sentry.event.EventBuilder;
 
 /** Functions that export the subject as a .subject file. **/
 public class ExportSubjectSubject {
@@ -89,84 +85,68 @@ public class ExportSubjectSubject {
     private void checkPasswordRequirement(DismissibleDialogFragment dialog, @NonNull String responseText,
                                           TextInputLayout inputText) {
         if (responseText.length() == 0 || responseText.length() >= 8) {
-            // Set output file name
-            String outputFileName = FileFunctions.getExternalDownloadDir(fragment.requireContext()) + notesSubject.title
-                    + ".subject";
-            int count = 0;
-            while (new File(outputFileName).exists()) {
-                count++;
-                outputFileName = FileFunctions.getExternalDownloadDir(fragment.requireContext()) + notesSubject.title
-                        + "(" + count + ").subject";
-            }
-
-            // Check if the file can be created
-            String finalOutputFileName = outputFileName;
             dialog.dismiss();
-            new Handler().post(() -> handleExportSubjectError(dialog, finalOutputFileName,
-                            responseText));
+            new Handler().post(() -> createSubjectFile(responseText));
         } else {
             inputText.setErrorEnabled(true);
             inputText.setError(fragment.getString(R.string.error_password_short));
         }
     }
 
-    /** Handles any errors that occur while exporting the .subject file. **/
-    private void handleExportSubjectError(DismissibleDialogFragment dialog,
-                                          String finalOutputFileName,
-                                          String finalResponseText) {
+    /** Creates an empty .subject file with a unique name in the download directory
+     * and exports the subject to it. **/
+    private void createSubjectFile(String finalResponseText) {
+        File downloadDir = new File(FileFunctions.getExternalDownloadDir(fragment.requireContext()));
         try {
-            // Get permission to read and write files
-            File outputFile = new File(finalOutputFileName);
-            if (outputFile.createNewFile()) {
-                try (FileOutputStream outputStream = new FileOutputStream(outputFile);
-                     DeflaterOutputStream deflatedStream = new DeflaterOutputStream(outputStream)) {
-                    exportSubjectFile(finalOutputFileName, finalResponseText, deflatedStream);
-                }
-            } else {
-                Log.e(ActivityConstants.LOG_APP_NAME, "File Error: File " + finalOutputFileName + " cannot be created.");
-                Toast.makeText(fragment.requireContext(), R.string.n2_error_file_not_created,
-                        Toast.LENGTH_SHORT).show();
-                Sentry.capture(new EventBuilder().withMessage("File Error: The following file " +
-                        "cannot be created.").withExtra("fileName", finalOutputFileName));
-            }
-        } catch (FileNotFoundException e) {
-            Log.e(ActivityConstants.LOG_APP_NAME, "File Error: File " + finalOutputFileName + " not found, stack trace is");
-            e.printStackTrace();
-            Sentry.capture(e);
-            dialog.dismiss();
+            File outputFile = UniqueNameAllocator.forDirectory(downloadDir)
+                    .reserveFile(notesSubject.title, ".subject");
+            exportSubjectFile(outputFile, finalResponseText);
         } catch (IOException e) {
-            Log.e(ActivityConstants.LOG_APP_NAME, "File Error: An IO Exception" + " occurred on file " + finalOutputFileName + ", stack trace is");
+            Log.e(ActivityConstants.LOG_APP_NAME, "File Error: A .subject file could not be created in "
+                    + downloadDir.getAbsolutePath() + ", stack trace is");
             e.printStackTrace();
             Sentry.capture(e);
-            dialog.dismiss();
+            Toast.makeText(fragment.requireContext(), R.string.n2_error_file_not_created,
+                    Toast.LENGTH_SHORT).show();
         }
     }
 
-    /** Creates and export the .subject file. **/
-    private void exportSubjectFile(String finalOutputFileName, @NonNull String finalResponseText,
-                                   @NonNull DeflaterOutputStream deflatedOutput)
-            throws IOException {
+    /** Creates and export the .subject file in the v2 format. The file is written on the
+     * background thread of KdfService as the key needs to be derived from the password first. **/
+    private void exportSubjectFile(File outputFile, @NonNull String finalResponseText) {
         Toast.makeText(fragment.requireContext(), R.string.n2_exporting_subject, Toast.LENGTH_SHORT).show();
-        // Export the file
-        // The length of the title is exported first, followed by the title.
-        // Then, the subject's sort order is listed and the encrypted contents are stored.
-        // All the contents in the file are then compressed before exported
-        deflatedOutput.write(ConverterFunctions.intToBytes(notesSubject.title.getBytes().length));
-        deflatedOutput.write(notesSubject.title.getBytes());
-        deflatedOutput.write(ConverterFunctions.intToBytes(notesSubject.sortOrder));
-        if (finalResponseText.length() >= 8) {
-            deflatedOutput.write(1);
-            // Create 32 bytes of salt
-            byte[] salt = new byte[32];
-            new Random().nextBytes(salt);
-            deflatedOutput.write(salt);
-            deflatedOutput.write(SecurityFunctions.subjectEncrypt(finalResponseText, salt, notesList));
-        } else {
-            deflatedOutput.write(0);
-            deflatedOutput.write(ConverterFunctions.notesListToString(notesList).getBytes());
+        String password = finalResponseText.length() >= 8 ? finalResponseText : null;
+        KdfService.run(fragment, () -> writeSubjectFile(outputFile, password), isExported -> {
+            if (isExported) {
+                Toast.makeText(fragment.requireContext(), fragment.getString(R.string.subject_exported)
+                        + outputFile.getAbsolutePath(), Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(fragment.requireContext(), R.string.n2_error_subject_export,
+                        Toast.LENGTH_SHORT).show();
+            }
+        }, e -> Toast.makeText(fragment.requireContext(), R.string.n2_error_subject_export,
+                Toast.LENGTH_SHORT).show());
+    }
+
+    /** Writes the notes to the file, the notes are written one at a time and are
+     * compressed and encrypted separately.
+     * @return whether the file is written, the file would be deleted if it is not. **/
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private boolean writeSubjectFile(File outputFile, String password) {
+        try (SubjectContainerWriter writer = new SubjectContainerWriter(outputFile, notesSubject,
+                password, true)) {
+            for (NotesContent note: notesList) {
+                writer.writeNote(note);
+            }
+            writer.finish();
+            return true;
+        } catch (IOException e) {
+            Log.e(ActivityConstants.LOG_APP_NAME, "File Error: An IO Exception occurred on file "
+                    + outputFile.getAbsolutePath() + ", stack trace is");
+            e.printStackTrace();
+            Sentry.capture(e);
+            outputFile.delete();
+            return false;
         }
-        deflatedOutput.flush();
-        deflatedOutput.close();
-        Toast.makeText(fragment.requireContext(), fragment.getString(R.string.subject_exported) + finalOutputFileName, Toast.LENGTH_SHORT).show();
     }
 }
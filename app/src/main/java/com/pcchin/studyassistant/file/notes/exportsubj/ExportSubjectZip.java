@@ -14,6 +14,7 @@
 package com.pcchin.studyassistant.file.notes.exportsubj;
 
 import android.annotation.SuppressLint;
+import android.app.Activity;
 import android.text.InputType;
 import android.util.Log;
 import android.widget.Toast;
@@ -30,24 +31,24 @@ import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
 import com.pcchin.studyassistant.functions.ConverterFunctions;
 import com.pcchin.studyassistant.functions.FileFunctions;
+import com.pcchin.studyassistant.utils.file.ParallelZipWriter;
+import com.pcchin.studyassistant.utils.file.UniqueNameAllocator;
+import com.pcchin.studyassistant.utils.misc.BackgroundRunner;
 
-import net.lingala.zip4j.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
-import net.lingala.zip4j.model.ZipParameters;
-import net.lingala.zip4j.model.enums.EncryptionMethod;
-
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.zip.DeflaterOutputStream;
 
 import io.sentry.Sentry;
-import io.sentry.event.EventBuilder;
 
 /** Functions that export the subject as a ZIP file. **/
 public class ExportSubjectZip {
+    private static final BackgroundRunner runner = BackgroundRunner.singleThread("ExportSubjectZip",
+            "File Error: A ZIP file could not be exported");
     private final Fragment fragment;
     private final List<NotesContent> notesList;
     private final NotesSubject notesSubject;
@@ -88,111 +89,81 @@ public class ExportSubjectZip {
     }
 
     /** Export the subject to a ZIP file.
+     * The ZIP file is written on a background thread while its entries are compressed in parallel,
+     * and a Toast is shown when it is done.
      * Separated from onExportPressed() for clarity. **/
     private void exportSubjectZip(String password) {
         if (fragment != null) {
-            // Generate valid paths for temp storage folder
-            String tempExportFolder = FileFunctions.generateValidFile(fragment.requireContext()
-                    .getFilesDir().getAbsolutePath() + "/temp/tempZip", "");
+            Activity activity = fragment.requireActivity();
+            File downloadDir = new File(FileFunctions.getExternalDownloadDir(activity));
+            File exportFile;
             try {
-                createZipFile(tempExportFolder, password);
-            } catch (ZipException e) {
-                Log.e(ActivityConstants.LOG_APP_NAME, "File error: ZIP processing error occurred while " +
-                        "exporting a subject. Stack trace is ");
+                exportFile = UniqueNameAllocator.forDirectory(downloadDir).reserveFile(notesSubject.title, ".zip");
+            } catch (IOException e) {
+                Log.e(ActivityConstants.LOG_APP_NAME, "File Error: A ZIP file could not be created in "
+                        + downloadDir.getAbsolutePath() + ", stack trace is");
                 e.printStackTrace();
                 Sentry.capture(e);
-                Toast.makeText(fragment.requireContext(), R.string.file_error, Toast.LENGTH_SHORT).show();
+                Toast.makeText(activity, R.string.file_error, Toast.LENGTH_SHORT).show();
+                return;
             }
+            runner.run(fragment, () -> createZipFile(exportFile, password), isExported -> {
+                if (isExported) {
+                    Toast.makeText(activity, activity.getString(R.string.subject_exported)
+                            + exportFile.getAbsolutePath(), Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(activity, R.string.file_error, Toast.LENGTH_SHORT).show();
+                }
+            }, e -> Toast.makeText(activity, R.string.file_error, Toast.LENGTH_SHORT).show());
         }
     }
 
-    /** Creates the zip file that is exported. **/
-    private void createZipFile(String tempExportFolder, @NonNull String password) throws ZipException {
-        // Creates ZIP file
-        String exportFilePath = FileFunctions.generateValidFile(
-                FileFunctions.getExternalDownloadDir(fragment.requireContext()) + notesSubject.title, ".zip");
-        ZipFile exportFile;
-        if (password.length() >= 8) {
-            exportFile = new ZipFile(exportFilePath, password.toCharArray());
-        } else {
-            exportFile = new ZipFile(exportFilePath);
-        }
-
-        if (new File(tempExportFolder).mkdir()) {
-            populateZipFile(tempExportFolder, password, exportFile, exportFilePath);
-        } else {
-            Log.e(ActivityConstants.LOG_APP_NAME, "File Error: Folder " + tempExportFolder
-                    + " cannot be created.");
-            Sentry.capture(new EventBuilder().withMessage("File Error: The following folder " +
-                    "cannot be created").withExtra("tempExportFolder", tempExportFolder));
-            Toast.makeText(fragment.requireContext(), R.string.file_error, Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    /** Populates the zip file that is exported with the notes. **/
-    private void populateZipFile(String tempExportFolder, @NonNull String password,
-                                 ZipFile exportFile, String exportFilePath) throws ZipException {
-        ArrayList<File> exportFilesList = new ArrayList<>();
-        exportAllNotes(tempExportFolder, exportFilesList);
-        if (password.length() >= 8) {
-            // Encrypts ZIP file with password
-            ZipParameters passwordParams = new ZipParameters();
-            passwordParams.setEncryptFiles(true);
-            passwordParams.setEncryptionMethod(EncryptionMethod.ZIP_STANDARD);
-            exportFile.addFiles(exportFilesList, passwordParams);
-        } else if (exportFilesList.size() > 0) {
-            // Adds files to ZIP file
-            exportFile.addFiles(exportFilesList);
-        }
-
-        // Delete temp folder
-        if (!FileFunctions.deleteDir(new File(tempExportFolder))) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Temporary folder "
-                    + tempExportFolder + " could not be deleted.");
-        }
-        Toast.makeText(fragment.requireContext(), fragment.getString(R.string.subject_exported)
-                + exportFilePath, Toast.LENGTH_SHORT).show();
-    }
-
-    /** Export all notes in the subject to their individual files. **/
-    private void exportAllNotes(String tempExportFolder, ArrayList<File> exportFilesList) {
-        // Export all the note's data to a text .subj file
-        String infoTempOutputPath = FileFunctions.generateValidFile(
-                tempExportFolder + "/" + notesSubject.title, ".subj");
-        try (FileOutputStream infoTempStream = new FileOutputStream(infoTempOutputPath);
-             DeflaterOutputStream deflatedInfoTemp = new DeflaterOutputStream(infoTempStream)) {
+    /** Writes the zip file that is exported to the empty file reserved for it.
+     * The notes are streamed directly into the ZIP file without being written to temporary files first.
+     * @return whether the ZIP file is written, the file would be deleted if it is not. **/
+    private boolean createZipFile(File exportFile, @NonNull String password) {
+        char[] zipPassword = password.length() >= 8 ? password.toCharArray() : null;
+        try (ParallelZipWriter writer = new ParallelZipWriter(new BufferedOutputStream(
+                new FileOutputStream(exportFile)), zipPassword)) {
             StringBuilder infoStringBuilder = new StringBuilder(notesSubject.title + "\n" + notesSubject.sortOrder + "\n");
-            exportNote(infoStringBuilder, tempExportFolder, exportFilesList);
-            deflatedInfoTemp.write(infoStringBuilder.toString().getBytes());
-            deflatedInfoTemp.flush();
-            deflatedInfoTemp.close();
-
-            // Rename temp info output path to .subj file
-            exportFilesList.add(new File(infoTempOutputPath));
+            exportNote(infoStringBuilder, writer);
+            byte[] infoBytes = infoStringBuilder.toString().getBytes(StandardCharsets.UTF_8);
+            // The .subj file is compressed by itself as well
+            writer.addEntry(getEntryName(notesSubject.title) + ".subj", output -> {
+                try (DeflaterOutputStream deflatedInfo = new DeflaterOutputStream(output)) {
+                    deflatedInfo.write(infoBytes);
+                }
+            });
+            writer.finish();
+            return true;
         } catch (IOException e) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Writing subject " + notesSubject.title
-                    + " failed. Stack trace is");
+            Log.e(ActivityConstants.LOG_APP_NAME, "File error: ZIP processing error occurred while " +
+                    "exporting subject " + notesSubject.title + ". Stack trace is ");
             e.printStackTrace();
+            Sentry.capture(e);
+            if (!exportFile.delete()) {
+                Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Incomplete ZIP file "
+                        + exportFile.getAbsolutePath() + " could not be deleted.");
+            }
+            return false;
         }
     }
 
-    /** Export a note to a txt file and add its info to the .subj file. **/
-    private void exportNote(StringBuilder infoStringBuilder, String tempExportFolder,
-                            ArrayList<File> exportFilesList) {
+    /** Adds each note to the ZIP file as a txt file and add its info to the .subj file. **/
+    private void exportNote(StringBuilder infoStringBuilder, ParallelZipWriter writer) throws IOException {
+        UniqueNameAllocator entryNameAllocator = new UniqueNameAllocator();
         for (int i = 0; i < notesList.size(); i++) {
             NotesContent currentNote = notesList.get(i);
-            // Export the note to the output folder
-            String currentPath = FileFunctions.generateValidFile(
-                    tempExportFolder + "/" + currentNote.noteTitle,
-                    ".txt");
-            FileFunctions.exportTxt(currentPath, currentNote.noteContent);
-            exportFilesList.add(new File(currentPath));
+            // Generate a unique file name in the same way as FileFunctions.generateValidFile
+            String currentName = entryNameAllocator.reserve(getEntryName(currentNote.noteTitle), ".txt");
+            String noteContent = currentNote.noteContent;
+            writer.addEntry(currentName, output -> output.write(noteContent.getBytes(StandardCharsets.UTF_8)));
 
             // Record info about the note to the .subj file
             // The format is in:
             // title, lastEdited, salt, lockedPass, alertDate, alertCode
             // The content is already in the txt files
-            infoStringBuilder.append(new File(currentPath).getName()).append("\n")
+            infoStringBuilder.append(currentName).append("\n")
                     .append(currentNote.noteTitle).append("\n")
                     .append(ConverterFunctions.formatTime(currentNote.lastEdited, ConverterFunctions.TimeFormat.ISO))
                     .append("\n").append(currentNote.lockedSalt).append("\n")
@@ -201,6 +172,13 @@ public class ExportSubjectZip {
         }
     }
 
+    /** Returns the name of the entry without any path separators,
+     * as the entries are all extracted into the same folder. **/
+    @NonNull
+    private static String getEntryName(@NonNull String title) {
+        return title.replace('/', '_').replace('\\', '_');
+    }
+
     /** Converts null to NULL for fields that may be null. **/
     private void appendNullableFields(StringBuilder infoStringBuilder, @NonNull NotesContent currentNote) {
         if (currentNote.alertDate == null) {
@@ -25,7 +25,9 @@ import com.pcchin.customdialog.DismissibleDialogFragment;
 import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.ActivityConstants;
 import com.pcchin.studyassistant.activity.MainActivity;
+import com.pcchin.studyassistant.database.DatabaseExecutor;
 import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.database.notes.NotesImporter;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
 import com.pcchin.studyassistant.database.notes.SubjectDatabase;
 import com.pcchin.studyassistant.fragment.notes.subject.NotesSubjectFragment;
@@ -54,17 +56,22 @@ class ImportSubject {
             database.close();
             showConflictDialog(subject, conflictSubject, notesList);
         } else {
-            database.SubjectDao().insert(subject);
-            for (NotesContent note: notesList) {
-                database.ContentDao().insert(note);
-            }
             database.close();
-            Toast.makeText(activity, R.string.subject_imported, Toast.LENGTH_SHORT).show();
-            activity.safeOnBackPressed();
-            activity.displayFragment(NotesSubjectFragment.newInstance(subject.subjectId));
+            DatabaseExecutor.subjectQuery(activity, activity, backgroundDatabase -> {
+                new NotesImporter(backgroundDatabase, NotesImporter.DEFAULT_BATCH_SIZE, null)
+                        .importSubject(subject, notesList);
+                return subject.subjectId;
+            }, this::onSubjectImported);
         }
     }
 
+    /** Displays the subject after its notes have been inserted. **/
+    private void onSubjectImported(int subjectId) {
+        Toast.makeText(activity, R.string.subject_imported, Toast.LENGTH_SHORT).show();
+        activity.safeOnBackPressed();
+        activity.displayFragment(NotesSubjectFragment.newInstance(subjectId));
+    }
+
     /** Show the subject conflict dialog. **/
     private void showConflictDialog(NotesSubject subject, NotesSubject conflictSubject, List<NotesContent> notesList) {
         DismissibleDialogFragment dismissibleFragment = new DismissibleDialogFragment(
@@ -135,16 +142,15 @@ class ImportSubject {
      * Sort order will inherit the original subject stored on the notes. **/
     private void mergeSubjects(NotesSubject conflictSubject, @NonNull List<NotesContent> notesList) {
         // The conflictSubject (The one that is already in the database) will be used as the base
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
         // Change the subjectId for notesList and store it into the database
         for (NotesContent note: notesList) {
             note.subjectId = conflictSubject.subjectId;
-            database.ContentDao().insert(note);
         }
-        database.close();
-        // Go to the fragment
-        Toast.makeText(activity, R.string.subject_imported, Toast.LENGTH_SHORT).show();
-        activity.safeOnBackPressed();
-        activity.displayFragment(NotesSubjectFragment.newInstance(conflictSubject.subjectId));
+        DatabaseExecutor.subjectQuery(activity, activity, database -> {
+            NotesImporter importer = new NotesImporter(database, NotesImporter.DEFAULT_BATCH_SIZE, null);
+            importer.addAll(notesList);
+            importer.finish();
+            return conflictSubject.subjectId;
+        }, this::onSubjectImported);
     }
 }
@@ -30,14 +30,21 @@ import com.pcchin.studyassistant.activity.MainActivity;
 import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
 import com.pcchin.studyassistant.database.notes.SubjectDatabase;
+import com.pcchin.studyassistant.file.notes.NotesJsonCodec;
+import com.pcchin.studyassistant.file.notes.SubjectContainer;
+import com.pcchin.studyassistant.file.notes.SubjectContainerReader;
 import com.pcchin.studyassistant.functions.ConverterFunctions;
 import com.pcchin.studyassistant.functions.DatabaseFunctions;
-import com.pcchin.studyassistant.functions.FileFunctions;
 import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.file.StreamUtils;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
+import com.pcchin.studyassistant.utils.security.KdfService;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.InflaterInputStream;
 
@@ -46,6 +53,9 @@ import io.sentry.event.EventBuilder;
 
 /** Functions for importing a subject from a .subject file. Yes, that's why it has this name. **/
 public class ImportSubjectSubject {
+    // Limits for v1 files so that a corrupted file would not run the app out of memory
+    private static final int MAX_TITLE_BYTES = 64 * 1024;
+    private static final int MAX_CONTENT_BYTES = 256 * 1024 * 1024;
     private final MainActivity activity;
 
     /** The constructor for the class as activity needs to be passed on. **/
@@ -59,9 +69,16 @@ public class ImportSubjectSubject {
         // Check if file exists
         File targetFile = new File(path);
         if (targetFile.exists() && targetFile.isFile()) {
-            try (FileInputStream inputStream = new FileInputStream(targetFile);
-                 InflaterInputStream inflatedStream = new InflaterInputStream(inputStream)) {
-                processSubjectFile(inflatedStream);
+            try {
+                if (SubjectContainer.isContainer(targetFile)) {
+                    processContainerFile(targetFile);
+                } else {
+                    // Files from older versions are in the v1 format
+                    try (FileInputStream inputStream = new FileInputStream(targetFile);
+                         InflaterInputStream inflatedStream = new InflaterInputStream(inputStream)) {
+                        processSubjectFile(inflatedStream);
+                    }
+                }
             } catch (IOException | ArrayIndexOutOfBoundsException e) {
                 Log.e(ActivityConstants.LOG_APP_NAME, "File Error: File " + path + " could not be read"
                         + " by FileInputStream. Stack trace is");
@@ -78,34 +95,47 @@ public class ImportSubjectSubject {
         }
     }
 
-    /** Processes the .subject file. **/
+    /** Processes a v2 .subject file. Only its header and index are read here,
+     * the notes are read when they are imported. **/
+    private void processContainerFile(@NonNull File targetFile) throws IOException {
+        try (SubjectContainerReader reader = new SubjectContainerReader(targetFile)) {
+            if (reader.isEncrypted()) {
+                importEncryptedSubject(reader.getTitle(), reader.getSortOrder(),
+                        (idAllocator, subject, password) -> decryptContainer(targetFile,
+                                idAllocator, subject, password));
+            } else {
+                importUnencryptedContainer(reader);
+            }
+        }
+    }
+
+    /** Processes a v1 .subject file. **/
     private void processSubjectFile(@NonNull InflaterInputStream inputStream)
             throws IOException, IndexOutOfBoundsException {
         // Length of title is first 4 bytes, title follows next
-        int titleLength = ConverterFunctions.bytesToInt(FileFunctions.getBytesFromFile(4, inputStream));
-        String title = new String(FileFunctions.getBytesFromFile(titleLength, inputStream));
+        int titleLength = ConverterFunctions.bytesToInt(StreamUtils.readNBytes(inputStream, 4, 4));
+        String title = new String(StreamUtils.readNBytes(inputStream, titleLength, MAX_TITLE_BYTES));
         // Then the int containing the sort order is returned
-        int sortOrder = ConverterFunctions.bytesToInt(FileFunctions.getBytesFromFile(4, inputStream));
+        int sortOrder = ConverterFunctions.bytesToInt(StreamUtils.readNBytes(inputStream, 4, 4));
         // Then whether the byte containing whether the subject is encrypted is returned
-        byte subjectEncrypted = FileFunctions.getBytesFromFile(1, inputStream)[0];
-        byte[] content;
+        byte subjectEncrypted = StreamUtils.readNBytes(inputStream, 1, 1)[0];
 
         if (subjectEncrypted == 1) {
             // If the subject is encrypted, take the salt and then the content
-            byte[] salt = FileFunctions.getBytesFromFile(32, inputStream);
-            content = FileFunctions.getRemainingBytesFromFile(inputStream);
+            byte[] salt = StreamUtils.readNBytes(inputStream, 32, 32);
+            byte[] content = StreamUtils.readAll(inputStream, MAX_CONTENT_BYTES);
             inputStream.close();
-            importEncryptedSubject(title, sortOrder, salt, content);
+            importEncryptedSubject(title, sortOrder, (idAllocator, subject, password) -> SecurityFunctions
+                    .subjectDecrypt(idAllocator, subject, salt, password, content));
         } else {
-            // Take the content directly
-            content = FileFunctions.getRemainingBytesFromFile(inputStream);
+            // The notes are read directly from the stream
+            importUnencryptedSubject(title, sortOrder, inputStream);
             inputStream.close();
-            importUnencryptedSubject(title, sortOrder, content);
         }
     }
 
     /** Imports an encrypted subject. **/
-    private void importEncryptedSubject(String title, int sortOrder, byte[] salt, byte[] content) {
+    private void importEncryptedSubject(String title, int sortOrder, @NonNull SubjectDecryptor decryptor) {
         // Subject is encrypted
         @SuppressLint("InflateParams") TextInputLayout inputLayout = (TextInputLayout) activity
                 .getLayoutInflater().inflate(R.layout.popup_edittext, null);
@@ -125,46 +155,49 @@ public class ImportSubjectSubject {
                 .setTitle(R.string.enter_password).setView(inputLayout).create());
         dismissibleFragment.setPositiveButton(activity.getString(android.R.string.ok), view -> {
             Toast.makeText(activity, R.string.importing_subject, Toast.LENGTH_SHORT).show();
-            new Handler().post(() -> decryptSubject(dismissibleFragment, inputLayout, subject, salt, content));
+            new Handler().post(() -> decryptSubject(dismissibleFragment, inputLayout, subject, decryptor));
         });
         dismissibleFragment.setNegativeButton(activity.getString(android.R.string.cancel), view ->
                 dismissibleFragment.dismiss());
         dismissibleFragment.show(activity.getSupportFragmentManager(), "ImportSubject.3");
     }
 
-    /** Decrypts and imports the subject. Done in a handler to prevent
-     *  the main thread from being overloaded. **/
+    /** Decrypts and imports the subject. The key derivation and decryption are done
+     * through KdfService to prevent the main thread from being overloaded. **/
     private void decryptSubject(DismissibleDialogFragment dismissibleFragment, @NonNull TextInputLayout inputLayout,
-                                NotesSubject subject, byte[] salt, byte[] content) {
+                                NotesSubject subject, @NonNull SubjectDecryptor decryptor) {
         String password = "";
         if (inputLayout.getEditText() != null) {
             password = inputLayout.getEditText().getText().toString();
         }
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
-        List<Integer> notesIdList = database.ContentDao().getAllNoteId();
-        database.close();
-        List<NotesContent> subjectContents = SecurityFunctions
-                .subjectDecrypt(notesIdList, subject, salt, password, content);
-        if (subjectContents == null) {
-            inputLayout.setErrorEnabled(true);
-            inputLayout.setError(activity.getString(R.string.error_password_incorrect));
-        } else {
-            new ImportSubject(activity).importSubjectToDatabase(subject, subjectContents);
+        IdAllocator idAllocator = DatabaseFunctions.noteIdAllocator(activity);
+        String finalPassword = password;
+        KdfService.run(activity, () -> decryptor.decrypt(idAllocator, subject, finalPassword), subjectContents -> {
+            if (subjectContents == null) {
+                inputLayout.setErrorEnabled(true);
+                inputLayout.setError(activity.getString(R.string.error_password_incorrect));
+            } else {
+                new ImportSubject(activity).importSubjectToDatabase(subject, subjectContents);
+                dismissibleFragment.dismiss();
+            }
+        }, e -> {
+            Toast.makeText(activity, R.string.error_subject_import, Toast.LENGTH_SHORT).show();
             dismissibleFragment.dismiss();
-        }
+        });
     }
 
-    /** Imports an unencrypted subject. **/
-    private void importUnencryptedSubject(String title, int sortOrder, byte[] content) {
+    /** Imports an unencrypted subject, the notes are read from the stream one at a time. **/
+    private void importUnencryptedSubject(String title, int sortOrder, @NonNull InputStream inputStream)
+            throws IOException {
         // Subject is not encrypted, create NotesSubject
         SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
         int subjectId = DatabaseFunctions.generateValidId(database, DatabaseFunctions.SUBJ_ID_TYPE.SUBJECT);
-        List<Integer> notesIdList = database.ContentDao().getAllNoteId();
         database.close();
 
-        String contentString = new String(content);
         NotesSubject subject = new NotesSubject(subjectId, title, sortOrder);
-        List<NotesContent> notesList = ConverterFunctions.stringToNotesList(notesIdList, subjectId, contentString);
+        List<NotesContent> notesList = new ArrayList<>();
+        if (!NotesJsonCodec.readNotes(inputStream, DatabaseFunctions.noteIdAllocator(activity),
+                subjectId, notesList::add)) notesList = null;
 
         if (notesList == null) {
             Log.w(ActivityConstants.LOG_APP_NAME, "File Error: A .subject file could not be imported as its content is incorrect.");
@@ -173,4 +206,49 @@ public class ImportSubjectSubject {
             new ImportSubject(activity).importSubjectToDatabase(subject, notesList);
         }
     }
+
+    /** Imports an unencrypted v2 .subject file. **/
+    private void importUnencryptedContainer(@NonNull SubjectContainerReader reader) throws IOException {
+        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
+        int subjectId = DatabaseFunctions.generateValidId(database, DatabaseFunctions.SUBJ_ID_TYPE.SUBJECT);
+        database.close();
+
+        NotesSubject subject = new NotesSubject(subjectId, reader.getTitle(), reader.getSortOrder());
+        List<NotesContent> notesList = new ArrayList<>();
+        showSkippedNotes(reader.readNotes(null, DatabaseFunctions.noteIdAllocator(activity), subjectId, notesList::add));
+        new ImportSubject(activity).importSubjectToDatabase(subject, notesList);
+    }
+
+    /** Decrypts the notes of an encrypted v2 .subject file.
+     * @return null if the password is incorrect or the file could not be read. **/
+    private List<NotesContent> decryptContainer(File targetFile, IdAllocator idAllocator,
+                                                @NonNull NotesSubject subject, String password) {
+        try (SubjectContainerReader reader = new SubjectContainerReader(targetFile)) {
+            if (!reader.setPassword(password)) return null;
+            List<NotesContent> notesList = new ArrayList<>();
+            int skippedCount = reader.readNotes(null, idAllocator, subject.subjectId, notesList::add);
+            activity.runOnUiThread(() -> showSkippedNotes(skippedCount));
+            return notesList;
+        } catch (IOException e) {
+            Log.e(ActivityConstants.LOG_APP_NAME, "File Error: File " + targetFile.getAbsolutePath()
+                    + " could not be read. Stack trace is");
+            e.printStackTrace();
+            Sentry.capture(e);
+            return null;
+        }
+    }
+
+    /** Tells the user how many notes of a v2 .subject file are skipped, if any. **/
+    private void showSkippedNotes(int skippedCount) {
+        if (skippedCount > 0) {
+            Toast.makeText(activity, activity.getString(R.string.error_subject_notes_skipped, skippedCount),
+                    Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /** Decrypts the notes of a .subject file with the password given.
+     * This is run on the background thread of KdfService. **/
+    private interface SubjectDecryptor {
+        List<NotesContent> decrypt(IdAllocator idAllocator, NotesSubject subject, String password);
+    }
 }
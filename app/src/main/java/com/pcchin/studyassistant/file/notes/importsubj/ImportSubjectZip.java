@@ -26,9 +26,12 @@ import com.pcchin.customdialog.DismissibleDialogFragment;
 import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.ActivityConstants;
 import com.pcchin.studyassistant.activity.MainActivity;
+import com.pcchin.studyassistant.utils.file.StreamUtils;
 
 import net.lingala.zip4j.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
+
+import java.io.File;
+import java.io.IOException;
 
 import io.sentry.Sentry;
 
@@ -51,7 +54,8 @@ public class ImportSubjectZip {
                 Log.w(ActivityConstants.LOG_APP_NAME, "File Error: ZIP file " + path + " is invalid.");
                 Toast.makeText(activity, R.string.error_zip_corrupt, Toast.LENGTH_SHORT).show();
             }
-        } catch (ZipException e) {
+        } catch (IOException e) {
+            // Includes ZipException
             Log.e(ActivityConstants.LOG_APP_NAME, "File Error: ZIP processing error occurred while "
                     + " importing a subject, stack trace is");
             Toast.makeText(activity, R.string.error_zip_import, Toast.LENGTH_SHORT).show();
@@ -61,7 +65,7 @@ public class ImportSubjectZip {
     }
 
     /** Displays the password dialog for importing ZIP files. **/
-    private void displayZipDialog(String path) throws ZipException {
+    private void displayZipDialog(String path) throws IOException {
         if (new ZipFile(path).isEncrypted()) {
             @SuppressLint("InflateParams") TextInputLayout inputLayout = (TextInputLayout)
                     activity.getLayoutInflater().inflate(R.layout.popup_edittext, null);
@@ -80,9 +84,9 @@ public class ImportSubjectZip {
                     view -> dismissibleFragment.dismiss());
             dismissibleFragment.show(activity.getSupportFragmentManager(), "ImportSubject.2");
         } else {
-            // Error thrown in importZipFile will be handled by the external error handler
-            ZipFile inputFile = new ZipFile(path);
-            new ImportSubjectZipProcess(activity).importZipFile(inputFile);
+            new ImportSubjectZipProcess(activity).importZipFile(new File(path), null, isRead -> {
+                if (!isRead) Toast.makeText(activity, R.string.error_zip_corrupt, Toast.LENGTH_SHORT).show();
+            }, this::showReadError);
         }
     }
 
@@ -94,19 +98,28 @@ public class ImportSubjectZip {
             password = inputLayout.getEditText().getText().toString();
         }
         if (password.length() >= 8) {
-            try {
-                ZipFile inputFile = new ZipFile(path, password.toCharArray());
-                new ImportSubjectZipProcess(activity).importZipFile(inputFile);
+            new ImportSubjectZipProcess(activity).importZipFile(new File(path), password.toCharArray(), isRead -> {
+                if (isRead) {
+                    dismissibleFragment.dismiss();
+                } else {
+                    inputLayout.setErrorEnabled(true);
+                    inputLayout.setError(activity.getString(R.string
+                            .error_password_incorrect));
+                }
+            }, e -> {
+                showReadError(e);
                 dismissibleFragment.dismiss();
-            } catch (ZipException e) {
-                inputLayout.setErrorEnabled(true);
-                inputLayout.setError(activity.getString(R.string
-                        .error_password_incorrect));
-            }
+            });
         } else {
             inputLayout.setErrorEnabled(true);
             inputLayout.setError(activity.getString(R.string
                     .error_password_short));
         }
     }
+
+    /** Shows the error for a ZIP file that could not be read, which is logged by ImportSubjectZipProcess. **/
+    private void showReadError(@NonNull Exception e) {
+        Toast.makeText(activity, e instanceof StreamUtils.SizeLimitException ? R.string.error_zip_too_large
+                : R.string.error_zip_import, Toast.LENGTH_SHORT).show();
+    }
 }
@@ -17,6 +17,7 @@ import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.ActivityConstants;
@@ -24,167 +25,195 @@ import com.pcchin.studyassistant.activity.MainActivity;
 import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
 import com.pcchin.studyassistant.database.notes.SubjectDatabase;
+import com.pcchin.studyassistant.file.notes.NoteMetadataTable;
 import com.pcchin.studyassistant.functions.ConverterFunctions;
 import com.pcchin.studyassistant.functions.DatabaseFunctions;
 import com.pcchin.studyassistant.functions.FileFunctions;
+import com.pcchin.studyassistant.utils.file.StreamUtils;
+import com.pcchin.studyassistant.utils.misc.BackgroundRunner;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
 import com.pcchin.studyassistant.utils.misc.RandomString;
 
-import net.lingala.zip4j.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.io.inputstream.ZipInputStream;
+import net.lingala.zip4j.model.LocalFileHeader;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Objects;
-import java.util.Random;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.zip.InflaterInputStream;
 
 /** Continuation of ImportSubjectZip, functions which actually import and process the ZIP file,
  * separated for clarity. The ZIP file provided in this class either has a given password
- * or does not have a password. **/
+ * or does not have a password. The entries are read directly from the ZIP file on a background thread
+ * without being extracted to a temporary folder first. **/
 class ImportSubjectZipProcess {
+    // The total number of characters that can be imported, which is far above the size of any export.
+    // The notes are held in memory until they are inserted, so this prevents ZIP bombs from crashing the app
+    static final long MAX_IMPORT_SIZE = 100 * 1000 * 1000;
+    private static final int BUFFER_SIZE = 8192;
+    private static final BackgroundRunner runner = BackgroundRunner.singleThread("ImportSubjectZip",
+            "File Error: A ZIP file could not be read");
     private final MainActivity activity;
-    private ArrayList<File> txtFileList;
-
-    // HashMaps for processing .subj files
-    // The key is the file name of the corresponding txt file
-    private final HashMap<String, String> titleHashMap = new HashMap<>();
-    private final HashMap<String, Date> lastEditedHashMap = new HashMap<>();
-    private final HashMap<String, String> saltHashMap = new HashMap<>();
-    private final HashMap<String, String> lockedPassHashMap = new HashMap<>();
-    private final HashMap<String, Date> alertDateHashMap = new HashMap<>();
-    private final HashMap<String, Integer> alertCodeHashMap = new HashMap<>();
+    // The contents of the txt files, the key is the file name of the txt file
+    private final LinkedHashMap<String, String> txtContentMap = new LinkedHashMap<>();
+    private byte[] subjBytes;
+    private long importSize = 0;
 
     /** The constructor for the class as activity needs to be passed on. **/
     ImportSubjectZipProcess(MainActivity activity) {
         this.activity = activity;
     }
 
-    /** Function used to import/convert a ZIP file,
-     * separated from importZipConfirm(String path) for clarity.  **/
-    void importZipFile(@NonNull ZipFile inputFile) throws ZipException {
-        String tempInputDirPath = FileFunctions.generateValidFile(
-                FileFunctions.getInternalDownloadDir(activity) + ".tempZip", "");
-        try {
-            inputFile.extractAll(tempInputDirPath);
-        } catch (ZipException e) {
-            // Clears download directory before rethrowing error
-            // New File used to prevent tempInputDir.exists() from returning false
-            FileFunctions.deleteDir(new File(tempInputDirPath));
-            throw e;
+    /** Function used to import/convert a ZIP file, separated from importZipConfirm(String path) for clarity.
+     * The ZIP file is read on a background thread, and the notes are imported once it has been read.
+     * @param password the password of the ZIP file, or null if it is not encrypted.
+     * @param readCallback called with false if the password is incorrect or the ZIP file is invalid,
+     *                     or with true if the ZIP file has been read.
+     * @param errorCallback called if the ZIP file could not be read, which includes a
+     *                      StreamUtils.SizeLimitException if its text is larger than MAX_IMPORT_SIZE. **/
+    void importZipFile(@NonNull File inputFile, @Nullable char[] password,
+                       @NonNull BackgroundRunner.Callback<Boolean> readCallback,
+                       @NonNull BackgroundRunner.ErrorCallback errorCallback) {
+        Toast.makeText(activity, R.string.importing_subject, Toast.LENGTH_SHORT).show();
+        runner.run(activity, () -> {
+            try {
+                readZipFile(inputFile, password);
+                return true;
+            } catch (ZipException e) {
+                return false;
+            }
+        }, isRead -> {
+            readCallback.onResult(isRead);
+            if (isRead) importNotes(inputFile);
+        }, errorCallback);
+    }
+
+    /** Reads the txt files and the subj file in the root of the ZIP file. **/
+    private void readZipFile(@NonNull File inputFile, @Nullable char[] password) throws IOException {
+        try (ZipInputStream zipStream = new ZipInputStream(new BufferedInputStream(
+                new FileInputStream(inputFile), BUFFER_SIZE), password)) {
+            LocalFileHeader header;
+            while ((header = zipStream.getNextEntry()) != null) {
+                String entryName = header.getFileName();
+                // Only the files in the root of the ZIP file are imported
+                if (header.isDirectory() || entryName.contains("/")) continue;
+                if (entryName.endsWith(".subj")) {
+                    subjBytes = readEntryBytes(zipStream);
+                } else if (entryName.endsWith(".txt")) {
+                    txtContentMap.put(entryName, readEntryText(zipStream));
+                }
+            }
         }
+    }
 
-        Toast.makeText(activity, R.string.importing_subject, Toast.LENGTH_SHORT).show();
-        File tempInputDir = new File(tempInputDirPath);
-        if (tempInputDir.exists() && tempInputDir.isDirectory()) {
-            getZipFiles(FileFunctions.getFileName(inputFile.getFile().getName()), tempInputDir);
+    /** Imports the notes after the ZIP file is read. **/
+    private void importNotes(@NonNull File inputFile) {
+        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
+        int subjectId = DatabaseFunctions.generateValidId(database, DatabaseFunctions.SUBJ_ID_TYPE.SUBJECT);
+        database.close();
+        String fileName = FileFunctions.getFileName(inputFile.getName());
+        // Pass on to respective processing functions
+        if (subjBytes == null) {
+            importZipWithoutSubj(subjectId, fileName);
         } else {
-            Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Folder "+ tempInputDirPath
-                    + " is not found");
-            Toast.makeText(activity, R.string.file_error, Toast.LENGTH_SHORT).show();
+            importZipWithSubj(subjectId, fileName, subjBytes);
         }
     }
 
-    /** Gets the .subj and .txt files stored in the ZIP file and process them. **/
-    private void getZipFiles(String fileName, @NonNull File tempInputDir) {
-        File[] fileList = tempInputDir.listFiles();
-        if (fileList != null) {
-            txtFileList = new ArrayList<>();
-            File subjFile = null;
-            SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
-            int subjectId = DatabaseFunctions.generateValidId(database, DatabaseFunctions.SUBJ_ID_TYPE.SUBJECT);
-            database.close();
-            // Populate subjFile and txtFileList
-            for (File file : fileList) {
-                if (file.getName().endsWith(".subj")) {
-                    subjFile = file;
-                } else if (file.getName().endsWith(".txt")) {
-                    txtFileList.add(file);
-                }
-            }
-            // Pass on to respective processing functions
-            if (subjFile == null) {
-                importZipWithoutSubj(subjectId, fileName);
-            } else {
-                importZipWithSubj(subjectId, fileName, subjFile);
-            }
+    /** Reads the current entry of the ZIP file as UTF-8 text through a fixed size buffer. **/
+    @NonNull
+    private String readEntryText(@NonNull InputStream zipStream) throws IOException {
+        StringBuilder contents = new StringBuilder();
+        // The reader is not closed as that would close the ZIP stream
+        Reader reader = new InputStreamReader(zipStream, StandardCharsets.UTF_8);
+        char[] buffer = new char[BUFFER_SIZE];
+        int count;
+        while ((count = reader.read(buffer)) >= 0) {
+            contents.append(buffer, 0, count);
+            addImportSize(count);
         }
+        return contents.toString();
+    }
+
+    /** Reads the current entry of the ZIP file as bytes. **/
+    @NonNull
+    private byte[] readEntryBytes(@NonNull InputStream zipStream) throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = zipStream.read(buffer)) >= 0) {
+            contents.write(buffer, 0, count);
+            addImportSize(count);
+        }
+        return contents.toByteArray();
+    }
+
+    /** Adds to the total size of the import and stops the import if it is too large. **/
+    private void addImportSize(int count) throws IOException {
+        importSize += count;
+        if (importSize > MAX_IMPORT_SIZE) throw new StreamUtils.SizeLimitException(MAX_IMPORT_SIZE);
     }
 
     /** Imports from a ZIP without a subj file.
      * The names of each note is assumed to be the title of the note,
      * and the title of the subject is assumed to be the file name of the subject. **/
     private void importZipWithoutSubj(int subjectId, String subjectTitle) {
-        Random rand = new Random();
         RandomString randString = new RandomString(40);
         NotesSubject subject = new NotesSubject(subjectId, subjectTitle, NotesSubject.SORT_ALPHABETICAL_ASC);
         ArrayList<NotesContent> notesList = new ArrayList<>();
-        // Get notesIdList from database
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
-        List<Integer> notesIdList = database.ContentDao().getAllNoteId();
-        database.close();
-        for (File txtFile: txtFileList) {
-            NotesContent currentNote = generateNoteWithoutSubj(rand, randString, subjectId, notesIdList, txtFile);
-            notesList.add(currentNote);
+        IdAllocator idAllocator = reserveNoteIds();
+        for (Map.Entry<String, String> txtEntry: txtContentMap.entrySet()) {
+            notesList.add(generateNoteWithoutSubj(randString, subjectId, idAllocator,
+                    txtEntry.getKey(), txtEntry.getValue()));
         }
         new ImportSubject(activity).importSubjectToDatabase(subject, notesList);
     }
 
-    /** Generates a note if the .subj file is not present,
-     * or if the note is not present within the .subj file itself.
-     * The note ID that is generated will be added to noteIdList. **/
+    /** Returns an allocator with a block of IDs reserved for all of the txt files in the ZIP file. **/
     @NonNull
-    private NotesContent generateNoteWithoutSubj (@NonNull Random rand, RandomString randString,
-                                                  int subjectId, @NonNull List<Integer> notesIdList,
-                                                  File inputFile) {
-        // Generate a valid noteId and add it to the list
-        int noteId = rand.nextInt();
-        while (notesIdList.contains(noteId)) noteId = rand.nextInt();
-        notesIdList.add(noteId);
-        // Reads the contents file and creates the file
-        String fileName = FileFunctions.getFileName(inputFile.getName()),
-                fileContents = getFileContents(inputFile);
-        return new NotesContent(noteId, subjectId, fileName, fileContents,
-                new Date(), randString.nextString());
+    private IdAllocator reserveNoteIds() {
+        IdAllocator idAllocator = DatabaseFunctions.noteIdAllocator(activity);
+        if (!txtContentMap.isEmpty()) idAllocator.reserve(txtContentMap.size());
+        return idAllocator;
     }
 
-    /** Gets the contents of a text file and stores it as a String.
-     * If the contents of the file is invalid, an empty String would be returned. **/
+    /** Generates a note if the .subj file is not present,
+     * or if the note is not present within the .subj file itself. **/
     @NonNull
-    private String getFileContents(File inputFile) {
-        StringBuilder fileContents = new StringBuilder();
-        try (Scanner fileScanner = new Scanner(inputFile)) {
-            while (fileScanner.hasNext()) {
-                fileContents.append(fileScanner.next()).append("\n");
-            }
-            return fileContents.toString();
-        } catch (IOException e) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "File Error: A txt file exported from " +
-                    "a ZIP file could not be imported. The error is");
-            e.printStackTrace();
-            return "";
-        }
+    private NotesContent generateNoteWithoutSubj(RandomString randString, int subjectId,
+                                                 @NonNull IdAllocator idAllocator,
+                                                 String txtName, String fileContents) {
+        return new NotesContent(idAllocator.nextId(), subjectId, FileFunctions.getFileName(txtName), fileContents,
+                new Date(), randString.nextString());
     }
 
     /** Imports from a ZIP with a subj file.
      * If the format provided in the subj file is incorrect, it will fallback to
      * importZipWithoutSubj with fileName as the subject title. **/
-    private void importZipWithSubj(int subjectId, String fileName, File subjFile) {
-        // Reads the subj file and maps it to a couple of HashMaps
-        try (FileInputStream infoStream = new FileInputStream(subjFile);
-             InflaterInputStream inflatedInfoStream = new InflaterInputStream(infoStream);
-             Scanner infoFileScanner = new Scanner(inflatedInfoStream)) {
+    private void importZipWithSubj(int subjectId, String fileName, @NonNull byte[] subjBytes) {
+        // Reads the subj file into a NoteMetadataTable
+        try (InflaterInputStream inflatedInfoStream = new InflaterInputStream(new ByteArrayInputStream(subjBytes));
+             Scanner infoFileScanner = new Scanner(inflatedInfoStream, "UTF-8")) {
             // First line is title while second line is sort order
             NotesSubject currentSubject = new NotesSubject(subjectId, infoFileScanner.nextLine(),
                     Integer.parseInt(infoFileScanner.nextLine()));
             parseSubjFile(infoFileScanner, currentSubject);
-        } catch (NullPointerException | IOException | ParseException | NumberFormatException e) {
+        } catch (RuntimeException | IOException | ParseException e) {
+            // Includes NullPointerException, NumberFormatException and NoSuchElementException
             Log.w(ActivityConstants.LOG_APP_NAME, "File Error: An error occurred while " +
                     "attempting to parse a .subj file, falling back to importZipWithoutSubj, error is");
             e.printStackTrace();
@@ -202,78 +231,44 @@ class ImportSubjectZipProcess {
      * 6. The alert date of the note, in ISO format, can be null
      * 7. The alert code of the note, can be null **/
     private void parseSubjFile(@NonNull Scanner infoFileScanner, NotesSubject currentSubject)
-            throws ParseException, NumberFormatException, NullPointerException {
+            throws ParseException, NumberFormatException {
+        NoteMetadataTable metadataTable = new NoteMetadataTable(txtContentMap.size());
+        String[] values = new String[7];
         int index = 0;
-        String currentLine, currentNotePath = "";
         while (infoFileScanner.hasNext()) {
-            currentLine = infoFileScanner.nextLine();
-            switch(index) {
-                case 0:
-                    currentNotePath = currentLine;
-                    break;
-                case 1:
-                    titleHashMap.put(currentNotePath, currentLine);
-                    break;
-                case 2:
-                    lastEditedHashMap.put(currentNotePath, ConverterFunctions.parseTime(currentLine, ConverterFunctions.TimeFormat.ISO));
-                    break;
-                case 3:
-                    saltHashMap.put(currentNotePath, currentLine);
-                    break;
-                case 4:
-                    lockedPassHashMap.put(currentNotePath, currentLine);
-                    break;
-                case 5:
-                    if (currentLine.equals("NULL")) alertDateHashMap.put(currentNotePath, null);
-                    else alertDateHashMap.put(currentNotePath, ConverterFunctions.parseTime(currentLine, ConverterFunctions.TimeFormat.ISO));
-                    break;
-                case 6:
-                    if (currentLine.equals("NULL")) alertCodeHashMap.put(currentLine, null);
-                    else alertCodeHashMap.put(currentNotePath, Integer.parseInt(currentLine));
-                    break;
-            }
+            values[index] = infoFileScanner.nextLine();
             index++;
-            if (index > 6) index = 0;
+            if (index == values.length) {
+                metadataTable.put(values[0], values[1], ConverterFunctions.parseTime(values[2],
+                        ConverterFunctions.TimeFormat.ISO), values[3], values[4],
+                        values[5].equals("NULL") ? null : ConverterFunctions.parseTime(values[5],
+                                ConverterFunctions.TimeFormat.ISO),
+                        values[6].equals("NULL") ? null : Integer.parseInt(values[6]));
+                index = 0;
+            }
         }
-        processTxtFilesWithSubj(currentSubject);
+        // A note without a title is imported as if it is not in the .subj file
+        if (index > 1) throw new ParseException("The last note in the .subj file is incomplete", 0);
+        processTxtFilesWithSubj(currentSubject, metadataTable);
     }
 
     /** Process all txt files after tbe data in the .subj file is processed. **/
-    private void processTxtFilesWithSubj(NotesSubject currentSubject) throws NullPointerException {
-        Random rand = new Random();
+    private void processTxtFilesWithSubj(NotesSubject currentSubject, @NonNull NoteMetadataTable metadataTable) {
         RandomString randString = new RandomString(40);
         ArrayList<NotesContent> notesList = new ArrayList<>();
-        NotesContent currentNote;
-        // Get all the existing note IDs
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(activity);
-        List<Integer> notesIdList = database.ContentDao().getAllNoteId();
-        database.close();
-        for (File txtFile: txtFileList) {
-            // Check if a note title with the corresponding file exists
+        IdAllocator idAllocator = reserveNoteIds();
+        for (Map.Entry<String, String> txtEntry: txtContentMap.entrySet()) {
+            // Check if a note with the corresponding file exists
             // If not, fall back to generateNoteWihoutSubj
-            String title = titleHashMap.get(txtFile.getName());
-            if (title == null) {
-                currentNote = generateNoteWithoutSubj(rand, randString, currentSubject.subjectId, notesIdList, txtFile);
+            int row = metadataTable.find(txtEntry.getKey());
+            if (row < 0) {
+                notesList.add(generateNoteWithoutSubj(randString, currentSubject.subjectId, idAllocator,
+                        txtEntry.getKey(), txtEntry.getValue()));
             } else {
-                currentNote = generateNoteWithSubj(rand, currentSubject.subjectId, notesIdList, txtFile);
+                notesList.add(metadataTable.toNote(row, idAllocator.nextId(), currentSubject.subjectId,
+                        txtEntry.getValue()));
             }
-            notesList.add(currentNote);
         }
         new ImportSubject(activity).importSubjectToDatabase(currentSubject, notesList);
     }
-
-    /** Generates a note whose subject is present. **/
-    @NonNull
-    private NotesContent generateNoteWithSubj(@NonNull Random rand, int subjectId,
-                                              @NonNull List<Integer> notesIdList, @NonNull File txtFile)
-            throws NullPointerException {
-        // Generate the noteId
-        String fileName = txtFile.getName();
-        int noteId = rand.nextInt();
-        while (notesIdList.contains(noteId)) noteId = rand.nextInt();
-        return new NotesContent(noteId, subjectId, Objects.requireNonNull(titleHashMap.get(fileName)), getFileContents(txtFile),
-                Objects.requireNonNull(lastEditedHashMap.get(fileName)), Objects.requireNonNull(saltHashMap.get(fileName)),
-                Objects.requireNonNull(lockedPassHashMap.get(fileName)), alertDateHashMap.get(fileName),
-                alertCodeHashMap.get(fileName));
-    }
 }
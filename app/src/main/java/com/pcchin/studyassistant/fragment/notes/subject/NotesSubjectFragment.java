@@ -19,20 +19,25 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ScrollView;
 
 import androidx.annotation.NonNull;
+import androidx.core.util.Pair;
 import androidx.fragment.app.Fragment;
 
 import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.MainActivity;
+import com.pcchin.studyassistant.database.DatabaseExecutor;
 import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.database.notes.NotesPagingSource;
+import com.pcchin.studyassistant.database.notes.NotesPreview;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
 import com.pcchin.studyassistant.database.notes.SubjectDatabase;
 import com.pcchin.studyassistant.fragment.notes.SubjectSelectFragment;
-import com.pcchin.studyassistant.functions.DatabaseFunctions;
 import com.pcchin.studyassistant.ui.ExtendedFragment;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 public class NotesSubjectFragment extends Fragment implements ExtendedFragment {
@@ -46,9 +51,15 @@ public class NotesSubjectFragment extends Fragment implements ExtendedFragment {
     static final int[] sortingImgs = new int[]{R.drawable.ic_sort_atz, R.drawable.ic_sort_zta,
             R.drawable.ic_sort_num_asc, R.drawable.ic_sort_num_des};
 
-    List<NotesContent> notesList;
+    // The number of notes that are loaded at a time
+    private static final int PAGE_SIZE = 40;
+
+    List<NotesPreview> notesList;
     NotesSubject currentSubject;
     int previousNote;
+    private NotesPagingSource pagingSource;
+    private Integer nextPageKey;
+    private boolean isLoadingPage = false;
 
     /** Default constructor. **/
     public NotesSubjectFragment() {
@@ -79,37 +90,86 @@ public class NotesSubjectFragment extends Fragment implements ExtendedFragment {
         return fragment;
     }
 
-    /** Initializes the fragment. Retrieves all of the notes of the subject from the notes. **/
+    /** Initializes the fragment. Retrieves the first page of the notes of the subject
+     * in the background, the notes are displayed once they are loaded.
+     * If a note was previously shown, the first page is extended until it includes the note. **/
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(requireActivity());
         // Get basic info & set title
         if (getArguments() != null) {
             int subjectId = getArguments().getInt(ARG_SUBJECT);
-            currentSubject = database.SubjectDao().searchById(subjectId);
-            notesList = database.ContentDao().searchBySubject(subjectId);
             previousNote = getArguments().getInt(ARG_PREV);
-            checkExpiredNote();
-            DatabaseFunctions.sortNotes(getContext(), currentSubject, notesList);
+            DatabaseExecutor.subjectQuery(requireContext(), this, database -> {
+                NotesSubject subject = database.SubjectDao().searchById(subjectId);
+                checkExpiredNote(database, subjectId);
+                NotesPagingSource source = new NotesPagingSource(subjectId, subject.sortOrder, PAGE_SIZE);
+                int loadSize = PAGE_SIZE;
+                if (previousNote != 0) {
+                    int previousPosition = database.ContentDao()
+                            .getSortedNoteIds(subjectId, subject.sortOrder).indexOf(previousNote);
+                    loadSize = Math.max(PAGE_SIZE, previousPosition + PAGE_SIZE);
+                }
+                return new Pair<>(subject, new Pair<>(source, source.load(database, 0, loadSize)));
+            }, this::onNotesLoaded);
         }
+    }
+
+    /** Displays the subject and its notes after they are loaded from the database. **/
+    private void onNotesLoaded(@NonNull Pair<NotesSubject, Pair<NotesPagingSource,
+            NotesPagingSource.Page>> result) {
+        currentSubject = result.first;
+        pagingSource = result.second.first;
+        notesList = new ArrayList<>(result.second.second.data);
+        nextPageKey = result.second.second.nextKey;
         requireActivity().setTitle(currentSubject.title);
-        database.close();
         setHasOptionsMenu(true);
+        if (getView() != null) {
+            new NotesSubjectFragmentCreateView(NotesSubjectFragment.this)
+                    .displayNotes((ScrollView) getView());
+        }
+    }
+
+    /** Loads the next page of notes in the background and appends them to the list.
+     * Does nothing if a page is already being loaded or if all the notes have been loaded. **/
+    void loadNextPage() {
+        if (isLoadingPage || nextPageKey == null || pagingSource == null) return;
+        isLoadingPage = true;
+        int key = nextPageKey;
+        NotesPagingSource source = pagingSource;
+        DatabaseExecutor.subjectQuery(requireContext(), this, database -> source.load(database, key),
+                page -> {
+                    isLoadingPage = false;
+                    // The list may have been reloaded while the page is loading
+                    if (source != pagingSource) return;
+                    int startIndex = notesList.size();
+                    notesList.addAll(page.data);
+                    nextPageKey = page.nextKey;
+                    if (getView() != null) {
+                        new NotesSubjectFragmentCreateView(NotesSubjectFragment.this)
+                                .appendNotes((ScrollView) getView(), startIndex);
+                    }
+                });
+    }
+
+    /** Reloads the notes from the first page, used when the sort order is changed. **/
+    void reloadNotes() {
+        int subjectId = currentSubject.subjectId;
+        int sortOrder = currentSubject.sortOrder;
+        isLoadingPage = false;
+        DatabaseExecutor.subjectQuery(requireContext(), this, database -> {
+            NotesPagingSource source = new NotesPagingSource(subjectId, sortOrder, PAGE_SIZE);
+            return new Pair<>(source, source.load(database, 0));
+        }, result -> onNotesLoaded(new Pair<>(currentSubject, result)));
     }
 
-    /** Checks for any alerts in notes that are expired. **/
-    private void checkExpiredNote() {
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(requireActivity());
-        for (NotesContent note: notesList) {
-            Calendar storedDate = Calendar.getInstance();
-            if (note.alertDate != null && note.alertDate.before(storedDate.getTime())) {
-                note.alertDate = null;
-                note.alertCode = null;
-                database.ContentDao().update(note);
-            }
+    /** Clears any alerts in the notes of the subject that are expired. Run on the background thread. **/
+    private static void checkExpiredNote(@NonNull SubjectDatabase database, int subjectId) {
+        for (NotesContent note: database.ContentDao().searchAlertBeforeBySubject(subjectId, new Date())) {
+            note.alertDate = null;
+            note.alertCode = null;
+            database.ContentDao().update(note);
         }
-        database.close();
     }
 
     /** Due to the large size of this function, this is passed on to a class of its own. **/
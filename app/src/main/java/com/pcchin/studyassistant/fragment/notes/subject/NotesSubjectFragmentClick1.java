@@ -27,7 +27,6 @@ import com.pcchin.studyassistant.activity.MainActivity;
 import com.pcchin.studyassistant.database.notes.SubjectDatabase;
 import com.pcchin.studyassistant.fragment.notes.edit.NotesEditFragment;
 import com.pcchin.studyassistant.functions.DatabaseFunctions;
-import com.pcchin.studyassistant.functions.GeneralFunctions;
 import com.pcchin.studyassistant.utils.notes.NotesSortAdaptor;
 
 /** 1st class for the functions for the onClickListeners in the fragment. **/
@@ -107,8 +106,7 @@ public class NotesSubjectFragmentClick1 {
                     database.SubjectDao().update(fragment.currentSubject);
                     database.close();
                     dialogInterface.dismiss();
-                    DatabaseFunctions.sortNotes(fragment.getContext(), fragment.currentSubject, fragment.notesList);
-                    GeneralFunctions.reloadFragment(fragment);
+                    fragment.reloadNotes();
                 })
                 .setNegativeButton(android.R.string.cancel, null)
                 .create())
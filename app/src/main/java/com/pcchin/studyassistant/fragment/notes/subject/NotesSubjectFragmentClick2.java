@@ -22,7 +22,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
-import android.os.Handler;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -35,6 +34,7 @@ import com.pcchin.customdialog.DismissibleDialogFragment;
 import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.ActivityConstants;
 import com.pcchin.studyassistant.activity.MainActivity;
+import com.pcchin.studyassistant.database.DatabaseExecutor;
 import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
 import com.pcchin.studyassistant.database.notes.SubjectDatabase;
@@ -46,6 +46,8 @@ import com.pcchin.studyassistant.functions.NavViewFunctions;
 import com.pcchin.studyassistant.utils.misc.InputValidation;
 import com.pcchin.studyassistant.utils.notes.NotesNotifyReceiver;
 
+import java.util.List;
+
 /** 2nd class for the functions for the onClickListeners in the fragment. **/
 public class NotesSubjectFragmentClick2 {
     private final NotesSubjectFragment fragment;
@@ -123,11 +125,14 @@ public class NotesSubjectFragmentClick2 {
             new DefaultDialogFragment(new AlertDialog.Builder(fragment.requireContext())
                     .setTitle(R.string.n2_export_format)
                     .setItems(R.array.n_import_subject_format, (dialogInterface, i) ->
-                            new Handler().post(() -> {
-                                if (i == 0) new ExportSubjectZip(fragment, fragment.notesList,
+                            DatabaseExecutor.subjectQuery(fragment.requireContext(), fragment,
+                                    database -> database.ContentDao().searchBySubjectSorted(
+                                            fragment.currentSubject.subjectId, fragment.currentSubject.sortOrder),
+                                    notesList -> {
+                                if (i == 0) new ExportSubjectZip(fragment, notesList,
                                         fragment.currentSubject).askZipPassword();
                                 else new ExportSubjectSubject(fragment, fragment.currentSubject,
-                                        fragment.notesList).exportSubject();
+                                        notesList).exportSubject();
                             }))
                     .setNegativeButton(android.R.string.cancel, null)
                     .create())
@@ -149,10 +154,11 @@ public class NotesSubjectFragmentClick2 {
 
     /** Deletes the subject from the database and cleans up any remaining resources. **/
     private void deleteSubject(Activity activity) {
-        deletePhantomAlerts(activity);
+        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(fragment.requireActivity());
+        deletePhantomAlerts(activity, database.ContentDao()
+                .searchWithAlertBySubject(fragment.currentSubject.subjectId));
 
         // Deletes subject from database
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(fragment.requireActivity());
         database.SubjectDao().delete(fragment.currentSubject);
         database.ContentDao().batchDeleteBySubject(fragment.currentSubject.subjectId);
         database.close();
@@ -163,8 +169,8 @@ public class NotesSubjectFragmentClick2 {
     }
 
     /** Deletes any alerts that belong to the subject. **/
-    private void deletePhantomAlerts(Activity activity) {
-        for (NotesContent note: fragment.notesList) {
+    private void deletePhantomAlerts(Activity activity, @NonNull List<NotesContent> notesList) {
+        for (NotesContent note: notesList) {
             AlarmManager manager = (AlarmManager) activity.getSystemService(Context.ALARM_SERVICE);
             if (manager != null && note.alertDate != null) {
                 // Get PendingIntent for note alert
@@ -25,7 +25,7 @@ import androidx.annotation.NonNull;
 
 import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.MainActivity;
-import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.database.notes.NotesPreview;
 import com.pcchin.studyassistant.functions.ConverterFunctions;
 
 /** Functions for handling the onCreateView function in
@@ -40,35 +40,53 @@ class NotesSubjectFragmentCreateView {
     }
 
     /** Creates the fragment.
-     * Display each note and center the note that was previously selected if needed. **/
+     * The notes are displayed directly if they have already been loaded. **/
     View onCreateView(LayoutInflater inflater, ViewGroup container) {
         // Inflate the layout for this fragment
         ScrollView returnScroll = (ScrollView) inflater.inflate(R.layout.blank_list,
                 container, false);
+        if (fragment.notesList != null) displayNotes(returnScroll);
+        // Load the next page once the list is scrolled to within a screen of its end
         LinearLayout returnView = returnScroll.findViewById(R.id.blank_linear);
+        returnScroll.getViewTreeObserver().addOnScrollChangedListener(() -> {
+            if (returnView.getBottom() - returnScroll.getHeight() - returnScroll.getScrollY()
+                    < returnScroll.getHeight()) {
+                fragment.loadNextPage();
+            }
+        });
+        return returnScroll;
+    }
+
+    /** Display each note that has been loaded and center the note that was previously selected if needed. **/
+    void displayNotes(@NonNull ScrollView returnScroll) {
+        LinearLayout returnView = returnScroll.findViewById(R.id.blank_linear);
+        returnView.removeAllViews();
+        appendNotes(returnScroll, 0);
+    }
 
-        // Add each note to the view
-        for (int i = 0; i < fragment.notesList.size(); i++) {
-            NotesContent currentNote = fragment.notesList.get(i);
+    /** Adds the notes starting from startIndex to the view. **/
+    void appendNotes(@NonNull ScrollView returnScroll, int startIndex) {
+        LinearLayout returnView = returnScroll.findViewById(R.id.blank_linear);
+        for (int i = startIndex; i < fragment.notesList.size(); i++) {
+            NotesPreview currentNote = fragment.notesList.get(i);
             // Add note to view
             @SuppressLint("InflateParams") LinearLayout miniNote = (LinearLayout) fragment.getLayoutInflater()
                     .inflate(R.layout.n2_notes_mini, null);
             initMiniNote(miniNote, currentNote);
-            initMiniNoteListener(miniNote, returnView, i);
+            initMiniNoteListener(miniNote, returnView, currentNote.noteId);
             if (currentNote.noteId == fragment.previousNote) {
                 returnScroll.post(() -> returnScroll.scrollTo(0, miniNote.getTop()));
             }
         }
-        return returnScroll;
     }
 
     /** Initializes the mini note view. **/
-    private void initMiniNote(@NonNull LinearLayout miniNote, @NonNull NotesContent note) {
+    private void initMiniNote(@NonNull LinearLayout miniNote, @NonNull NotesPreview note) {
         ((TextView) miniNote.findViewById(R.id.n2_mini_title)).setText(note.noteTitle);
         ((TextView) miniNote.findViewById(R.id.n2_mini_date)).setText(String.format("%s%s",
                 fragment.getString(R.string.n_last_edited), ConverterFunctions
                         .formatTime(note.lastEdited, ConverterFunctions.TimeFormat.DATETIME)));
-        String miniText = note.noteContent.replace("\n* ", "\n ● ");
+        String miniText = note.preview.replace("\n* ", "\n ● ");
         if (miniText.startsWith("* ")) {
             miniText = miniText.replaceFirst("\\* ", " ● ");
         }
@@ -84,11 +102,12 @@ class NotesSubjectFragmentCreateView {
     }
 
     /** Initializes the listener for the mini note. **/
-    private void initMiniNoteListener(@NonNull LinearLayout miniNote, @NonNull LinearLayout returnView, final int i) {
+    private void initMiniNoteListener(@NonNull LinearLayout miniNote, @NonNull LinearLayout returnView,
+                                      final int noteId) {
         // Set on click listener
         View.OnClickListener displayNoteListener = v -> {
             ((MainActivity) fragment.requireActivity()).displayNotes(fragment.currentSubject.subjectId);
-            ((MainActivity) fragment.requireActivity()).pager.setCurrentItem(i, false);
+            ((MainActivity) fragment.requireActivity()).pager.setPagerOrder(noteId);
         };
 
         miniNote.setOnClickListener(displayNoteListener);
@@ -97,9 +116,9 @@ class NotesSubjectFragmentCreateView {
     }
 
     /** Initializes the mini icons for the note. **/
-    private void initNoteIcons(LinearLayout miniNote, @NonNull NotesContent note) {
+    private void initNoteIcons(LinearLayout miniNote, @NonNull NotesPreview note) {
         // Check if note is locked
-        if (note.lockedPass.length() == 0) {
+        if (!note.isLocked) {
             miniNote.findViewById(R.id.n2_mini_lock).setVisibility(View.GONE);
         } else {
             miniNote.findViewById(R.id.n2_mini_lock).setVisibility(View.VISIBLE);
@@ -34,8 +34,8 @@ import com.pcchin.studyassistant.fragment.notes.edit.NotesEditFragment;
 import com.pcchin.studyassistant.functions.DatabaseFunctions;
 import com.pcchin.studyassistant.functions.FileFunctions;
 import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.security.KdfService;
 
-import java.util.Objects;
 
 /** The 1st class of functions used when the fragment is clicked. **/
 public class NotesViewFragmentClick1 {
@@ -105,14 +105,21 @@ public class NotesViewFragmentClick1 {
         if (inputLayout.getEditText() != null) {
             inputText = inputLayout.getEditText().getText().toString();
         }
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(fragment.requireActivity());
         if (inputText.length() == 0) {
             // As lockedPass cannot be null and it would always be in Base 64 (With a = at the end)
             // NONE would not clash with any possible base64 passwords
-            fragment.note.lockedPass = "NONE";
+            updateNoteLock("NONE");
         } else {
-            fragment.note.lockedPass = SecurityFunctions.passwordHash(fragment.note.lockedSalt, inputText);
+            KdfService.passwordHash(fragment, inputText, fragment.note.lockedSalt, this::updateNoteLock,
+                    e -> Toast.makeText(fragment.requireContext(), R.string.error_password_failed,
+                            Toast.LENGTH_SHORT).show());
         }
+    }
+
+    /** Updates the note to be locked with the given hash. **/
+    private void updateNoteLock(String lockedPass) {
+        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(fragment.requireActivity());
+        fragment.note.lockedPass = lockedPass;
         database.ContentDao().update(fragment.note);
         Toast.makeText(fragment.requireContext(), R.string.n3_note_locked, Toast.LENGTH_SHORT).show();
         database.close();
@@ -158,16 +165,25 @@ public class NotesViewFragmentClick1 {
         if (inputLayout.getEditText() != null) {
             inputText = inputLayout.getEditText().getText().toString();
         }
-        if (Objects.equals(SecurityFunctions.passwordHash(inputText, fragment.note.lockedSalt),
-                fragment.note.lockedPass)) {
-            // Removes password
-            dismissibleFragment.dismiss();
-            removeLock();
-        } else {
-            // Show error dialog
+        String salt = fragment.note.lockedSalt, lockedPass = fragment.note.lockedPass, finalInputText = inputText;
+        // Older versions swapped the password and the salt when locking the note,
+        // so legacy hashes are checked in both orders
+        KdfService.run(fragment, () -> SecurityFunctions.verifyPassword(finalInputText, salt, lockedPass)
+                || (!lockedPass.startsWith("$") && SecurityFunctions.verifyPassword(salt, finalInputText, lockedPass)),
+                isCorrect -> {
+            if (isCorrect) {
+                // Removes password
+                dismissibleFragment.dismiss();
+                removeLock();
+            } else {
+                // Show error dialog
+                inputLayout.setErrorEnabled(true);
+                inputLayout.setError(fragment.getString(R.string.error_password_incorrect));
+            }
+        }, e -> {
             inputLayout.setErrorEnabled(true);
-            inputLayout.setError(fragment.getString(R.string.error_password_incorrect));
-        }
+            inputLayout.setError(fragment.getString(R.string.error_password_failed));
+        });
     }
 
     /** Removes the lock for the note and refreshes the menu.  **/
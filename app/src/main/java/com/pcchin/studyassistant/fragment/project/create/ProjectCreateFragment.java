@@ -28,6 +28,7 @@ import com.google.android.material.textfield.TextInputLayout;
 import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.MainActivity;
 import com.pcchin.studyassistant.database.project.ProjectDatabase;
+import com.pcchin.studyassistant.database.project.ProjectIdGenerator;
 import com.pcchin.studyassistant.database.project.data.MemberData;
 import com.pcchin.studyassistant.database.project.data.ProjectData;
 import com.pcchin.studyassistant.database.project.data.RoleData;
@@ -35,9 +36,9 @@ import com.pcchin.studyassistant.fragment.project.ProjectInfoFragment;
 import com.pcchin.studyassistant.fragment.project.ProjectSelectFragment;
 import com.pcchin.studyassistant.functions.DatabaseFunctions;
 import com.pcchin.studyassistant.functions.NavViewFunctions;
-import com.pcchin.studyassistant.functions.SecurityFunctions;
 import com.pcchin.studyassistant.ui.ExtendedFragment;
 import com.pcchin.studyassistant.utils.misc.RandomString;
+import com.pcchin.studyassistant.utils.security.KdfService;
 
 import java.util.Objects;
 
@@ -99,42 +100,70 @@ public class ProjectCreateFragment extends Fragment implements ExtendedFragment
             }
 
             if (allInputCorrect) {
-                // Creates admin role
-                RandomString idRand = new RandomString(48),
-                        saltRand = new RandomString(40);
-                String projectID = DatabaseFunctions.generateValidProjectString(idRand, DatabaseFunctions.PROJ_ID_TYPE.PROJECT,
-                        projectDatabase);
-                RoleData adminRole = ProjectCreateFragmentCreate.createAdminRole(customAdmin, idRand,
-                            saltRand, projectID, customAdminName, customAdminPass1, projectDatabase),
-                        memberRole = ProjectCreateFragmentCreate.createMemberRole(customMember, idRand,
-                            saltRand, projectID, customMemberName, customMemberPass1, projectDatabase);
-                projectDatabase.RoleDao().insert(adminRole);
-                projectDatabase.RoleDao().insert(memberRole);
-
-                String projectSalt = DatabaseFunctions.generateValidProjectString(idRand, DatabaseFunctions.PROJ_ID_TYPE.PROJECT,
-                        projectDatabase), projectPass;
-                if (Objects.requireNonNull(projectPass1.getEditText()).getText().length() == 0) {
-                    projectPass = "";
-                } else {
-                    projectPass = SecurityFunctions.passwordHash(projectPass1.getEditText()
-                            .getText().toString(), projectSalt);
-                }
-
-                if (enableMembers) {
-                    MemberData initialMember = ProjectCreateFragmentCreate.createInitialMember(idRand, saltRand,
-                            projectID, adminRole.roleID,
-                            memberName, memberPass1, projectDatabase);
-                    projectDatabase.MemberDao().insert(initialMember);
-                    createProjectWithMembers(returnView, adminRole, memberRole, initialMember,
-                            projectName, projectID, projectSalt, projectPass);
-                } else {
-                    createProjectWithoutMembers(adminRole, memberRole, projectID, projectSalt, projectName, projectPass1);
-                }
+                // The IDs of each type are checked with one query
+                RandomString idRand = new RandomString(48);
+                ProjectIdGenerator idGenerator = new ProjectIdGenerator(projectDatabase, idRand);
+                idGenerator.reserve(DatabaseFunctions.PROJ_ID_TYPE.ROLE, 2);
+                if (enableMembers) idGenerator.reserve(DatabaseFunctions.PROJ_ID_TYPE.MEMBER, 1);
+                String projectID = idGenerator.next(DatabaseFunctions.PROJ_ID_TYPE.PROJECT),
+                        adminRoleID = idGenerator.next(DatabaseFunctions.PROJ_ID_TYPE.ROLE),
+                        memberRoleID = idGenerator.next(DatabaseFunctions.PROJ_ID_TYPE.ROLE),
+                        memberID = enableMembers ? idGenerator.next(DatabaseFunctions.PROJ_ID_TYPE.MEMBER) : null;
+                // The salt does not need to be checked against the IDs of the projects
+                String projectSalt = idRand.nextString();
+
+                // The inputs are read here as the passwords are hashed on the background thread
+                boolean hasMembers = enableMembers, hasCustomAdmin = customAdmin, hasCustomMember = customMember;
+                String projectPass = getInputText(projectPass1),
+                        memberNameText = getInputText(memberName), memberPassText = getInputText(memberPass1),
+                        adminNameText = getInputText(customAdminName), adminPassText = getInputText(customAdminPass1),
+                        memberRoleNameText = getInputText(customMemberName),
+                        memberRolePassText = getInputText(customMemberPass1);
+                RandomString saltRand = new RandomString(40);
+                // The button is disabled while the passwords are hashed so that the project is only created once
+                view.setEnabled(false);
+                KdfService.run(this, () -> {
+                    ProjectCreateFragmentCreate.CreatedProject project = new ProjectCreateFragmentCreate.CreatedProject();
+                    project.adminRole = ProjectCreateFragmentCreate.createAdminRole(hasCustomAdmin, adminRoleID,
+                            saltRand, projectID, adminNameText, adminPassText);
+                    project.memberRole = ProjectCreateFragmentCreate.createMemberRole(hasCustomMember, memberRoleID,
+                            saltRand, projectID, memberRoleNameText, memberRolePassText);
+                    if (hasMembers) {
+                        project.initialMember = ProjectCreateFragmentCreate.createInitialMember(memberID, saltRand,
+                                projectID, adminRoleID, memberNameText, memberPassText);
+                    }
+                    project.projectPass = ProjectCreateFragmentCreate.createProjectPass(projectPass, projectSalt);
+                    return project;
+                }, project -> insertProject(returnView, project, projectName, projectID, projectSalt), e -> {
+                    view.setEnabled(true);
+                    Toast.makeText(requireContext(), R.string.error_password_failed, Toast.LENGTH_SHORT).show();
+                });
             }
         });
         return returnView;
     }
 
+    /** Returns the text in the TextInputLayout. **/
+    @NonNull
+    private static String getInputText(@NonNull TextInputLayout inputLayout) {
+        return Objects.requireNonNull(inputLayout.getEditText()).getText().toString();
+    }
+
+    /** Inserts the roles, the initial member and the project once all the passwords have been hashed. **/
+    private void insertProject(View returnView, @NonNull ProjectCreateFragmentCreate.CreatedProject project,
+                               TextInputLayout projectName, String projectID, String projectSalt) {
+        projectDatabase.RoleDao().insert(project.adminRole);
+        projectDatabase.RoleDao().insert(project.memberRole);
+        if (project.initialMember != null) {
+            projectDatabase.MemberDao().insert(project.initialMember);
+            createProjectWithMembers(returnView, project.adminRole, project.memberRole, project.initialMember,
+                    projectName, projectID, projectSalt, project.projectPass);
+        } else {
+            createProjectWithoutMembers(project.adminRole, project.memberRole, projectID, projectSalt,
+                    projectName, project.projectPass);
+        }
+    }
+
     /** Create a project with members enabled. **/
     private void createProjectWithMembers(View returnView, RoleData adminRole, RoleData memberRole,
                                           MemberData initialMember, TextInputLayout projectName,
@@ -159,17 +188,10 @@ public class ProjectCreateFragment extends Fragment implements ExtendedFragment
     /** Create a project without members enabled. **/
     private void createProjectWithoutMembers(RoleData adminRole, RoleData memberRole,
                                              String projectID, String projectSalt,
-                                             TextInputLayout projectName, @NonNull TextInputLayout projectPass1) {
-        if (Objects.requireNonNull(projectPass1.getEditText()).getText().length() == 0) {
-            projectDatabase.ProjectDao().insert(new ProjectData(projectID,
-                    Objects.requireNonNull(projectName.getEditText()).getText().toString(), projectSalt,
-                    "", enableRoles, adminRole, memberRole));
-        } else {
-            projectDatabase.ProjectDao().insert(new ProjectData(projectID,
-                    Objects.requireNonNull(projectName.getEditText()).getText().toString(), projectSalt,
-                    SecurityFunctions.passwordHash(projectPass1.getEditText().getText().toString(), projectSalt),
-                    enableRoles, adminRole, memberRole));
-        }
+                                             TextInputLayout projectName, String projectPass) {
+        projectDatabase.ProjectDao().insert(new ProjectData(projectID,
+                Objects.requireNonNull(projectName.getEditText()).getText().toString(), projectSalt,
+                projectPass, enableRoles, adminRole, memberRole));
         projectDatabase.close();
         startProjectInfo(projectID, adminRole.roleID, false);
     }
@@ -14,49 +14,52 @@
 package com.pcchin.studyassistant.fragment.project.create;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.google.android.material.textfield.TextInputLayout;
-import com.pcchin.studyassistant.database.project.ProjectDatabase;
 import com.pcchin.studyassistant.database.project.data.MemberData;
 import com.pcchin.studyassistant.database.project.data.RoleData;
-import com.pcchin.studyassistant.functions.DatabaseFunctions;
 import com.pcchin.studyassistant.functions.SecurityFunctions;
 import com.pcchin.studyassistant.utils.misc.RandomString;
 
-import java.util.Objects;
-
-/** Functions used when creating a project in ProjectCreateFragment. **/
+/** Functions used when creating a project in ProjectCreateFragment.
+ * The passwords are hashed in these functions, so they should be run through KdfService.
+ * The IDs are generated beforehand as they are checked against the database. **/
 final class ProjectCreateFragmentCreate {
     private ProjectCreateFragmentCreate() {
         throw new IllegalStateException("Utility class");
     }
 
+    /** The roles, the initial member and the password hash of a new project,
+     * which are created together on the background thread. **/
+    static final class CreatedProject {
+        RoleData adminRole, memberRole;
+        @Nullable MemberData initialMember;
+        String projectPass;
+    }
+
+    /** Hashes the password of the project. A blank password is not hashed. **/
+    @NonNull
+    static String createProjectPass(@NonNull String projectPass, String projectSalt) {
+        return projectPass.length() == 0 ? "" : SecurityFunctions.passwordHash(projectPass, projectSalt);
+    }
+
     /** Creates the admin role based on the given info. **/
     @NonNull
-    static RoleData createAdminRole(boolean customAdmin, RandomString idRand,
-                                     RandomString saltRand, String projectID,
-                                     TextInputLayout customAdminName,
-                                     TextInputLayout customAdminPass1,
-                                     ProjectDatabase projectDatabase) {
+    static RoleData createAdminRole(boolean customAdmin, String roleID, RandomString saltRand,
+                                    String projectID, @NonNull String customAdminName,
+                                    @NonNull String customAdminPass) {
         RoleData adminRole;
-        if (customAdmin && customAdminName.getEditText() != null && customAdminPass1.getEditText() != null) {
-            if (customAdminPass1.getEditText().getText().length() > 0) {
+        if (customAdmin) {
+            if (customAdminPass.length() > 0) {
                 // Admin with password
                 String adminSalt = saltRand.nextString();
-                adminRole = new RoleData(DatabaseFunctions.generateValidProjectString(idRand,
-                        DatabaseFunctions.PROJ_ID_TYPE.ROLE, projectDatabase), projectID,
-                        customAdminName.getEditText().getText().toString(),
-                        adminSalt, SecurityFunctions.passwordHash(customAdminPass1
-                        .getEditText().getText().toString(), adminSalt));
+                adminRole = new RoleData(roleID, projectID, customAdminName,
+                        adminSalt, SecurityFunctions.passwordHash(customAdminPass, adminSalt));
             } else {
-                adminRole = new RoleData(DatabaseFunctions.generateValidProjectString(idRand,
-                        DatabaseFunctions.PROJ_ID_TYPE.ROLE, projectDatabase), projectID,
-                        customAdminName.getEditText().getText().toString(), saltRand.nextString(), "");
+                adminRole = new RoleData(roleID, projectID, customAdminName, saltRand.nextString(), "");
             }
         } else {
-            adminRole = new RoleData(DatabaseFunctions.generateValidProjectString(idRand,
-                    DatabaseFunctions.PROJ_ID_TYPE.ROLE, projectDatabase), projectID,
-                    "Admin", saltRand.nextString(), "");
+            adminRole = new RoleData(roleID, projectID, "Admin", saltRand.nextString(), "");
         }
         setAdminPrivileges(adminRole);
         return adminRole;
@@ -83,71 +86,48 @@ final class ProjectCreateFragmentCreate {
 
     /** Creates the member role based on the given info. **/
     @NonNull
-    static RoleData createMemberRole(boolean customMember, RandomString idRand,
-                                      RandomString saltRand, String projectID,
-                                      TextInputLayout customMemberName,
-                                      TextInputLayout customMemberPass1,
-                                      ProjectDatabase projectDatabase) {
+    static RoleData createMemberRole(boolean customMember, String roleID, RandomString saltRand,
+                                     String projectID, @NonNull String customMemberName,
+                                     @NonNull String customMemberPass) {
         RoleData memberRole;
         // Creates member role
         if (customMember) {
-            memberRole = getCustomMemberRole(projectDatabase, projectID, idRand, saltRand,
-                    customMemberName, customMemberPass1);
+            memberRole = getCustomMemberRole(roleID, projectID, saltRand,
+                    customMemberName, customMemberPass);
         } else {
-            memberRole = new RoleData(DatabaseFunctions.generateValidProjectString(idRand,
-                    DatabaseFunctions.PROJ_ID_TYPE.ROLE, projectDatabase), projectID,
-                    "Member", saltRand.nextString(), "");
+            memberRole = new RoleData(roleID, projectID, "Member", saltRand.nextString(), "");
         }
         return memberRole;
     }
 
     /** Gets a custom member role based on the inputs provided by the user. **/
     @NonNull
-    private static RoleData getCustomMemberRole(ProjectDatabase projectDatabase, String projectID,
-                                                RandomString idRand, RandomString saltRand,
-                                                TextInputLayout customMemberName, @NonNull TextInputLayout customMemberPass1) {
+    private static RoleData getCustomMemberRole(String roleID, String projectID, RandomString saltRand,
+                                                @NonNull String customMemberName,
+                                                @NonNull String customMemberPass) {
         RoleData memberRole;
-        if (Objects.requireNonNull(customMemberPass1.getEditText()).getText().length() > 0) {
-            // Admin with password
+        if (customMemberPass.length() > 0) {
+            // Member with password
             String memberSalt = saltRand.nextString();
-            memberRole = new RoleData(DatabaseFunctions.generateValidProjectString(idRand,
-                    DatabaseFunctions.PROJ_ID_TYPE.ROLE, projectDatabase), projectID,
-                    Objects.requireNonNull(customMemberName.getEditText()).getText().toString(),
-                    memberSalt, SecurityFunctions.passwordHash(customMemberPass1
-                    .getEditText().getText().toString(), memberSalt));
+            memberRole = new RoleData(roleID, projectID, customMemberName,
+                    memberSalt, SecurityFunctions.passwordHash(customMemberPass, memberSalt));
         } else {
-            memberRole = new RoleData(DatabaseFunctions.generateValidProjectString(idRand,
-                    DatabaseFunctions.PROJ_ID_TYPE.ROLE, projectDatabase), projectID,
-                    Objects.requireNonNull(customMemberName.getEditText()).getText().toString(),
-                    saltRand.nextString(), "");
+            memberRole = new RoleData(roleID, projectID, customMemberName, saltRand.nextString(), "");
         }
         return memberRole;
     }
 
     /** Creates the initial member based on the given info. **/
-    static MemberData createInitialMember(RandomString idRand, @NonNull RandomString saltRand,
+    @NonNull
+    static MemberData createInitialMember(String memberID, @NonNull RandomString saltRand,
                                           String projectID, String adminRoleID,
-                                          @NonNull TextInputLayout memberName,
-                                          TextInputLayout memberPass1,
-                                          ProjectDatabase projectDatabase) {
-        MemberData initialMember = null;
+                                          @NonNull String memberName, @NonNull String memberPass) {
         String memberSalt = saltRand.nextString();
-        if (memberName.getEditText() != null && memberPass1.getEditText() != null) {
-            if (memberPass1.getEditText().getText().length() > 0) {
-                initialMember = new MemberData(DatabaseFunctions
-                        .generateValidProjectString(idRand, DatabaseFunctions.PROJ_ID_TYPE.MEMBER, projectDatabase),
-                        projectID, memberName.getEditText().getText().toString(), "",
-                        memberSalt,
-                        SecurityFunctions.passwordHash(memberPass1.getEditText()
-                                .getText().toString(), memberSalt),
-                        adminRoleID);
-            } else {
-                initialMember = new MemberData(DatabaseFunctions
-                        .generateValidProjectString(idRand, DatabaseFunctions.PROJ_ID_TYPE.MEMBER, projectDatabase),
-                        projectID, memberName.getEditText().getText().toString(), "",
-                        memberSalt, "", adminRoleID);
-            }
+        if (memberPass.length() > 0) {
+            return new MemberData(memberID, projectID, memberName, "", memberSalt,
+                    SecurityFunctions.passwordHash(memberPass, memberSalt), adminRoleID);
+        } else {
+            return new MemberData(memberID, projectID, memberName, "", memberSalt, "", adminRoleID);
         }
-        return initialMember;
     }
 }
@@ -14,6 +14,7 @@
 package com.pcchin.studyassistant.fragment.project.verify;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.InputType;
@@ -37,8 +38,8 @@ import com.pcchin.studyassistant.fragment.project.ProjectInfoFragment;
 import com.pcchin.studyassistant.fragment.project.ProjectSelectFragment;
 import com.pcchin.studyassistant.functions.DataFunctions;
 import com.pcchin.studyassistant.functions.DatabaseFunctions;
-import com.pcchin.studyassistant.functions.SecurityFunctions;
 import com.pcchin.studyassistant.ui.ExtendedFragment;
+import com.pcchin.studyassistant.utils.security.KdfService;
 
 import java.io.File;
 import java.util.Objects;
@@ -132,20 +133,32 @@ public class ProjectLoginFragment extends Fragment implements ExtendedFragment {
     /** Check whether the password for the project is correct. **/
     private void checkProjectPass(DismissibleDialogFragment dismissibleFragment, MainActivity activity,
                                   @NonNull TextInputLayout passwordLayout) {
-        if (Objects.equals(SecurityFunctions.passwordHash(Objects.requireNonNull(
-                passwordLayout.getEditText()).getText().toString(), project.salt), project.projectPass)) {
-            // Password is correct
-            dismissibleFragment.dismiss();
-            if (!project.membersEnabled && !project.rolesEnabled) {
-                // No secondary check
-                projectDatabase.close();
-                activity.displayFragment(ProjectInfoFragment.newInstance(project.projectID, "admin",
-                        false, true));
+        String inputPassword = Objects.requireNonNull(passwordLayout.getEditText()).getText().toString();
+        KdfService.verifyPassword(this, inputPassword, project.salt, project.projectPass, isCorrect -> {
+            if (isCorrect) {
+                // Password is correct
+                Context appContext = activity.getApplicationContext();
+                KdfService.rehashIfNeeded(inputPassword, project.salt, project.projectPass, newHash -> {
+                    ProjectDatabase database = DatabaseFunctions.getProjectDatabase(appContext);
+                    try {
+                        project.projectPass = newHash;
+                        database.ProjectDao().update(project);
+                    } finally {
+                        database.close();
+                    }
+                });
+                dismissibleFragment.dismiss();
+                if (!project.membersEnabled && !project.rolesEnabled) {
+                    // No secondary check
+                    projectDatabase.close();
+                    activity.displayFragment(ProjectInfoFragment.newInstance(project.projectID, "admin",
+                            false, true));
+                }
+            } else {
+                passwordLayout.setError(getString(
+                        R.string.error_password_incorrect));
             }
-        } else {
-            passwordLayout.setError(getString(
-                    R.string.error_password_incorrect));
-        }
+        }, e -> passwordLayout.setError(getString(R.string.error_password_failed)));
     }
 
     /** Sets up the layout for the login fragment. **/
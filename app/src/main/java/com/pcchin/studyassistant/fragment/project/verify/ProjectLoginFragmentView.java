@@ -13,6 +13,7 @@
 
 package com.pcchin.studyassistant.fragment.project.verify;
 
+import android.content.Context;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Spinner;
@@ -27,8 +28,9 @@ import com.pcchin.studyassistant.database.project.data.MemberData;
 import com.pcchin.studyassistant.database.project.data.ProjectData;
 import com.pcchin.studyassistant.database.project.data.RoleData;
 import com.pcchin.studyassistant.fragment.project.ProjectInfoFragment;
-import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.functions.DatabaseFunctions;
 import com.pcchin.studyassistant.activity.MainActivity;
+import com.pcchin.studyassistant.utils.security.KdfService;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -96,18 +98,37 @@ class ProjectLoginFragmentView {
     private void checkMemberPass(@NonNull TextInputLayout passwordInputLayout,
                                  @NonNull MemberData targetMember) {
         String inputPassword = Objects.requireNonNull(passwordInputLayout.getEditText()).getText().toString();
-        // Check if password entered is correct
-        String hashedPassword = SecurityFunctions.passwordHash(inputPassword, targetMember.salt);
         // Allows logging in with blank password if the password for the member is blank as well
-        if (Objects.equals(hashedPassword, targetMember.memberPass) ||
-                (inputPassword.length() == 0 && targetMember.memberPass.length() == 0)) {
+        if (inputPassword.length() == 0 && targetMember.memberPass.length() == 0) {
             projectDatabase.close();
             activity.displayFragment(ProjectInfoFragment.newInstance(project.projectID,
                     targetMember.memberID, true, true));
-        } else {
-            passwordInputLayout.setErrorEnabled(true);
-            passwordInputLayout.setError(activity.getString(R.string.v_error_username_password_incorrect));
+            return;
         }
+        // Check if password entered is correct
+        KdfService.verifyPassword(activity, inputPassword, targetMember.salt, targetMember.memberPass, isCorrect -> {
+            if (isCorrect) {
+                Context appContext = activity.getApplicationContext();
+                KdfService.rehashIfNeeded(inputPassword, targetMember.salt, targetMember.memberPass, newHash -> {
+                    ProjectDatabase database = DatabaseFunctions.getProjectDatabase(appContext);
+                    try {
+                        targetMember.memberPass = newHash;
+                        database.MemberDao().update(targetMember);
+                    } finally {
+                        database.close();
+                    }
+                });
+                projectDatabase.close();
+                activity.displayFragment(ProjectInfoFragment.newInstance(project.projectID,
+                        targetMember.memberID, true, true));
+            } else {
+                passwordInputLayout.setErrorEnabled(true);
+                passwordInputLayout.setError(activity.getString(R.string.v_error_username_password_incorrect));
+            }
+        }, e -> {
+            passwordInputLayout.setErrorEnabled(true);
+            passwordInputLayout.setError(activity.getString(R.string.error_password_failed));
+        });
     }
 
     /** Display the signup button if conditions are met. **/
@@ -165,16 +186,29 @@ class ProjectLoginFragmentView {
     /** Check if the password entered for the role is correct. **/
     private void checkRolePass(TextInputLayout passwordInputLayout,
                                String inputPassword, @NonNull RoleData roleSelected) {
-        String hashedPassword = SecurityFunctions.passwordHash(
-                inputPassword, roleSelected.salt);
-        if (Objects.equals(hashedPassword, roleSelected.rolePass)) {
-            projectDatabase.close();
-            activity.displayFragment(ProjectInfoFragment.newInstance(project.projectID, roleSelected.roleID,
-                    false, true));
-        } else {
+        KdfService.verifyPassword(activity, inputPassword, roleSelected.salt, roleSelected.rolePass, isCorrect -> {
+            if (isCorrect) {
+                Context appContext = activity.getApplicationContext();
+                KdfService.rehashIfNeeded(inputPassword, roleSelected.salt, roleSelected.rolePass, newHash -> {
+                    ProjectDatabase database = DatabaseFunctions.getProjectDatabase(appContext);
+                    try {
+                        roleSelected.rolePass = newHash;
+                        database.RoleDao().update(roleSelected);
+                    } finally {
+                        database.close();
+                    }
+                });
+                projectDatabase.close();
+                activity.displayFragment(ProjectInfoFragment.newInstance(project.projectID, roleSelected.roleID,
+                        false, true));
+            } else {
+                passwordInputLayout.setErrorEnabled(true);
+                passwordInputLayout.setError(activity.getString(R.string.error_password_incorrect));
+            }
+        }, e -> {
             passwordInputLayout.setErrorEnabled(true);
-            passwordInputLayout.setError(activity.getString(R.string.error_password_incorrect));
-        }
+            passwordInputLayout.setError(activity.getString(R.string.error_password_failed));
+        });
     }
 
     /** Reopens the database when the fragment is resumed. **/
@@ -33,9 +33,9 @@ import com.pcchin.studyassistant.database.project.data.ProjectData;
 import com.pcchin.studyassistant.fragment.project.ProjectInfoFragment;
 import com.pcchin.studyassistant.functions.DataFunctions;
 import com.pcchin.studyassistant.functions.DatabaseFunctions;
-import com.pcchin.studyassistant.functions.SecurityFunctions;
 import com.pcchin.studyassistant.ui.ExtendedFragment;
 import com.pcchin.studyassistant.utils.misc.RandomString;
+import com.pcchin.studyassistant.utils.security.KdfService;
 
 import java.util.Objects;
 
@@ -152,15 +152,25 @@ public class ProjectSignupFragment extends Fragment implements ExtendedFragment
         // Generate salt
         String salt = new RandomString(40).nextString();
         if (passwordText1.length() == 0) {
-            projectDatabase.MemberDao().insert(new MemberData(memberID,
-                    project.projectID, usernameText, fullName, salt,
-                    "", project.memberDefaultRole));
+            insertMember(activity, memberID, usernameText, fullName, salt, "");
         } else {
-            String hashedPass = SecurityFunctions.passwordHash(passwordText1, salt);
-            projectDatabase.MemberDao().insert(new MemberData(memberID,
-                    project.projectID, usernameText, fullName, salt,
-                    hashedPass, project.memberDefaultRole));
+            // The button is disabled while the password is hashed so that the member is only created once
+            View signupButton = requireView().findViewById(R.id.v1_signup);
+            signupButton.setEnabled(false);
+            KdfService.passwordHash(this, passwordText1, salt, hashedPass -> insertMember(activity,
+                    memberID, usernameText, fullName, salt, hashedPass), e -> {
+                signupButton.setEnabled(true);
+                Toast.makeText(activity, R.string.error_password_failed, Toast.LENGTH_SHORT).show();
+            });
         }
+    }
+
+    /** Inserts the member into the database once its password has been hashed. **/
+    private void insertMember(MainActivity activity, String memberID, String usernameText,
+                              String fullName, String salt, String hashedPass) {
+        projectDatabase.MemberDao().insert(new MemberData(memberID,
+                project.projectID, usernameText, fullName, salt,
+                hashedPass, project.memberDefaultRole));
         projectDatabase.close();
         Toast.makeText(activity, R.string.member_created, Toast.LENGTH_SHORT).show();
         activity.displayFragment(ProjectInfoFragment.newInstance(project.projectID, memberID,
@@ -13,8 +13,6 @@
 
 package com.pcchin.studyassistant.functions;
 
-import android.util.Log;
-
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.room.TypeConverter;
@@ -22,13 +20,17 @@ import androidx.room.TypeConverter;
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
-import com.pcchin.studyassistant.activity.ActivityConstants;
 import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.file.notes.NotesJsonCodec;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
@@ -38,7 +40,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.Random;
+import java.util.TimeZone;
 
 /** Functions specifically used to convert from one type of variable to another. **/
 public final class ConverterFunctions {
@@ -56,48 +58,220 @@ public final class ConverterFunctions {
         DATE
     }
 
+    private static final String ISO_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZZZZZ";
+    // Length of the ISO date without its time zone, e.g. 2020-01-31T12:34:56.789
+    private static final int ISO_LOCAL_LENGTH = 23;
+    private static final long MILLIS_PER_DAY = 86400000L;
+    // Years outside of this range are formatted by SimpleDateFormat, as the fast path
+    // does not handle eras, the Julian calendar or zone offsets with seconds
+    private static final int ISO_FAST_MIN_YEAR = 1900, ISO_FAST_MAX_YEAR = 9999;
+
+    /** The formatters for each time format for the current thread.
+     * SimpleDateFormat is not thread safe, so each thread has its own set of formatters. **/
+    private static final ThreadLocal<SimpleDateFormat[]> dateFormats = new ThreadLocal<SimpleDateFormat[]>() {
+        @Override
+        protected SimpleDateFormat[] initialValue() {
+            return new SimpleDateFormat[TimeFormat.values().length];
+        }
+    };
+
+    /** The buffer that ISO dates are written into for the current thread. **/
+    private static final ThreadLocal<char[]> isoBuffer = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[ISO_LOCAL_LENGTH + 6];
+        }
+    };
+
     /** Parse a time according to the required time format.
+     * ISO dates in the usual range are parsed directly without going through SimpleDateFormat.
      * DATETIME and DATE are not used for now but may be needed in the future. **/
     public static Date parseTime(String original, @NonNull TimeFormat format) throws ParseException {
-        SimpleDateFormat dateFormat;
-        switch (format) {
-            case DATETIME:
-                dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss", Locale.ENGLISH);
-                break;
-            case DATE:
-                dateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.ENGLISH);
-                break;
-            default:
-                dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZZZZZ", Locale.ENGLISH);
-                break;
+        if (format == TimeFormat.ISO) {
+            long isoTime = parseIso(original);
+            if (isoTime != Long.MIN_VALUE) return new Date(isoTime);
         }
-        return dateFormat.parse(original);
+        return getDateFormat(format).parse(original);
     }
 
-    /** Formats a time according to the required time format. **/
+    /** Formats a time according to the required time format.
+     * ISO dates in the usual range are formatted directly without going through SimpleDateFormat. **/
     @NonNull
     public static String formatTime(@NonNull Date original, @NonNull TimeFormat format) {
-        SimpleDateFormat dateFormat;
-        switch (format) {
-            case DATETIME:
-                dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss", Locale.ENGLISH);
-                break;
-            case DATE:
-                dateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.ENGLISH);
-                break;
-            default:
-                dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZZZZZ", Locale.ENGLISH);
-                break;
+        if (format == TimeFormat.ISO) {
+            String isoTime = formatIso(original.getTime());
+            if (isoTime != null) return isoTime;
+        }
+        return getDateFormat(format).format(original);
+    }
+
+    /** Returns the cached formatter of the current thread for the time format.
+     * The time zone is updated on each call in case the time zone of the device has changed. **/
+    @NonNull
+    private static SimpleDateFormat getDateFormat(@NonNull TimeFormat format) {
+        SimpleDateFormat[] formatList = dateFormats.get();
+        SimpleDateFormat dateFormat = formatList[format.ordinal()];
+        if (dateFormat == null) {
+            switch (format) {
+                case DATETIME:
+                    dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss", Locale.ENGLISH);
+                    break;
+                case DATE:
+                    dateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.ENGLISH);
+                    break;
+                default:
+                    dateFormat = new SimpleDateFormat(ISO_PATTERN, Locale.ENGLISH);
+                    break;
+            }
+            formatList[format.ordinal()] = dateFormat;
+        }
+        dateFormat.setTimeZone(TimeZone.getDefault());
+        return dateFormat;
+    }
+
+    /** Formats the time in the ISO format in the default time zone, in the same way as the
+     * ISO pattern of SimpleDateFormat on Android, e.g. 2020-01-31T12:34:56.789+08:00 or Z for UTC.
+     * Returns null if the time is outside of the range handled by the fast path. **/
+    @Nullable
+    private static String formatIso(long time) {
+        int offset = TimeZone.getDefault().getOffset(time);
+        if (offset % 60000 != 0) return null;
+        long localTime = time + offset;
+        long days = localTime / MILLIS_PER_DAY;
+        long millisOfDay = localTime % MILLIS_PER_DAY;
+        if (millisOfDay < 0) {
+            days--;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+
+        // Converts the days since the epoch to the year, month and day
+        long shiftedDays = days + 719468;
+        long era = (shiftedDays >= 0 ? shiftedDays : shiftedDays - 146096) / 146097;
+        long dayOfEra = shiftedDays - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < ISO_FAST_MIN_YEAR || year > ISO_FAST_MAX_YEAR) return null;
+
+        char[] buffer = isoBuffer.get();
+        writeDigits(buffer, 0, (int) year, 4);
+        buffer[4] = '-';
+        writeDigits(buffer, 5, month, 2);
+        buffer[7] = '-';
+        writeDigits(buffer, 8, day, 2);
+        buffer[10] = 'T';
+        writeDigits(buffer, 11, (int) (millisOfDay / 3600000), 2);
+        buffer[13] = ':';
+        writeDigits(buffer, 14, (int) (millisOfDay / 60000 % 60), 2);
+        buffer[16] = ':';
+        writeDigits(buffer, 17, (int) (millisOfDay / 1000 % 60), 2);
+        buffer[19] = '.';
+        writeDigits(buffer, 20, (int) (millisOfDay % 1000), 3);
+        if (offset == 0) {
+            buffer[ISO_LOCAL_LENGTH] = 'Z';
+            return new String(buffer, 0, ISO_LOCAL_LENGTH + 1);
+        }
+        int offsetMinutes = Math.abs(offset) / 60000;
+        buffer[ISO_LOCAL_LENGTH] = offset < 0 ? '-' : '+';
+        writeDigits(buffer, ISO_LOCAL_LENGTH + 1, offsetMinutes / 60, 2);
+        buffer[ISO_LOCAL_LENGTH + 3] = ':';
+        writeDigits(buffer, ISO_LOCAL_LENGTH + 4, offsetMinutes % 60, 2);
+        return new String(buffer, 0, ISO_LOCAL_LENGTH + 6);
+    }
+
+    /** Parses an ISO date with a time zone of Z, +HH:MM or +HHMM.
+     * Returns Long.MIN_VALUE if the date is not in that format or outside of the range handled
+     * by the fast path, in which case it should be parsed by SimpleDateFormat instead. **/
+    private static long parseIso(String original) {
+        if (original == null || original.length() < ISO_LOCAL_LENGTH + 1
+                || original.charAt(4) != '-' || original.charAt(7) != '-' || original.charAt(10) != 'T'
+                || original.charAt(13) != ':' || original.charAt(16) != ':' || original.charAt(19) != '.') {
+            return Long.MIN_VALUE;
+        }
+        int year = readDigits(original, 0, 4), month = readDigits(original, 5, 2),
+                day = readDigits(original, 8, 2), hour = readDigits(original, 11, 2),
+                minute = readDigits(original, 14, 2), second = readDigits(original, 17, 2),
+                millis = readDigits(original, 20, 3);
+        if (year < ISO_FAST_MIN_YEAR || year > ISO_FAST_MAX_YEAR || month < 1 || month > 12
+                || day < 1 || day > 28 + daysAfter28(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return Long.MIN_VALUE;
+        }
+
+        int offsetMinutes;
+        int zoneLength = original.length() - ISO_LOCAL_LENGTH;
+        char zoneSign = original.charAt(ISO_LOCAL_LENGTH);
+        if (zoneLength == 1 && zoneSign == 'Z') {
+            offsetMinutes = 0;
+        } else if ((zoneSign == '+' || zoneSign == '-') && (zoneLength == 5 || (zoneLength == 6
+                && original.charAt(ISO_LOCAL_LENGTH + 3) == ':'))) {
+            int offsetHours = readDigits(original, ISO_LOCAL_LENGTH + 1, 2);
+            int offsetMinute = readDigits(original, original.length() - 2, 2);
+            if (offsetHours < 0 || offsetMinute < 0 || offsetMinute > 59) return Long.MIN_VALUE;
+            offsetMinutes = (offsetHours * 60 + offsetMinute) * (zoneSign == '-' ? -1 : 1);
+        } else {
+            return Long.MIN_VALUE;
+        }
+
+        // Converts the year, month and day to the days since the epoch
+        int shiftedYear = month <= 2 ? year - 1 : year;
+        int era = shiftedYear / 400;
+        int yearOfEra = shiftedYear - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+        return days * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L
+                + millis - offsetMinutes * 60000L;
+    }
+
+    /** Returns the number of days in the month after the 28th. **/
+    private static int daysAfter28(int year, int month) {
+        if (month == 2) return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 1 : 0;
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 2 : 3;
+    }
+
+    /** Writes the number into the buffer with the given number of digits, padded with zeroes. **/
+    private static void writeDigits(@NonNull char[] buffer, int start, int value, int digits) {
+        for (int i = start + digits - 1; i >= start; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
         }
-        return dateFormat.format(original);
+    }
+
+    /** Reads the given number of digits from the string, or returns -1 if any of them is not a digit. **/
+    private static int readDigits(@NonNull String original, int start, int digits) {
+        int value = 0;
+        for (int i = start; i < start + digits; i++) {
+            char current = original.charAt(i);
+            if (current < '0' || current > '9') return -1;
+            value = value * 10 + current - '0';
+        }
+        return value;
     }
 
     private static final byte[] HEX_ARRAY = "0123456789ABCDEF".getBytes();
 
+    /** Converts a date to the number of milliseconds since the epoch.
+     * Used by Room to store every date column as an INTEGER. **/
+    @TypeConverter
+    public static Long dateToTimestamp(Date original) {
+        return original == null ? null : original.getTime();
+    }
+
+    /** Converts the number of milliseconds since the epoch to a date.
+     * Used by Room to read every date column. **/
+    @TypeConverter
+    public static Date timestampToDate(Long original) {
+        return original == null ? null : new Date(original);
+    }
+
     /** Converts a date to a ISO-8601 compliant string. If the date is null, "null" is returned.
+     * This was the format that the databases stored dates in before they were stored as timestamps.
      * Test not implemented due to SimpleDateFormat being weird. **/
     @NonNull
-    @TypeConverter
     public static String dateToString(Date original) {
         if (original == null) {
             return "null";
@@ -108,8 +282,8 @@ public final class ConverterFunctions {
 
     /** Converts a ISO-8601 compliant string to a date,
      * returns null if fails or if string is "null".
+     * Used when migrating the dates that were stored as strings in the databases.
      * Test not implemented due to SimpleDateFormat being weird. **/
-    @TypeConverter
     public static Date stringToDate(String original) {
         if (Objects.equals(original, "null")) return null;
         try {
@@ -139,69 +313,35 @@ public final class ConverterFunctions {
     }
 
     /** Converts a list of NotesContent objects to a String.
-     * The notes list is first converted into a double layered ArrayList,
-     * which is then converted into a String. **/
+     * Exports should use NotesJsonCodec.writeNotes directly to write to the file instead.
+     * @see NotesJsonCodec **/
+    @NonNull
     public static String notesListToString(@NonNull List<NotesContent> original) {
-        ArrayList<ArrayList<String>> returnList = new ArrayList<>();
-        for (NotesContent note: original) {
-            // Each ArrayList would have 7 objects in the following order:
-            // title, contents, last edited, lockedSalt, lockedPass, alertDate and alertCode
-            // The date would be in the ISO Date time format
-            ArrayList<String> currentList = new ArrayList<>();
-            currentList.add(note.noteTitle);
-            currentList.add(note.noteContent);
-            currentList.add(formatTime(note.lastEdited, TimeFormat.ISO));
-            currentList.add(note.lockedSalt);
-            currentList.add(note.lockedPass);
-            if (note.alertDate == null) {
-                currentList.add("NULL");
-            } else {
-                currentList.add(formatTime(note.alertDate, TimeFormat.ISO));
-            }
-            if (note.alertCode == null) {
-                currentList.add("NULL");
-            } else {
-                currentList.add(String.valueOf(note.alertCode));
-            }
-            returnList.add(currentList);
+        StringWriter writer = new StringWriter();
+        try {
+            NotesJsonCodec.writeNotes(original, writer);
+        } catch (IOException e) {
+            // StringWriter does not throw IOExceptions
+            throw new IllegalStateException(e);
         }
-        return new Gson().toJson(returnList);
+        return writer.toString();
     }
 
     /** Converts a String back to a list of NotesContent objects.
      * Returns null if the original array is invalid.
-     * The String is first converted into a double layered ArrayList,
-     * which is then converted back to a list of NotesContent objects.
-     * This function will not update the note into the database and must be done separately. */
-    public static ArrayList<NotesContent> stringToNotesList(List<Integer> notesIdList,
+     * This function will not update the note into the database and must be done separately.
+     * Imports should use NotesJsonCodec.readNotes directly to read from the file instead.
+     * @see NotesJsonCodec **/
+    @Nullable
+    public static ArrayList<NotesContent> stringToNotesList(IdAllocator idAllocator,
                                                             int subjectId, String original) {
-        Type listType = new TypeToken<ArrayList<ArrayList<String>>>() {}.getType();
-        if (isCorrectGson(original, listType)) {
-            // Each ArrayList would have 7 objects in the following order:
-            // title, contents, last edited, lockedSalt, lockedPass, alertDate and alertCode
-            Random rand = new Random();
-            ArrayList<ArrayList<String>> importedContent = new Gson().fromJson(original, listType);
-            ArrayList<NotesContent> returnList = new ArrayList<>();
-            for (ArrayList<String> importedNote: importedContent) { // No checks for array size as error would be thrown
-                try {
-                    int noteId = rand.nextInt();
-                    while (notesIdList.contains(noteId)) noteId = rand.nextInt();
-                    // Special case for alertDate and alertCode
-                    Date alertDate = importedNote.get(5).equals("NULL") ? null : parseTime(importedNote.get(5), TimeFormat.ISO);
-                    Integer alertCode = importedNote.get(6).equals("NULL") ? null : Integer.parseInt(importedNote.get(6));
-                    NotesContent currentNote = new NotesContent(noteId, subjectId, importedNote.get(0),
-                            importedNote.get(1), Objects.requireNonNull(parseTime(importedNote.get(2), TimeFormat.ISO)), importedNote.get(3),
-                            importedNote.get(4), alertDate, alertCode);
-                    returnList.add(currentNote);
-                } catch (NullPointerException | IndexOutOfBoundsException | ParseException | NumberFormatException e) {
-                    Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Unable to parse " +
-                            "notes of the imported file. The file may be corrupted.");
-                    e.printStackTrace();
-                }
-            }
-            return returnList;
+        if (original == null) return null;
+        try {
+            return NotesJsonCodec.readNotesList(new StringReader(original), idAllocator, subjectId);
+        } catch (IOException e) {
+            // StringReader does not throw IOExceptions
+            return null;
         }
-        return null;
     }
 
     /** Checks if a string is formatted in the JSON format and of the correct list type.
@@ -253,7 +393,7 @@ public final class ConverterFunctions {
      * From https://stackoverflow.com/a/9855338
      * Test not implemented as not used directly. **/
     @NonNull
-    static String bytesToHex(@NonNull byte[] original) {
+    public static String bytesToHex(@NonNull byte[] original) {
         byte[] hexChars = new byte[original.length * 2];
         for (int j = 0; j < original.length; j++) {
             int v = original[j] & 0xFF;
@@ -262,4 +402,13 @@ public final class ConverterFunctions {
         }
         return new String(hexChars, StandardCharsets.UTF_8);
     }
+
+    /** Appends part of a byte array to the builder as a hexadecimal string,
+     * so that the bytes do not need to be converted to a separate string first. **/
+    public static void bytesToHex(@NonNull byte[] original, int offset, int length, @NonNull StringBuilder output) {
+        for (int j = offset; j < offset + length; j++) {
+            int v = original[j] & 0xFF;
+            output.append((char) HEX_ARRAY[v >>> 4]).append((char) HEX_ARRAY[v & 0x0F]);
+        }
+    }
 }
@@ -19,16 +19,23 @@ import androidx.annotation.NonNull;
 import androidx.room.Room;
 
 import com.pcchin.studyassistant.activity.ActivityConstants;
+import com.pcchin.studyassistant.database.SharedRoomDatabase;
 import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.database.notes.NotesSearchResult;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
 import com.pcchin.studyassistant.database.notes.SubjectDatabase;
 import com.pcchin.studyassistant.database.project.ProjectDatabase;
+import com.pcchin.studyassistant.database.project.ProjectIdGenerator;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
 import com.pcchin.studyassistant.utils.misc.RandomString;
 import com.pcchin.studyassistant.utils.misc.SortingComparators;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 
 /** Database related functions used throughout the app. **/
 public final class DatabaseFunctions {
@@ -47,22 +54,59 @@ public final class DatabaseFunctions {
         throw new IllegalStateException("Utility class");
     }
 
-    /** Returns the subject database. **/
+    // The weights of the title and content columns of NotesContentFts when ranking searches
+    private static final double[] SEARCH_COLUMN_WEIGHTS = {2.0, 1.0};
+    private static SubjectDatabase subjectDatabase;
+    private static ProjectDatabase projectDatabase;
+
+    /** Returns the subject database.
+     * The same instance is shared throughout the process and is only built once,
+     * calling close() on the returned database would only release it.
+     * @see SharedRoomDatabase **/
     @NonNull
-    public static SubjectDatabase getSubjectDatabase(Context context) {
-        return Room.databaseBuilder(context, SubjectDatabase.class,
-                ActivityConstants.DATABASE_NOTES)
-                .fallbackToDestructiveMigrationFrom(1, 2, 3)
-                .allowMainThreadQueries().build();
+    public static synchronized SubjectDatabase getSubjectDatabase(@NonNull Context context) {
+        if (subjectDatabase == null || subjectDatabase.isShutdown()) {
+            subjectDatabase = Room.databaseBuilder(context.getApplicationContext(),
+                    SubjectDatabase.class, ActivityConstants.DATABASE_NOTES)
+                    .fallbackToDestructiveMigrationFrom(1, 2, 3)
+                    .addMigrations(SubjectDatabase.MIGRATION_4_5, SubjectDatabase.MIGRATION_5_6,
+                            SubjectDatabase.MIGRATION_6_7, SubjectDatabase.MIGRATION_7_8)
+                    .allowMainThreadQueries().build();
+            warmDatabase(subjectDatabase);
+        }
+        subjectDatabase.acquire();
+        return subjectDatabase;
     }
 
-    /** Returns the project database. **/
+    /** Returns the project database.
+     * The same instance is shared throughout the process and is only built once,
+     * calling close() on the returned database would only release it.
+     * @see SharedRoomDatabase **/
     @NonNull
-    public static ProjectDatabase getProjectDatabase(Context context) {
-        return Room.databaseBuilder(context, ProjectDatabase.class,
-                ActivityConstants.DATABASE_PROJECT)
-                .fallbackToDestructiveMigrationFrom(1, 2, 3, 4, 5, 6)
-                .allowMainThreadQueries().build();
+    public static synchronized ProjectDatabase getProjectDatabase(@NonNull Context context) {
+        if (projectDatabase == null || projectDatabase.isShutdown()) {
+            projectDatabase = Room.databaseBuilder(context.getApplicationContext(),
+                    ProjectDatabase.class, ActivityConstants.DATABASE_PROJECT)
+                    .fallbackToDestructiveMigrationFrom(1, 2, 3, 4, 5, 6)
+                    .addMigrations(ProjectDatabase.MIGRATION_7_8, ProjectDatabase.MIGRATION_8_9)
+                    .allowMainThreadQueries().build();
+            warmDatabase(projectDatabase);
+        }
+        projectDatabase.acquire();
+        return projectDatabase;
+    }
+
+    /** Opens the connection of a newly built database so that migrations and the
+     * connection pool are set up once instead of on the first query of every screen. **/
+    private static void warmDatabase(@NonNull SharedRoomDatabase database) {
+        database.getOpenHelper().getWritableDatabase();
+    }
+
+    /** Closes both shared databases if they are no longer referenced.
+     * @param force closes the databases even if they are still referenced. **/
+    public static synchronized void closeDatabases(boolean force) {
+        if (subjectDatabase != null && subjectDatabase.shutdown(force)) subjectDatabase = null;
+        if (projectDatabase != null && projectDatabase.shutdown(force)) projectDatabase = null;
     }
 
     /** Gets the icon path of a project for a specific project ID. **/
@@ -71,61 +115,129 @@ public final class DatabaseFunctions {
         return context.getFilesDir() + "/icons/project/" + projectID + ".jpg";
     }
 
-    /** Generates a valid subject ID to be used to create a new subject. **/
+    /** Generates a valid subject ID to be used to create a new subject.
+     * The ID is checked against the primary key of the table instead of loading all of the IDs.
+     * @see #noteIdAllocator(Context) for generating the IDs of multiple notes. **/
     public static int generateValidId(@NonNull SubjectDatabase database, @NonNull SUBJ_ID_TYPE type) {
-        List<Integer> idList;
+        IdAllocator.RangeProbe probe;
         if (type.equals(SUBJ_ID_TYPE.SUBJECT)) {
-            idList = database.SubjectDao().getAllSubjectId();
+            probe = (start, end) -> database.SubjectDao().hasSubjectIdInRange(start, end);
         } else {
-            idList = database.ContentDao().getAllNoteId();
+            probe = (start, end) -> database.ContentDao().hasNoteIdInRange(start, end);
         }
-        Random idRand = new Random();
-        int currentId = idRand.nextInt();
-        while (idList.contains(currentId)) currentId = idRand.nextInt();
-        return currentId;
+        return new IdAllocator(probe, 1).nextId();
+    }
+
+    /** Returns an allocator for the IDs of new notes, used when importing notes.
+     * The subject database is acquired for each block that is checked,
+     * so the allocator can be used from a background thread. **/
+    @NonNull
+    public static IdAllocator noteIdAllocator(@NonNull Context context) {
+        Context appContext = context.getApplicationContext();
+        return new IdAllocator((start, end) -> {
+            SubjectDatabase database = getSubjectDatabase(appContext);
+            try {
+                return database.ContentDao().hasNoteIdInRange(start, end);
+            } finally {
+                database.close();
+            }
+        }, IdAllocator.DEFAULT_BLOCK_SIZE);
     }
 
-    /** Generates a valid random String based on the type specified. **/
+    /** Generates a valid random String based on the type specified.
+     * ProjectIdGenerator should be used instead if more than one ID is needed. **/
+    @NonNull
     public static String generateValidProjectString(@NonNull RandomString rand, @NonNull PROJ_ID_TYPE type,
-                                                    ProjectDatabase projectDatabase) {
-        String returnString = rand.nextString();
-        switch (type) {
-            case PROJECT:
-                while (projectDatabase.ProjectDao().searchByID(returnString) != null) {
-                    returnString = rand.nextString();
-                }
-                break;
-            case MEMBER:
-                while (projectDatabase.MemberDao().searchByID(returnString) != null) {
-                    returnString = rand.nextString();
-                }
-                break;
-            case ROLE:
-                while (projectDatabase.RoleDao().searchByID(returnString) != null) {
-                    returnString = rand.nextString();
+                                                    @NonNull ProjectDatabase projectDatabase) {
+        return new ProjectIdGenerator(projectDatabase, rand).next(type);
+    }
+
+    /** Searches the notes for the words given by the user and returns them ranked by relevance.
+     * Each word is matched as a prefix, and matches in the title are weighted more than
+     * matches in the content. The matches in the snippet are surrounded by the markers.
+     * @param subjectId the subject to search within, or null to search all subjects. **/
+    @NonNull
+    public static List<NotesSearchResult> searchNotes(@NonNull SubjectDatabase database, String query,
+                                                      Integer subjectId, String startMarker,
+                                                      String endMarker) {
+        String matchQuery = toMatchQuery(query);
+        if (matchQuery.isEmpty()) return new ArrayList<>();
+        List<NotesSearchResult> resultList;
+        if (subjectId == null) {
+            resultList = database.SearchDao().search(matchQuery, startMarker, endMarker);
+        } else {
+            resultList = database.SearchDao().searchInSubject(matchQuery, subjectId,
+                    startMarker, endMarker);
+        }
+        for (NotesSearchResult result: resultList) {
+            result.score = rankMatch(result.matchInfo);
+        }
+        Collections.sort(resultList, (a, b) -> Double.compare(b.score, a.score));
+        return resultList;
+    }
+
+    /** Converts the text entered by the user into a FTS MATCH query.
+     * Each word is quoted so that characters such as quotes, dashes and asterisks
+     * would not be treated as FTS operators, and is then matched as a prefix. **/
+    @NonNull
+    private static String toMatchQuery(String query) {
+        if (query == null) return "";
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word: query.trim().split("\\s+")) {
+            String escapedWord = word.replace("\"", "");
+            if (!hasLetterOrDigit(escapedWord)) continue;
+            if (matchQuery.length() > 0) matchQuery.append(' ');
+            matchQuery.append('"').append(escapedWord).append("*\"");
+        }
+        return matchQuery.toString();
+    }
+
+    /** Returns whether the word contains any character that would be indexed. **/
+    private static boolean hasLetterOrDigit(@NonNull String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetterOrDigit(word.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    /** Calculates the score of a match from the output of matchinfo(..., 'pcx').
+     * The output is a list of native order unsigned 32 bit integers, starting with the number of
+     * phrases and columns, followed by the number of hits in this row, the number of hits in
+     * all rows and the number of rows with hits for each phrase and column. **/
+    private static double rankMatch(byte[] matchInfo) {
+        if (matchInfo == null || matchInfo.length < 8) return 0;
+        IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phraseCount = info.get(0), columnCount = info.get(1);
+        double score = 0;
+        for (int phrase = 0; phrase < phraseCount; phrase++) {
+            for (int column = 0; column < columnCount; column++) {
+                int index = 2 + 3 * (phrase * columnCount + column);
+                if (index + 2 >= info.limit()) return score;
+                int rowHits = info.get(index), totalHits = info.get(index + 1);
+                if (rowHits > 0 && totalHits > 0) {
+                    double weight = column < SEARCH_COLUMN_WEIGHTS.length
+                            ? SEARCH_COLUMN_WEIGHTS[column] : 1;
+                    score += weight * rowHits / totalHits;
                 }
-                break;
-            default:
-                returnString = "";
+            }
         }
-        return returnString;
+        return score;
     }
 
     /** Sort the notes based on the sorting format given.
+     * Notes that are stored in the database should be loaded in order through
+     * ContentDao.searchBySubjectSorted instead, this is only needed for notes in memory.
      * @see NotesSubject
      * @see SortingComparators **/
-    public static void sortNotes(Context context, @NonNull NotesSubject currentSubject, List<NotesContent> notesList) {
-        SubjectDatabase database = DatabaseFunctions.getSubjectDatabase(context);
+    public static void sortNotes(@NonNull NotesSubject currentSubject, List<NotesContent> notesList) {
         int sortOrder = currentSubject.sortOrder;
         if (sortOrder == NotesSubject.SORT_ALPHABETICAL_DES) {
             // Sort by alphabetical order, descending
-            Collections.sort(notesList, SortingComparators.noteTitleComparator);
-            Collections.reverse(notesList);
+            Collections.sort(notesList, Collections.reverseOrder(SortingComparators.noteTitleComparator));
         } else if (sortOrder == NotesSubject.SORT_DATE_ASC) {
             Collections.sort(notesList, SortingComparators.noteDateComparator);
         } else if (sortOrder == NotesSubject.SORT_DATE_DES) {
-            Collections.sort(notesList, SortingComparators.noteDateComparator);
-            Collections.reverse(notesList);
+            Collections.sort(notesList, Collections.reverseOrder(SortingComparators.noteDateComparator));
         } else {
             // Sort by alphabetical order, ascending
             if (sortOrder != NotesSubject.SORT_ALPHABETICAL_ASC) {
@@ -134,6 +246,5 @@ public final class DatabaseFunctions {
             }
             Collections.sort(notesList, SortingComparators.noteTitleComparator);
         }
-        database.close();
     }
 }
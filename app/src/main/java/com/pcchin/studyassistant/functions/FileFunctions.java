@@ -21,19 +21,20 @@ import android.provider.OpenableColumns;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LifecycleOwner;
 
 import com.pcchin.studyassistant.activity.ActivityConstants;
+import com.pcchin.studyassistant.utils.file.FileCopier;
+import com.pcchin.studyassistant.utils.file.UniqueNameAllocator;
+import com.pcchin.studyassistant.utils.misc.BackgroundRunner;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 import io.sentry.Sentry;
@@ -60,15 +61,17 @@ public final class FileFunctions {
     /** Generates a valid file in the required directory.
      * If a file with the same name exists,
      * a file with incrementing number will be added to the file.
-     * @param extension needs to include the . at the front.**/
+     * The directory is only listed if the name is taken, instead of checking each number one at a time.
+     * @param extension needs to include the . at the front.
+     * @see UniqueNameAllocator **/
     public static String generateValidFile(String filename, String extension) {
         String returnFile = filename + extension;
-        int i = 1;
-        while (new File(returnFile).exists() && i < Integer.MAX_VALUE) {
-            returnFile = filename + "(" + i + ")" + extension;
-            i++;
-        }
-        return returnFile;
+        if (!new File(returnFile).exists()) return returnFile;
+        // The file name may be empty if the directory is passed on with the whole file name as its extension
+        int separatorIndex = filename.lastIndexOf('/');
+        String dirPath = filename.substring(0, separatorIndex + 1);
+        return dirPath + UniqueNameAllocator.forDirectory(new File(dirPath.isEmpty() ? "." : dirPath))
+                .reserve(filename.substring(separatorIndex + 1), extension);
     }
 
     /** For deleting the directory inside list of files and inner Directory.
@@ -140,52 +143,35 @@ public final class FileFunctions {
         return stringBuilder.toString();
     }
 
-    /** Gets the number of bytes required of data from a file.
-     * A Toast is created when it fails and it returns an empty array. **/
-    @NonNull
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    public static byte[] getBytesFromFile(int byteAmt, @NonNull InputStream stream) {
-        byte[] returnByte = new byte[byteAmt];
-        try {
-            stream.read(returnByte);
-            return returnByte;
-        } catch (IOException e) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "File Error: byte[] of size " + byteAmt + " could not "
-                    + "be retrieved from input stream of file. Stack trace is");
-            e.printStackTrace();
-            return new byte[0];
-        }
+    /** Returns the absolute path of a path from the given URI to the callback.
+     * If the Uri is invalid or no such file exists, the callback would receive null.
+     * This is done through copying the file to the temp directory and return the temp file.
+     * The file is copied on a background thread, and the callback is run on the main thread.
+     * @see FileCopier **/
+    public static void getRealPathFromUri(@NonNull Context context, @NonNull LifecycleOwner owner,
+                                          @NonNull Uri uri, @NonNull BackgroundRunner.Callback<String> callback) {
+        Context appContext = context.getApplicationContext();
+        FileCopier.run(owner, () -> getRealPathFromUri(appContext, uri), callback,
+                e -> callback.onResult(null));
     }
 
-    /** Gets all the remaining bytes of data from a file.
-     * A Toast is created when it fails and it returns an empty array. **/
-    @NonNull
-    public static byte[] getRemainingBytesFromFile(@NonNull InputStream stream) {
-        try {
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            while(stream.available() != 0){
-                buffer.write(stream.read());
-            }
-            return buffer.toByteArray();
-        } catch (IOException e) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Remaining bytes of input stream of file "
-                    + stream + " not able to be read. Stack trace is");
-            e.printStackTrace();
-            return new byte[0];
-        }
-    }
-
-    /** Returns the absolute path of a path from the given URI.
-     * If the Uri is invalid or no such file exists, it would return null.
-     * This is done through copying the file to the temp directory and return the temp file. **/
-    public static String getRealPathFromUri(Context context, Uri uri) {
+    /** Copies the file from the given URI to the temp directory and returns its path.
+     * Returns null if the Uri is invalid or no such file exists. **/
+    @Nullable
+    private static String getRealPathFromUri(Context context, Uri uri) {
         try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
             if (inputStream == null) {
                 return null;
             } else {
-                String outputFile = generateValidFile(context.getFilesDir().getAbsolutePath()
-                        + "/temp/", getFileNameFromUri(context, uri));
-                copyFile(inputStream, new File(outputFile));
+                // The temp directory may not be created yet as the startup creates it in the background
+                File tempDir = new File(context.getFilesDir().getAbsolutePath() + "/temp");
+                if (!tempDir.exists() && !tempDir.mkdirs()) {
+                    Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Temp directory "
+                            + tempDir.getAbsolutePath() + " could not be created.");
+                }
+                String outputFile = generateValidFile(tempDir.getAbsolutePath() + "/",
+                        getFileNameFromUri(context, uri));
+                FileCopier.copy(inputStream, new File(outputFile), FileCopier.MAX_COPY_SIZE, null);
                 return outputFile;
             }
         } catch (IOException e) {
@@ -197,30 +183,12 @@ public final class FileFunctions {
         }
     }
 
-    /** Copies the file from a source to its destination. **/
+    /** Copies the file from a source to its destination.
+     * This process would fail with an IOException if the file is larger than 100MB.
+     * This is to prevent the user from importing an extremely large file which may crash the app.
+     * @see FileCopier **/
     public static void copyFile(File source, File destination) throws IOException {
-        try (InputStream input = new FileInputStream(source)) {
-            copyFile(input, destination);
-        }
-    }
-
-    /** Copies the file from a given InputStream to its destination.
-     * This process would fail with an IOException if the size of the byte array reaches 100MB.
-     * This is to prevent the user from importing an extremely large file which may crash the app. **/
-    private static void copyFile(@NonNull InputStream input, File destination) throws IOException {
-        try (OutputStream output = new FileOutputStream(destination)) {
-            long totalLength = 0;
-            // Transfer bytes from in to out
-            byte[] buf = new byte[1024];
-            int len;
-            while ((len = input.read(buf)) > 0) {
-                output.write(buf, 0, len);
-                totalLength += len;
-                if (totalLength > (100 * 1000 * 1000)) {
-                    throw new IOException("Input size exceeds 100MB");
-                }
-            }
-        }
+        FileCopier.copy(source, destination, null);
     }
 
     /** Gets the file name from a specified URI.
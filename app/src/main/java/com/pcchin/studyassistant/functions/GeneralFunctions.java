@@ -18,14 +18,18 @@ import android.app.Activity;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 
+import com.pcchin.studyassistant.utils.security.DerivedKeyCache;
+
 /** Functions generally used throughout the app. **/
 public final class GeneralFunctions {
     private GeneralFunctions() {
         throw new IllegalStateException("Utility class");
     }
 
-    /** Exits the app.**/
+    /** Exits the app. The shared databases are closed first so that they are not killed mid-write. **/
     public static void exitApp(@NonNull Activity activity) {
+        DatabaseFunctions.closeDatabases(true);
+        DerivedKeyCache.clear();
         activity.moveTaskToBack(true);
         android.os.Process.killProcess(android.os.Process.myPid());
         System.exit(0);
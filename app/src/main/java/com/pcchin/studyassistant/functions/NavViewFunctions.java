@@ -23,9 +23,8 @@ import androidx.annotation.NonNull;
 import com.google.android.material.navigation.NavigationView;
 import com.pcchin.studyassistant.R;
 import com.pcchin.studyassistant.activity.MainActivity;
+import com.pcchin.studyassistant.database.DatabaseExecutor;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
-import com.pcchin.studyassistant.database.notes.SubjectDatabase;
-import com.pcchin.studyassistant.database.project.ProjectDatabase;
 import com.pcchin.studyassistant.database.project.data.ProjectData;
 import com.pcchin.studyassistant.file.notes.importsubj.ImportSubjectStatic;
 import com.pcchin.studyassistant.fragment.about.AboutFragment;
@@ -33,10 +32,12 @@ import com.pcchin.studyassistant.fragment.notes.subject.NotesSubjectFragment;
 import com.pcchin.studyassistant.fragment.project.create.ProjectCreateFragment;
 import com.pcchin.studyassistant.fragment.project.verify.ProjectLoginFragment;
 
-import java.util.List;
-
 /** Functions used for updating the navigation view within the app. **/
 public final class NavViewFunctions {
+    // The order of the menu items, subjects and projects are loaded later but shown above the buttons
+    private static final int ORDER_ITEM = 0;
+    private static final int ORDER_BUTTON = 1;
+
     private NavViewFunctions() {
         throw new IllegalStateException("Utility class");
     }
@@ -58,12 +59,11 @@ public final class NavViewFunctions {
     /** Adds the subject menu to the nav view. **/
     private static void addSubjectMenu(@NonNull Menu currentMenu, MainActivity activity) {
         // Subject menu
-        final SubjectDatabase subjectDatabase = DatabaseFunctions.getSubjectDatabase(activity);
         SubMenu subjMenu = currentMenu.addSubMenu(R.string.notes);
-        addSubjects(subjMenu, activity, subjectDatabase); // Database will be closed in function
+        addSubjects(subjMenu, activity);
 
         // Add New Subject button
-        MenuItem newSubj = subjMenu.add(R.string.m3_new_subject);
+        MenuItem newSubj = subjMenu.add(Menu.NONE, Menu.NONE, ORDER_BUTTON, R.string.m3_new_subject);
         newSubj.setOnMenuItemClickListener(item -> {
             activity.closeDrawer();
             UIFunctions.showNewSubject(activity);
@@ -71,7 +71,7 @@ public final class NavViewFunctions {
         });
 
         // Add Import Subject button
-        MenuItem subjImport = subjMenu.add(R.string.m3_data_import);
+        MenuItem subjImport = subjMenu.add(Menu.NONE, Menu.NONE, ORDER_BUTTON, R.string.m3_data_import);
         subjImport.setOnMenuItemClickListener(item -> {
             activity.closeDrawer();
             new Handler().post(() -> ImportSubjectStatic.displayImportDialog(activity));
@@ -79,33 +79,33 @@ public final class NavViewFunctions {
         });
     }
 
-    /** Adds all the available subjects to the submenu. **/
-    private static void addSubjects(SubMenu subjMenu, MainActivity activity,
-                                    @NonNull SubjectDatabase subjectDatabase) {
-        List<NotesSubject> subjectList = subjectDatabase.SubjectDao().getAll();
-        subjectDatabase.close();
-        for (final NotesSubject subject: subjectList) {
-            MenuItem subjItem = subjMenu.add(subject.title);
-            // This is to prevent menu items from disappearing
-            subjItem.setOnMenuItemClickListener(item -> {
-                // Opens subject when clicked
-                activity.closeDrawer();
-                activity.safeOnBackPressed();
-                activity.displayFragment(NotesSubjectFragment.newInstance(subject.subjectId));
-                return true;
-            });
-        }
+    /** Adds all the available subjects to the submenu.
+     * The subjects are loaded in the background and are placed above the buttons. **/
+    private static void addSubjects(SubMenu subjMenu, MainActivity activity) {
+        DatabaseExecutor.subjectQuery(activity, activity, database -> database.SubjectDao().getAll(),
+                subjectList -> {
+            for (final NotesSubject subject: subjectList) {
+                MenuItem subjItem = subjMenu.add(Menu.NONE, Menu.NONE, ORDER_ITEM, subject.title);
+                // This is to prevent menu items from disappearing
+                subjItem.setOnMenuItemClickListener(item -> {
+                    // Opens subject when clicked
+                    activity.closeDrawer();
+                    activity.safeOnBackPressed();
+                    activity.displayFragment(NotesSubjectFragment.newInstance(subject.subjectId));
+                    return true;
+                });
+            }
+        });
     }
 
     /** Adds the project menu to the nav view. **/
     private static void addProjectMenu(@NonNull Menu currentMenu, MainActivity activity) {
         // Add projects
         SubMenu projMenu = currentMenu.addSubMenu(R.string.projects);
-        ProjectDatabase projectDatabase = DatabaseFunctions.getProjectDatabase(activity);
-        addProjects(projMenu, activity, projectDatabase);
+        addProjects(projMenu, activity);
 
         // Add New Project Button
-        MenuItem newProj = projMenu.add(R.string.m3_new_project);
+        MenuItem newProj = projMenu.add(Menu.NONE, Menu.NONE, ORDER_BUTTON, R.string.m3_new_project);
         newProj.setOnMenuItemClickListener(item -> {
             activity.closeDrawer();
             activity.safeOnBackPressed();
@@ -116,24 +116,26 @@ public final class NavViewFunctions {
         addImportProject(projMenu, activity);
     }
 
-    /** Adds all projects to the submenu. **/
-    private static void addProjects(SubMenu projMenu, MainActivity activity,
-                                    @NonNull ProjectDatabase projectDatabase) {
-        List<ProjectData> projectList = projectDatabase.ProjectDao().getAllProjects();
-        for (ProjectData project : projectList) {
-            MenuItem projItem = projMenu.add(project.projectTitle);
-            projItem.setOnMenuItemClickListener(menuItem -> {
-                activity.closeDrawer();
-                activity.safeOnBackPressed();
-                activity.displayFragment(ProjectLoginFragment.newInstance(project.projectID));
-                return false;
-            });
-        }
+    /** Adds all projects to the submenu.
+     * The projects are loaded in the background and are placed above the buttons. **/
+    private static void addProjects(SubMenu projMenu, MainActivity activity) {
+        DatabaseExecutor.projectQuery(activity, activity, database -> database.ProjectDao().getAllProjects(),
+                projectList -> {
+            for (ProjectData project : projectList) {
+                MenuItem projItem = projMenu.add(Menu.NONE, Menu.NONE, ORDER_ITEM, project.projectTitle);
+                projItem.setOnMenuItemClickListener(menuItem -> {
+                    activity.closeDrawer();
+                    activity.safeOnBackPressed();
+                    activity.displayFragment(ProjectLoginFragment.newInstance(project.projectID));
+                    return false;
+                });
+            }
+        });
     }
 
     /** Adds the import project button to the submenu. **/
     private static void addImportProject(@NonNull SubMenu projMenu, MainActivity activity) {
-        MenuItem projImport = projMenu.add(R.string.m3_data_import);
+        MenuItem projImport = projMenu.add(Menu.NONE, Menu.NONE, ORDER_BUTTON, R.string.m3_data_import);
         projImport.setOnMenuItemClickListener(item -> {
             // TODO: Import projects
             activity.closeDrawer();
@@ -18,42 +18,32 @@ import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.pcchin.studyassistant.activity.ActivityConstants;
 import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
+import com.pcchin.studyassistant.file.notes.NotesJsonCodec;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
+import com.pcchin.studyassistant.utils.security.CipherSession;
+import com.pcchin.studyassistant.utils.security.DerivedKeyCache;
+import com.pcchin.studyassistant.utils.security.KdfParams;
+import com.pcchin.studyassistant.utils.security.ServerRsaCipher;
 
 import org.bouncycastle.crypto.DataLengthException;
 import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.engines.AESEngine;
-import org.bouncycastle.crypto.engines.BlowfishEngine;
 import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
-import org.bouncycastle.crypto.modes.CBCBlockCipher;
-import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
 import org.bouncycastle.crypto.params.KeyParameter;
-import org.bouncycastle.crypto.params.ParametersWithIV;
-import org.bouncycastle.crypto.params.ParametersWithRandom;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.Security;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.Arrays;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.List;
-import java.util.Scanner;
-
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 
 /** Functions used in hashing, encryption, decryption etc. **/
 public final class SecurityFunctions {
@@ -61,151 +51,157 @@ public final class SecurityFunctions {
         throw new IllegalStateException("Utility class");
     }
 
-    /** Process a cipher buffer based on a specific length and
-     * @return a specific output. **/
+    /** Functions used to hash a password. This function replaces notesHash,
+     * projectHash, roleHash and memberHash. The password is hashed with KdfParams.DEFAULT and the
+     * parameters are stored in front of the hash in the form of $params$hash.
+     * A blank password would return a blank hash.
+     * This should not be run on the main thread, KdfService should be used instead.
+     * Base64.NO_WRAP should be used to prevent trailing newlines. **/
     @NonNull
-    private static byte[] processCipherBuffer(@NonNull PaddedBufferedBlockCipher cipher, @NonNull byte[] original)
-            throws InvalidCipherTextException, DataLengthException {
-        byte[] output = new byte[cipher.getOutputSize(original.length)];
-        int length1 = cipher.processBytes(original,  0, original.length, output, 0);
-        int length2 = cipher.doFinal(output, length1);
-        byte[] result = new byte[length1+length2];
-        System.arraycopy(output, 0, result, 0, result.length);
-        return result;
+    public static String passwordHash(@NonNull String original, @NonNull String salt) {
+        return passwordHash(original, salt, KdfParams.DEFAULT);
     }
 
-    /** Trims a byte array to a specific length, or adds to it if its not enough. **/
+    /** Hashes the password with the given parameters.
+     * @see #passwordHash(String, String) **/
     @NonNull
-    private static byte[] trimByte(@NonNull byte[] original, int size) {
-        byte[] response = new byte[size];
-        if (original.length > size) {
-            // Trim the key to 32 bytes in length (256 bits)
-            System.arraycopy(original, 0, response, 0, response.length);
-        } else if (original.length > 0){
-            // Add the same characters if it is not enough
-            for (int i = 0; i < size; i++) {
-                response[i] = original[i % original.length];
-            }
-        } else {
-            Arrays.fill(response, (byte) 0);
-        }
-        return response;
+    public static String passwordHash(@NonNull String original, @NonNull String salt, @NonNull KdfParams params) {
+        if (original.length() == 0) return "";
+        byte[] hash = deriveKey(params, original.getBytes(StandardCharsets.UTF_8),
+                salt.getBytes(StandardCharsets.UTF_8));
+        return "$" + params + "$" + Base64.encodeToString(hash, Base64.NO_WRAP);
     }
 
-    /** Functions used to hash a password through PBKDF2. This function replaces notesHash,
-     * projectHash, roleHash and memberHash.
-     * No need for test as it is just a wrapper around PBKDF2, which is covered in testPbkdf2.
-     * Base64.NO_WRAP should be used to prevent trailing newlines. **/
-    public static String passwordHash(@NonNull String original, @NonNull String salt) {
-        return Base64.encodeToString(pbkdf2(original.getBytes(), salt.getBytes(), 10800),
-                Base64.NO_WRAP);
+    /** Checks whether the password matches the stored hash. Hashes created before the parameters
+     * were stored are checked with KdfParams.LEGACY.
+     * This should not be run on the main thread, KdfService should be used instead. **/
+    public static boolean verifyPassword(@NonNull String original, @NonNull String salt, @NonNull String storedHash) {
+        KdfParams params = getHashParams(storedHash);
+        if (params == null) return false;
+        String hash = params == KdfParams.LEGACY ? Base64.encodeToString(deriveKey(params,
+                original.getBytes(StandardCharsets.UTF_8), salt.getBytes(StandardCharsets.UTF_8)), Base64.NO_WRAP)
+                : passwordHash(original, salt, params);
+        // Compared in constant time
+        return MessageDigest.isEqual(hash.getBytes(StandardCharsets.UTF_8),
+                storedHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Checks whether the stored hash should be replaced with a hash with the default parameters,
+     * which should be done after the password is verified. **/
+    public static boolean needsRehash(@NonNull String storedHash) {
+        return storedHash.length() > 0 && !KdfParams.DEFAULT.equals(getHashParams(storedHash));
+    }
+
+    /** Returns the parameters of a stored hash, or null if they are invalid. **/
+    @Nullable
+    private static KdfParams getHashParams(@NonNull String storedHash) {
+        if (!storedHash.startsWith("$")) return KdfParams.LEGACY;
+        int end = storedHash.lastIndexOf('$');
+        return end <= 0 ? null : KdfParams.parse(storedHash.substring(1, end));
     }
 
-    /** Encryption method used to protect subject contents in .subject files. **/
+    /** Derives a key from the password, or returns the key from DerivedKeyCache if it had been
+     * derived recently. This should not be run on the main thread. **/
+    @NonNull
+    public static byte[] deriveKey(@NonNull KdfParams params, @NonNull byte[] password, @NonNull byte[] salt) {
+        byte[] key = DerivedKeyCache.get(params, password, salt);
+        if (key == null) {
+            key = params.derive(password, salt);
+            DerivedKeyCache.put(params, password, salt, key);
+        }
+        return key;
+    }
+
+    /** Encryption method used to protect subject contents in v1 .subject files.
+     * New files are encrypted through ChunkedCipherOutputStream instead. **/
     public static byte[] subjectEncrypt(@NonNull String password, byte[] salt,
                                         List<NotesContent> content) {
-        byte[] responseByte = ConverterFunctions.notesListToString(content).getBytes();
+        ByteArrayOutputStream notesStream = new ByteArrayOutputStream();
+        try {
+            NotesJsonCodec.writeNotes(content, notesStream);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw IOExceptions
+            throw new IllegalStateException(e);
+        }
+        byte[] responseByte = notesStream.toByteArray();
         byte[] passwordByte = pbkdf2(password.getBytes(), salt, 11000);
         responseByte = aes(responseByte, passwordByte, salt, true);
         responseByte = blowfish(responseByte, passwordByte, true);
         return responseByte;
     }
 
-    /** Decryption method used to protect subject contents in .subject files. **/
-    public static List<NotesContent> subjectDecrypt(List<Integer> notesIdList, @NonNull NotesSubject subject,
+    /** Decryption method used to protect subject contents in v1 .subject files. **/
+    public static List<NotesContent> subjectDecrypt(IdAllocator idAllocator, @NonNull NotesSubject subject,
                                                     byte[] salt, @NonNull String password,
                                                     byte[] content) {
         byte[] passwordByte = pbkdf2(password.getBytes(), salt, 11000);
         content = blowfish(content, passwordByte, false);
         content = aes(content, passwordByte, salt, false);
-        return ConverterFunctions.stringToNotesList(notesIdList, subject.subjectId, new String(content));
+        if (content == null) return null;
+        try {
+            return NotesJsonCodec.readNotesList(new InputStreamReader(new ByteArrayInputStream(content),
+                    StandardCharsets.UTF_8), idAllocator, subject.subjectId);
+        } catch (IOException e) {
+            // ByteArrayInputStream does not throw IOExceptions
+            return null;
+        }
+    }
+
+    /** Generates the 256 bit key used to encrypt the records of a v2 .subject file through
+     * ChunkedCipherOutputStream. The parameters are stored in the file so that it can be derived again.
+     * The key only needs to be generated once for each file. **/
+    @NonNull
+    public static byte[] subjectKey(@NonNull String password, byte[] salt, @NonNull KdfParams params) {
+        return deriveKey(params, password.getBytes(StandardCharsets.UTF_8), salt);
     }
 
-    /** Encrypts the message sent to the server through its public RSA key (PKCS1-OAEP). **/
+    /** Encrypts the message sent to the server through its public RSA key (PKCS1-OAEP).
+     * @return the encrypted message as a hex string, or null if it could not be encrypted.
+     * @see ServerRsaCipher **/
     public static String RSAServerEncrypt(Context context, String original) {
-        // Returns a UTF-8 String buffer
-        try (InputStream inputStream = context.getAssets().open("public.pem")) {
-            // Gets the key
-            StringBuilder contentBuilder = new StringBuilder();
-            try (Scanner scanner = new Scanner(inputStream)) {
-                while (scanner.hasNext()) contentBuilder.append(scanner.next());
-            }
-            // PEM needs to be decoded to X509 for it to be accepted by the RSA Engine
-            // Base64.DEFAULT is fine here as it's fine for it to have newlines
-            byte[] decodedKey = Base64.decode(contentBuilder.toString(), Base64.DEFAULT);
-            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(decodedKey);
-            ByteArrayOutputStream outputStream = getRSAStream(keySpec, original);
+        try {
             // UTF-8 String does not work but hex string does
-            return ConverterFunctions.bytesToHex(outputStream.toByteArray());
+            return ServerRsaCipher.getInstance(context).encryptToHex(original);
         } catch (IOException e) {
             Log.w(ActivityConstants.LOG_APP_NAME, "File Error: Unable to get public server RSA Key, stack trace is");
             e.printStackTrace();
             return null;
-        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidKeyException
-                | BadPaddingException | IllegalBlockSizeException | InvalidKeySpecException e) {
+        } catch (GeneralSecurityException e) {
             Log.w(ActivityConstants.LOG_APP_NAME, "Cryptography Error: Unable to encrypt message using server RSA key, stack trace is");
             e.printStackTrace();
             return null;
         }
     }
 
-    /** Get the ByteArrayOutputStream for the RSA stream. **/
-    @NonNull
-    private static ByteArrayOutputStream getRSAStream(X509EncodedKeySpec keySpec, @NonNull String original)
-            throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeySpecException,
-            BadPaddingException, IllegalBlockSizeException, IOException, InvalidKeyException {
-        Security.addProvider(new BouncyCastleProvider());
-        Cipher rsa = Cipher.getInstance("RSA/NONE/OAEPPadding");
-        KeyFactory.getInstance("RSA");
-        rsa.init(Cipher.ENCRYPT_MODE, KeyFactory.getInstance("RSA").generatePublic(keySpec));
-
-        // Split into 240 bytes per encoding
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        byte[] originalBytes = original.getBytes(StandardCharsets.UTF_8);
-        int index = 0;
-        while (index < originalBytes.length) {
-            byte[] currentBytes = Arrays.copyOfRange(originalBytes, index, Math.min(index + 128, originalBytes.length));
-            byte[] outputBytes = rsa.doFinal(currentBytes);
-            outputStream.write(outputBytes);
-            index += 128;
-        }
-        return outputStream;
-    }
-
-    /** AES encryption/decryption via PaddedBufferedBlockCipher in BouncyCastle.
+    /** AES encryption/decryption via CipherSession.
      * IV added as additional security measure.
+     * If the cipher text is invalid, the original would be returned.
+     * CipherSession should be used instead if more than one message is processed with the same key.
      * This function should not be used by itself outside of this class except for unit testing. **/
     public static byte[] aes(byte[] original, byte[] key, byte[] iv, boolean isEncrypt) {
-        key = trimByte(key, 32);
-        iv = trimByte(iv, 16);
-        PaddedBufferedBlockCipher aes = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()));
-        aes.init(isEncrypt, new ParametersWithIV(new KeyParameter(key), iv, 0, 16));
-        try {
-            original = processCipherBuffer(aes, original);
-        } catch (InvalidCipherTextException e) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "Cipher text in AES encryption invalid. Stack trace is ");
-            e.printStackTrace();
-        } catch (DataLengthException e) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "Data length in AES encryption invalid. Stack trace is ");
-            e.printStackTrace();
-        }
-        return original;
+        return processCipher(CipherSession.aes(key, iv), original, isEncrypt, "AES");
     }
 
-    /** Blowfish encryption/decryption via PaddedBufferedBlockCipher in BouncyCastle.
+    /** Blowfish encryption/decryption via CipherSession.
+     * If the cipher text is invalid, the original would be returned.
+     * CipherSession should be used instead if more than one message is processed with the same key.
      * This function should not be used by itself outside of this class except for unit testing. **/
     public static byte[] blowfish(byte[] original, byte[] key, boolean isEncrypt) {
-        key = trimByte(key, 56);
-        PaddedBufferedBlockCipher blowfish = new PaddedBufferedBlockCipher(new CBCBlockCipher(
-                new BlowfishEngine()));
-        blowfish.init(isEncrypt, new ParametersWithRandom(new KeyParameter(key)));
+        return processCipher(CipherSession.blowfish(key), original, isEncrypt, "Blowfish");
+    }
+
+    /** Encrypts or decrypts a message with the session and logs any errors. **/
+    private static byte[] processCipher(@NonNull CipherSession session, byte[] original,
+                                        boolean isEncrypt, String cipherName) {
         try {
-            original = processCipherBuffer(blowfish, original);
+            return isEncrypt ? session.encrypt(original) : session.decrypt(original);
         } catch (InvalidCipherTextException e) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "Cipher text in Blowfish encryption invalid. Stack trace is ");
+            Log.w(ActivityConstants.LOG_APP_NAME, "Cipher text in " + cipherName
+                    + " encryption invalid. Stack trace is ");
             e.printStackTrace();
         } catch (DataLengthException e) {
-            Log.w(ActivityConstants.LOG_APP_NAME, "Data length in Blowfish encryption invalid. Stack trace is ");
+            Log.w(ActivityConstants.LOG_APP_NAME, "Data length in " + cipherName
+                    + " encryption invalid. Stack trace is ");
             e.printStackTrace();
         }
         return original;
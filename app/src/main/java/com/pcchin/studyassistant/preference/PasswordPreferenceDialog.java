@@ -19,11 +19,12 @@ import android.view.View;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.fragment.app.Fragment;
 import androidx.preference.PreferenceDialogFragmentCompat;
 
 import com.google.android.material.textfield.TextInputLayout;
 import com.pcchin.studyassistant.R;
-import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.security.KdfService;
 
 import java.util.Objects;
 
@@ -78,12 +79,16 @@ public final class PasswordPreferenceDialog extends PreferenceDialogFragmentComp
         }
     }
 
-    /** Stores the values of the updated password into the database. **/
+    /** Stores the values of the updated password into the database. The password is hashed
+     * in the background and tied to the settings fragment, as the dialog is closed by then. **/
     @Override
     public void onDialogClosed(boolean positiveResult) {
         if (positiveResult && input1.getEditText() != null) {
-            ((PasswordPreference) getPreference()).setPassword(
-                    SecurityFunctions.passwordHash(input1.getEditText().getText().toString(), salt));
+            PasswordPreference preference = (PasswordPreference) getPreference();
+            Fragment settingsFragment = Objects.requireNonNull(getTargetFragment());
+            KdfService.passwordHash(settingsFragment, input1.getEditText().getText().toString(), salt,
+                    preference::setPassword, e -> Toast.makeText(settingsFragment.requireContext(),
+                            R.string.error_password_failed, Toast.LENGTH_SHORT).show());
         }
     }
 }
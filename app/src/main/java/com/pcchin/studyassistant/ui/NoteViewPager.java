@@ -22,13 +22,11 @@ import androidx.viewpager.widget.PagerAdapter;
 import androidx.viewpager.widget.ViewPager;
 
 import com.pcchin.studyassistant.activity.MainActivityFunctions;
-import com.pcchin.studyassistant.database.notes.NotesContent;
-
-import java.util.List;
+import com.pcchin.studyassistant.utils.collections.IntArrayList;
 
 /** A custom ViewPager that is stores the positions of the note IDs corresponding to their position. **/
 public class NoteViewPager extends ViewPager {
-    public List<NotesContent> notesList;
+    public IntArrayList noteIdList;
 
     public NoteViewPager(@NonNull Context context) {
         super(context);
@@ -42,17 +40,13 @@ public class NoteViewPager extends ViewPager {
     public void setAdapter(@Nullable PagerAdapter adapter) {
         super.setAdapter(adapter);
         if (adapter instanceof MainActivityFunctions.NotePagerAdapter) {
-            notesList = ((MainActivityFunctions.NotePagerAdapter) adapter).notesList;
+            noteIdList = ((MainActivityFunctions.NotePagerAdapter) adapter).noteIdList;
         }
     }
 
     /** Set the pager to show the note requested based on the given note ID. **/
     public void setPagerOrder(int noteId) {
-        for (int i = 0; i < notesList.size(); i++) {
-            if (notesList.get(i).noteId == noteId) {
-                setCurrentItem(i);
-                break;
-            }
-        }
+        int position = noteIdList.indexOf(noteId);
+        if (position >= 0) setCurrentItem(position);
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.collections;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** A list of ints that is backed by an int array, so that the values are not boxed into Integers
+ * as they would be in an ArrayList. This class is not thread safe. **/
+public final class IntArrayList {
+    private int[] values;
+    private int size = 0;
+
+    /** Creates an empty list. **/
+    public IntArrayList() {
+        this(10);
+    }
+
+    /** Creates an empty list that can hold the given number of values without growing. **/
+    public IntArrayList(int initialCapacity) {
+        values = new int[Math.max(1, initialCapacity)];
+    }
+
+    /** Creates a list with the values of a list of Integers, such as those returned by Room. **/
+    @NonNull
+    public static IntArrayList fromList(@NonNull List<Integer> list) {
+        IntArrayList intList = new IntArrayList(list.size());
+        for (Integer value: list) intList.add(value);
+        return intList;
+    }
+
+    /** Adds a value to the end of the list. **/
+    public void add(int value) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    /** Returns the value at the given position. **/
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return values[index];
+    }
+
+    /** Returns the position of the first occurrence of the value, or -1 if it is not in the list. **/
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+
+    /** Returns the number of values in the list. **/
+    public int size() {
+        return size;
+    }
+
+    /** Returns whether the list is empty. **/
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Returns a copy of the values in the list. **/
+    @NonNull
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
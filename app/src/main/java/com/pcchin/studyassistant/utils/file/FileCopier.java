@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.file;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.pcchin.studyassistant.activity.ActivityConstants;
+import com.pcchin.studyassistant.utils.misc.BackgroundRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+
+/** Copies files through FileChannel.transferTo() so that the bytes are copied by the kernel
+ * instead of through a buffer on the heap. Streams that are not backed by a regular file,
+ * such as pipes from a ContentProvider, are copied through a pooled direct buffer instead.
+ * Copies are limited to MAX_COPY_SIZE so that an extremely large file would not fill up the storage.
+ * The copies can be run on a background thread through run(). **/
+public final class FileCopier {
+    /** The maximum size of a file that can be copied. **/
+    public static final long MAX_COPY_SIZE = 100 * 1000 * 1000;
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 2;
+    private static final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    // The copies share a single thread as they are limited by the storage instead of the CPU
+    private static final BackgroundRunner runner = BackgroundRunner.singleThread("FileCopier",
+            "File Error: A file could not be copied");
+
+    private FileCopier() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** Receives the progress of a copy. It is called on the thread that the copy is run on.
+     * @param totalBytes is -1 if the size of the source is not known. **/
+    public interface ProgressListener {
+        void onProgress(long copiedBytes, long totalBytes);
+    }
+
+    /** Runs a task that copies files on the background thread and returns its result to the main thread.
+     * If the task throws an exception, the exception is logged and passed to errorCallback.
+     * The result is dropped if the lifecycle of the owner is destroyed before it is returned.
+     * This function should be called from the main thread.
+     * @see BackgroundRunner **/
+    public static <T> void run(@NonNull LifecycleOwner owner, @NonNull Callable<T> task,
+                               @NonNull BackgroundRunner.Callback<T> callback,
+                               @Nullable BackgroundRunner.ErrorCallback errorCallback) {
+        runner.run(owner, task, callback, errorCallback);
+    }
+
+    /** Copies the file from a source to its destination.
+     * @return the number of bytes copied. **/
+    public static long copy(@NonNull File source, @NonNull File destination,
+                            @Nullable ProgressListener listener) throws IOException {
+        try (FileInputStream input = new FileInputStream(source)) {
+            return copy(input, destination, MAX_COPY_SIZE, listener);
+        }
+    }
+
+    /** Copies the rest of the InputStream to the destination. The stream is not closed.
+     * If the stream is a FileInputStream of a regular file, the file is copied with
+     * FileChannel.transferTo(). Otherwise, it is copied through a direct buffer.
+     * The destination is deleted if the copy fails.
+     * @return the number of bytes copied.
+     * @throws StreamUtils.SizeLimitException if the source is larger than maxBytes. **/
+    public static long copy(@NonNull InputStream input, @NonNull File destination, long maxBytes,
+                            @Nullable ProgressListener listener) throws IOException {
+        boolean isCopied = false;
+        try (FileOutputStream output = new FileOutputStream(destination)) {
+            FileChannel outputChannel = output.getChannel();
+            long copiedBytes;
+            if (input instanceof FileInputStream) {
+                FileChannel inputChannel = ((FileInputStream) input).getChannel();
+                // Pipes and sockets have a size of 0 and can't be used with transferTo()
+                long remaining = inputChannel.size() - inputChannel.position();
+                copiedBytes = remaining > 0 ? transfer(inputChannel, outputChannel, remaining, maxBytes, listener)
+                        : copyBuffered(inputChannel, outputChannel, maxBytes, listener);
+            } else {
+                copiedBytes = copyBuffered(Channels.newChannel(input), outputChannel, maxBytes, listener);
+            }
+            isCopied = true;
+            return copiedBytes;
+        } finally {
+            if (!isCopied && destination.exists() && !destination.delete()) {
+                Log.w(ActivityConstants.LOG_APP_NAME, "File Error: The incomplete copy at "
+                        + destination.getAbsolutePath() + " could not be deleted.");
+            }
+        }
+    }
+
+    /** Copies the given number of bytes from the current position of the input channel
+     * in chunks so that the progress can be reported. **/
+    private static long transfer(@NonNull FileChannel input, @NonNull FileChannel output, long size,
+                                 long maxBytes, @Nullable ProgressListener listener) throws IOException {
+        if (size > maxBytes) throw new StreamUtils.SizeLimitException(maxBytes);
+        long startPosition = input.position(), copiedBytes = 0;
+        while (copiedBytes < size) {
+            long count = input.transferTo(startPosition + copiedBytes,
+                    Math.min(TRANSFER_CHUNK_SIZE, size - copiedBytes), output);
+            // The file is shorter than expected, which happens when it is truncated during the copy
+            if (count <= 0) break;
+            copiedBytes += count;
+            if (listener != null) listener.onProgress(copiedBytes, size);
+        }
+        input.position(startPosition + copiedBytes);
+        return copiedBytes;
+    }
+
+    /** Copies the channel until it ends through a pooled direct buffer. **/
+    private static long copyBuffered(@NonNull ReadableByteChannel input, @NonNull FileChannel output,
+                                     long maxBytes, @Nullable ProgressListener listener) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            long copiedBytes = 0;
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                copiedBytes += count;
+                if (copiedBytes > maxBytes) throw new StreamUtils.SizeLimitException(maxBytes);
+                buffer.flip();
+                while (buffer.hasRemaining()) output.write(buffer);
+                buffer.clear();
+                if (listener != null && count > 0) listener.onProgress(copiedBytes, -1);
+            }
+            return copiedBytes;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /** Takes a direct buffer from the pool, or allocates one if the pool is empty. **/
+    @NonNull
+    private static ByteBuffer acquireBuffer() {
+        synchronized (bufferPool) {
+            ByteBuffer buffer = bufferPool.poll();
+            if (buffer != null) return buffer;
+        }
+        return ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+    }
+
+    /** Returns a direct buffer to the pool. The buffer would be dropped if the pool is full. **/
+    private static void releaseBuffer(@NonNull ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) bufferPool.push(buffer);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.file;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/** Writes a ZIP file whose entries are compressed in parallel on a shared worker pool.
+ * Each entry is compressed, and encrypted if a password is set, into memory by a worker,
+ * and the entries are then written to the output in the order that they are added.
+ * Only a limited number of entries are held in memory at once, so the output is streamed
+ * without any temporary files. The entries can be read by zip4j and java.util.zip,
+ * and entries with a password use ZipCrypto (EncryptionMethod.ZIP_STANDARD in zip4j).
+ * Zip64 is not supported, so the ZIP file is limited to 65535 entries which are each under 4GB.
+ * This class is not thread safe, all the entries should be added from the same thread. **/
+public class ParallelZipWriter implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int MAX_ENTRIES = 0xffff;
+    private static final int ENCRYPTION_HEADER_SIZE = 12;
+
+    private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "ParallelZipWriter-" + threadCount.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** Writes the contents of an entry, which is run on a worker thread. **/
+    public interface EntryContents {
+        void write(@NonNull OutputStream output) throws IOException;
+    }
+
+    private final OutputStream output;
+    private final byte[] password;
+    private final int maxPending;
+    private final ArrayDeque<Future<CompressedEntry>> pendingList = new ArrayDeque<>();
+    private final ArrayList<CompressedEntry> writtenList = new ArrayList<>();
+    private final int dosTime;
+    private long offset = 0;
+    private int entryCount = 0;
+    private boolean isFinished = false;
+
+    /** @param password the password used to encrypt the entries, or null if they are not encrypted.
+     * Each character is stored as a single byte, which is the same as zip4j. **/
+    public ParallelZipWriter(@NonNull OutputStream output, @Nullable char[] password) {
+        this.output = output;
+        if (password == null) {
+            this.password = null;
+        } else {
+            this.password = new byte[password.length];
+            for (int i = 0; i < password.length; i++) this.password[i] = (byte) password[i];
+        }
+        // Enough entries are kept so that all the workers are busy while the oldest entry is written
+        this.maxPending = POOL_SIZE * 4;
+        this.dosTime = toDosTime(Calendar.getInstance());
+    }
+
+    /** Submits an entry to be compressed. If too many entries are pending,
+     * the oldest entries are written to the output first. **/
+    public void addEntry(@NonNull String name, @NonNull EntryContents contents) throws IOException {
+        if (isFinished) throw new IOException("The ZIP file has already been finished");
+        if (++entryCount > MAX_ENTRIES) throw new IOException("The ZIP file has too many entries");
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        pendingList.add(executor.submit(() -> compress(nameBytes, contents)));
+        while (pendingList.size() > maxPending) writeEntry(pendingList.remove());
+    }
+
+    /** Adds an entry with the given bytes. **/
+    public void addEntry(@NonNull String name, @NonNull byte[] contents) throws IOException {
+        addEntry(name, output -> output.write(contents));
+    }
+
+    /** Writes all the pending entries and the central directory. The output is not closed. **/
+    public void finish() throws IOException {
+        if (isFinished) return;
+        while (!pendingList.isEmpty()) writeEntry(pendingList.remove());
+        isFinished = true;
+
+        long centralOffset = offset;
+        for (CompressedEntry entry: writtenList) {
+            byte[] header = new byte[46 + entry.name.length];
+            putInt(header, 0, CENTRAL_HEADER_SIGNATURE);
+            putShort(header, 4, VERSION);
+            putEntryFields(header, 6, entry);
+            // The comment length, disk number, internal attributes and external attributes are all 0
+            putInt(header, 42, (int) entry.offset);
+            System.arraycopy(entry.name, 0, header, 46, entry.name.length);
+            writeBytes(header);
+        }
+        byte[] end = new byte[22];
+        putInt(end, 0, END_SIGNATURE);
+        putShort(end, 8, writtenList.size());
+        putShort(end, 10, writtenList.size());
+        putInt(end, 12, (int) (offset - centralOffset));
+        putInt(end, 16, (int) centralOffset);
+        writeBytes(end);
+        output.flush();
+        if (offset > 0xffffffffL) throw new IOException("The ZIP file is too large");
+    }
+
+    /** Cancels any pending entries and closes the output.
+     * finish() needs to be called first for the ZIP file to be valid. **/
+    @Override
+    public void close() throws IOException {
+        for (Future<CompressedEntry> future: pendingList) future.cancel(true);
+        pendingList.clear();
+        output.close();
+    }
+
+    /** Waits for an entry to be compressed and writes it to the output. **/
+    private void writeEntry(@NonNull Future<CompressedEntry> future) throws IOException {
+        CompressedEntry entry;
+        try {
+            entry = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing a ZIP entry");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("A ZIP entry could not be compressed", cause);
+        }
+        if (offset > 0xffffffffL) throw new IOException("The ZIP file is too large");
+        entry.offset = offset;
+        byte[] header = new byte[30 + entry.name.length];
+        putInt(header, 0, LOCAL_HEADER_SIGNATURE);
+        putEntryFields(header, 4, entry);
+        System.arraycopy(entry.name, 0, header, 30, entry.name.length);
+        writeBytes(header);
+        entry.data.writeTo(output);
+        offset += entry.compressedSize;
+        // The data is not needed after it is written
+        entry.data = null;
+        writtenList.add(entry);
+    }
+
+    /** Compresses and encrypts an entry on the worker thread. **/
+    @NonNull
+    private CompressedEntry compress(@NonNull byte[] name, @NonNull EntryContents contents) throws IOException {
+        CompressedEntry entry = new CompressedEntry(name);
+        ByteArrayOutputStream compressedStream = new ByteArrayOutputStream();
+        // Raw deflate data without the zlib header
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        CRC32 crc = new CRC32();
+        try {
+            try (CheckedOutputStream checkedStream = new CheckedOutputStream(new DeflaterOutputStream(
+                    compressedStream, deflater, 8192), crc)) {
+                contents.write(checkedStream);
+            }
+            entry.uncompressedSize = deflater.getBytesRead();
+        } finally {
+            deflater.end();
+        }
+        if (entry.uncompressedSize > 0xffffffffL) throw new IOException("The ZIP entry is too large");
+        entry.crc = crc.getValue();
+        if (password == null) {
+            entry.data = compressedStream;
+        } else {
+            entry.data = new ByteArrayOutputStream(compressedStream.size() + ENCRYPTION_HEADER_SIZE);
+            ZipCrypto.encrypt(password, entry.crc, compressedStream.toByteArray(), entry.data);
+        }
+        entry.compressedSize = entry.data.size();
+        return entry;
+    }
+
+    /** Puts the fields shared by the local and central headers, from the version needed to the extra length. **/
+    private void putEntryFields(@NonNull byte[] header, int start, @NonNull CompressedEntry entry) {
+        putShort(header, start, VERSION);
+        putShort(header, start + 2, FLAG_UTF8 | (password == null ? 0 : FLAG_ENCRYPTED));
+        putShort(header, start + 4, METHOD_DEFLATED);
+        putInt(header, start + 6, dosTime);
+        putInt(header, start + 10, (int) entry.crc);
+        putInt(header, start + 14, (int) entry.compressedSize);
+        putInt(header, start + 18, (int) entry.uncompressedSize);
+        putShort(header, start + 22, entry.name.length);
+    }
+
+    /** Writes the bytes to the output and counts them. **/
+    private void writeBytes(@NonNull byte[] bytes) throws IOException {
+        output.write(bytes);
+        offset += bytes.length;
+    }
+
+    /** Converts the time to the MS-DOS format used in ZIP files, with the time in the lower 16 bits. **/
+    private static int toDosTime(@NonNull Calendar calendar) {
+        int year = Math.max(1980, calendar.get(Calendar.YEAR));
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /** Puts a little endian short into the array. **/
+    private static void putShort(@NonNull byte[] array, int index, int value) {
+        array[index] = (byte) value;
+        array[index + 1] = (byte) (value >>> 8);
+    }
+
+    /** Puts a little endian int into the array. **/
+    private static void putInt(@NonNull byte[] array, int index, int value) {
+        putShort(array, index, value);
+        putShort(array, index + 2, value >>> 16);
+    }
+
+    /** An entry that has been compressed but may not have been written yet. **/
+    private static class CompressedEntry {
+        private final byte[] name;
+        private long crc;
+        private long uncompressedSize;
+        private long compressedSize;
+        private long offset;
+        private ByteArrayOutputStream data;
+
+        /** Constructor used as the name is always needed. **/
+        private CompressedEntry(byte[] name) {
+            this.name = name;
+        }
+    }
+
+    /** The traditional PKWARE encryption, which is supported by most ZIP programs. **/
+    private static final class ZipCrypto {
+        private static final int[] CRC_TABLE = new int[256];
+        private static final SecureRandom random = new SecureRandom();
+        private int key0 = 0x12345678;
+        private int key1 = 0x23456789;
+        private int key2 = 0x34567890;
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int value = i;
+                for (int j = 0; j < 8; j++) {
+                    value = (value & 1) != 0 ? (value >>> 1) ^ 0xedb88320 : value >>> 1;
+                }
+                CRC_TABLE[i] = value;
+            }
+        }
+
+        /** Constructor used as the keys are initialized with the password. **/
+        private ZipCrypto(@NonNull byte[] password) {
+            for (byte b: password) updateKeys(b);
+        }
+
+        /** Encrypts the compressed data into the output, starting with the 12 byte encryption header.
+         * The last byte of the header is the high byte of the CRC, which is used to check the password. **/
+        static void encrypt(@NonNull byte[] password, long crc, @NonNull byte[] data,
+                            @NonNull ByteArrayOutputStream output) {
+            ZipCrypto crypto = new ZipCrypto(password);
+            byte[] header = new byte[ENCRYPTION_HEADER_SIZE];
+            random.nextBytes(header);
+            header[ENCRYPTION_HEADER_SIZE - 1] = (byte) (crc >>> 24);
+            crypto.encryptBytes(header);
+            crypto.encryptBytes(data);
+            output.write(header, 0, header.length);
+            output.write(data, 0, data.length);
+        }
+
+        /** Encrypts the bytes in place. **/
+        private void encryptBytes(@NonNull byte[] data) {
+            for (int i = 0; i < data.length; i++) {
+                int temp = (key2 | 2) & 0xffff;
+                byte plain = data[i];
+                data[i] = (byte) (plain ^ ((temp * (temp ^ 1)) >>> 8));
+                updateKeys(plain);
+            }
+        }
+
+        /** Updates the keys with a byte of plain text. **/
+        private void updateKeys(byte b) {
+            key0 = crc32(key0, b);
+            key1 = (key1 + (key0 & 0xff)) * 134775813 + 1;
+            key2 = crc32(key2, (byte) (key1 >>> 24));
+        }
+
+        /** Updates a CRC32 value with a single byte. **/
+        private static int crc32(int crc, byte b) {
+            return (crc >>> 8) ^ CRC_TABLE[(crc ^ b) & 0xff];
+        }
+    }
+}
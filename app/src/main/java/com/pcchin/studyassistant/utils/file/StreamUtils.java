@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.file;
+
+import androidx.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Functions that read from streams in bulk instead of one byte at a time.
+ * None of the functions rely on InputStream.available(), which is not reliable on
+ * InflaterInputStream and other filter streams, and short reads are always retried.
+ * The buffers used are taken from a small pool so that they are reused between reads. **/
+public final class StreamUtils {
+    /** The size of each buffer in the pool. **/
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+    private static final ArrayDeque<byte[]> bufferPool = new ArrayDeque<>();
+
+    private StreamUtils() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** Thrown when a stream is longer than the maximum number of bytes allowed to be read from it. **/
+    public static class SizeLimitException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /** Constructor used as the limit needs to be passed on. **/
+        public SizeLimitException(long maxBytes) {
+            super("The stream is longer than the limit of " + maxBytes + " bytes");
+        }
+    }
+
+    /** Takes a buffer of BUFFER_SIZE from the pool, or creates one if the pool is empty.
+     * The buffer should be returned through releaseBuffer() once it is no longer used. **/
+    @NonNull
+    public static byte[] acquireBuffer() {
+        synchronized (bufferPool) {
+            byte[] buffer = bufferPool.poll();
+            if (buffer != null) return buffer;
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    /** Returns a buffer to the pool. The buffer would be dropped if the pool is full.
+     * The buffer must not be used after it is released. **/
+    public static void releaseBuffer(@NonNull byte[] buffer) {
+        if (buffer.length != BUFFER_SIZE) return;
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) bufferPool.push(buffer);
+        }
+    }
+
+    /** Reads exactly len bytes from the stream into the array.
+     * @throws EOFException if the stream ends before all the bytes are read. **/
+    public static void readFully(@NonNull InputStream stream, @NonNull byte[] buffer, int offset, int len)
+            throws IOException {
+        if (offset < 0 || len < 0 || len > buffer.length - offset) throw new IndexOutOfBoundsException();
+        while (len > 0) {
+            int count = stream.read(buffer, offset, len);
+            if (count < 0) throw new EOFException(len + " bytes are missing from the end of the stream");
+            offset += count;
+            len -= count;
+        }
+    }
+
+    /** Reads exactly byteAmt bytes from the stream.
+     * The length is checked before the array is allocated so that a corrupted length
+     * would not allocate a large array.
+     * @throws EOFException if the stream ends before all the bytes are read.
+     * @throws SizeLimitException if byteAmt is larger than maxBytes. **/
+    @NonNull
+    public static byte[] readNBytes(@NonNull InputStream stream, int byteAmt, int maxBytes) throws IOException {
+        if (byteAmt < 0) throw new IOException("The number of bytes to read " + byteAmt + " is negative");
+        if (byteAmt > maxBytes) throw new SizeLimitException(maxBytes);
+        byte[] result = new byte[byteAmt];
+        readFully(stream, result, 0, byteAmt);
+        return result;
+    }
+
+    /** Reads all the remaining bytes of the stream until it ends.
+     * The stream is read into pooled buffers which are only joined once the stream ends,
+     * so that the array is not copied each time it grows.
+     * @throws SizeLimitException if the stream is longer than maxBytes. **/
+    @NonNull
+    public static byte[] readAll(@NonNull InputStream stream, int maxBytes) throws IOException {
+        List<byte[]> bufferList = new ArrayList<>();
+        long total = 0;
+        try {
+            byte[] buffer = acquireBuffer();
+            bufferList.add(buffer);
+            int offset = 0, count;
+            while ((count = stream.read(buffer, offset, buffer.length - offset)) >= 0) {
+                offset += count;
+                total += count;
+                if (total > maxBytes) throw new SizeLimitException(maxBytes);
+                if (offset == buffer.length) {
+                    buffer = acquireBuffer();
+                    bufferList.add(buffer);
+                    offset = 0;
+                }
+            }
+            byte[] result = new byte[(int) total];
+            for (int i = 0; i < bufferList.size(); i++) {
+                int start = i * BUFFER_SIZE;
+                System.arraycopy(bufferList.get(i), 0, result, start, (int) Math.min(BUFFER_SIZE, total - start));
+            }
+            return result;
+        } finally {
+            for (byte[] buffer: bufferList) releaseBuffer(buffer);
+        }
+    }
+
+    /** Copies the rest of the input stream to the output stream with a pooled buffer.
+     * @return the number of bytes copied.
+     * @throws SizeLimitException if more than maxBytes are in the input stream. **/
+    public static long copy(@NonNull InputStream input, @NonNull OutputStream output, long maxBytes)
+            throws IOException {
+        byte[] buffer = acquireBuffer();
+        try {
+            long total = 0;
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                total += count;
+                if (total > maxBytes) throw new SizeLimitException(maxBytes);
+                output.write(buffer, 0, count);
+            }
+            return total;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.file;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.pcchin.studyassistant.activity.ActivityConstants;
+import com.pcchin.studyassistant.functions.FileFunctions;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Deletes the leftover files in the temp directories on a background thread.
+ * Directories that are shared with other files, such as the download directory,
+ * can be added with a prefix so that only the entries whose names start with it are checked.
+ * Files older than the maximum age are deleted, and if the remaining files are still larger than
+ * the size quota, the oldest files are deleted until they fit. Files that are newer than the
+ * minimum age are never deleted, as they may still be used by an import or an export.
+ * The directories are walked in small batches which each run for a limited time,
+ * so that the janitor would not compete with the UI for the storage at startup. **/
+public final class TempFileJanitor {
+    /** Files that have not been modified for this long are always deleted. **/
+    public static final long MAX_AGE_MILLIS = 60 * 60 * 1000;
+    /** Files that have been modified within this time are never deleted. **/
+    public static final long MIN_AGE_MILLIS = 5 * 60 * 1000;
+    /** The maximum total size of the files that are kept. **/
+    public static final long MAX_TOTAL_BYTES = 50 * 1024 * 1024;
+    private static final int BATCH_SIZE = 64;
+    private static final long TIME_SLICE_NANOS = 8 * 1000 * 1000;
+    private static final long BATCH_DELAY_MILLIS = 16;
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TempFileJanitor");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final long deleteBefore, keepAfter, maxTotalBytes;
+    private final List<File> rootList = new ArrayList<>();
+    // The prefixes of the roots which only have some of their entries checked
+    private final Map<File, String> rootPrefixMap = new HashMap<>();
+    private final ArrayDeque<File> pendingDirs = new ArrayDeque<>(), pendingFiles = new ArrayDeque<>();
+    // The directories are stored in the order that they are visited,
+    // so that they can be deleted in reverse once their children are deleted
+    private final List<KeptFile> visitedDirs = new ArrayList<>();
+    private final List<KeptFile> keptFiles = new ArrayList<>();
+    private int quotaIndex = 0, pruneIndex = -1;
+    private long keptBytes = 0, reclaimedBytes = 0;
+    private int deletedFileCount = 0;
+
+    /** A file that is not deleted when the directories are walked, or a directory that is visited. **/
+    private static final class KeptFile implements Comparable<KeptFile> {
+        private final File file;
+        private final long size, lastModified;
+
+        /** Constructor used as the file, its size and its last modified time need to be passed on. **/
+        private KeptFile(File file, long size, long lastModified) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public int compareTo(@NonNull KeptFile other) {
+            return Long.compare(lastModified, other.lastModified);
+        }
+    }
+
+    /** Creates a janitor for the given directories. The directories themselves are never deleted.
+     * @param currentTime is the time that the ages of the files are compared against. **/
+    public TempFileJanitor(long currentTime, long maxAgeMillis, long minAgeMillis, long maxTotalBytes,
+                           @NonNull File... roots) {
+        this.deleteBefore = currentTime - maxAgeMillis;
+        this.keepAfter = currentTime - minAgeMillis;
+        this.maxTotalBytes = maxTotalBytes;
+        for (File root: roots) {
+            if (root.isDirectory()) {
+                rootList.add(root);
+                pendingDirs.add(root);
+            }
+        }
+    }
+
+    /** Adds a directory where only the entries whose names start with the prefix are checked.
+     * The directory itself and its other entries are never deleted. **/
+    @NonNull
+    public TempFileJanitor addRoot(@NonNull File root, @NonNull String namePrefix) {
+        if (root.isDirectory()) {
+            rootList.add(root);
+            rootPrefixMap.put(root, namePrefix);
+            pendingDirs.add(root);
+        }
+        return this;
+    }
+
+    /** Starts cleaning up the temp directory of the app in the background, along with the
+     * .tempZip folders that older versions of the app extracted ZIP files to in the download directory.
+     * The number of bytes reclaimed is logged once it is done. **/
+    public static void start(@NonNull Context context) {
+        File tempDir = new File(context.getFilesDir().getAbsolutePath() + "/temp");
+        TempFileJanitor janitor = new TempFileJanitor(System.currentTimeMillis(), MAX_AGE_MILLIS,
+                MIN_AGE_MILLIS, MAX_TOTAL_BYTES, tempDir)
+                .addRoot(new File(FileFunctions.getInternalDownloadDir(context)), ".tempZip");
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (janitor.runBatch(TIME_SLICE_NANOS)) {
+                    executor.schedule(this, BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                } else {
+                    Log.d(ActivityConstants.LOG_APP_NAME, "Notification: " + janitor.getDeletedFileCount()
+                            + " temp files deleted, " + janitor.getReclaimedBytes() + " bytes reclaimed");
+                }
+            }
+        });
+    }
+
+    /** Runs a batch of up to BATCH_SIZE files, or until the time slice runs out.
+     * @return whether there is any work left. **/
+    public boolean runBatch(long timeSliceNanos) {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < BATCH_SIZE && System.nanoTime() - startTime < timeSliceNanos; i++) {
+            if (!runStep()) return false;
+        }
+        return true;
+    }
+
+    /** Runs all the batches on the current thread. **/
+    public void runAll() {
+        //noinspection StatementWithEmptyBody
+        while (runBatch(Long.MAX_VALUE)) {
+            // Continue until all the work is done
+        }
+    }
+
+    /** Returns the number of bytes that have been freed. **/
+    public long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    /** Returns the number of files that have been deleted. **/
+    public int getDeletedFileCount() {
+        return deletedFileCount;
+    }
+
+    /** Processes a file, a directory, a file over the quota or an empty directory.
+     * The directories are walked first, then the files over the quota are deleted
+     * and the empty directories are deleted last.
+     * @return whether there is any work left. **/
+    private boolean runStep() {
+        if (!pendingFiles.isEmpty()) {
+            checkFile(pendingFiles.poll());
+            return true;
+        }
+        if (!pendingDirs.isEmpty()) {
+            listDir(pendingDirs.poll());
+            if (pendingDirs.isEmpty() && pendingFiles.isEmpty()) finishWalk();
+            return true;
+        }
+        if (keptBytes > maxTotalBytes && quotaIndex < keptFiles.size()) {
+            KeptFile keptFile = keptFiles.get(quotaIndex++);
+            if (keptFile.lastModified < keepAfter && keptFile.file.delete()) {
+                keptBytes -= keptFile.size;
+                reclaimedBytes += keptFile.size;
+                deletedFileCount++;
+            }
+            return true;
+        }
+        if (pruneIndex >= 0) {
+            // The time when the directory is walked is used, as deleting its children would update it
+            KeptFile dir = visitedDirs.get(pruneIndex--);
+            String[] children = dir.file.list();
+            //noinspection ResultOfMethodCallIgnored
+            if (!rootList.contains(dir.file) && children != null && children.length == 0
+                    && dir.lastModified < keepAfter) dir.file.delete();
+            return pruneIndex >= 0;
+        }
+        return false;
+    }
+
+    /** Lists a directory so that its files and directories are checked in the next steps. **/
+    private void listDir(@NonNull File dir) {
+        visitedDirs.add(new KeptFile(dir, 0, dir.lastModified()));
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        String namePrefix = rootPrefixMap.get(dir);
+        for (File child: children) {
+            if (namePrefix != null && !child.getName().startsWith(namePrefix)) continue;
+            if (child.isDirectory()) {
+                pendingDirs.add(child);
+            } else {
+                pendingFiles.add(child);
+            }
+        }
+    }
+
+    /** Deletes the file if it is too old, or keeps track of it otherwise. **/
+    private void checkFile(@NonNull File file) {
+        long size = file.length(), lastModified = file.lastModified();
+        if (lastModified < deleteBefore && file.delete()) {
+            reclaimedBytes += size;
+            deletedFileCount++;
+        } else {
+            keptFiles.add(new KeptFile(file, size, lastModified));
+            keptBytes += size;
+        }
+        if (pendingFiles.isEmpty() && pendingDirs.isEmpty()) finishWalk();
+    }
+
+    /** Prepares the kept files and the visited directories once all the directories are walked. **/
+    private void finishWalk() {
+        // Oldest files first
+        Collections.sort(keptFiles);
+        pruneIndex = visitedDirs.size() - 1;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.file;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/** Generates unique file names in the same format as FileFunctions.generateValidFile,
+ * which is name.ext, name(1).ext, name(2).ext and so on.
+ * The names that are taken are kept in memory, and the next suffix of each name is remembered,
+ * so that reserving n files with the same name takes O(n) instead of O(n^2) checks.
+ * The names are compared without case as the external storage is not case sensitive.
+ * The functions are synchronized so that the same name is never returned twice. **/
+public final class UniqueNameAllocator {
+    private final File directory;
+    private final Set<String> takenNameSet = new HashSet<>();
+    private final Map<String, Integer> nextSuffixMap = new HashMap<>();
+
+    /** Creates an allocator without any taken names, such as for the entries of a new ZIP file. **/
+    public UniqueNameAllocator() {
+        this.directory = null;
+    }
+
+    /** Constructor used by forDirectory(). **/
+    private UniqueNameAllocator(@NonNull File directory, @Nullable String[] takenNames) {
+        this.directory = directory;
+        if (takenNames != null) {
+            for (String name: takenNames) takenNameSet.add(toKey(name));
+        }
+    }
+
+    /** Creates an allocator with the files that are currently in the directory.
+     * The directory is only listed once, files created by others after this would
+     * only be detected by reserveFile(). **/
+    @NonNull
+    public static UniqueNameAllocator forDirectory(@NonNull File directory) {
+        return new UniqueNameAllocator(directory, directory.list());
+    }
+
+    /** Returns a name that has not been taken and marks it as taken.
+     * @param extension needs to include the . at the front. **/
+    @NonNull
+    public synchronized String reserve(@NonNull String baseName, @NonNull String extension) {
+        // The separator can't be in a file name, so different base names would not share a suffix
+        String suffixKey = toKey(baseName + '/' + extension);
+        Integer nextSuffix = nextSuffixMap.get(suffixKey);
+        int suffix = nextSuffix == null ? 0 : nextSuffix;
+        String name = getName(baseName, extension, suffix);
+        while (!takenNameSet.add(toKey(name))) {
+            suffix++;
+            name = getName(baseName, extension, suffix);
+        }
+        nextSuffixMap.put(suffixKey, suffix + 1);
+        return name;
+    }
+
+    /** Reserves a name and creates an empty file with the name in the directory.
+     * File.createNewFile() is atomic, so if the file was created by someone else
+     * after the directory was listed, the next name would be used instead.
+     * @param extension needs to include the . at the front.
+     * @throws IOException if the file could not be created. **/
+    @NonNull
+    public File reserveFile(@NonNull String baseName, @NonNull String extension) throws IOException {
+        if (directory == null) throw new IllegalStateException("The allocator is not tied to a directory");
+        File file = new File(directory, reserve(baseName, extension));
+        while (!file.createNewFile()) {
+            if (!file.exists()) throw new IOException("File " + file.getAbsolutePath() + " could not be created");
+            file = new File(directory, reserve(baseName, extension));
+        }
+        return file;
+    }
+
+    /** Returns the name with the given suffix, where the suffix 0 is not added. **/
+    @NonNull
+    private static String getName(@NonNull String baseName, @NonNull String extension, int suffix) {
+        return suffix == 0 ? baseName + extension : baseName + "(" + suffix + ")" + extension;
+    }
+
+    /** Returns the key of the name in the set. **/
+    @NonNull
+    private static String toKey(@NonNull String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.misc;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.pcchin.studyassistant.activity.ActivityConstants;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.sentry.Sentry;
+
+/** Runs tasks on a background executor and returns their results to the main thread.
+ * Each task is tied to the lifecycle of a fragment or an activity. Once the lifecycle is destroyed,
+ * the result is dropped, but the task itself is still run to completion so that writes are not lost.
+ * If a task throws an exception, the exception is logged and passed to the error callback.
+ * All functions in this class should be called from the main thread. **/
+public final class BackgroundRunner {
+    private final Executor executor;
+    private final String errorMessage;
+
+    /** Holds the main thread handler, which is only created once a task is first run
+     * so that the classes that own a runner can be used without a Looper. **/
+    private static final class MainThread {
+        private static final Handler handler = new Handler(Looper.getMainLooper());
+    }
+
+    /** @param errorMessage the message that is logged when a task throws an exception. **/
+    public BackgroundRunner(@NonNull Executor executor, @NonNull String errorMessage) {
+        this.executor = executor;
+        this.errorMessage = errorMessage;
+    }
+
+    /** Creates a runner whose tasks share a single thread with a lower priority than the main thread. **/
+    @NonNull
+    public static BackgroundRunner singleThread(@NonNull String threadName, @NonNull String errorMessage) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        return new BackgroundRunner(executor, errorMessage);
+    }
+
+    /** The callback that is run on the main thread with the result of the task. **/
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /** The callback that is run on the main thread if the task throws an exception. **/
+    public interface ErrorCallback {
+        void onError(@NonNull Exception e);
+    }
+
+    /** Runs the task on the background thread. The callbacks are only run if the lifecycle
+     * of the owner has not been destroyed when the task is completed. **/
+    @NonNull
+    public <T> Task<T> run(@NonNull LifecycleOwner owner, @NonNull Callable<T> task,
+                           @Nullable Callback<T> callback, @Nullable ErrorCallback errorCallback) {
+        Task<T> runnerTask = new Task<>(owner.getLifecycle(), task, callback, errorCallback);
+        owner.getLifecycle().addObserver(runnerTask);
+        executor.execute(runnerTask);
+        return runnerTask;
+    }
+
+    /** Runs the task on the background thread without tying it to a lifecycle.
+     * This is used for tasks that need to be completed even if the screen is closed. **/
+    public void runDetached(@NonNull Callable<?> task) {
+        executor.execute(() -> {
+            try {
+                task.call();
+            } catch (Exception e) {
+                logError(e);
+            }
+        });
+    }
+
+    /** Logs an exception thrown by a task. **/
+    private void logError(@NonNull Exception e) {
+        Log.e(ActivityConstants.LOG_APP_NAME, errorMessage + ", stack trace is");
+        e.printStackTrace();
+        Sentry.capture(e);
+    }
+
+    /** A task that is submitted to the executor. Its result can be cancelled. **/
+    public final class Task<T> implements Runnable, LifecycleEventObserver {
+        private final Lifecycle lifecycle;
+        private final Callable<T> task;
+        private final Callback<T> callback;
+        private final ErrorCallback errorCallback;
+        private volatile boolean isCancelled = false;
+
+        /** Constructor used as the lifecycle, task and callbacks need to be passed on. **/
+        private Task(Lifecycle lifecycle, Callable<T> task, Callback<T> callback,
+                     ErrorCallback errorCallback) {
+            this.lifecycle = lifecycle;
+            this.task = task;
+            this.callback = callback;
+            this.errorCallback = errorCallback;
+        }
+
+        /** Runs the task and posts its result or its exception to the main thread. **/
+        @Override
+        public void run() {
+            try {
+                T result = task.call();
+                MainThread.handler.post(() -> {
+                    if (isDeliverable() && callback != null) callback.onResult(result);
+                });
+            } catch (Exception e) {
+                logError(e);
+                MainThread.handler.post(() -> {
+                    if (isDeliverable() && errorCallback != null) errorCallback.onError(e);
+                });
+            }
+        }
+
+        /** Detaches the task from the lifecycle and returns whether the result can still be delivered. **/
+        private boolean isDeliverable() {
+            lifecycle.removeObserver(this);
+            return !isCancelled && lifecycle.getCurrentState().isAtLeast(Lifecycle.State.CREATED);
+        }
+
+        /** Cancels the result of the task if the lifecycle of its owner is destroyed. **/
+        @Override
+        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_DESTROY) cancel();
+        }
+
+        /** Cancels the result of the task. The task would still be run to completion,
+         * including a task that has not started yet, but its result would not be returned. **/
+        public void cancel() {
+            isCancelled = true;
+            lifecycle.removeObserver(this);
+        }
+
+        /** Returns whether the result of the task has been cancelled. **/
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+    }
+}
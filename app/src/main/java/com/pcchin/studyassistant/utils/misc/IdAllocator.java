@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.misc;
+
+import androidx.annotation.NonNull;
+
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Allocates random integer IDs that are not used yet.
+ * Instead of checking every random ID against a list of all the IDs that are used,
+ * the IDs are handed out from blocks of consecutive IDs and each block is only checked once
+ * through a RangeProbe, which is usually a query on the primary key of the table.
+ * The blocks that have been reserved are remembered as their IDs may not be in the table yet.
+ * Each allocator should only be used by one thread at a time. **/
+public final class IdAllocator {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    /** Checks whether any of the IDs from start to end (inclusive) is already used. **/
+    public interface RangeProbe {
+        boolean isRangeUsed(int start, int end);
+    }
+
+    private final RangeProbe probe;
+    private final int blockSize;
+    private final Random rand = new Random();
+    private int[] reservedStarts = new int[4], reservedEnds = new int[4];
+    private int reservedCount = 0;
+    // Stored as longs so that the block would not overflow at Integer.MAX_VALUE
+    private long nextId = 0, blockEnd = -1;
+
+    /** @param blockSize the number of IDs reserved at once when the current block runs out. **/
+    public IdAllocator(@NonNull RangeProbe probe, int blockSize) {
+        if (blockSize < 1) throw new IllegalArgumentException("The block size must be positive");
+        this.probe = probe;
+        this.blockSize = blockSize;
+    }
+
+    /** Returns an unused ID. A new block is reserved if the current block runs out. **/
+    public int nextId() {
+        if (nextId > blockEnd) reserve(blockSize);
+        return (int) nextId++;
+    }
+
+    /** Reserves a block of consecutive IDs that would be handed out by nextId() first.
+     * Should be called before a bulk import if the number of IDs needed is known,
+     * the rest of the current block would be discarded. **/
+    public void reserve(int count) {
+        if (count < 1) throw new IllegalArgumentException("The number of IDs must be positive");
+        long start, end;
+        do {
+            start = rand.nextInt();
+            end = start + count - 1;
+        } while (end > Integer.MAX_VALUE || isReserved(start, end)
+                || probe.isRangeUsed((int) start, (int) end));
+        if (reservedCount == reservedStarts.length) {
+            reservedStarts = Arrays.copyOf(reservedStarts, reservedCount * 2);
+            reservedEnds = Arrays.copyOf(reservedEnds, reservedCount * 2);
+        }
+        reservedStarts[reservedCount] = (int) start;
+        reservedEnds[reservedCount] = (int) end;
+        reservedCount++;
+        nextId = start;
+        blockEnd = end;
+    }
+
+    /** Returns whether the range overlaps with any block that has been reserved by this allocator. **/
+    private boolean isReserved(long start, long end) {
+        for (int i = 0; i < reservedCount; i++) {
+            if (start <= reservedEnds[i] && end >= reservedStarts[i]) return true;
+        }
+        return false;
+    }
+}
@@ -25,12 +25,18 @@ public class SortingComparators {
         throw new IllegalStateException("Utility class");
     }
 
-    /** Comparator that sorts NotesContent by their title.
-     * If the titles are the same, they are then sorted by their edited date **/
-    public static final Comparator<NotesContent> noteTitleComparator =
-            (a, b) -> ObjectUtils.compare(a.noteTitle, b.noteTitle);
+    /** Comparator that sorts NotesContent by their title sort key.
+     * If the keys are the same, they are then sorted by their ID.
+     * This is the same order as the title orders in ContentDao. **/
+    public static final Comparator<NotesContent> noteTitleComparator = (a, b) -> {
+        int result = ObjectUtils.compare(a.titleSortKey, b.titleSortKey);
+        return result == 0 ? ObjectUtils.compare(a.noteId, b.noteId) : result;
+    };
 
-    /** Comparator that sorts NotesContent by their last edited date. **/
-    public static final Comparator<NotesContent> noteDateComparator =
-            (a, b) -> ObjectUtils.compare(a.lastEdited, b.lastEdited);
+    /** Comparator that sorts NotesContent by their last edited date, then their ID.
+     * This is the same order as the date orders in ContentDao. **/
+    public static final Comparator<NotesContent> noteDateComparator = (a, b) -> {
+        int result = ObjectUtils.compare(a.lastEdited, b.lastEdited);
+        return result == 0 ? ObjectUtils.compare(a.noteId, b.noteId) : result;
+    };
 }
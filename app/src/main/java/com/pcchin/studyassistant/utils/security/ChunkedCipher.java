@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.security;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import java.io.IOException;
+
+/** The constants and functions shared by ChunkedCipherOutputStream and ChunkedCipherInputStream.
+ * The stream is split into chunks of CHUNK_SIZE bytes which are each encrypted with AES-GCM,
+ * so that only a single chunk needs to be held in memory and each chunk is authenticated
+ * before it is returned. The stream starts with the version byte and a random nonce prefix.
+ * The nonce of each chunk is made up of the prefix, the index of the chunk and whether it is
+ * the last chunk, so chunks cannot be reordered, dropped or truncated within the stream without
+ * being detected. The stream itself does not know where it is stored, so associated data such as
+ * its position in a file can be given to both streams. It is authenticated with every chunk
+ * but not written to the stream, so a stream that is moved elsewhere would fail authentication. **/
+public final class ChunkedCipher {
+    static final byte VERSION = 1;
+    static final int KEY_SIZE = 32;
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int TAG_SIZE = 16;
+    static final int PREFIX_SIZE = 7;
+    static final int HEADER_SIZE = 1 + PREFIX_SIZE;
+    private static final int NONCE_SIZE = 12;
+
+    private ChunkedCipher() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** Thrown when a chunk of the stream fails authentication,
+     * which happens if the key is wrong or if the stream has been modified or truncated. **/
+    public static class AuthenticationException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        AuthenticationException(String message) {
+            super(message);
+        }
+    }
+
+    /** Creates the cipher used for the stream. **/
+    @NonNull
+    static GCMBlockCipher createCipher(@NonNull byte[] key) {
+        if (key.length != KEY_SIZE) {
+            throw new IllegalArgumentException("The key needs to be " + KEY_SIZE + " bytes long");
+        }
+        return new GCMBlockCipher(new AESEngine());
+    }
+
+    /** Initializes the cipher for the chunk with the given index. The key is only set for the first chunk,
+     * the key schedule and the GHASH tables of the cipher are reused for the rest of the chunks. **/
+    static void initChunk(@NonNull GCMBlockCipher cipher, boolean isEncrypt, @NonNull KeyParameter key,
+                          @NonNull byte[] prefix, @Nullable byte[] associatedData,
+                          int chunkIndex, boolean isLastChunk) {
+        byte[] nonce = new byte[NONCE_SIZE];
+        System.arraycopy(prefix, 0, nonce, 0, PREFIX_SIZE);
+        nonce[PREFIX_SIZE] = (byte) (chunkIndex >>> 24);
+        nonce[PREFIX_SIZE + 1] = (byte) (chunkIndex >>> 16);
+        nonce[PREFIX_SIZE + 2] = (byte) (chunkIndex >>> 8);
+        nonce[PREFIX_SIZE + 3] = (byte) chunkIndex;
+        nonce[NONCE_SIZE - 1] = (byte) (isLastChunk ? 1 : 0);
+        cipher.init(isEncrypt, new AEADParameters(chunkIndex == 0 ? key : null, TAG_SIZE * 8,
+                nonce, associatedData));
+    }
+}
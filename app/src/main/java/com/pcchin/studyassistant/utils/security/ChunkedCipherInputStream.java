@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.security;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** An InputStream that decrypts a stream written by ChunkedCipherOutputStream.
+ * Each chunk is only returned after it has been authenticated,
+ * and a ChunkedCipher.AuthenticationException is thrown if any chunk fails to do so.
+ * @see ChunkedCipher for the format of the stream. **/
+public class ChunkedCipherInputStream extends FilterInputStream {
+    private final GCMBlockCipher cipher;
+    private final KeyParameter key;
+    private final byte[] prefix = new byte[ChunkedCipher.PREFIX_SIZE];
+    private final byte[] associatedData;
+    // An extra byte is read after each chunk to check whether it is the last chunk
+    private final byte[] encryptedChunk = new byte[ChunkedCipher.CHUNK_SIZE + ChunkedCipher.TAG_SIZE + 1];
+    private final byte[] chunk = new byte[ChunkedCipher.CHUNK_SIZE];
+    private int encryptedLength = 0;
+    private int chunkLength = 0;
+    private int chunkPosition = 0;
+    private int chunkIndex = 0;
+    private boolean isHeaderRead = false;
+    private boolean isLastChunkRead = false;
+
+    /** The header of the stream is only read when the stream is first read.
+     * @param key the 32 byte key used for the stream. **/
+    public ChunkedCipherInputStream(@NonNull InputStream input, @NonNull byte[] key) {
+        this(input, key, null);
+    }
+
+    /** The header of the stream is only read when the stream is first read.
+     * @param key the 32 byte key used for the stream.
+     * @param associatedData the data that the stream was bound to when it was written. **/
+    public ChunkedCipherInputStream(@NonNull InputStream input, @NonNull byte[] key,
+                                    @Nullable byte[] associatedData) {
+        super(input);
+        this.cipher = ChunkedCipher.createCipher(key);
+        this.key = new KeyParameter(key);
+        this.associatedData = associatedData == null ? null : associatedData.clone();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (chunkPosition == chunkLength) {
+            if (isLastChunkRead) return -1;
+            readChunk();
+        }
+        int count = Math.min(len, chunkLength - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, b, off, count);
+        chunkPosition += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] skipped = new byte[(int) Math.min(n, 8192)];
+        long total = 0;
+        while (total < n) {
+            int count = read(skipped, 0, (int) Math.min(n - total, skipped.length));
+            if (count < 0) break;
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public int available() {
+        return chunkLength - chunkPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // Not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /** Reads, authenticates and decrypts the next chunk. **/
+    private void readChunk() throws IOException {
+        if (!isHeaderRead) readHeader();
+        // Read until the chunk and the extra byte are read, or until the end of the stream
+        while (encryptedLength < encryptedChunk.length) {
+            int count = in.read(encryptedChunk, encryptedLength, encryptedChunk.length - encryptedLength);
+            if (count < 0) break;
+            encryptedLength += count;
+        }
+        boolean isLastChunk = encryptedLength < encryptedChunk.length;
+        int length = isLastChunk ? encryptedLength : encryptedChunk.length - 1;
+        if (length < ChunkedCipher.TAG_SIZE) {
+            throw new ChunkedCipher.AuthenticationException("The encrypted stream is truncated");
+        }
+
+        ChunkedCipher.initChunk(cipher, false, key, prefix, associatedData, chunkIndex, isLastChunk);
+        try {
+            chunkLength = cipher.processBytes(encryptedChunk, 0, length, chunk, 0);
+            chunkLength += cipher.doFinal(chunk, chunkLength);
+        } catch (InvalidCipherTextException e) {
+            throw new ChunkedCipher.AuthenticationException("Chunk " + chunkIndex
+                    + " of the encrypted stream could not be authenticated");
+        }
+        chunkPosition = 0;
+        chunkIndex++;
+        isLastChunkRead = isLastChunk;
+        if (!isLastChunk) {
+            // Move the extra byte to the start of the next chunk
+            encryptedChunk[0] = encryptedChunk[encryptedChunk.length - 1];
+            encryptedLength = 1;
+        }
+    }
+
+    /** Reads the version and the nonce prefix of the stream. **/
+    private void readHeader() throws IOException {
+        int version = in.read();
+        if (version != ChunkedCipher.VERSION) {
+            throw new ChunkedCipher.AuthenticationException("The encrypted stream version "
+                    + version + " is not supported");
+        }
+        int read = 0;
+        while (read < prefix.length) {
+            int count = in.read(prefix, read, prefix.length - read);
+            if (count < 0) throw new ChunkedCipher.AuthenticationException("The encrypted stream is truncated");
+            read += count;
+        }
+        isHeaderRead = true;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.security;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+
+/** An OutputStream that encrypts the data written to it in chunks with AES-GCM.
+ * finish() needs to be called to write the last chunk, which is also done in close().
+ * @see ChunkedCipher for the format of the stream. **/
+public class ChunkedCipherOutputStream extends FilterOutputStream {
+    private final GCMBlockCipher cipher;
+    private final KeyParameter key;
+    private final byte[] prefix = new byte[ChunkedCipher.PREFIX_SIZE];
+    private final byte[] associatedData;
+    private final byte[] chunk = new byte[ChunkedCipher.CHUNK_SIZE];
+    private final byte[] encryptedChunk = new byte[ChunkedCipher.CHUNK_SIZE + ChunkedCipher.TAG_SIZE];
+    private int chunkLength = 0;
+    private int chunkIndex = 0;
+    private boolean isFinished = false;
+
+    /** Writes the header of the stream to the output.
+     * @param key the 32 byte key used for the stream. **/
+    public ChunkedCipherOutputStream(@NonNull OutputStream output, @NonNull byte[] key) throws IOException {
+        this(output, key, null);
+    }
+
+    /** Writes the header of the stream to the output.
+     * @param key the 32 byte key used for the stream.
+     * @param associatedData the data that the stream is bound to, which needs to be given
+     *                       to ChunkedCipherInputStream as well. **/
+    public ChunkedCipherOutputStream(@NonNull OutputStream output, @NonNull byte[] key,
+                                     @Nullable byte[] associatedData) throws IOException {
+        super(output);
+        this.cipher = ChunkedCipher.createCipher(key);
+        this.key = new KeyParameter(key);
+        this.associatedData = associatedData == null ? null : associatedData.clone();
+        new SecureRandom().nextBytes(prefix);
+        out.write(ChunkedCipher.VERSION);
+        out.write(prefix);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        if (isFinished) throw new IOException("The stream had already been finished");
+        while (len > 0) {
+            // A full chunk is only encrypted once more data is written, as the last chunk is marked separately
+            if (chunkLength == chunk.length) writeChunk(false);
+            int count = Math.min(len, chunk.length - chunkLength);
+            System.arraycopy(b, off, chunk, chunkLength, count);
+            chunkLength += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /** Encrypts the remaining data as the last chunk without closing the output. **/
+    public void finish() throws IOException {
+        if (isFinished) return;
+        writeChunk(true);
+        isFinished = true;
+        out.flush();
+    }
+
+    /** Writes the last chunk and closes the output. **/
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Encrypts the current chunk and writes it to the output. **/
+    private void writeChunk(boolean isLastChunk) throws IOException {
+        ChunkedCipher.initChunk(cipher, true, key, prefix, associatedData, chunkIndex, isLastChunk);
+        try {
+            int length = cipher.processBytes(chunk, 0, chunkLength, encryptedChunk, 0);
+            length += cipher.doFinal(encryptedChunk, length);
+            out.write(encryptedChunk, 0, length);
+        } catch (InvalidCipherTextException e) {
+            // Not thrown when encrypting
+            throw new IOException(e);
+        }
+        chunkLength = 0;
+        chunkIndex++;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.security;
+
+import androidx.annotation.NonNull;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.engines.BlowfishEngine;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** A padded CBC cipher that is keyed once and can then encrypt or decrypt any number of messages,
+ * so that the key schedule is not computed again for each message. The ciphers for each direction
+ * are only created when they are first used, and they reset to the original IV after each message.
+ * Messages can be processed from and into ByteBuffers given by the caller so that no extra copies are made.
+ * This class is not thread safe, a separate session should be created for each thread. **/
+public final class CipherSession {
+    private static final int AES_KEY_SIZE = 32;
+    private static final int AES_IV_SIZE = 16;
+    private static final int BLOWFISH_KEY_SIZE = 56;
+
+    private final boolean isAes;
+    private final CipherParameters params;
+    private PaddedBufferedBlockCipher encryptCipher;
+    private PaddedBufferedBlockCipher decryptCipher;
+    // Only used if the buffers given are direct buffers
+    private byte[] inputScratch = new byte[0];
+    private byte[] outputScratch = new byte[0];
+
+    /** Constructor used as the parameters are created by the static functions. **/
+    private CipherSession(boolean isAes, @NonNull CipherParameters params) {
+        this.isAes = isAes;
+        this.params = params;
+    }
+
+    /** Creates a session for AES-256 in CBC mode with PKCS7 padding.
+     * The key and the IV are trimmed to 32 and 16 bytes respectively, or repeated if they are shorter. **/
+    @NonNull
+    public static CipherSession aes(@NonNull byte[] key, @NonNull byte[] iv) {
+        byte[] fittedIv = fitBytes(iv, AES_IV_SIZE);
+        return new CipherSession(true, new ParametersWithIV(keyParameter(key, AES_KEY_SIZE),
+                fittedIv, 0, AES_IV_SIZE));
+    }
+
+    /** Creates a session for Blowfish in CBC mode with PKCS7 padding and an empty IV.
+     * The key is trimmed to 56 bytes, or repeated if it is shorter. **/
+    @NonNull
+    public static CipherSession blowfish(@NonNull byte[] key) {
+        return new CipherSession(false, keyParameter(key, BLOWFISH_KEY_SIZE));
+    }
+
+    /** Returns the maximum number of bytes that processing a message of the given length would output. **/
+    public int getOutputSize(boolean isEncrypt, int length) {
+        return getCipher(isEncrypt).getOutputSize(length);
+    }
+
+    /** Encrypts the message. The array returned is exactly the size of the output so it is not copied again. **/
+    @NonNull
+    public byte[] encrypt(@NonNull byte[] original) throws InvalidCipherTextException {
+        return process(true, original);
+    }
+
+    /** Decrypts the message. The output is copied once to remove the padding,
+     * decrypt(ByteBuffer, ByteBuffer) should be used if that copy needs to be avoided. **/
+    @NonNull
+    public byte[] decrypt(@NonNull byte[] original) throws InvalidCipherTextException {
+        return process(false, original);
+    }
+
+    /** Encrypts the remaining bytes of the input into the output.
+     * @return the number of bytes written, the positions of both buffers are moved past the bytes processed.
+     * @throws BufferOverflowException if the output does not have getOutputSize(true, input.remaining())
+     * bytes remaining. **/
+    public int encrypt(@NonNull ByteBuffer input, @NonNull ByteBuffer output) throws InvalidCipherTextException {
+        return process(true, input, output);
+    }
+
+    /** Decrypts the remaining bytes of the input into the output.
+     * @return the number of bytes written, the positions of both buffers are moved past the bytes processed.
+     * @throws BufferOverflowException if the output does not have getOutputSize(false, input.remaining())
+     * bytes remaining. **/
+    public int decrypt(@NonNull ByteBuffer input, @NonNull ByteBuffer output) throws InvalidCipherTextException {
+        return process(false, input, output);
+    }
+
+    /** Processes a byte array and only copies the output if it is smaller than expected. **/
+    @NonNull
+    private byte[] process(boolean isEncrypt, @NonNull byte[] original) throws InvalidCipherTextException {
+        byte[] output = new byte[getOutputSize(isEncrypt, original.length)];
+        int length = process(isEncrypt, ByteBuffer.wrap(original), ByteBuffer.wrap(output));
+        return length == output.length ? output : Arrays.copyOf(output, length);
+    }
+
+    /** Processes the buffers directly through their backing arrays,
+     * or through the scratch arrays if they are direct buffers. **/
+    private int process(boolean isEncrypt, @NonNull ByteBuffer input, @NonNull ByteBuffer output)
+            throws InvalidCipherTextException {
+        PaddedBufferedBlockCipher cipher = getCipher(isEncrypt);
+        int inputLength = input.remaining();
+        if (output.remaining() < cipher.getOutputSize(inputLength)) throw new BufferOverflowException();
+
+        byte[] in, out;
+        int inOffset, outOffset;
+        if (input.hasArray()) {
+            in = input.array();
+            inOffset = input.arrayOffset() + input.position();
+        } else {
+            if (inputScratch.length < inputLength) inputScratch = new byte[inputLength];
+            in = inputScratch;
+            inOffset = 0;
+            input.duplicate().get(in, 0, inputLength);
+        }
+        if (output.hasArray()) {
+            out = output.array();
+            outOffset = output.arrayOffset() + output.position();
+        } else {
+            int outputLength = cipher.getOutputSize(inputLength);
+            if (outputScratch.length < outputLength) outputScratch = new byte[outputLength];
+            out = outputScratch;
+            outOffset = 0;
+        }
+
+        int length;
+        try {
+            length = cipher.processBytes(in, inOffset, inputLength, out, outOffset);
+            length += cipher.doFinal(out, outOffset + length);
+        } catch (DataLengthException e) {
+            // doFinal resets the cipher by itself
+            cipher.reset();
+            throw e;
+        }
+        input.position(input.limit());
+        if (output.hasArray()) {
+            output.position(output.position() + length);
+        } else {
+            output.put(out, 0, length);
+        }
+        return length;
+    }
+
+    /** Returns the cipher for the direction, which is keyed when it is first used. **/
+    @NonNull
+    private PaddedBufferedBlockCipher getCipher(boolean isEncrypt) {
+        PaddedBufferedBlockCipher cipher = isEncrypt ? encryptCipher : decryptCipher;
+        if (cipher == null) {
+            BlockCipher engine = isAes ? new AESEngine() : new BlowfishEngine();
+            cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(engine));
+            cipher.init(isEncrypt, params);
+            if (isEncrypt) {
+                encryptCipher = cipher;
+            } else {
+                decryptCipher = cipher;
+            }
+        }
+        return cipher;
+    }
+
+    /** Returns the key parameter of a specific length. The key is not copied before that
+     * if it is long enough, as KeyParameter copies the part needed by itself. **/
+    @NonNull
+    private static KeyParameter keyParameter(@NonNull byte[] key, int size) {
+        return key.length >= size ? new KeyParameter(key, 0, size) : new KeyParameter(fitBytes(key, size));
+    }
+
+    /** Trims a byte array to a specific length, or repeats it if it is not long enough.
+     * The original array is returned if it is long enough as it would only be read up to the length. **/
+    @NonNull
+    private static byte[] fitBytes(@NonNull byte[] original, int size) {
+        if (original.length >= size) return original;
+        byte[] response = new byte[size];
+        // An empty array would result in an array of 0s
+        for (int i = 0; original.length > 0 && i < size; i++) {
+            response[i] = original[i % original.length];
+        }
+        return response;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.security;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.pcchin.studyassistant.functions.ConverterFunctions;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A short-lived cache of the keys derived in this session, so that a password that has already been
+ * entered does not need to be derived again, e.g. when returning to a project or note.
+ * The entries are looked up through a SHA-256 digest of the parameters, salt and password
+ * so that the passwords themselves are not kept. Entries expire after TIMEOUT_NS
+ * and the whole cache is cleared when the app is closed. **/
+public final class DerivedKeyCache {
+    private static final long TIMEOUT_NS = 5 * 60 * 1000000000L;
+    private static final int MAX_SIZE = 16;
+    private static final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(MAX_SIZE, 0.75f, true);
+
+    private DerivedKeyCache() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** Returns the key that had been derived with the same parameters, password and salt,
+     * or null if it is not in the cache or has expired. **/
+    @Nullable
+    public static synchronized byte[] get(@NonNull KdfParams params, @NonNull byte[] password, @NonNull byte[] salt) {
+        removeExpired();
+        Entry entry = cache.get(getCacheKey(params, password, salt));
+        return entry == null ? null : entry.key.clone();
+    }
+
+    /** Stores a derived key in the cache. **/
+    public static synchronized void put(@NonNull KdfParams params, @NonNull byte[] password,
+                                        @NonNull byte[] salt, @NonNull byte[] key) {
+        removeExpired();
+        cache.put(getCacheKey(params, password, salt), new Entry(key.clone(),
+                System.nanoTime() + TIMEOUT_NS));
+        if (cache.size() > MAX_SIZE) {
+            Iterator<Entry> iterator = cache.values().iterator();
+            wipe(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /** Removes all the keys from the cache. **/
+    public static synchronized void clear() {
+        for (Entry entry: cache.values()) wipe(entry);
+        cache.clear();
+    }
+
+    /** Removes the keys that have expired. **/
+    private static void removeExpired() {
+        long currentTime = System.nanoTime();
+        Iterator<Map.Entry<String, Entry>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.expiry - currentTime <= 0) {
+                wipe(entry);
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Overwrites the key so that it does not stay in memory. **/
+    private static void wipe(@NonNull Entry entry) {
+        Arrays.fill(entry.key, (byte) 0);
+    }
+
+    /** Returns the digest of the parameters, salt and password as a hex string. **/
+    @NonNull
+    private static String getCacheKey(@NonNull KdfParams params, @NonNull byte[] password, @NonNull byte[] salt) {
+        SHA256Digest digest = new SHA256Digest();
+        byte[] paramBytes = (params == KdfParams.LEGACY ? "legacy" : params.toString())
+                .getBytes(StandardCharsets.UTF_8);
+        // The lengths are included so that different combinations cannot give the same input
+        updateWithLength(digest, paramBytes);
+        updateWithLength(digest, salt);
+        updateWithLength(digest, password);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return ConverterFunctions.bytesToHex(result);
+    }
+
+    /** Adds the length of the input and then the input to the digest. **/
+    private static void updateWithLength(@NonNull SHA256Digest digest, @NonNull byte[] input) {
+        digest.update((byte) (input.length >>> 24));
+        digest.update((byte) (input.length >>> 16));
+        digest.update((byte) (input.length >>> 8));
+        digest.update((byte) input.length);
+        digest.update(input, 0, input.length);
+    }
+
+    /** A derived key and the time that it expires. **/
+    private static class Entry {
+        private final byte[] key;
+        private final long expiry;
+
+        /** Constructor used as the key and expiry need to be passed on. **/
+        Entry(byte[] key, long expiry) {
+            this.key = key;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.security;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
+import org.bouncycastle.crypto.generators.SCrypt;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import java.util.Locale;
+
+/** The algorithm and cost of a key derivation, which is stored together with each hash or encrypted file
+ * so that the default cost can be raised without breaking the hashes and files that already exist.
+ * The parameters are stored as a string, e.g. pbkdf2-sha256$i=30000 or scrypt$n=16384,r=8,p=1.
+ * Hashes created before the parameters were stored are read with LEGACY. **/
+public final class KdfParams {
+    public static final String PBKDF2_SHA256 = "pbkdf2-sha256";
+    public static final String SCRYPT = "scrypt";
+    /** The length of the keys derived, except for legacy hashes. **/
+    public static final int KEY_LENGTH = 32;
+    /** The parameters of passwordHash before the parameters were stored.
+     * The length of the hash derived depends on the length of the password. **/
+    public static final KdfParams LEGACY = new KdfParams(PBKDF2_SHA256, 10800, 0, 0);
+    /** The parameters used for new hashes and files. **/
+    public static final KdfParams DEFAULT = pbkdf2(30000);
+    // The parameters are read from files and stored hashes, so they are limited to prevent
+    // a crafted file from running out of memory or blocking KdfService indefinitely
+    /** The maximum number of iterations for PBKDF2 that is accepted by parse(). **/
+    public static final int MAX_PBKDF2_ITERATIONS = 1000000;
+    /** The maximum N * r for scrypt that is accepted by parse(), which uses 64MB of memory. **/
+    public static final long MAX_SCRYPT_MEMORY_COST = 1 << 19;
+    /** The maximum N * r * p for scrypt that is accepted by parse(). **/
+    public static final long MAX_SCRYPT_COST = 1 << 20;
+
+    public final String algorithm;
+    /** The number of iterations for PBKDF2 or N for scrypt. **/
+    public final int cost;
+    /** r for scrypt, unused for PBKDF2. **/
+    public final int blockSize;
+    /** p for scrypt, unused for PBKDF2. **/
+    public final int parallelism;
+
+    /** Constructor used as the values need to be validated by the static functions. **/
+    private KdfParams(@NonNull String algorithm, int cost, int blockSize, int parallelism) {
+        this.algorithm = algorithm;
+        this.cost = cost;
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+    }
+
+    /** Creates the parameters for PBKDF2 with SHA-256. **/
+    @NonNull
+    public static KdfParams pbkdf2(int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("Iterations must be positive");
+        return new KdfParams(PBKDF2_SHA256, iterations, 0, 0);
+    }
+
+    /** Creates the parameters for scrypt, n needs to be a power of 2. **/
+    @NonNull
+    public static KdfParams scrypt(int n, int r, int p) {
+        if (n < 2 || (n & (n - 1)) != 0 || r < 1 || p < 1) {
+            throw new IllegalArgumentException("Invalid scrypt parameters");
+        }
+        return new KdfParams(SCRYPT, n, r, p);
+    }
+
+    /** Parses the parameters from the string returned by toString().
+     * The length of the key is not part of the string, so it is always KEY_LENGTH.
+     * @return null if the parameters are invalid, exceed the maximum cost
+     * or the algorithm is not known. **/
+    @Nullable
+    public static KdfParams parse(@NonNull String params) {
+        try {
+            String[] parts = params.split("\\$", -1);
+            if (parts.length != 2) return null;
+            if (PBKDF2_SHA256.equals(parts[0]) && parts[1].startsWith("i=")) {
+                int iterations = Integer.parseInt(parts[1].substring(2));
+                return iterations > MAX_PBKDF2_ITERATIONS ? null : pbkdf2(iterations);
+            } else if (SCRYPT.equals(parts[0])) {
+                String[] values = parts[1].split(",", -1);
+                if (values.length != 3 || !values[0].startsWith("n=") || !values[1].startsWith("r=")
+                        || !values[2].startsWith("p=")) return null;
+                int n = Integer.parseInt(values[0].substring(2)), r = Integer.parseInt(values[1].substring(2)),
+                        p = Integer.parseInt(values[2].substring(2));
+                // The values are checked by scrypt() first so that they are all positive
+                KdfParams scryptParams = scrypt(n, r, p);
+                if ((long) n * r > MAX_SCRYPT_MEMORY_COST || (long) n * r * p > MAX_SCRYPT_COST) return null;
+                return scryptParams;
+            }
+            return null;
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException
+            return null;
+        }
+    }
+
+    /** Derives a key from the password. This may take a while and should not be run on the main thread.
+     * @see KdfService **/
+    @NonNull
+    public byte[] derive(@NonNull byte[] password, @NonNull byte[] salt) {
+        if (SCRYPT.equals(algorithm)) {
+            return SCrypt.generate(password, salt, cost, blockSize, parallelism, KEY_LENGTH);
+        }
+        PKCS5S2ParametersGenerator pbkdf2 = new PKCS5S2ParametersGenerator(new SHA256Digest());
+        pbkdf2.init(password, salt, cost);
+        // The legacy hashes used the length of the password in bytes as the number of bits of the hash
+        int keyBits = this == LEGACY ? password.length : KEY_LENGTH * 8;
+        return ((KeyParameter) pbkdf2.generateDerivedParameters(keyBits)).getKey();
+    }
+
+    /** Returns the parameters in the format read by parse(). **/
+    @NonNull
+    @Override
+    public String toString() {
+        if (SCRYPT.equals(algorithm)) {
+            return String.format(Locale.ENGLISH, "%s$n=%d,r=%d,p=%d", algorithm, cost, blockSize, parallelism);
+        }
+        return String.format(Locale.ENGLISH, "%s$i=%d", algorithm, cost);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof KdfParams)) return false;
+        KdfParams params = (KdfParams) obj;
+        return this != LEGACY && params != LEGACY && algorithm.equals(params.algorithm) && cost == params.cost
+                && blockSize == params.blockSize && parallelism == params.parallelism;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((algorithm.hashCode() * 31 + cost) * 31 + blockSize) * 31 + parallelism;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.security;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.misc.BackgroundRunner;
+
+import java.util.concurrent.Callable;
+
+/** Runs key derivations and the work that depends on them on a background thread,
+ * and returns their results to the main thread. The derivations share a single thread
+ * as each of them is CPU bound, and scrypt derivations also use a large amount of memory.
+ * The result is dropped if the lifecycle of the owner is destroyed before it is returned.
+ * All functions in this class should be called from the main thread.
+ * @see BackgroundRunner **/
+public final class KdfService {
+    private static final BackgroundRunner runner = BackgroundRunner.singleThread("KdfService",
+            "Cryptography Error: A key derivation could not be completed");
+
+    private KdfService() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** Stores a new password hash. It is run on the background thread. **/
+    public interface HashWriter {
+        void write(@NonNull String newHash) throws Exception;
+    }
+
+    /** Hashes a password with the default parameters.
+     * @see SecurityFunctions#passwordHash(String, String) **/
+    public static void passwordHash(@NonNull LifecycleOwner owner, @NonNull String password,
+                                    @NonNull String salt, @NonNull BackgroundRunner.Callback<String> callback,
+                                    @Nullable BackgroundRunner.ErrorCallback errorCallback) {
+        run(owner, () -> SecurityFunctions.passwordHash(password, salt), callback, errorCallback);
+    }
+
+    /** Checks whether the password matches the stored hash.
+     * @see SecurityFunctions#verifyPassword(String, String, String) **/
+    public static void verifyPassword(@NonNull LifecycleOwner owner, @NonNull String password,
+                                      @NonNull String salt, @NonNull String storedHash,
+                                      @NonNull BackgroundRunner.Callback<Boolean> callback,
+                                      @Nullable BackgroundRunner.ErrorCallback errorCallback) {
+        run(owner, () -> SecurityFunctions.verifyPassword(password, salt, storedHash),
+                callback, errorCallback);
+    }
+
+    /** Hashes the password again with the default parameters if the stored hash uses older parameters.
+     * This should only be called after the password has been verified. The task is not tied to
+     * a lifecycle, so the new hash is still stored if the screen is closed right after the login.
+     * @param writer is only run if the hash is replaced, and is run on the background thread. **/
+    public static void rehashIfNeeded(@NonNull String password, @NonNull String salt,
+                                      @NonNull String storedHash, @NonNull HashWriter writer) {
+        if (!SecurityFunctions.needsRehash(storedHash)) return;
+        runner.runDetached(() -> {
+            writer.write(SecurityFunctions.passwordHash(password, salt));
+            return null;
+        });
+    }
+
+    /** Runs a task that depends on a key derivation, such as decrypting a file.
+     * If the task throws an exception, the exception is logged and passed to errorCallback. **/
+    public static <T> void run(@NonNull LifecycleOwner owner, @NonNull Callable<T> task,
+                               @NonNull BackgroundRunner.Callback<T> callback,
+                               @Nullable BackgroundRunner.ErrorCallback errorCallback) {
+        runner.run(owner, task, callback, errorCallback);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.security;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.pcchin.studyassistant.functions.ConverterFunctions;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Base64;
+import org.bouncycastle.util.encoders.DecoderException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+
+import javax.crypto.Cipher;
+
+/** Encrypts the messages sent to the server through its public RSA key (PKCS1-OAEP).
+ * The key is read from public.pem in the assets only once, and the same cipher is reused for each message.
+ * Messages are encrypted in blocks of BLOCK_SIZE bytes and returned as a hex string. **/
+public final class ServerRsaCipher {
+    private static final String KEY_FILE = "public.pem";
+    private static final String TRANSFORMATION = "RSA/NONE/OAEPPadding";
+    /** The number of bytes of the message encrypted in each block. **/
+    public static final int BLOCK_SIZE = 128;
+    // Used directly so that the provider does not need to be registered for each message
+    private static final Provider PROVIDER = new BouncyCastleProvider();
+    private static ServerRsaCipher instance;
+
+    private final Cipher cipher;
+    private final byte[] blockOutput;
+
+    /** Creates a cipher for the given key. getInstance() should be used for the key of the server. **/
+    public ServerRsaCipher(@NonNull PublicKey key) throws GeneralSecurityException {
+        cipher = Cipher.getInstance(TRANSFORMATION, PROVIDER);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        blockOutput = new byte[cipher.getOutputSize(BLOCK_SIZE)];
+    }
+
+    /** Returns the cipher for the key of the server, which is read from the assets when it is first used.
+     * The key would be read again the next time if it could not be read. **/
+    @NonNull
+    public static synchronized ServerRsaCipher getInstance(@NonNull Context context)
+            throws IOException, GeneralSecurityException {
+        if (instance == null) {
+            try (InputStream inputStream = context.getAssets().open(KEY_FILE)) {
+                instance = new ServerRsaCipher(readPublicKey(new InputStreamReader(inputStream,
+                        StandardCharsets.US_ASCII)));
+            }
+        }
+        return instance;
+    }
+
+    /** Reads an X.509 public RSA key in the PEM format. The BEGIN and END lines are optional. **/
+    @NonNull
+    public static PublicKey readPublicKey(@NonNull Reader reader) throws IOException, GeneralSecurityException {
+        StringBuilder keyBuilder = new StringBuilder();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            if (!line.startsWith("-----")) keyBuilder.append(line.trim());
+        }
+        try {
+            return KeyFactory.getInstance("RSA", PROVIDER).generatePublic(
+                    new X509EncodedKeySpec(Base64.decode(keyBuilder.toString())));
+        } catch (DecoderException e) {
+            throw new InvalidKeySpecException("The public key is not valid Base64", e);
+        }
+    }
+
+    /** Encrypts the message and returns it as an uppercase hex string.
+     * Each block is written as hex as soon as it is encrypted, into a string that is sized in advance. **/
+    @NonNull
+    public synchronized String encryptToHex(@NonNull String original) throws GeneralSecurityException {
+        byte[] originalBytes = original.getBytes(StandardCharsets.UTF_8);
+        int blockCount = (originalBytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        StringBuilder output = new StringBuilder(blockCount * blockOutput.length * 2);
+        for (int offset = 0; offset < originalBytes.length; offset += BLOCK_SIZE) {
+            int length = cipher.doFinal(originalBytes, offset, Math.min(BLOCK_SIZE, originalBytes.length - offset),
+                    blockOutput, 0);
+            ConverterFunctions.bytesToHex(blockOutput, 0, length, output);
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.startup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A set of startup stages and the stages that each of them depends on.
+ * Critical stages are run one at a time on the thread that calls run(), in the order that
+ * they are added unless their dependencies require otherwise. Deferred stages are run on
+ * the given executor once the critical stages are done, and each of them starts as soon as
+ * the deferred stages that it depends on are done, so independent stages run in parallel.
+ * A deferred stage is skipped if any stage that it depends on has failed.
+ * The time taken by each stage is recorded into a StartupTrace. **/
+public final class StartupGraph {
+    private final Map<String, Stage> stageMap = new LinkedHashMap<>();
+
+    /** The listener that is called once all the stages are done. **/
+    public interface Listener {
+        /** Called on the thread that runs the last stage. **/
+        void onFinished(@NonNull StartupTrace trace);
+    }
+
+    /** A stage in the graph. **/
+    private static final class Stage {
+        private final String name;
+        private final boolean isCritical;
+        private final Runnable task;
+        private final String[] dependencies;
+        private final List<Stage> dependents = new ArrayList<>();
+        private final AtomicInteger pendingCount = new AtomicInteger(0);
+        private volatile boolean isSuccessful = false;
+
+        /** Constructor used as the name, task and dependencies need to be passed on. **/
+        private Stage(String name, boolean isCritical, Runnable task, String[] dependencies) {
+            this.name = name;
+            this.isCritical = isCritical;
+            this.task = task;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /** Adds a stage that needs to be done before the first frame.
+     * @throws IllegalArgumentException if a stage with the same name already exists. **/
+    @NonNull
+    public StartupGraph addCritical(@NonNull String name, @NonNull Runnable task, @NonNull String... dependencies) {
+        return addStage(new Stage(name, true, task, dependencies));
+    }
+
+    /** Adds a stage that can be done in the background after the critical stages.
+     * @throws IllegalArgumentException if a stage with the same name already exists. **/
+    @NonNull
+    public StartupGraph addDeferred(@NonNull String name, @NonNull Runnable task, @NonNull String... dependencies) {
+        return addStage(new Stage(name, false, task, dependencies));
+    }
+
+    /** Adds the stage to the map. **/
+    @NonNull
+    private StartupGraph addStage(@NonNull Stage stage) {
+        if (stageMap.containsKey(stage.name)) {
+            throw new IllegalArgumentException("Stage " + stage.name + " already exists");
+        }
+        stageMap.put(stage.name, stage);
+        return this;
+    }
+
+    /** Returns the names of the critical stages in the order that they would be run.
+     * @throws IllegalStateException if the graph is invalid. **/
+    @NonNull
+    public List<String> getCriticalOrder() {
+        List<String> nameList = new ArrayList<>();
+        for (Stage stage: getCriticalStages()) nameList.add(stage.name);
+        return nameList;
+    }
+
+    /** Returns the names of the deferred stages that do not depend on any other deferred stage,
+     * which are the stages that are started together once the critical stages are done.
+     * @throws IllegalStateException if the graph is invalid. **/
+    @NonNull
+    public List<String> getDeferredRoots() {
+        getCriticalStages();
+        List<String> nameList = new ArrayList<>();
+        for (Stage stage: stageMap.values()) {
+            if (!stage.isCritical && countDeferredDependencies(stage) == 0) nameList.add(stage.name);
+        }
+        return nameList;
+    }
+
+    /** Runs the critical stages on the current thread, then submits the deferred stages to the executor.
+     * If a critical stage throws an exception, it is recorded and thrown again.
+     * @return the trace, which would still be recorded by the deferred stages after this returns.
+     * @throws IllegalStateException if the graph is invalid. **/
+    @NonNull
+    public StartupTrace run(@NonNull Executor executor, @Nullable Listener listener) {
+        List<Stage> criticalStages = getCriticalStages();
+        StartupTrace trace = new StartupTrace(System.nanoTime());
+        for (Stage stage: criticalStages) {
+            long startTime = System.nanoTime();
+            try {
+                stage.task.run();
+            } catch (RuntimeException | Error e) {
+                trace.record(stage.name, true, startTime, StartupTrace.Status.FAILED, e);
+                throw e;
+            }
+            stage.isSuccessful = true;
+            trace.record(stage.name, true, startTime, StartupTrace.Status.COMPLETED, null);
+        }
+
+        List<Stage> rootStages = new ArrayList<>();
+        for (Stage stage: stageMap.values()) {
+            if (stage.isCritical) continue;
+            stage.pendingCount.set(countDeferredDependencies(stage));
+            if (stage.pendingCount.get() == 0) rootStages.add(stage);
+        }
+        AtomicInteger remainingCount = new AtomicInteger(stageMap.size() - criticalStages.size());
+        if (remainingCount.get() == 0) {
+            if (listener != null) listener.onFinished(trace);
+            return trace;
+        }
+        for (Stage stage: rootStages) {
+            executor.execute(() -> runDeferred(stage, executor, trace, remainingCount, listener));
+        }
+        return trace;
+    }
+
+    /** Runs a deferred stage, or skips it if any of its dependencies has failed,
+     * and then starts the dependents which are no longer waiting for any other stage. **/
+    private void runDeferred(@NonNull Stage stage, @NonNull Executor executor, @NonNull StartupTrace trace,
+                             @NonNull AtomicInteger remainingCount, @Nullable Listener listener) {
+        long startTime = System.nanoTime();
+        boolean canRun = true;
+        for (String dependency: stage.dependencies) {
+            if (!stageMap.get(dependency).isSuccessful) canRun = false;
+        }
+        if (canRun) {
+            try {
+                stage.task.run();
+                stage.isSuccessful = true;
+                trace.record(stage.name, false, startTime, StartupTrace.Status.COMPLETED, null);
+            } catch (RuntimeException | Error e) {
+                trace.record(stage.name, false, startTime, StartupTrace.Status.FAILED, e);
+            }
+        } else {
+            trace.record(stage.name, false, startTime, StartupTrace.Status.SKIPPED, null);
+        }
+
+        for (Stage dependent: stage.dependents) {
+            if (dependent.pendingCount.decrementAndGet() == 0) {
+                executor.execute(() -> runDeferred(dependent, executor, trace, remainingCount, listener));
+            }
+        }
+        if (remainingCount.decrementAndGet() == 0 && listener != null) listener.onFinished(trace);
+    }
+
+    /** Returns the number of deferred stages that the stage depends on. **/
+    private int countDeferredDependencies(@NonNull Stage stage) {
+        int count = 0;
+        for (String dependency: stage.dependencies) {
+            if (!stageMap.get(dependency).isCritical) count++;
+        }
+        return count;
+    }
+
+    /** Checks the graph and returns the critical stages in the order that they should be run.
+     * The dependents of each stage are also linked here.
+     * @throws IllegalStateException if a dependency does not exist, if a critical stage
+     * depends on a deferred stage, or if there is a cycle in the graph. **/
+    @NonNull
+    private List<Stage> getCriticalStages() {
+        for (Stage stage: stageMap.values()) stage.dependents.clear();
+        for (Stage stage: stageMap.values()) {
+            for (String dependency: stage.dependencies) {
+                Stage dependencyStage = stageMap.get(dependency);
+                if (dependencyStage == null) {
+                    throw new IllegalStateException("Stage " + stage.name + " depends on missing stage " + dependency);
+                }
+                if (stage.isCritical && !dependencyStage.isCritical) {
+                    throw new IllegalStateException("Critical stage " + stage.name
+                            + " depends on deferred stage " + dependency);
+                }
+                dependencyStage.dependents.add(stage);
+            }
+        }
+
+        // The first stage in the order that they are added whose dependencies are done is taken each time
+        List<Stage> orderedStages = new ArrayList<>();
+        Set<String> doneSet = new HashSet<>();
+        List<Stage> remainingStages = new ArrayList<>(stageMap.values());
+        while (!remainingStages.isEmpty()) {
+            Stage nextStage = null;
+            for (Stage stage: remainingStages) {
+                boolean isReady = true;
+                for (String dependency: stage.dependencies) {
+                    if (!doneSet.contains(dependency)) isReady = false;
+                }
+                if (isReady) {
+                    nextStage = stage;
+                    break;
+                }
+            }
+            if (nextStage == null) {
+                throw new IllegalStateException("A cycle is found among the " + remainingStages.size()
+                        + " stages left");
+            }
+            remainingStages.remove(nextStage);
+            doneSet.add(nextStage.name);
+            if (nextStage.isCritical) orderedStages.add(nextStage);
+        }
+        return Collections.unmodifiableList(orderedStages);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant.utils.startup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** The time taken by each stage of a StartupGraph. The stages are recorded in the order
+ * that they finish, and the times are relative to when the graph started running.
+ * The trace can be recorded from multiple threads. **/
+public final class StartupTrace {
+    /** The result of a stage. **/
+    public enum Status {
+        COMPLETED, FAILED, SKIPPED
+    }
+
+    /** The record of a single stage. **/
+    public static final class Entry {
+        public final String name;
+        public final boolean isCritical;
+        public final String threadName;
+        public final long startNanos, durationNanos;
+        public final Status status;
+        @Nullable public final Throwable error;
+
+        /** Constructor used as all the values need to be passed on. **/
+        private Entry(String name, boolean isCritical, String threadName, long startNanos,
+                      long durationNanos, Status status, @Nullable Throwable error) {
+            this.name = name;
+            this.isCritical = isCritical;
+            this.threadName = threadName;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.status = status;
+            this.error = error;
+        }
+    }
+
+    private final long originNanos;
+    private final List<Entry> entryList = new ArrayList<>();
+
+    /** Creates a trace whose times are relative to the given System.nanoTime(). **/
+    StartupTrace(long originNanos) {
+        this.originNanos = originNanos;
+    }
+
+    /** Records a stage that started at the given System.nanoTime() and has just finished. **/
+    synchronized void record(@NonNull String name, boolean isCritical, long startTime,
+                             @NonNull Status status, @Nullable Throwable error) {
+        long endTime = System.nanoTime();
+        entryList.add(new Entry(name, isCritical, Thread.currentThread().getName(),
+                startTime - originNanos, endTime - startTime, status, error));
+    }
+
+    /** Returns a copy of the entries recorded so far. **/
+    @NonNull
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entryList);
+    }
+
+    /** Returns the time from the start of the graph until the last critical stage finished. **/
+    public synchronized long getCriticalPathNanos() {
+        long criticalEnd = 0;
+        for (Entry entry: entryList) {
+            if (entry.isCritical) criticalEnd = Math.max(criticalEnd, entry.startNanos + entry.durationNanos);
+        }
+        return criticalEnd;
+    }
+
+    /** Returns the trace as a table with one stage on each line. **/
+    @NonNull
+    public synchronized String dump() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.ENGLISH,
+                "Critical path: %.2fms\n", getCriticalPathNanos() / 1000000.0));
+        for (Entry entry: entryList) {
+            builder.append(String.format(Locale.ENGLISH, "%-16s %-8s %-9s +%8.2fms %8.2fms %s\n",
+                    entry.name, entry.isCritical ? "critical" : "deferred", entry.status,
+                    entry.startNanos / 1000000.0, entry.durationNanos / 1000000.0, entry.threadName));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant;
+
+import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.file.notes.NoteMetadataTable;
+import com.pcchin.studyassistant.utils.collections.IntArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/** Test the primitive collections against their boxed versions,
+ * and records their heap usage and the time taken to fill and read them. **/
+public class CollectionsTest {
+    private static int TEST_COUNT;
+
+    /** Default constructor. **/
+    public CollectionsTest() {
+        if (BuildConfig.IS_LOCAL) {
+            TEST_COUNT = 1000000;
+        } else {
+            TEST_COUNT = 100000;
+        }
+    }
+
+    /** Test whether IntArrayList has the same values as an ArrayList. **/
+    @Test
+    public void testIntArrayList() {
+        Random rand = new Random();
+        List<Integer> boxedList = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT / 100; i++) boxedList.add(rand.nextInt(TEST_COUNT / 200));
+        IntArrayList intList = IntArrayList.fromList(boxedList);
+        Assert.assertEquals(boxedList.size(), intList.size());
+        for (int i = 0; i < boxedList.size(); i++) {
+            Assert.assertEquals((int) boxedList.get(i), intList.get(i));
+            Assert.assertEquals(boxedList.indexOf(i), intList.indexOf(i));
+        }
+        Assert.assertEquals(-1, intList.indexOf(-1));
+        Assert.assertEquals(boxedList.size(), intList.toArray().length);
+    }
+
+    /** Test whether the notes from NoteMetadataTable have the values that are put in,
+     * and whether a path that is put in again replaces its row. **/
+    @Test
+    public void testNoteMetadataTable() {
+        Random rand = new Random();
+        ArrayList<NotesContent> originalList = TestFunctions.generateRandomNotes(20, 1);
+        NoteMetadataTable table = new NoteMetadataTable(0);
+        for (int i = 0; i < originalList.size(); i++) {
+            NotesContent note = originalList.get(i);
+            table.put(i + ".txt", "Old title", new Date(), "", "", null, null);
+            table.put(i + ".txt", note.noteTitle, note.lastEdited, note.lockedSalt, note.lockedPass,
+                    note.alertDate, note.alertCode);
+        }
+        Assert.assertEquals(originalList.size(), table.size());
+        Assert.assertEquals(-1, table.find(rand.nextInt() + ".text"));
+        ArrayList<NotesContent> convertedList = new ArrayList<>();
+        for (int i = 0; i < originalList.size(); i++) {
+            NotesContent note = table.toNote(table.find(i + ".txt"), i, 1, originalList.get(i).noteContent);
+            Assert.assertEquals(originalList.get(i).lastEdited, note.lastEdited);
+            Assert.assertEquals(originalList.get(i).alertDate, note.alertDate);
+            convertedList.add(note);
+        }
+        TestFunctions.customNotesListAssert(originalList, convertedList);
+    }
+
+    /** Compares the heap usage and the time taken to fill and read an IntArrayList and an ArrayList. **/
+    @Test
+    public void testIntArrayListFootprint() {
+        long startTime = System.nanoTime();
+        IntArrayList intList = new IntArrayList();
+        for (int i = 0; i < TEST_COUNT; i++) intList.add(i * 31);
+        long total = 0;
+        for (int i = 0; i < intList.size(); i++) total += intList.get(i);
+        double millis = getMillis(startTime);
+        long usedMemory = getUsedMemory();
+        Assert.assertEquals(TEST_COUNT, intList.size());
+        intList = null;
+        logResult("IntArrayList", millis, usedMemory);
+
+        startTime = System.nanoTime();
+        List<Integer> boxedList = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT; i++) boxedList.add(i * 31);
+        long boxedTotal = 0;
+        for (int i = 0; i < boxedList.size(); i++) boxedTotal += boxedList.get(i);
+        millis = getMillis(startTime);
+        usedMemory = getUsedMemory();
+        Assert.assertEquals(TEST_COUNT, boxedList.size());
+        boxedList = null;
+        logResult("ArrayList<Integer>", millis, usedMemory);
+        Assert.assertEquals(boxedTotal, total);
+    }
+
+    /** Compares the heap usage and the time taken to fill and read a NoteMetadataTable
+     * and the HashMaps for each column that were used when importing ZIP files. **/
+    @Test
+    public void testNoteMetadataFootprint() {
+        int count = TEST_COUNT / 10;
+        String[] paths = new String[count];
+        for (int i = 0; i < count; i++) paths[i] = "Note " + i + ".txt";
+
+        long startTime = System.nanoTime();
+        NoteMetadataTable table = new NoteMetadataTable(count);
+        for (int i = 0; i < count; i++) {
+            table.put(paths[i], "Title", new Date(i), "", "", i % 2 == 0 ? null : new Date(i), i);
+        }
+        for (String path: paths) Assert.assertTrue(table.find(path) >= 0);
+        double millis = getMillis(startTime);
+        long usedMemory = getUsedMemory();
+        Assert.assertEquals(count, table.size());
+        table = null;
+        logResult("NoteMetadataTable", millis, usedMemory);
+
+        startTime = System.nanoTime();
+        List<Map<String, Object>> mapList = new ArrayList<>();
+        for (int i = 0; i < 6; i++) mapList.add(new HashMap<>());
+        for (int i = 0; i < count; i++) {
+            List<Object> valueList = Arrays.asList("Title", new Date(i), "", "",
+                    i % 2 == 0 ? null : new Date(i), i);
+            for (int j = 0; j < 6; j++) mapList.get(j).put(paths[i], valueList.get(j));
+        }
+        for (String path: paths) Assert.assertNotNull(mapList.get(0).get(path));
+        millis = getMillis(startTime);
+        usedMemory = getUsedMemory();
+        Assert.assertEquals(count, mapList.get(5).size());
+        mapList = null;
+        logResult("6 HashMaps", millis, usedMemory);
+    }
+
+    /** Returns the memory used by the heap once it stops shrinking after garbage collections. **/
+    private static long getUsedMemory() {
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        long usedMemory = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long currentMemory = memoryBean.getHeapMemoryUsage().getUsed();
+            if (currentMemory >= usedMemory) break;
+            usedMemory = currentMemory;
+        }
+        return usedMemory;
+    }
+
+    /** Returns the time in milliseconds since the start time. **/
+    private static double getMillis(long startTime) {
+        return (System.nanoTime() - startTime) / 1000000.0;
+    }
+
+    /** Prints the time taken and the memory retained by a collection, which is the difference between
+     * the memory used while the collection is referenced and the memory used after it is released. **/
+    private static void logResult(String name, double millis, long usedMemory) {
+        double retainedMegabytes = (usedMemory - getUsedMemory()) / 1048576.0;
+        System.out.println(String.format(Locale.ENGLISH, "%s: %.2fms, %.2fMB retained",
+                name, millis, retainedMegabytes));
+    }
+}
@@ -14,22 +14,31 @@
 package com.pcchin.studyassistant;
 
 import com.pcchin.studyassistant.database.notes.NotesContent;
+import com.pcchin.studyassistant.file.notes.NotesJsonCodec;
 import com.pcchin.studyassistant.functions.ConverterFunctions;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.Set;
 import java.util.TimeZone;
 
 /** Test the converters and whether they are working. **/
@@ -108,25 +117,163 @@ public class ConverterTest {
         }
     }
 
+    /** Test whether the ISO fast path gives the same time as SimpleDateFormat in different time zones,
+     * and whether dates in the format of SimpleDateFormat are still parsed correctly. **/
+    @Test
+    public void testIsoFastPath() throws ParseException {
+        Random rand = new Random();
+        TimeZone defaultZone = TimeZone.getDefault();
+        String[] zoneList = {"UTC", "Asia/Kuala_Lumpur", "America/New_York", "Asia/Kolkata",
+                "Pacific/Chatham", "America/St_Johns"};
+        try {
+            for (String zone: zoneList) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zone));
+                SimpleDateFormat legacyFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.ENGLISH);
+                for (int i = 0; i < TEST_COUNT; i++) {
+                    // Between 1970 and 2100
+                    Date original = new Date((long) (rand.nextDouble() * 4102444800000L));
+                    String formatted = ConverterFunctions.formatTime(original, ConverterFunctions.TimeFormat.ISO);
+                    Assert.assertEquals(original, ConverterFunctions.parseTime(formatted,
+                            ConverterFunctions.TimeFormat.ISO));
+                    Assert.assertEquals(original, legacyFormat.parse(formatted.replaceAll("Z$", "+0000")
+                            .replaceAll(":(\\d\\d)$", "$1")));
+                    Assert.assertEquals(original, ConverterFunctions.parseTime(legacyFormat.format(original),
+                            ConverterFunctions.TimeFormat.ISO));
+                }
+            }
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    /** Test whether the cached formatters can be used from multiple threads at once. **/
+    @Test
+    public void testFormatThreadSafety() throws InterruptedException {
+        List<Throwable> errorList = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threadList = new Thread[4];
+        for (int i = 0; i < threadList.length; i++) {
+            threadList[i] = new Thread(() -> {
+                Random rand = new Random();
+                try {
+                    for (int j = 0; j < TEST_COUNT; j++) {
+                        Date original = new Date(rand.nextInt() * 1000L);
+                        for (ConverterFunctions.TimeFormat format: ConverterFunctions.TimeFormat.values()) {
+                            String formatted = ConverterFunctions.formatTime(original, format);
+                            Assert.assertEquals(formatted, ConverterFunctions.formatTime(
+                                    ConverterFunctions.parseTime(formatted, format), format));
+                        }
+                    }
+                } catch (Throwable e) {
+                    errorList.add(e);
+                }
+            });
+            threadList[i].start();
+        }
+        for (Thread thread: threadList) thread.join();
+        Assert.assertTrue(errorList.toString(), errorList.isEmpty());
+    }
+
+    /** Compares the number of ISO dates formatted and parsed per second by the cached formatters
+     * with creating a new SimpleDateFormat for each date. **/
+    @Test
+    public void testIsoThroughput() throws ParseException {
+        int count = TEST_COUNT * 20;
+        Date original = new Date();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            original.setTime(original.getTime() + 1);
+            ConverterFunctions.parseTime(ConverterFunctions.formatTime(original,
+                    ConverterFunctions.TimeFormat.ISO), ConverterFunctions.TimeFormat.ISO);
+        }
+        double cachedRate = count / ((System.nanoTime() - startTime) / 1000000000.0);
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            original.setTime(original.getTime() + 1);
+            new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZZZZZ", Locale.ENGLISH).parse(
+                    new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZZZZZ", Locale.ENGLISH).format(original));
+        }
+        double newRate = count / ((System.nanoTime() - startTime) / 1000000000.0);
+        System.out.println(String.format(Locale.ENGLISH, "ISO format and parse: %.0f ops/s cached, "
+                + "%.0f ops/s with a new SimpleDateFormat", cachedRate, newRate));
+    }
+
     /** Test the conversion between an ArrayList of NotesContent and a Gson-encoded String. **/
     @Test
     public void testNotesListConversion() {
         // Initialize variables
         Random rand = new Random();
         ArrayList<NotesContent> originalList, convertedList;
-        List<Integer> notesIdList = TestFunctions.generateIdList(rand, 100);
+        IdAllocator idAllocator = TestFunctions.generateIdAllocator(rand, 100);
         int subjectId;
 
         for (int i = 0; i < rand.nextInt(20); i++) {
             subjectId = rand.nextInt();
             originalList = TestFunctions.generateRandomNotes(TEST_COUNT, subjectId);
-            convertedList = ConverterFunctions.stringToNotesList(notesIdList, subjectId,
+            convertedList = ConverterFunctions.stringToNotesList(idAllocator, subjectId,
                     ConverterFunctions.notesListToString(originalList));
             assert convertedList != null;
             TestFunctions.customNotesListAssert(originalList, convertedList);
         }
     }
 
+    /** Test whether the notes streamed through NotesJsonCodec as bytes are read back the same,
+     * including non-ASCII text, and whether the new note IDs are not duplicated. **/
+    @Test
+    public void testNotesStreamConversion() throws IOException {
+        Random rand = new Random();
+        int subjectId = rand.nextInt();
+        ArrayList<NotesContent> originalList = TestFunctions.generateRandomNotes(TEST_COUNT, subjectId);
+        originalList.add(new NotesContent(0, subjectId, "\u6f22\u5b57 \"quoted\" \\ \ud83d\udcdd",
+                "\u00e9\n\t\u0000", new Date(), "", "", null, null));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        NotesJsonCodec.writeNotes(originalList, output);
+
+        Set<Integer> usedIds = TestFunctions.generateUsedIds(rand, 100);
+        ArrayList<NotesContent> convertedList = new ArrayList<>();
+        Assert.assertTrue(NotesJsonCodec.readNotes(new ByteArrayInputStream(output.toByteArray()),
+                TestFunctions.allocatorFromUsedIds(usedIds), subjectId, convertedList::add));
+        TestFunctions.customNotesListAssert(originalList, convertedList);
+        for (NotesContent note: convertedList) Assert.assertTrue(usedIds.add(note.noteId));
+    }
+
+    /** Test whether the IDs from IdAllocator are unique and not used, and whether a block is
+     * reserved again if it is used. Compares the time taken to allocate the IDs of 50000 notes
+     * with checking each random ID against a List. **/
+    @Test
+    public void testIdAllocator() {
+        int noteCount = 50000;
+        Set<Integer> usedIds = new HashSet<>();
+        for (int i = 0; i < noteCount; i++) usedIds.add(i * 2);
+        Set<Integer> idSet = new HashSet<>(usedIds);
+
+        long startTime = System.nanoTime();
+        IdAllocator idAllocator = TestFunctions.allocatorFromUsedIds(usedIds);
+        idAllocator.reserve(noteCount);
+        for (int i = 0; i < noteCount; i++) Assert.assertTrue(idSet.add(idAllocator.nextId()));
+        double allocatorMillis = (System.nanoTime() - startTime) / 1000000.0;
+        // Blocks that are reserved after the first should not overlap with it either
+        for (int i = 0; i < IdAllocator.DEFAULT_BLOCK_SIZE * 4; i++) {
+            Assert.assertTrue(idSet.add(idAllocator.nextId()));
+        }
+        int[] probeCount = {0};
+        new IdAllocator((start, end) -> ++probeCount[0] <= 10, 1).nextId();
+        Assert.assertEquals(11, probeCount[0]);
+
+        // Only a tenth of the notes are checked against the List as it is O(n^2)
+        Random rand = new Random();
+        List<Integer> idList = new ArrayList<>(usedIds);
+        startTime = System.nanoTime();
+        for (int i = 0; i < noteCount / 10; i++) {
+            int noteId = rand.nextInt();
+            while (idList.contains(noteId)) noteId = rand.nextInt();
+            idList.add(noteId);
+        }
+        double listMillis = (System.nanoTime() - startTime) / 1000000.0;
+        System.out.println(String.format(Locale.ENGLISH, "IDs for %d notes: %.2fms with IdAllocator, "
+                + "%.2fms for %d notes with List.contains", noteCount, allocatorMillis, listMillis, noteCount / 10));
+    }
+
     /** Test the conversion between ArrayList<Integer> and a JSON String. **/
     @Test
     public void testIntArrayJson() {
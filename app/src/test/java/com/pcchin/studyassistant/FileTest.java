@@ -0,0 +1,399 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant;
+
+import androidx.annotation.NonNull;
+
+import com.pcchin.studyassistant.functions.FileFunctions;
+import com.pcchin.studyassistant.utils.file.FileCopier;
+import com.pcchin.studyassistant.utils.file.ParallelZipWriter;
+import com.pcchin.studyassistant.utils.file.StreamUtils;
+import com.pcchin.studyassistant.utils.file.TempFileJanitor;
+import com.pcchin.studyassistant.utils.file.UniqueNameAllocator;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Test the functions used to read and write files. **/
+public class FileTest {
+    private static int TEST_COUNT;
+
+    /** Default constructor. **/
+    public FileTest() {
+        if (BuildConfig.IS_LOCAL) {
+            TEST_COUNT = 5000;
+        } else {
+            TEST_COUNT = 500;
+        }
+    }
+
+    /** Test whether the entries written by ParallelZipWriter are read back in the same order by zip4j,
+     * with and without a password. **/
+    @Test
+    public void testParallelZipWriter() throws IOException {
+        Random rand = new Random();
+        List<String> nameList = new ArrayList<>(), contentList = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT; i++) {
+            nameList.add(i + " " + TestFunctions.randomString(20).replace('/', '_') + ".txt");
+            contentList.add(rand.nextBoolean() ? "" : TestFunctions.randomString(TEST_COUNT * 10));
+        }
+        for (String password: new String[]{null, "password" + rand.nextInt()}) {
+            File zipFile = File.createTempFile("test", ".zip");
+            try {
+                long startTime = System.nanoTime();
+                try (ParallelZipWriter writer = new ParallelZipWriter(new FileOutputStream(zipFile),
+                        password == null ? null : password.toCharArray())) {
+                    for (int i = 0; i < nameList.size(); i++) {
+                        String content = contentList.get(i);
+                        writer.addEntry(nameList.get(i), output -> output.write(content.getBytes(StandardCharsets.UTF_8)));
+                    }
+                    writer.finish();
+                }
+                System.out.println(String.format(Locale.ENGLISH, "%d ZIP entries written in %.1f ms",
+                        nameList.size(), (System.nanoTime() - startTime) / 1000000.0));
+
+                ZipFile inputFile = password == null ? new ZipFile(zipFile) : new ZipFile(zipFile, password.toCharArray());
+                Assert.assertTrue(inputFile.isValidZipFile());
+                Assert.assertEquals(password != null, inputFile.isEncrypted());
+                List<FileHeader> headerList = inputFile.getFileHeaders();
+                Assert.assertEquals(nameList.size(), headerList.size());
+                for (int i = 0; i < headerList.size(); i++) {
+                    Assert.assertEquals(nameList.get(i), headerList.get(i).getFileName());
+                    try (InputStream inputStream = inputFile.getInputStream(headerList.get(i))) {
+                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                        byte[] buffer = new byte[8192];
+                        int count;
+                        while ((count = inputStream.read(buffer)) >= 0) outputStream.write(buffer, 0, count);
+                        Assert.assertEquals(contentList.get(i), new String(outputStream.toByteArray(),
+                                StandardCharsets.UTF_8));
+                    }
+                }
+            } finally {
+                Assert.assertTrue(zipFile.delete());
+            }
+        }
+    }
+
+    /** Test whether StreamUtils reads streams which only return a few bytes at a time,
+     * and whether the limits are enforced. **/
+    @Test
+    public void testStreamUtils() throws IOException {
+        byte[] content = TestFunctions.randomString(TEST_COUNT * 10).getBytes(StandardCharsets.UTF_8);
+        InputStream trickleStream = new TrickleInputStream(content);
+        byte[] header = StreamUtils.readNBytes(trickleStream, 10, 10);
+        Assert.assertArrayEquals(Arrays.copyOf(content, 10), header);
+        Assert.assertArrayEquals(Arrays.copyOfRange(content, 10, content.length),
+                StreamUtils.readAll(trickleStream, content.length));
+        Assert.assertEquals(0, StreamUtils.readAll(trickleStream, 0).length);
+
+        try {
+            StreamUtils.readNBytes(new ByteArrayInputStream(content), content.length + 1, Integer.MAX_VALUE);
+            Assert.fail("EOFException not thrown for a stream that is too short");
+        } catch (EOFException e) {
+            // Expected
+        }
+        try {
+            StreamUtils.readAll(new TrickleInputStream(content), content.length - 1);
+            Assert.fail("SizeLimitException not thrown for a stream that is too long");
+        } catch (StreamUtils.SizeLimitException e) {
+            // Expected
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Assert.assertEquals(content.length, StreamUtils.copy(new TrickleInputStream(content),
+                outputStream, content.length));
+        Assert.assertArrayEquals(content, outputStream.toByteArray());
+    }
+
+    /** Compares the speed of reading the remaining bytes of a compressed v1 .subject file
+     * one byte at a time until available() returns 0, and with StreamUtils.readAll(). **/
+    @Test
+    public void testStreamReadThroughput() throws IOException {
+        int[] sizeList = BuildConfig.IS_LOCAL ? new int[]{1, 10, 50, 200} : new int[]{1, 10};
+        Random rand = new Random();
+        for (int size: sizeList) {
+            // Random bytes mixed with runs so that the data is not fully incompressible
+            byte[] content = new byte[size * 1024 * 1024];
+            for (int i = 0; i < content.length; i += 64) {
+                if (rand.nextBoolean()) {
+                    byte[] block = new byte[Math.min(64, content.length - i)];
+                    rand.nextBytes(block);
+                    System.arraycopy(block, 0, content, i, block.length);
+                }
+            }
+            ByteArrayOutputStream compressedStream = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressedStream)) {
+                deflaterStream.write(content);
+            }
+            byte[] compressed = compressedStream.toByteArray();
+
+            long startTime = System.nanoTime();
+            ByteArrayOutputStream byteBuffer = new ByteArrayOutputStream();
+            try (InflaterInputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+                while (inputStream.available() != 0) byteBuffer.write(inputStream.read());
+            }
+            double byteSpeed = size / ((System.nanoTime() - startTime) / 1000000000.0);
+            // The size read one byte at a time depends on how the JDK implements available()
+            byteBuffer = null;
+
+            startTime = System.nanoTime();
+            byte[] result;
+            try (InflaterInputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+                result = StreamUtils.readAll(inputStream, Integer.MAX_VALUE);
+            }
+            double bulkSpeed = size / ((System.nanoTime() - startTime) / 1000000000.0);
+            Assert.assertEquals(content.length, result.length);
+            Assert.assertArrayEquals(content, result);
+            System.out.println(String.format(Locale.ENGLISH, "Reading %dMB: %.1f MB/s one byte at a time, "
+                    + "%.1f MB/s with StreamUtils", size, byteSpeed, bulkSpeed));
+        }
+    }
+
+    /** Test whether FileCopier copies files and streams with and without FileChannel.transferTo(),
+     * and compares its speed with copying through a 1KB buffer. **/
+    @Test
+    public void testFileCopier() throws IOException {
+        int[] sizeList = BuildConfig.IS_LOCAL ? new int[]{1, 10, 100} : new int[]{1, 10};
+        Random rand = new Random();
+        File source = File.createTempFile("source", ".bin"), destination = File.createTempFile("dest", ".bin");
+        try {
+            for (int size: sizeList) {
+                byte[] content = new byte[size * 1000 * 1000 - 1];
+                rand.nextBytes(content);
+                try (FileOutputStream outputStream = new FileOutputStream(source)) {
+                    outputStream.write(content);
+                }
+
+                long startTime = System.nanoTime();
+                try (InputStream input = new FileInputStream(source);
+                     FileOutputStream output = new FileOutputStream(destination)) {
+                    byte[] buf = new byte[1024];
+                    int len;
+                    while ((len = input.read(buf)) > 0) output.write(buf, 0, len);
+                }
+                double bufferSpeed = size / ((System.nanoTime() - startTime) / 1000000000.0);
+
+                long[] lastProgress = new long[2];
+                startTime = System.nanoTime();
+                Assert.assertEquals(content.length, FileCopier.copy(source, destination, (copiedBytes, totalBytes) -> {
+                    lastProgress[0] = copiedBytes;
+                    lastProgress[1] = totalBytes;
+                }));
+                double transferSpeed = size / ((System.nanoTime() - startTime) / 1000000000.0);
+                Assert.assertArrayEquals(new long[]{content.length, content.length}, lastProgress);
+                Assert.assertArrayEquals(content, readFile(destination));
+
+                startTime = System.nanoTime();
+                Assert.assertEquals(content.length, FileCopier.copy(new ByteArrayInputStream(content),
+                        destination, FileCopier.MAX_COPY_SIZE, null));
+                double streamSpeed = size / ((System.nanoTime() - startTime) / 1000000000.0);
+                Assert.assertArrayEquals(content, readFile(destination));
+                System.out.println(String.format(Locale.ENGLISH, "Copying %dMB: %.1f MB/s with a 1KB buffer, "
+                        + "%.1f MB/s with transferTo, %.1f MB/s from a stream", size, bufferSpeed,
+                        transferSpeed, streamSpeed));
+            }
+
+            // The stream is copied from its current position
+            try (FileInputStream inputStream = new FileInputStream(source)) {
+                Assert.assertEquals(10, inputStream.skip(10));
+                long copiedBytes = FileCopier.copy(inputStream, destination, FileCopier.MAX_COPY_SIZE, null);
+                Assert.assertEquals(source.length() - 10, copiedBytes);
+                Assert.assertEquals(source.length(), inputStream.getChannel().position());
+            }
+            // The destination is deleted if the source is too large
+            for (InputStream inputStream: new InputStream[]{new FileInputStream(source),
+                    new ByteArrayInputStream(readFile(source))}) {
+                try {
+                    FileCopier.copy(inputStream, destination, source.length() - 1, null);
+                    Assert.fail("SizeLimitException not thrown for a source that is too large");
+                } catch (StreamUtils.SizeLimitException e) {
+                    Assert.assertFalse(destination.exists());
+                } finally {
+                    inputStream.close();
+                }
+            }
+        } finally {
+            Assert.assertTrue(source.delete());
+            Assert.assertTrue(!destination.exists() || destination.delete());
+        }
+    }
+
+    /** Test whether UniqueNameAllocator skips the names taken in the directory, and compares
+     * the time taken for notes with the same title with checking each suffix from the start. **/
+    @Test
+    public void testUniqueNameAllocator() throws IOException {
+        File directory = Files.createTempDirectory("names").toFile();
+        try {
+            for (String name: new String[]{"note.txt", "note(1).txt", "NOTE(3).txt", "note(2)"}) {
+                Assert.assertTrue(new File(directory, name).createNewFile());
+            }
+            UniqueNameAllocator allocator = UniqueNameAllocator.forDirectory(directory);
+            Assert.assertEquals("note(2).txt", allocator.reserve("note", ".txt"));
+            Assert.assertEquals("note(4).txt", allocator.reserve("note", ".txt"));
+            Assert.assertEquals("other.txt", allocator.reserve("other", ".txt"));
+            // Files created after the directory is listed are skipped by reserveFile()
+            Assert.assertTrue(new File(directory, "note(5).txt").createNewFile());
+            File reservedFile = allocator.reserveFile("note", ".txt");
+            Assert.assertEquals("note(6).txt", reservedFile.getName());
+            Assert.assertTrue(reservedFile.exists());
+            Assert.assertEquals(directory.getAbsolutePath() + "/note(2).txt", FileFunctions
+                    .generateValidFile(directory.getAbsolutePath() + "/note", ".txt"));
+            Assert.assertEquals(directory.getAbsolutePath() + "/other.txt", FileFunctions
+                    .generateValidFile(directory.getAbsolutePath() + "/other", ".txt"));
+        } finally {
+            Assert.assertTrue(FileFunctions.deleteDir(directory));
+        }
+
+        int noteCount = 10000;
+        long startTime = System.nanoTime();
+        UniqueNameAllocator allocator = new UniqueNameAllocator();
+        Set<String> nameSet = new HashSet<>();
+        for (int i = 0; i < noteCount; i++) Assert.assertTrue(nameSet.add(allocator.reserve("Title", ".txt")));
+        double allocatorTime = (System.nanoTime() - startTime) / 1000000.0;
+
+        startTime = System.nanoTime();
+        Set<String> usedNameSet = new HashSet<>();
+        for (int i = 0; i < noteCount; i++) {
+            String currentName = "Title.txt";
+            for (int j = 1; !usedNameSet.add(currentName); j++) currentName = "Title(" + j + ").txt";
+        }
+        double probeTime = (System.nanoTime() - startTime) / 1000000.0;
+        Assert.assertEquals(usedNameSet, nameSet);
+        System.out.println(String.format(Locale.ENGLISH, "%d notes with the same title: %.1f ms with "
+                + "UniqueNameAllocator, %.1f ms checking from the first suffix", noteCount, allocatorTime, probeTime));
+    }
+
+    /** Test whether TempFileJanitor deletes the files by their age and the size quota,
+     * and whether it runs in batches. **/
+    @Test
+    public void testTempFileJanitor() throws IOException {
+        File root = Files.createTempDirectory("janitor").toFile();
+        long currentTime = System.currentTimeMillis(), hour = 60 * 60 * 1000;
+        try {
+            File nestedDir = new File(root, "tempZip/nested");
+            Assert.assertTrue(nestedDir.mkdirs());
+            // Old files in nested directories are deleted along with the directories
+            File oldFile = createFile(new File(nestedDir, "old.txt"), 100, currentTime - 3 * hour);
+            // Files over the quota are deleted from the oldest, but not recent files
+            File quotaFile1 = createFile(new File(root, "quota1.txt"), 1000, currentTime - hour / 2);
+            File quotaFile2 = createFile(new File(root, "quota2.txt"), 1000, currentTime - hour / 4);
+            File recentFile = createFile(new File(root, "recent.txt"), 1000, currentTime);
+            Assert.assertTrue(nestedDir.setLastModified(currentTime - 3 * hour));
+            Assert.assertTrue(nestedDir.getParentFile().setLastModified(currentTime - 3 * hour));
+            for (int i = 0; i < TEST_COUNT; i++) {
+                createFile(new File(root, "file" + i + ".tmp"), 10, currentTime - 2 * hour);
+            }
+
+            TempFileJanitor janitor = new TempFileJanitor(currentTime, hour, hour / 60, 2500, root);
+            int batchCount = 0;
+            long startTime = System.nanoTime();
+            while (janitor.runBatch(Long.MAX_VALUE)) batchCount++;
+            Assert.assertTrue(batchCount > 1);
+            Assert.assertEquals(TEST_COUNT + 2, janitor.getDeletedFileCount());
+            Assert.assertEquals(TEST_COUNT * 10 + 1100, janitor.getReclaimedBytes());
+            Assert.assertFalse(oldFile.exists());
+            Assert.assertFalse(nestedDir.getParentFile().exists());
+            Assert.assertFalse(quotaFile1.exists());
+            Assert.assertTrue(quotaFile2.exists());
+            Assert.assertTrue(recentFile.exists());
+            Assert.assertTrue(root.exists());
+            System.out.println(String.format(Locale.ENGLISH, "%d temp files deleted in %d batches, %.1f ms",
+                    janitor.getDeletedFileCount(), batchCount + 1, (System.nanoTime() - startTime) / 1000000.0));
+        } finally {
+            Assert.assertTrue(FileFunctions.deleteDir(root));
+        }
+    }
+
+    /** Test whether only the entries with the prefix are deleted from a root that is added with a prefix,
+     * such as the .tempZip folders in the download directory. **/
+    @Test
+    public void testTempFileJanitorPrefix() throws IOException {
+        File root = Files.createTempDirectory("download").toFile();
+        long currentTime = System.currentTimeMillis(), hour = 60 * 60 * 1000;
+        try {
+            File tempZipDir = new File(root, ".tempZip1");
+            Assert.assertTrue(tempZipDir.mkdirs());
+            File tempZipFile = createFile(new File(tempZipDir, "note.txt"), 100, currentTime - 2 * hour);
+            Assert.assertTrue(tempZipDir.setLastModified(currentTime - 2 * hour));
+            File otherDir = new File(root, "Notes");
+            Assert.assertTrue(otherDir.mkdirs());
+            File otherDirFile = createFile(new File(otherDir, "note.txt"), 100, currentTime - 2 * hour);
+            File exportFile = createFile(new File(root, "Subject.zip"), 100, currentTime - 2 * hour);
+
+            TempFileJanitor janitor = new TempFileJanitor(currentTime, hour, hour / 60, 2500)
+                    .addRoot(root, ".tempZip");
+            janitor.runAll();
+            Assert.assertEquals(1, janitor.getDeletedFileCount());
+            Assert.assertFalse(tempZipFile.exists());
+            Assert.assertFalse(tempZipDir.exists());
+            Assert.assertTrue(otherDirFile.exists());
+            Assert.assertTrue(exportFile.exists());
+            Assert.assertTrue(root.exists());
+        } finally {
+            Assert.assertTrue(FileFunctions.deleteDir(root));
+        }
+    }
+
+    /** Creates a file with the given size and last modified time. **/
+    @NonNull
+    private static File createFile(File file, int size, long lastModified) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte[size]);
+        }
+        Assert.assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+
+    /** Reads the whole file. **/
+    private static byte[] readFile(File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return StreamUtils.readAll(inputStream, Integer.MAX_VALUE);
+        }
+    }
+
+    /** An InputStream that returns at most 3 bytes for each read. **/
+    private static class TrickleInputStream extends ByteArrayInputStream {
+        /** Constructor used as the content needs to be passed on. **/
+        TrickleInputStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 3));
+        }
+    }
+}
@@ -15,17 +15,53 @@ package com.pcchin.studyassistant;
 
 import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.database.notes.NotesSubject;
+import com.pcchin.studyassistant.file.notes.NotesJsonCodec;
+import com.pcchin.studyassistant.file.notes.SubjectContainer;
+import com.pcchin.studyassistant.file.notes.SubjectContainerReader;
+import com.pcchin.studyassistant.file.notes.SubjectContainerWriter;
 import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.security.ChunkedCipher;
+import com.pcchin.studyassistant.utils.security.ChunkedCipherInputStream;
+import com.pcchin.studyassistant.utils.security.ChunkedCipherOutputStream;
+import com.pcchin.studyassistant.utils.security.CipherSession;
+import com.pcchin.studyassistant.utils.security.KdfParams;
+import com.pcchin.studyassistant.utils.security.ServerRsaCipher;
 
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Base64;
+import org.bouncycastle.util.encoders.Hex;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Random;
 
+import javax.crypto.Cipher;
+
 /** Test local hashing & encryption/decryption functions. **/
 public class SecurityTest {
+    /** The memory-hard alternative to KdfParams.DEFAULT, which uses 16MB of memory for each derivation. **/
+    private static final KdfParams SCRYPT_PARAMS = KdfParams.scrypt(16384, 8, 1);
     private static int TEST_COUNT;
 
     /** Default constructor. **/
@@ -59,13 +95,234 @@ public class SecurityTest {
         byte[] salt = new byte[32];
         rand.nextBytes(salt);
         ArrayList<NotesContent> originalList = TestFunctions.generateRandomNotes(TEST_COUNT, subjectId);
-        List<Integer> notesIdList = TestFunctions.generateIdList(rand, 50);
-        List<NotesContent> convertedList = SecurityFunctions.subjectDecrypt(notesIdList,
+        List<NotesContent> convertedList = SecurityFunctions.subjectDecrypt(
+                TestFunctions.generateIdAllocator(rand, 50),
                 new NotesSubject(subjectId, TestFunctions.randomString(10000), 1),
                 salt, password, SecurityFunctions.subjectEncrypt(password, salt, originalList));
         TestFunctions.customNotesListAssert(originalList, (ArrayList<NotesContent>) convertedList);
     }
 
+    /** Test if the notes written to a v2 .subject file, with and without a password,
+     * can be read back from the file both as a whole and separately. **/
+    @Test
+    public void testSubjectContainer() throws IOException {
+        Random rand = new Random();
+        int subjectId = rand.nextInt();
+        ArrayList<NotesContent> originalList = TestFunctions.generateRandomNotes(TEST_COUNT, subjectId);
+        NotesSubject subject = new NotesSubject(subjectId, TestFunctions.randomString(100), 1);
+        for (String password: new String[]{null, TestFunctions.randomString(100)}) {
+            File containerFile = File.createTempFile("test", ".subject");
+            try {
+                try (SubjectContainerWriter writer = new SubjectContainerWriter(containerFile,
+                        subject, password, true)) {
+                    for (NotesContent note: originalList) writer.writeNote(note);
+                    writer.finish();
+                }
+                Assert.assertTrue(SubjectContainer.isContainer(containerFile));
+
+                try (SubjectContainerReader reader = new SubjectContainerReader(containerFile)) {
+                    Assert.assertEquals(subject.title, reader.getTitle());
+                    Assert.assertEquals(password != null, reader.isEncrypted());
+                    Assert.assertEquals(originalList.size(), reader.getNoteCount());
+                    if (password != null) Assert.assertTrue(reader.setPassword(password));
+                    ArrayList<NotesContent> convertedList = new ArrayList<>();
+                    Assert.assertEquals(0, reader.readNotes(null, TestFunctions.generateIdAllocator(rand, 50),
+                            subjectId, convertedList::add));
+                    TestFunctions.customNotesListAssert(originalList, convertedList);
+
+                    // Read the notes backwards
+                    for (int i = reader.getNoteCount() - 1; i >= 0; i--) {
+                        NotesContent note = reader.readNote(i, subjectId);
+                        Assert.assertNotNull(note);
+                        Assert.assertEquals(originalList.get(i).noteContent, note.noteContent);
+                        if (password == null) Assert.assertEquals(note.noteTitle, reader.getNoteTitle(i));
+                    }
+                }
+            } finally {
+                Assert.assertTrue(containerFile.delete());
+            }
+        }
+    }
+
+    /** Test if a wrong password is rejected by an encrypted v2 .subject file even if it has no notes,
+     * and if an unencrypted record in an encrypted file is rejected. **/
+    @Test
+    public void testSubjectContainerPassword() throws IOException {
+        Random rand = new Random();
+        int subjectId = rand.nextInt();
+        String password = TestFunctions.randomString(100);
+        NotesSubject subject = new NotesSubject(subjectId, TestFunctions.randomString(100), 1);
+        for (int noteCount: new int[]{0, 3}) {
+            File containerFile = File.createTempFile("test", ".subject");
+            try {
+                try (SubjectContainerWriter writer = new SubjectContainerWriter(containerFile,
+                        subject, password, false)) {
+                    for (int i = 0; i < noteCount; i++) {
+                        writer.writeNote(new NotesContent(i, subjectId, TestFunctions.randomString(100),
+                                TestFunctions.randomString(1000), new Date(), "", "", null, null));
+                    }
+                    writer.finish();
+                }
+                try (SubjectContainerReader reader = new SubjectContainerReader(containerFile)) {
+                    Assert.assertFalse(reader.setPassword(password + "a"));
+                    Assert.assertTrue(reader.setPassword(password));
+                }
+                if (noteCount == 0) continue;
+
+                // Replace the first record with an unencrypted note
+                StringWriter noteWriter = new StringWriter();
+                NotesJsonCodec.writeNote(new NotesContent(0, subjectId, "Title", "Content",
+                        new Date(), "", "", null, null), noteWriter);
+                byte[] noteBytes = noteWriter.toString().getBytes(StandardCharsets.UTF_8);
+                byte[] fileBytes = Files.readAllBytes(containerFile.toPath());
+                ByteBuffer record = ByteBuffer.wrap(fileBytes, getFirstRecordOffset(fileBytes), 5 + noteBytes.length);
+                record.putInt(noteBytes.length).put((byte) 0).put(noteBytes);
+                Files.write(containerFile.toPath(), fileBytes);
+                try (SubjectContainerReader reader = new SubjectContainerReader(containerFile)) {
+                    Assert.assertTrue(reader.setPassword(password));
+                    Assert.assertNull(reader.readNote(0, subjectId));
+                    Assert.assertNotNull(reader.readNote(1, subjectId));
+                }
+            } finally {
+                Assert.assertTrue(containerFile.delete());
+            }
+        }
+    }
+
+    /** Test if the header, the number of notes and the index of an encrypted v2 .subject file
+     * cannot be modified without being detected, and if records cannot be read from another position. **/
+    @Test
+    public void testSubjectContainerTampering() throws IOException {
+        Random rand = new Random();
+        int subjectId = rand.nextInt();
+        String password = TestFunctions.randomString(100);
+        File containerFile = File.createTempFile("test", ".subject");
+        try {
+            try (SubjectContainerWriter writer = new SubjectContainerWriter(containerFile,
+                    new NotesSubject(subjectId, "Title", 1), password, true)) {
+                for (int i = 0; i < 3; i++) {
+                    writer.writeNote(new NotesContent(i, subjectId, "Title " + i, "Content",
+                            new Date(), "", "", null, null));
+                }
+                writer.finish();
+            }
+            byte[] original = Files.readAllBytes(containerFile.toPath());
+            int countOffset = getFirstRecordOffset(original) - 12;
+            int indexOffset = (int) ByteBuffer.wrap(original).getLong(countOffset + 4);
+            List<byte[]> modifiedList = new ArrayList<>();
+            // Change the title of the subject
+            byte[] modified = original.clone();
+            modified[13] ^= 1;
+            modifiedList.add(modified);
+            // Drop the last note
+            modified = original.clone();
+            ByteBuffer.wrap(modified).putInt(countOffset, 2);
+            modifiedList.add(modified);
+            // Point the second index entry to the first record
+            modified = original.clone();
+            ByteBuffer.wrap(modified).putLong(indexOffset + 12, ByteBuffer.wrap(original).getLong(indexOffset));
+            modifiedList.add(modified);
+            for (byte[] fileBytes: modifiedList) {
+                Files.write(containerFile.toPath(), fileBytes);
+                try (SubjectContainerReader reader = new SubjectContainerReader(containerFile)) {
+                    Assert.assertFalse(reader.setPassword(password));
+                }
+            }
+
+            Files.write(containerFile.toPath(), original);
+            try (SubjectContainerReader reader = new SubjectContainerReader(containerFile)) {
+                Assert.assertTrue(reader.setPassword(password));
+                NotesContent note = reader.readNote(1, subjectId);
+                Assert.assertNotNull(note);
+                Assert.assertEquals("Title 1", note.noteTitle);
+            }
+            // Swap the first two records, which are the same size, without changing the index
+            int first = (int) ByteBuffer.wrap(original).getLong(indexOffset);
+            int second = (int) ByteBuffer.wrap(original).getLong(indexOffset + 12);
+            modified = original.clone();
+            System.arraycopy(original, first, modified, second, second - first);
+            System.arraycopy(original, second, modified, first, second - first);
+            Files.write(containerFile.toPath(), modified);
+            try (SubjectContainerReader reader = new SubjectContainerReader(containerFile)) {
+                Assert.assertTrue(reader.setPassword(password));
+                Assert.assertNull(reader.readNote(0, subjectId));
+                Assert.assertNull(reader.readNote(1, subjectId));
+                // The notes that cannot be read are skipped
+                ArrayList<NotesContent> convertedList = new ArrayList<>();
+                Assert.assertEquals(2, reader.readNotes(null, TestFunctions.generateIdAllocator(rand, 50),
+                        subjectId, convertedList::add));
+                Assert.assertEquals(1, convertedList.size());
+                Assert.assertEquals("Title 2", convertedList.get(0).noteTitle);
+            }
+        } finally {
+            Assert.assertTrue(containerFile.delete());
+        }
+    }
+
+    /** Returns the offset of the first record of an encrypted v2 .subject file, which is after its header. **/
+    private static int getFirstRecordOffset(byte[] fileBytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(fileBytes);
+        // The magic bytes, the version and the flags of the file
+        buffer.position(9);
+        // The title, the sort order, the salt, the key derivation parameters and the password verifier
+        skipField(buffer);
+        buffer.position(buffer.position() + 4 + 32);
+        skipField(buffer);
+        skipField(buffer);
+        // The number of notes and the offset of the index
+        return buffer.position() + 12;
+    }
+
+    /** Skips a field that is prefixed by its length. **/
+    private static void skipField(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    /** Test if data streamed through the chunked cipher is decrypted correctly, including data that
+     * ends on a chunk boundary, and if modified, truncated or wrongly keyed streams are rejected. **/
+    @Test
+    public void testChunkedCipher() throws IOException {
+        Random rand = new Random();
+        byte[] key = new byte[32];
+        rand.nextBytes(key);
+        for (int size: new int[]{0, 1, 65536, 65537, rand.nextInt(TEST_COUNT * 100)}) {
+            byte[] original = new byte[size];
+            rand.nextBytes(original);
+            ByteArrayOutputStream encryptedStream = new ByteArrayOutputStream();
+            try (ChunkedCipherOutputStream outputStream = new ChunkedCipherOutputStream(encryptedStream, key)) {
+                outputStream.write(original);
+            }
+            byte[] encrypted = encryptedStream.toByteArray();
+            Assert.assertArrayEquals(original, readCipherStream(encrypted, key));
+
+            byte[] modified = encrypted.clone();
+            modified[rand.nextInt(modified.length)] ^= 1;
+            byte[] wrongKey = key.clone();
+            wrongKey[0] ^= 1;
+            for (byte[][] invalid: new byte[][][]{{modified, key},
+                    {Arrays.copyOf(encrypted, encrypted.length - 1), key}, {encrypted, wrongKey}}) {
+                try {
+                    readCipherStream(invalid[0], invalid[1]);
+                    Assert.fail("Invalid stream of size " + size + " was not rejected");
+                } catch (ChunkedCipher.AuthenticationException e) {
+                    // Expected
+                }
+            }
+        }
+    }
+
+    /** Reads the whole of an encrypted stream. **/
+    private static byte[] readCipherStream(byte[] encrypted, byte[] key) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = new ChunkedCipherInputStream(new ByteArrayInputStream(encrypted), key)) {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = inputStream.read(buffer)) >= 0) outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+
     /** Check if the AES algorithm is working. **/
     @Test
     public void testAES() {
@@ -106,6 +363,107 @@ public class SecurityTest {
         Assert.assertArrayEquals(original, SecurityFunctions.blowfish(response, key, false));
     }
 
+    /** Check if a cipher session gives the same output as aes() and blowfish() when it is reused,
+     * including when it is used with direct and offset ByteBuffers. **/
+    @Test
+    public void testCipherSession() throws InvalidCipherTextException {
+        Random rand = new Random();
+        byte[] key = TestFunctions.randomString(40).getBytes(), iv = TestFunctions.randomString(3).getBytes();
+        CipherSession aesSession = CipherSession.aes(key, iv), blowfishSession = CipherSession.blowfish(key);
+        for (int i = 0; i < 20; i++) {
+            byte[] original = new byte[rand.nextInt(TEST_COUNT)];
+            rand.nextBytes(original);
+            byte[] encrypted = aesSession.encrypt(original);
+            Assert.assertArrayEquals(SecurityFunctions.aes(original, key, iv, true), encrypted);
+            Assert.assertArrayEquals(original, aesSession.decrypt(encrypted));
+            Assert.assertArrayEquals(SecurityFunctions.blowfish(original, key, true),
+                    blowfishSession.encrypt(original));
+
+            ByteBuffer input = ByteBuffer.allocateDirect(encrypted.length + 3);
+            input.position(3);
+            input.put(encrypted).position(3);
+            ByteBuffer output = ByteBuffer.allocate(aesSession.getOutputSize(false, encrypted.length) + 5);
+            output.position(5);
+            int length = aesSession.decrypt(input, output);
+            Assert.assertEquals(original.length, length);
+            Assert.assertEquals(5 + length, output.position());
+            Assert.assertArrayEquals(original, Arrays.copyOfRange(output.array(), 5, 5 + length));
+        }
+        try {
+            aesSession.decrypt(new byte[]{1, 2, 3});
+            Assert.fail("Invalid cipher text was not rejected");
+        } catch (DataLengthException | InvalidCipherTextException e) {
+            // Expected, the session should still be usable afterwards
+            Assert.assertArrayEquals(new byte[]{4, 5}, aesSession.decrypt(aesSession.encrypt(new byte[]{4, 5})));
+        }
+    }
+
+    /** Prints the throughput and the memory allocated for each MB of AES through aes() and through
+     * a reused CipherSession with ByteBuffers, for different sizes of messages. **/
+    @Test
+    public void testCipherThroughput() throws InvalidCipherTextException {
+        byte[] key = TestFunctions.randomString(32).getBytes(), iv = TestFunctions.randomString(16).getBytes();
+        CipherSession session = CipherSession.aes(key, iv);
+        int totalSize = BuildConfig.IS_LOCAL ? 64 * 1024 * 1024 : 4 * 1024 * 1024;
+        for (int size: new int[]{256, 4 * 1024, 64 * 1024, 1024 * 1024}) {
+            byte[] original = new byte[size];
+            new Random().nextBytes(original);
+            int count = Math.max(1, totalSize / size);
+            double megabytes = (double) size * count / (1024 * 1024);
+
+            long startBytes = getAllocatedBytes(), startTime = System.nanoTime();
+            for (int i = 0; i < count; i++) SecurityFunctions.aes(original, key, iv, true);
+            double functionRate = megabytes / ((System.nanoTime() - startTime) / 1000000000.0),
+                    functionAllocation = (getAllocatedBytes() - startBytes) / megabytes;
+
+            ByteBuffer input = ByteBuffer.wrap(original),
+                    output = ByteBuffer.allocate(session.getOutputSize(true, size));
+            startBytes = getAllocatedBytes();
+            startTime = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                input.rewind();
+                output.clear();
+                session.encrypt(input, output);
+            }
+            double sessionRate = megabytes / ((System.nanoTime() - startTime) / 1000000000.0),
+                    sessionAllocation = (getAllocatedBytes() - startBytes) / megabytes;
+            System.out.println(String.format(Locale.ENGLISH, "AES %d bytes: aes() %.1f MB/s %.0f bytes/MB, "
+                    + "CipherSession %.1f MB/s %.0f bytes/MB", size, functionRate, functionAllocation,
+                    sessionRate, sessionAllocation));
+        }
+    }
+
+    /** Returns the number of bytes allocated by the current thread.
+     * This is only available in HotSpot-based JVMs through com.sun.management.ThreadMXBean. **/
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Check if messages encrypted with a PEM key through ServerRsaCipher can be decrypted block by block,
+     * including messages that span multiple blocks. **/
+    @Test
+    public void testServerRsaCipher() throws GeneralSecurityException, IOException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        String pem = "-----BEGIN PUBLIC KEY-----\n" + Base64.toBase64String(keyPair.getPublic().getEncoded())
+                .replaceAll("(.{64})", "$1\n") + "\n-----END PUBLIC KEY-----\n";
+        ServerRsaCipher serverCipher = new ServerRsaCipher(ServerRsaCipher.readPublicKey(new StringReader(pem)));
+        Cipher decryptCipher = Cipher.getInstance("RSA/NONE/OAEPPadding", new BouncyCastleProvider());
+        decryptCipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+
+        for (String original: new String[]{"", "\u6f22\u5b57", TestFunctions.randomString(TEST_COUNT)}) {
+            byte[] encrypted = Hex.decode(serverCipher.encryptToHex(original));
+            ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            // Each 128 byte block is encrypted into 256 bytes
+            for (int offset = 0; offset < encrypted.length; offset += 256) {
+                decrypted.write(decryptCipher.doFinal(encrypted, offset, 256));
+            }
+            Assert.assertEquals(original, new String(decrypted.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
     /** Check if the PBKDF2 algorithm is working. **/
     @Test
     public void testPbkdf2() {
@@ -117,5 +475,46 @@ public class SecurityTest {
                 TestFunctions.randomString(2).getBytes(), TEST_COUNT);
         Assert.assertNotNull(response);
     }
+
+    /** Check if the KDF parameters are parsed back the same and if invalid parameters are rejected. **/
+    @Test
+    public void testKdfParams() {
+        KdfParams[] paramsList = {KdfParams.DEFAULT, SCRYPT_PARAMS, KdfParams.pbkdf2(100000)};
+        for (KdfParams params: paramsList) {
+            Assert.assertEquals(params, KdfParams.parse(params.toString()));
+        }
+        Assert.assertNotEquals(KdfParams.LEGACY, KdfParams.parse(KdfParams.LEGACY.toString()));
+        Assert.assertNull(KdfParams.parse("pbkdf2-sha256$i=0"));
+        Assert.assertNull(KdfParams.parse("scrypt$n=1000,r=8,p=1"));
+        Assert.assertNull(KdfParams.parse("md5$i=1000"));
+        // Costs from crafted files are rejected
+        Assert.assertNull(KdfParams.parse("pbkdf2-sha256$i=2147483647"));
+        Assert.assertNull(KdfParams.parse("scrypt$n=1073741824,r=8,p=1"));
+        Assert.assertNull(KdfParams.parse("scrypt$n=16384,r=8,p=2147483647"));
+        Assert.assertNotNull(KdfParams.parse("scrypt$n=65536,r=8,p=1"));
+        Assert.assertNull(KdfParams.parse(""));
+    }
+
+    /** Prints the time taken to derive a key with each KDF, which should be kept below 1s on most devices
+     * as the user would be waiting for the key whenever a project is logged in. **/
+    @Test
+    public void testKdfLatency() {
+        KdfParams[] paramsList = {KdfParams.LEGACY, KdfParams.DEFAULT, KdfParams.pbkdf2(100000),
+                SCRYPT_PARAMS};
+        int count = BuildConfig.IS_LOCAL ? 5 : 2;
+        // The length of legacy hashes depend on the length of the password
+        byte[] password = new byte[32], salt = new byte[32];
+        new Random().nextBytes(password);
+        new Random().nextBytes(salt);
+        for (KdfParams params: paramsList) {
+            byte[] expected = params.derive(password, salt);
+            long startTime = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Assert.assertArrayEquals(expected, params.derive(password, salt));
+            }
+            System.out.println(String.format(Locale.ENGLISH, "%s: %.1f ms per key", params,
+                    (System.nanoTime() - startTime) / 1000000.0 / count));
+        }
+    }
 }
 
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 PC Chin. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pcchin.studyassistant;
+
+import com.pcchin.studyassistant.utils.startup.StartupGraph;
+import com.pcchin.studyassistant.utils.startup.StartupTrace;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/** Test the stage graph used when the app is started. **/
+public class StartupTest {
+    /** Test whether the critical stages are run in the order that they are added,
+     * unless their dependencies require otherwise. **/
+    @Test
+    public void testCriticalOrder() {
+        List<String> runList = new ArrayList<>();
+        StartupGraph graph = new StartupGraph()
+                .addCritical("navigation", () -> runList.add("navigation"), "layout")
+                .addCritical("layout", () -> runList.add("layout"))
+                .addCritical("sentry", () -> runList.add("sentry"))
+                .addDeferred("roles", () -> runList.add("roles"), "layout");
+        List<String> expectedOrder = Arrays.asList("layout", "navigation", "sentry");
+        Assert.assertEquals(expectedOrder, graph.getCriticalOrder());
+        Assert.assertEquals(Collections.singletonList("roles"), graph.getDeferredRoots());
+        // The deferred stages are not run until the executor runs them
+        List<Runnable> deferredList = new ArrayList<>();
+        StartupTrace trace = graph.run(deferredList::add, null);
+        Assert.assertEquals(expectedOrder, runList);
+        Assert.assertEquals(1, deferredList.size());
+        deferredList.get(0).run();
+        Assert.assertEquals("roles", runList.get(3));
+        Assert.assertEquals(4, trace.getEntries().size());
+        Assert.assertTrue(trace.getCriticalPathNanos() > 0);
+    }
+
+    /** Test whether invalid graphs are rejected. **/
+    @Test
+    public void testInvalidGraph() {
+        Runnable emptyTask = () -> { };
+        assertInvalid(new StartupGraph().addCritical("a", emptyTask, "missing"));
+        assertInvalid(new StartupGraph().addDeferred("a", emptyTask).addCritical("b", emptyTask, "a"));
+        assertInvalid(new StartupGraph().addDeferred("a", emptyTask, "c")
+                .addDeferred("b", emptyTask, "a").addDeferred("c", emptyTask, "b"));
+        try {
+            new StartupGraph().addCritical("a", emptyTask).addDeferred("a", emptyTask);
+            Assert.fail("IllegalArgumentException not thrown for a duplicate stage");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /** Test whether the deferred stages run in parallel after their dependencies,
+     * and whether the dependents of a failed stage are skipped. **/
+    @Test
+    public void testDeferredStages() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch parallelLatch = new CountDownLatch(2), finishLatch = new CountDownLatch(1);
+            Map<String, Long> endTimeMap = Collections.synchronizedMap(new HashMap<>());
+            StartupGraph graph = new StartupGraph().addCritical("layout", () -> { })
+                    // Both stages wait for each other, which only finishes if they run in parallel
+                    .addDeferred("database", () -> awaitLatch(parallelLatch, endTimeMap, "database"), "layout")
+                    .addDeferred("files", () -> awaitLatch(parallelLatch, endTimeMap, "files"))
+                    .addDeferred("roles", () -> endTimeMap.put("roles", System.nanoTime()), "database", "files")
+                    .addDeferred("failed", () -> {
+                        throw new IllegalStateException("Stage failed");
+                    })
+                    .addDeferred("afterFailed", () -> endTimeMap.put("afterFailed", System.nanoTime()), "failed");
+            Assert.assertEquals(Arrays.asList("database", "files", "failed"), graph.getDeferredRoots());
+            StartupTrace[] finishedTrace = new StartupTrace[1];
+            long startTime = System.nanoTime();
+            graph.run(executor, trace -> {
+                finishedTrace[0] = trace;
+                finishLatch.countDown();
+            });
+            Assert.assertTrue(finishLatch.await(10, TimeUnit.SECONDS));
+
+            Assert.assertTrue(endTimeMap.get("roles") > endTimeMap.get("database"));
+            Assert.assertTrue(endTimeMap.get("roles") > endTimeMap.get("files"));
+            Assert.assertFalse(endTimeMap.containsKey("afterFailed"));
+            Map<String, StartupTrace.Status> statusMap = new HashMap<>();
+            for (StartupTrace.Entry entry: finishedTrace[0].getEntries()) statusMap.put(entry.name, entry.status);
+            Assert.assertEquals(6, statusMap.size());
+            Assert.assertEquals(StartupTrace.Status.COMPLETED, statusMap.get("roles"));
+            Assert.assertEquals(StartupTrace.Status.FAILED, statusMap.get("failed"));
+            Assert.assertEquals(StartupTrace.Status.SKIPPED, statusMap.get("afterFailed"));
+            System.out.println(String.format(Locale.ENGLISH, "Startup graph finished in %.2fms\n%s",
+                    (System.nanoTime() - startTime) / 1000000.0, finishedTrace[0].dump()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Waits until the other stages have also reached the latch. **/
+    private static void awaitLatch(CountDownLatch latch, Map<String, Long> endTimeMap, String name) {
+        latch.countDown();
+        try {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        endTimeMap.put(name, System.nanoTime());
+    }
+
+    /** Asserts that the graph is rejected when it is run. **/
+    private static void assertInvalid(StartupGraph graph) {
+        try {
+            graph.run(Runnable::run, null);
+            Assert.fail("IllegalStateException not thrown for an invalid graph");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
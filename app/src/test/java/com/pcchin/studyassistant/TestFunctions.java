@@ -17,14 +17,17 @@ import androidx.annotation.NonNull;
 
 import com.pcchin.studyassistant.database.notes.NotesContent;
 import com.pcchin.studyassistant.functions.SecurityFunctions;
+import com.pcchin.studyassistant.utils.misc.IdAllocator;
+import com.pcchin.studyassistant.utils.security.KdfParams;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Assert;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 
 /** Functions used in tests **/
 class TestFunctions {
@@ -71,7 +74,9 @@ class TestFunctions {
             contents = TestFunctions.randomString(1000000);
             lastEdited.setTime(rand.nextLong());
             lockedSalt = TestFunctions.randomString(50);
-            lockedPass = rand.nextBoolean() ? "" : SecurityFunctions.passwordHash(TestFunctions.randomString(100), lockedSalt);
+            // A single iteration is used as only the format of the hash matters here
+            lockedPass = rand.nextBoolean() ? "" : SecurityFunctions.passwordHash(TestFunctions.randomString(100),
+                    lockedSalt, KdfParams.pbkdf2(1));
             alertDate.setTime(rand.nextLong());
             alertCode = rand.nextBoolean() ? null : rand.nextInt();
             originalList.add(new NotesContent(noteId, subjectId, title, contents, lastEdited, lockedSalt, lockedPass,
@@ -80,17 +85,30 @@ class TestFunctions {
         return originalList;
     }
 
-    /** Generates a random ArrayList of Integers based on the given bound. **/
+    /** Generates a set of random IDs, with fewer IDs than the given bound. **/
     @NonNull
-    static List<Integer> generateIdList(@NonNull Random rand, int bound) {
-        List<Integer> idList = new ArrayList<>();
-        int fakeId;
-        // Populate notesIdList with mock notes
-        for (int j = 0; j < rand.nextInt(bound); j++) {
-            fakeId = rand.nextInt();
-            while (idList.contains(fakeId)) fakeId = rand.nextInt();
-            idList.add(fakeId);
-        }
-        return idList;
+    static Set<Integer> generateUsedIds(@NonNull Random rand, int bound) {
+        Set<Integer> idSet = new HashSet<>();
+        int count = rand.nextInt(bound);
+        // Populate the IDs with mock notes
+        while (idSet.size() < count) idSet.add(rand.nextInt());
+        return idSet;
+    }
+
+    /** Generates an IdAllocator where a random array of IDs has already been used. **/
+    @NonNull
+    static IdAllocator generateIdAllocator(@NonNull Random rand, int bound) {
+        return allocatorFromUsedIds(generateUsedIds(rand, bound));
+    }
+
+    /** Creates an IdAllocator that checks the IDs against a set of used IDs instead of a table. **/
+    @NonNull
+    static IdAllocator allocatorFromUsedIds(@NonNull Set<Integer> usedIds) {
+        return new IdAllocator((start, end) -> {
+            for (long id = start; id <= end; id++) {
+                if (usedIds.contains((int) id)) return true;
+            }
+            return false;
+        }, IdAllocator.DEFAULT_BLOCK_SIZE);
     }
 }